@@ -1,7 +1,8 @@
 package io.nflow.engine.config;
 
 import static com.fasterxml.jackson.annotation.JsonInclude.Include.NON_EMPTY;
-import static java.lang.Runtime.getRuntime;
+import static io.nflow.engine.internal.executor.ExecutorPoolSizing.executorThreadCount;
+import static io.nflow.engine.internal.executor.ExecutorPoolSizing.maxExecutorThreadCount;
 
 import java.util.concurrent.ThreadFactory;
 
@@ -36,13 +37,15 @@ public class EngineConfiguration {
    */
   @Bean
   public WorkflowInstanceExecutor nflowExecutor(@NFlow ThreadFactory nflowThreadFactory, Environment env) {
-    int threadCount = env.getProperty("nflow.executor.thread.count", Integer.class, 2 * getRuntime().availableProcessors());
+    int threadCount = executorThreadCount(env);
     int awaitTerminationSeconds = env.getRequiredProperty("nflow.dispatcher.await.termination.seconds", Integer.class);
-    int queueSize = env.getProperty("nflow.dispatcher.executor.queue.size", Integer.class, 2 * threadCount);
+    // the queue is sized for the largest thread count, because the thread count may be tuned
+    int queueSize = env.getProperty("nflow.dispatcher.executor.queue.size", Integer.class, 2 * maxExecutorThreadCount(env));
     int notifyThreshold = env.getProperty("nflow.dispatcher.executor.queue.wait_until_threshold", Integer.class, queueSize / 2);
     int keepAliveSeconds = env.getRequiredProperty("nflow.dispatcher.executor.thread.keepalive.seconds", Integer.class);
+    int maxAsyncInFlight = env.getRequiredProperty("nflow.executor.async.maxInFlight", Integer.class);
     return new WorkflowInstanceExecutor(queueSize, threadCount, notifyThreshold, awaitTerminationSeconds, keepAliveSeconds,
-        nflowThreadFactory);
+        maxAsyncInFlight, nflowThreadFactory);
   }
 
   /**
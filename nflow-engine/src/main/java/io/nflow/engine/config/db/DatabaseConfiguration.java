@@ -1,5 +1,6 @@
 package io.nflow.engine.config.db;
 
+import static io.nflow.engine.internal.executor.ExecutorPoolSizing.defaultMaxPoolSize;
 import static org.slf4j.LoggerFactory.getLogger;
 import static org.springframework.beans.factory.config.BeanDefinition.SCOPE_PROTOTYPE;
 
@@ -63,7 +64,7 @@ public abstract class DatabaseConfiguration {
     config.setJdbcUrl(url);
     config.setUsername(property(env, "user"));
     config.setPassword(property(env, "password"));
-    config.setMaximumPoolSize(property(env, "max_pool_size", Integer.class));
+    config.setMaximumPoolSize(maxPoolSize(env));
     config.setIdleTimeout(property(env, "idle_timeout_seconds", Long.class) * 1000);
     config.setAutoCommit(true);
     setMetricRegistryIfBeanFoundOnClassPath(config, appCtx);
@@ -72,6 +73,18 @@ public abstract class DatabaseConfiguration {
     return nflowDataSource;
   }
 
+  private int maxPoolSize(Environment env) {
+    Integer maxPoolSize = env.getProperty("nflow.db.max_pool_size", Integer.class);
+    if (maxPoolSize == null) {
+      maxPoolSize = env.getProperty("nflow.db." + dbType + ".max_pool_size", Integer.class);
+    }
+    if (maxPoolSize == null) {
+      maxPoolSize = defaultMaxPoolSize(env);
+      logger.info("Using database connection pool size {} based on executor thread count", maxPoolSize);
+    }
+    return maxPoolSize;
+  }
+
   private void setMetricRegistryIfBeanFoundOnClassPath(HikariConfig config, BeanFactory appCtx) {
     try {
       Class<?> metricClass = Class.forName("com.codahale.metrics.MetricRegistry");
@@ -162,6 +162,18 @@ public class Db2DatabaseConfiguration extends DatabaseConfiguration {
       return true;
     }
 
+    /**
+     * Returns SQL for inserting or updating the current value of a state variable.
+     */
+    @Override
+    public String upsertCurrentStateVariable() {
+      return "merge into nflow_workflow_state_current c "
+          + "using (values (cast(? as int), cast(? as varchar(64)), cast(? as varchar(10240)))) s(workflow_id, state_key, state_value) "
+          + "on c.workflow_id = s.workflow_id and c.state_key = s.state_key "
+          + "when matched then update set state_value = s.state_value "
+          + "when not matched then insert (workflow_id, state_key, state_value) values (s.workflow_id, s.state_key, s.state_value)";
+    }
+
     @Override
     public Object getTimestamp(ResultSet rs, String columnName) throws SQLException {
       return Optional.ofNullable(rs.getTimestamp(columnName))
@@ -163,5 +163,14 @@ public class H2DatabaseConfiguration extends DatabaseConfiguration {
     public boolean useBatchUpdate() {
       return true;
     }
+
+    /**
+     * Returns SQL for inserting or updating the current value of a state variable.
+     */
+    @Override
+    public String upsertCurrentStateVariable() {
+      return "merge into nflow_workflow_state_current(workflow_id, state_key, state_value) key(workflow_id, state_key) "
+          + "values (?, ?, ?)";
+    }
   }
 }
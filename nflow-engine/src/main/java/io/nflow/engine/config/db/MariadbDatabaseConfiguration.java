@@ -14,6 +14,7 @@ import javax.sql.DataSource;
 import org.slf4j.Logger;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
+import org.springframework.context.annotation.DependsOn;
 import org.springframework.context.annotation.Profile;
 import org.springframework.core.env.Environment;
 import org.springframework.jdbc.datasource.DataSourceUtils;
@@ -31,6 +32,7 @@ import io.nflow.engine.internal.storage.db.SQLVariants;
 @Configuration
 public class MariadbDatabaseConfiguration extends DatabaseConfiguration {
   private static final Logger logger = getLogger(MariadbDatabaseConfiguration.class);
+  private boolean hasSkipLocked;
 
   /**
    * Create a new instance.
@@ -59,9 +61,12 @@ public class MariadbDatabaseConfiguration extends DatabaseConfiguration {
         databaseProductVersion = databaseProductVersion.substring(6);
       }
       String[] versions = split(databaseProductVersion, ".-");
-      if (parseInt(versions[0]) <= 5 && parseInt(versions[1]) <= 5) {
+      int productMajorVersion = parseInt(versions[0]);
+      int productMinorVersion = parseInt(versions[1]);
+      if (productMajorVersion <= 5 && productMinorVersion <= 5) {
         scriptPrefix += ".legacy";
       }
+      hasSkipLocked = productMajorVersion > 10 || (productMajorVersion == 10 && productMinorVersion >= 6);
       logger.info("MariaDB {}.{}, product version {}", majorVersion, minorVersion, databaseProductVersion);
     } catch (SQLException e) {
       throw new RuntimeException("Failed to obtain MariaDB version", e);
@@ -74,7 +79,8 @@ public class MariadbDatabaseConfiguration extends DatabaseConfiguration {
    * @return SQL variants optimized for MariaDB.
    */
   @Bean
+  @DependsOn(NFLOW_DATABASE_INITIALIZER)
   public SQLVariants sqlVariants() {
-    return new MySQLVariants();
+    return new MySQLVariants(hasSkipLocked);
   }
 }
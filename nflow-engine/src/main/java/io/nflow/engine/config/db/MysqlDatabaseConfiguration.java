@@ -12,6 +12,7 @@ import javax.sql.DataSource;
 import org.slf4j.Logger;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
+import org.springframework.context.annotation.DependsOn;
 import org.springframework.context.annotation.Profile;
 import org.springframework.core.env.Environment;
 import org.springframework.jdbc.datasource.DataSourceUtils;
@@ -29,6 +30,7 @@ import io.nflow.engine.internal.storage.db.SQLVariants;
 @Configuration
 public class MysqlDatabaseConfiguration extends DatabaseConfiguration {
   private static final Logger logger = getLogger(MysqlDatabaseConfiguration.class);
+  private boolean hasSkipLocked;
 
   /**
    * Create a new instance.
@@ -58,6 +60,7 @@ public class MysqlDatabaseConfiguration extends DatabaseConfiguration {
       if (majorVersion <= 5 && minorVersion <= 5) {
         scriptPrefix += ".legacy";
       }
+      hasSkipLocked = majorVersion >= 8;
     } catch (SQLException e) {
       throw new RuntimeException("Failed to obtain MySQL version", e);
     }
@@ -69,8 +72,9 @@ public class MysqlDatabaseConfiguration extends DatabaseConfiguration {
    * @return SQL variants optimized for MySQL.
    */
   @Bean
+  @DependsOn(NFLOW_DATABASE_INITIALIZER)
   public SQLVariants sqlVariants() {
-    return new MySQLVariants();
+    return new MySQLVariants(hasSkipLocked);
   }
 
 }
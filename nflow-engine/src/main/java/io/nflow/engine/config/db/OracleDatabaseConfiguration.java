@@ -178,5 +178,17 @@ public class OracleDatabaseConfiguration extends DatabaseConfiguration {
     public boolean useBatchUpdate() {
       return useBatchUpdate;
     }
+
+    /**
+     * Returns SQL for inserting or updating the current value of a state variable.
+     */
+    @Override
+    public String upsertCurrentStateVariable() {
+      return "merge into nflow_workflow_state_current c "
+          + "using (select ? workflow_id, ? state_key, to_clob(?) state_value from dual) s "
+          + "on (c.workflow_id = s.workflow_id and c.state_key = s.state_key) "
+          + "when matched then update set c.state_value = s.state_value "
+          + "when not matched then insert (workflow_id, state_key, state_value) values (s.workflow_id, s.state_key, s.state_value)";
+    }
   }
 }
@@ -4,11 +4,18 @@ import static io.nflow.engine.config.Profiles.POSTGRESQL;
 
 import java.sql.Types;
 
+import javax.sql.DataSource;
+
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
 import org.springframework.context.annotation.Profile;
+import org.springframework.core.env.Environment;
+import org.springframework.jdbc.core.JdbcTemplate;
 
+import io.nflow.engine.config.NFlow;
+import io.nflow.engine.internal.storage.db.PostgreSQLNotifyWakeupChannel;
 import io.nflow.engine.internal.storage.db.SQLVariants;
+import io.nflow.engine.workflow.executor.WakeupChannel;
 import io.nflow.engine.workflow.instance.WorkflowInstance.WorkflowInstanceStatus;
 
 /**
@@ -34,6 +41,24 @@ public class PgDatabaseConfiguration extends DatabaseConfiguration {
     return new PostgreSQLVariants();
   }
 
+  /**
+   * Creates a wakeup channel that uses PostgreSQL LISTEN/NOTIFY to wake up the workflow dispatchers of all nFlow nodes when
+   * workflow instances become executable. Enabled by setting nflow.db.postgresql.listen_notify to true.
+   * @param env The Spring environment for getting the configuration property values.
+   * @param nflowDataSource The nFlow datasource used for sending and listening to the notifications.
+   * @return The wakeup channel, or null if not enabled.
+   */
+  @Bean
+  @NFlow
+  public WakeupChannel nflowWakeupChannel(Environment env, @NFlow DataSource nflowDataSource) {
+    if (!env.getRequiredProperty("nflow.db.postgresql.listen_notify", Boolean.class)) {
+      return null;
+    }
+    String executorGroup = env.getRequiredProperty("nflow.executor.group").trim();
+    return new PostgreSQLNotifyWakeupChannel(new JdbcTemplate(nflowDataSource), executorGroup,
+        env.getRequiredProperty("nflow.db.postgresql.listen_timeout_ms", Integer.class));
+  }
+
   /**
    * SQL variants optimized for PostgreSQL.
    */
@@ -63,6 +88,14 @@ public class PgDatabaseConfiguration extends DatabaseConfiguration {
       return true;
     }
 
+    /**
+     * Returns true as PostgreSQL supports skipping locked rows.
+     */
+    @Override
+    public boolean hasSkipLocked() {
+      return true;
+    }
+
     /**
      * Returns SQL representing the next activation time of the workflow instance.
      */
@@ -129,5 +162,14 @@ public class PgDatabaseConfiguration extends DatabaseConfiguration {
     public boolean useBatchUpdate() {
       return true;
     }
+
+    /**
+     * Returns SQL for inserting or updating the current value of a state variable.
+     */
+    @Override
+    public String upsertCurrentStateVariable() {
+      return "insert into nflow_workflow_state_current(workflow_id, state_key, state_value) values (?, ?, ?) "
+          + "on conflict (workflow_id, state_key) do update set state_value = excluded.state_value";
+    }
   }
 }
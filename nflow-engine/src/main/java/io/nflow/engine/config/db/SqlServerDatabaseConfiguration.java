@@ -102,6 +102,11 @@ public class SqlServerDatabaseConfiguration extends DatabaseConfiguration {
       return "datediff_big(ms, " + next_activation + ", " + current_timestamp + ") >= 0";
     }
 
+    @Override
+    public String mod(String column, int divisor) {
+      return "(" + column + " % " + divisor + ")";
+    }
+
     @Override
     public Object getTimestamp(ResultSet rs, String columnName) throws SQLException {
       try {
@@ -196,6 +201,22 @@ public class SqlServerDatabaseConfiguration extends DatabaseConfiguration {
       return query.substring(0, idx + 7) + "top(" + limit + ") " + query.substring(idx + 7);
     }
 
+    /**
+     * Returns true as SQL Server supports skipping locked rows with readpast table hint.
+     */
+    @Override
+    public boolean hasSkipLocked() {
+      return true;
+    }
+
+    /**
+     * Returns SQL for a query with a limit of results that locks the returned rows and skips rows locked by others.
+     */
+    @Override
+    public String limitForUpdateSkipLocked(String query, long limit) {
+      return limit(query, limit).replaceFirst(" where ", " with (readpast, updlock, rowlock) where ");
+    }
+
     /**
      * Returns the SQL type for long text.
      */
@@ -211,5 +232,14 @@ public class SqlServerDatabaseConfiguration extends DatabaseConfiguration {
     public boolean useBatchUpdate() {
       return true;
     }
+
+    /**
+     * Returns SQL for inserting or updating the current value of a state variable.
+     */
+    @Override
+    public String upsertCurrentStateVariable() {
+      // merge statement must be terminated with a semicolon
+      return SQLVariants.super.upsertCurrentStateVariable() + ";";
+    }
   }
 }
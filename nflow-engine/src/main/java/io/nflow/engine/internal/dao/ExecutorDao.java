@@ -2,6 +2,7 @@ package io.nflow.engine.internal.dao;
 
 import static io.nflow.engine.internal.dao.DaoUtil.firstColumnLengthExtractor;
 import static java.net.InetAddress.getLocalHost;
+import static org.apache.commons.lang3.StringUtils.join;
 import static org.apache.commons.lang3.StringUtils.left;
 import static org.apache.commons.lang3.StringUtils.trimToNull;
 import static org.joda.time.DateTime.now;
@@ -14,6 +15,7 @@ import java.sql.Connection;
 import java.sql.PreparedStatement;
 import java.sql.ResultSet;
 import java.sql.SQLException;
+import java.util.ArrayList;
 import java.util.List;
 
 import javax.inject.Inject;
@@ -44,6 +46,7 @@ import io.nflow.engine.workflow.executor.WorkflowExecutor;
 public class ExecutorDao {
 
   private static final Logger logger = getLogger(ExecutorDao.class);
+  private static final int SHARD_LEASE_KEEPALIVE_INTERVALS = 3;
 
   private final JdbcTemplate jdbc;
   final SQLVariants sqlVariants;
@@ -54,6 +57,8 @@ public class ExecutorDao {
   final int timeoutSeconds;
   private int executorId = -1;
   private final int hostMaxLength;
+  private final int shardCount;
+  private volatile String shardCondition = "";
 
   @Inject
   public ExecutorDao(SQLVariants sqlVariants, @NFlow JdbcTemplate nflowJdbcTemplate, Environment env) {
@@ -65,6 +70,7 @@ public class ExecutorDao {
     this.keepaliveIntervalSeconds = env.getRequiredProperty("nflow.executor.keepalive.seconds", Integer.class);
     // In one deployment, FirstColumnLengthExtractor returned 0 column length (H2), so allow explicit length setting.
     this.hostMaxLength = env.getProperty("nflow.executor.host.length", Integer.class, -1);
+    this.shardCount = env.getRequiredProperty("nflow.executor.shards", Integer.class);
   }
 
   private static String createWhereCondition(String group) {
@@ -77,9 +83,39 @@ public class ExecutorDao {
     }
     nextUpdate = now().plusSeconds(keepaliveIntervalSeconds);
     updateActiveTimestamp();
+    if (shardCount > 0) {
+      updateShards();
+    }
     return true;
   }
 
+  void updateShards() {
+    // An executor keeps its shards only while it updates its active timestamp. Waiting for the executor to expire would leave
+    // the shards of a crashed executor unpolled until the executor timeout.
+    int leaseSeconds = SHARD_LEASE_KEEPALIVE_INTERVALS * keepaliveIntervalSeconds;
+    List<Integer> liveExecutorIds = jdbc.queryForList("select id from nflow_executor where " + executorGroupCondition
+        + " and stopped is null and " + sqlVariants.dateLtEqDiff("current_timestamp", "expires") + " and "
+        + sqlVariants.dateLtEqDiff(sqlVariants.currentTimePlusSeconds(-leaseSeconds), "active") + " order by id asc",
+        Integer.class);
+    int index = liveExecutorIds.indexOf(getExecutorId());
+    List<Integer> shards = new ArrayList<>();
+    if (index >= 0 && liveExecutorIds.size() > 1) {
+      for (int shard = index; shard < shardCount; shard += liveExecutorIds.size()) {
+        shards.add(shard);
+      }
+      if (shards.isEmpty()) {
+        // more live executors than shards, share a shard with another executor
+        shards.add(index % shardCount);
+      }
+    }
+    String condition = shards.isEmpty() ? "" : " and " + sqlVariants.mod("id", shardCount) + " in (" + join(shards, ",") + ")";
+    if (!condition.equals(shardCondition)) {
+      logger.info("Polling shards {} of {} shards with {} live executors in executor group {}.", shards.isEmpty() ? "(all)" : shards,
+          shardCount, liveExecutorIds.size(), executorGroup);
+      shardCondition = condition;
+    }
+  }
+
   public String getExecutorGroup() {
     return executorGroup;
   }
@@ -88,6 +124,10 @@ public class ExecutorDao {
     return executorGroupCondition;
   }
 
+  public String getShardCondition() {
+    return shardCondition;
+  }
+
   public synchronized int getExecutorId() {
     if (executorId == -1) {
       int hostNameMaxLength = hostMaxLength == -1
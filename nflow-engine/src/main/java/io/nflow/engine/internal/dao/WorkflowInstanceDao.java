@@ -11,9 +11,15 @@ import static io.nflow.engine.workflow.instance.WorkflowInstanceAction.WorkflowA
 import static java.lang.Math.min;
 import static java.util.Collections.emptyList;
 import static java.util.Collections.emptyMap;
+import static java.util.Collections.emptySet;
+import static java.util.Collections.nCopies;
+import static java.util.Collections.singletonList;
 import static java.util.Collections.sort;
 import static java.util.Optional.ofNullable;
+import static java.util.function.Function.identity;
 import static java.util.stream.Collectors.toList;
+import static java.util.stream.Collectors.toMap;
+import static java.util.stream.Collectors.toSet;
 import static java.util.stream.Stream.empty;
 import static org.apache.commons.lang3.StringUtils.abbreviate;
 import static org.apache.commons.lang3.StringUtils.join;
@@ -21,6 +27,8 @@ import static org.apache.commons.lang3.StringUtils.length;
 import static org.joda.time.DateTime.now;
 import static org.slf4j.LoggerFactory.getLogger;
 import static org.springframework.transaction.annotation.Propagation.MANDATORY;
+import static org.springframework.transaction.support.TransactionSynchronizationManager.isSynchronizationActive;
+import static org.springframework.transaction.support.TransactionSynchronizationManager.registerSynchronization;
 import static org.springframework.util.CollectionUtils.isEmpty;
 import static org.springframework.util.StringUtils.collectionToDelimitedString;
 
@@ -33,8 +41,11 @@ import java.sql.Timestamp;
 import java.sql.Types;
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashMap;
 import java.util.Iterator;
 import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.Map;
 import java.util.Map.Entry;
@@ -49,6 +60,7 @@ import javax.inject.Inject;
 import org.joda.time.DateTime;
 import org.slf4j.Logger;
 import org.springframework.core.env.Environment;
+import org.springframework.dao.DataIntegrityViolationException;
 import org.springframework.dao.DuplicateKeyException;
 import org.springframework.jdbc.core.JdbcTemplate;
 import org.springframework.jdbc.core.PreparedStatementCreator;
@@ -64,12 +76,12 @@ import org.springframework.stereotype.Component;
 import org.springframework.transaction.TransactionStatus;
 import org.springframework.transaction.annotation.Transactional;
 import org.springframework.transaction.support.TransactionCallbackWithoutResult;
+import org.springframework.transaction.support.TransactionSynchronizationAdapter;
 import org.springframework.transaction.support.TransactionTemplate;
 import org.springframework.util.Assert;
 
 import edu.umd.cs.findbugs.annotations.SuppressFBWarnings;
 import io.nflow.engine.config.NFlow;
-import io.nflow.engine.internal.executor.InstanceInfo;
 import io.nflow.engine.internal.executor.WorkflowInstanceExecutor;
 import io.nflow.engine.internal.storage.db.SQLVariants;
 import io.nflow.engine.model.ModelObject;
@@ -91,6 +103,8 @@ public class WorkflowInstanceDao {
 
   private static final Logger logger = getLogger(WorkflowInstanceDao.class);
   static final Map<Long, Map<String, String>> EMPTY_ACTION_STATE_MAP = emptyMap();
+  private static final int RECOVERY_BATCH_SIZE = 1000;
+  private static final int INSERT_BATCH_SIZE = 1000;
 
   private final ConcurrentMap<Long, String> workflowTypeByWorkflowIdCache = new ConcurrentHashMap<>();
 
@@ -106,10 +120,13 @@ public class WorkflowInstanceDao {
   private final long workflowInstanceQueryMaxActions;
   private final long workflowInstanceQueryMaxActionsDefault;
   private final int workflowInstanceTypeCacheSize;
+  private final boolean claimCreatedInstances;
   private boolean disableBatchUpdates;
   int instanceStateTextLength;
   int actionStateTextLength;
   int stateVariableValueMaxLength;
+  boolean lazyStateVariables;
+  boolean currentStateVariables;
 
   @Inject
   public WorkflowInstanceDao(SQLVariants sqlVariants, @NFlow JdbcTemplate nflowJdbcTemplate,
@@ -136,10 +153,15 @@ public class WorkflowInstanceDao {
       logger.info("nFlow DB batch updates are disabled (system property nflow.db.disable_batch_updates=true)");
     }
     workflowInstanceTypeCacheSize = env.getRequiredProperty("nflow.db.workflowInstanceType.cacheSize", Integer.class);
+    claimCreatedInstances = env.getRequiredProperty("nflow.executor.claimCreatedInstances", Boolean.class);
     // In one deployment, FirstColumnLengthExtractor returned 0 column length (H2), so allow explicit length setting.
     instanceStateTextLength = env.getProperty("nflow.workflow.instance.state.text.length", Integer.class, -1);
     actionStateTextLength = env.getProperty("nflow.workflow.action.state.text.length", Integer.class, -1);
     stateVariableValueMaxLength = env.getProperty("nflow.workflow.state.variable.value.length", Integer.class, -1);
+    lazyStateVariables = env.getRequiredProperty("nflow.executor.stateVariables.lazy", Boolean.class);
+    // when enabled, current values of state variables are also kept in nflow_workflow_state_current, so that they can be read
+    // without grouping the whole state variable history of the instance
+    currentStateVariables = env.getRequiredProperty("nflow.db.currentStateVariables.enabled", Boolean.class);
   }
 
   private int getInstanceStateTextLength() {
@@ -171,12 +193,109 @@ public class WorkflowInstanceDao {
     } else {
       id = insertWorkflowInstanceWithTransaction(instance);
     }
-    if (instance.nextActivation != null && instance.nextActivation.isBeforeNow()) {
-      workflowInstanceExecutor.wakeUpDispatcherIfNeeded();
+    if (id != -1 && isDue(instance)) {
+      wakeUpDispatcherAfterCommit(singletonList(id));
     }
     return id;
   }
 
+  private static boolean isDue(WorkflowInstance instance) {
+    return instance.nextActivation != null && !instance.nextActivation.isAfterNow();
+  }
+
+  // inserts the instances with one batch per table for each chunk of instances and returns the ids in the same order as the
+  // instances, or -1 for instances that already exist
+  public List<Long> insertWorkflowInstances(List<WorkflowInstance> instances) {
+    List<Long> ids = new ArrayList<>(instances.size());
+    for (int start = 0; start < instances.size(); start += INSERT_BATCH_SIZE) {
+      List<WorkflowInstance> chunk = instances.subList(start, min(start + INSERT_BATCH_SIZE, instances.size()));
+      List<Long> chunkIds;
+      try {
+        chunkIds = transaction.execute(status -> insertWorkflowInstanceBatch(chunk));
+      } catch (DataIntegrityViolationException e) {
+        // some instance already exists, insert one by one to find out which
+        logger.debug("Failed to insert workflow instances in batch, inserting one by one", e);
+        chunk.forEach(instance -> ids.add(insertWorkflowInstance(instance)));
+        continue;
+      }
+      ids.addAll(chunkIds);
+      List<Long> dueIds = new ArrayList<>();
+      for (int i = 0; i < chunk.size(); i++) {
+        if (isDue(chunk.get(i))) {
+          dueIds.add(chunkIds.get(i));
+        }
+      }
+      if (!dueIds.isEmpty()) {
+        wakeUpDispatcherAfterCommit(dueIds);
+      }
+    }
+    return ids;
+  }
+
+  private List<Long> insertWorkflowInstanceBatch(List<WorkflowInstance> instances) {
+    String executorGroup = executorInfo.getExecutorGroup();
+    List<Object[]> instanceArgs = instances.stream()
+        .map(instance -> new Object[] { instance.type, instance.priority, instance.rootWorkflowId, instance.parentWorkflowId,
+            instance.parentActionId, instance.businessKey, instance.externalId, executorGroup, instance.status.name(),
+            instance.state, abbreviate(instance.stateText, getInstanceStateTextLength()),
+            sqlVariants.toTimestampObject(instance.nextActivation), instance.signal.orElse(null) })
+        .collect(toList());
+    if (useBatchUpdate()) {
+      for (int updateStatus : jdbc.batchUpdate(insertWorkflowInstanceSql(), instanceArgs)) {
+        if (updateStatus == Statement.EXECUTE_FAILED) {
+          throw new IllegalStateException("Failed to insert workflow instances");
+        }
+      }
+    } else {
+      instanceArgs.forEach(args -> jdbc.update(insertWorkflowInstanceSql(), args));
+    }
+    // the generated ids are read with the unique key instead of the generated keys of the batch, which not all drivers return
+    Map<String, Long> idsByKey = new HashMap<>();
+    MapSqlParameterSource params = new MapSqlParameterSource("executorGroup", executorGroup)
+        .addValue("types", instances.stream().map(instance -> instance.type).collect(toSet()))
+        .addValue("externalIds", instances.stream().map(instance -> instance.externalId).collect(toSet()));
+    namedJdbc.query("select id, type, external_id from nflow_workflow where executor_group = :executorGroup and type in (:types) "
+        + "and external_id in (:externalIds)", params,
+        (RowCallbackHandler) rs -> idsByKey.put(rs.getString("type") + "\n" + rs.getString("external_id"), rs.getLong("id")));
+    List<Long> ids = new ArrayList<>(instances.size());
+    List<Object[]> variableArgs = new ArrayList<>();
+    for (WorkflowInstance instance : instances) {
+      Long id = idsByKey.get(instance.type + "\n" + instance.externalId);
+      if (id == null) {
+        throw new IllegalStateException("Failed to read the id of inserted workflow instance " + instance.externalId);
+      }
+      ids.add(id);
+      instance.stateVariables.forEach((key, value) -> variableArgs.add(new Object[] { id, 0, key, value }));
+    }
+    insertStateVariables(variableArgs);
+    return ids;
+  }
+
+  private void wakeUpDispatcherAfterCommit(Collection<Long> createdInstanceIds) {
+    Runnable wakeUp = () -> {
+      if (claimCreatedInstances) {
+        createdInstanceIds.forEach(workflowInstanceExecutor::addCreatedInstance);
+      }
+      workflowInstanceExecutor.notifyWorkAvailable();
+    };
+    if (isSynchronizationActive()) {
+      registerSynchronization(new TransactionSynchronizationAdapter() {
+        @Override
+        public void beforeCommit(boolean readOnly) {
+          workflowInstanceExecutor.notifyWorkAvailableInTransaction();
+        }
+
+        @Override
+        public void afterCommit() {
+          wakeUp.run();
+        }
+      });
+    } else {
+      workflowInstanceExecutor.notifyWorkAvailableInTransaction();
+      wakeUp.run();
+    }
+  }
+
   private long insertWorkflowInstanceWithCte(WorkflowInstance instance) {
     try {
       StringBuilder sqlb = new StringBuilder(256);
@@ -190,7 +309,7 @@ public class WorkflowInstanceDao {
       Object[] args = Arrays.copyOf(instanceValues, pos + instance.stateVariables.size() * 2);
       for (Entry<String, String> variable : instance.stateVariables.entrySet()) {
         sqlb.append(", ins").append(pos).append(" as (").append(insertWorkflowInstanceStateSql())
-            .append(" select wf.id,0,?,? from wf)");
+            .append(" select wf.id,0,?,? from wf").append(currentStateVariablesCte(pos));
         args[pos++] = variable.getKey();
         args[pos++] = variable.getValue();
       }
@@ -216,6 +335,33 @@ public class WorkflowInstanceDao {
     return "insert into nflow_workflow_state(workflow_id, action_id, state_key, state_value)";
   }
 
+  // ends the CTE that inserts a state variable and adds a CTE that copies the variable to the current state variables
+  private String currentStateVariablesCte(int pos) {
+    if (!currentStateVariables) {
+      return ")";
+    }
+    return " returning workflow_id, state_key, state_value), cur" + pos
+        + " as (insert into nflow_workflow_state_current(workflow_id, state_key, state_value)"
+        + " select workflow_id, state_key, state_value from ins" + pos
+        + " on conflict (workflow_id, state_key) do update set state_value = excluded.state_value)";
+  }
+
+  private void upsertCurrentStateVariables(List<Object[]> variableArgs) {
+    if (!currentStateVariables || variableArgs.isEmpty()) {
+      return;
+    }
+    String sql = sqlVariants.upsertCurrentStateVariable();
+    if (useBatchUpdate()) {
+      for (int updateStatus : jdbc.batchUpdate(sql, variableArgs)) {
+        if (updateStatus == Statement.EXECUTE_FAILED) {
+          throw new IllegalStateException("Failed to update current state variables");
+        }
+      }
+    } else {
+      variableArgs.forEach(args -> jdbc.update(sql, args));
+    }
+  }
+
   @SuppressFBWarnings(value = { "OBL_UNSATISFIED_OBLIGATION_EXCEPTION_EDGE",
       "SQL_PREPARED_STATEMENT_GENERATED_FROM_NONCONSTANT_STRING" }, justification = "findbugs does not trust jdbctemplate, sql string is practically constant")
   private long insertWorkflowInstanceWithTransaction(final WorkflowInstance instance) {
@@ -263,6 +409,10 @@ public class WorkflowInstanceDao {
     } else {
       insertVariablesWithMultipleUpdates(id, actionId, changedStateVariables);
     }
+    if (currentStateVariables) {
+      upsertCurrentStateVariables(changedStateVariables.entrySet().stream()
+          .map(variable -> new Object[] { id, variable.getKey(), variable.getValue() }).collect(toList()));
+    }
   }
 
   private void insertVariablesWithMultipleUpdates(final long id, final long actionId, Map<String, String> changedStateVariables) {
@@ -331,15 +481,76 @@ public class WorkflowInstanceDao {
     } else {
       updateWorkflowInstance(instance);
     }
+    workflowInstanceExecutor.scheduleWakeUp(instance.nextActivation);
   }
 
   public int updateWorkflowInstance(WorkflowInstance instance) {
+    return jdbc.update(updateWorkflowInstanceSql(), updateWorkflowInstanceArgs(instance));
+  }
+
+  private Object[] updateWorkflowInstanceArgs(WorkflowInstance instance) {
     // using sqlVariants.nextActivationUpdate() requires that nextActivation is used 3 times
     Object nextActivation = sqlVariants.toTimestampObject(instance.nextActivation);
-    return jdbc.update(updateWorkflowInstanceSql(), instance.status.name(), instance.state,
-        abbreviate(instance.stateText, getInstanceStateTextLength()), nextActivation, nextActivation, nextActivation,
-        instance.status == executing ? executorInfo.getExecutorId() : null, instance.retries, toTimestamp(instance.started),
-        instance.id);
+    return new Object[] { instance.status.name(), instance.state, abbreviate(instance.stateText, getInstanceStateTextLength()),
+        nextActivation, nextActivation, nextActivation, instance.status == executing ? executorInfo.getExecutorId() : null,
+        instance.retries, toTimestamp(instance.started), instance.id };
+  }
+
+  public void updateWorkflowInstancesAfterExecution(List<WorkflowInstance> instances, List<WorkflowInstanceAction> actions) {
+    // actions are in the same order as instances, null action means that no action is created for the instance
+    Assert.isTrue(instances.size() == actions.size(), "instances and actions must have the same size");
+    transaction.execute(new TransactionCallbackWithoutResult() {
+      @Override
+      protected void doInTransactionWithoutResult(TransactionStatus status) {
+        List<Object[]> instanceArgs = instances.stream().map(WorkflowInstanceDao.this::updateWorkflowInstanceArgs).collect(toList());
+        int[] updateCounts;
+        if (useBatchUpdate()) {
+          updateCounts = jdbc.batchUpdate(updateWorkflowInstanceSql(), instanceArgs);
+        } else {
+          updateCounts = instanceArgs.stream().mapToInt(args -> jdbc.update(updateWorkflowInstanceSql(), args)).toArray();
+        }
+        List<WorkflowInstance> updatedInstances = new ArrayList<>(instances.size());
+        List<WorkflowInstanceAction> updatedActions = new ArrayList<>(instances.size());
+        for (int i = 0; i < instances.size(); i++) {
+          if (updateCounts[i] == 0) {
+            // the instance is no longer executed by this executor, for example after recovery by another executor
+            logger.warn("Workflow instance {} was not updated, skipping its action and state variables", instances.get(i).id);
+          } else if (actions.get(i) != null) {
+            updatedInstances.add(instances.get(i));
+            updatedActions.add(actions.get(i));
+          }
+        }
+        List<Long> actionIds = insertWorkflowInstanceActions(updatedActions);
+        List<Object[]> variableArgs = new ArrayList<>();
+        for (int i = 0; i < updatedActions.size(); i++) {
+          long workflowId = updatedActions.get(i).workflowInstanceId;
+          long actionId = actionIds.get(i);
+          updatedInstances.get(i).getChangedStateVariables().forEach(
+              (key, value) -> variableArgs.add(new Object[] { workflowId, actionId, key, value }));
+        }
+        insertStateVariables(variableArgs);
+      }
+    });
+    instances.forEach(instance -> workflowInstanceExecutor.scheduleWakeUp(instance.nextActivation));
+  }
+
+  // each row of arguments contains workflow id, action id, state key and state value
+  private void insertStateVariables(List<Object[]> variableArgs) {
+    if (variableArgs.isEmpty()) {
+      return;
+    }
+    String sql = insertWorkflowInstanceStateSql() + " values (?,?,?,?)";
+    if (useBatchUpdate()) {
+      for (int updateStatus : jdbc.batchUpdate(sql, variableArgs)) {
+        if (updateStatus == Statement.EXECUTE_FAILED) {
+          throw new IllegalStateException("Failed to insert state variables");
+        }
+      }
+    } else {
+      variableArgs.forEach(args -> jdbc.update(sql, args));
+    }
+    upsertCurrentStateVariables(variableArgs.stream().map(args -> new Object[] { args[0], args[2], args[3] })
+        .collect(toList()));
   }
 
   private void updateWorkflowInstanceWithTransaction(final WorkflowInstance instance, final WorkflowInstanceAction action,
@@ -365,45 +576,70 @@ public class WorkflowInstanceDao {
   }
 
   public void recoverWorkflowInstancesFromDeadNodes() {
-    WorkflowInstanceAction.Builder builder = new WorkflowInstanceAction.Builder().setExecutionStart(now()).setExecutionEnd(now())
-        .setType(recovery).setStateText("Recovered");
-    for (InstanceInfo instance : getRecoverableInstances()) {
-      WorkflowInstanceAction action = builder.setState(instance.state).setWorkflowInstanceId(instance.id).build();
-      recoverWorkflowInstance(instance.id, action);
+    while (recoverWorkflowInstancesFromDeadNodes(RECOVERY_BATCH_SIZE) > 0) {
+      // recover until all instances of dead executors are recovered
     }
   }
 
-  private List<InstanceInfo> getRecoverableInstances() {
-    String sql = "select id, state from nflow_workflow where executor_id in (select id from nflow_executor where "
-        + executorInfo.getExecutorGroupCondition() + " and id <> " + executorInfo.getExecutorId() + " and "
-        + sqlVariants.dateLtEqDiff("expires", "current_timestamp") + ")";
-    return jdbc.query(sql, new RowMapper<InstanceInfo>() {
-      @Override
-      public InstanceInfo mapRow(ResultSet rs, int rowNum) throws SQLException {
-        InstanceInfo instance = new InstanceInfo();
-        instance.id = rs.getLong("id");
-        instance.state = rs.getString("state");
-        return instance;
+  public int recoverWorkflowInstancesFromDeadNodes(int batchSize) {
+    List<Long> instanceIds = jdbc.queryForList(
+        sqlVariants.limit("select id from nflow_workflow where " + deadExecutorCondition(), batchSize), Long.class);
+    if (instanceIds.isEmpty()) {
+      return 0;
+    }
+    Integer recovered = transaction.execute(status -> {
+      List<Long> recoveredIds = recoverWorkflowInstances(instanceIds);
+      if (recoveredIds == null) {
+        status.setRollbackOnly();
+        return null;
       }
+      insertRecoveryActions(recoveredIds);
+      return recoveredIds.size();
     });
+    if (recovered == null) {
+      // another executor recovered some of the instances at the same time
+      recovered = (int) instanceIds.stream().filter(this::recoverWorkflowInstance).count();
+    }
+    return recovered;
   }
 
-  private void recoverWorkflowInstance(final long instanceId, final WorkflowInstanceAction action) {
-    transaction.execute(new TransactionCallbackWithoutResult() {
-      @Override
-      protected void doInTransactionWithoutResult(TransactionStatus status) {
-        int executorId = executorInfo.getExecutorId();
-        int updated = jdbc.update("update nflow_workflow set executor_id = null, status = "
-            + sqlVariants.workflowStatus(inProgress) + " where id = ? and executor_id in (select id from nflow_executor where "
-            + executorInfo.getExecutorGroupCondition() + " and id <> " + executorId + " and "
-            + sqlVariants.dateLtEqDiff("expires", "current_timestamp") + ")", instanceId);
-        if (updated > 0) {
-          insertWorkflowInstanceAction(action);
-        }
+  private String deadExecutorCondition() {
+    return "executor_id in (select id from nflow_executor where " + executorInfo.getExecutorGroupCondition() + " and id <> "
+        + executorInfo.getExecutorId() + " and " + sqlVariants.dateLtEqDiff("expires", "current_timestamp") + ")";
+  }
+
+  private String recoverWorkflowInstancesSql() {
+    return "update nflow_workflow set executor_id = null, status = " + sqlVariants.workflowStatus(inProgress) + " where ";
+  }
+
+  private List<Long> recoverWorkflowInstances(List<Long> instanceIds) {
+    String sql = recoverWorkflowInstancesSql() + "id in (" + join(instanceIds, ",") + ") and " + deadExecutorCondition();
+    if (sqlVariants.hasUpdateReturning()) {
+      return jdbc.queryForList(sql + " returning id", Long.class);
+    }
+    return jdbc.update(sql) == instanceIds.size() ? instanceIds : null;
+  }
+
+  private boolean recoverWorkflowInstance(long instanceId) {
+    return transaction.execute(status -> {
+      if (jdbc.update(recoverWorkflowInstancesSql() + "id = ? and " + deadExecutorCondition(), instanceId) == 0) {
+        return false;
       }
+      insertRecoveryActions(singletonList(instanceId));
+      return true;
     });
   }
 
+  private void insertRecoveryActions(List<Long> instanceIds) {
+    if (instanceIds.isEmpty()) {
+      return;
+    }
+    Object executionTime = sqlVariants.toTimestampObject(now());
+    jdbc.update(insertWorkflowActionSql() + " select id, " + executorInfo.getExecutorId() + ", " + sqlVariants.actionType()
+        + ", state, ?, 0, ?, ? from nflow_workflow where id in (" + join(instanceIds, ",") + ")", recovery.name(), "Recovered",
+        executionTime, executionTime);
+  }
+
   private void updateWorkflowInstanceWithCTE(WorkflowInstance instance, final WorkflowInstanceAction action,
       Map<String, String> changedStateVariables) {
     int executorId = executorInfo.getExecutorId();
@@ -423,7 +659,7 @@ public class WorkflowInstanceDao {
     Object[] args = Arrays.copyOf(fixedValues, pos + changedStateVariables.size() * 2);
     for (Entry<String, String> variable : changedStateVariables.entrySet()) {
       sqlb.append(", ins").append(pos).append(" as (").append(insertWorkflowInstanceStateSql())
-          .append(" select wf.id,act.id,?,? from wf,act)");
+          .append(" select wf.id,act.id,?,? from wf,act").append(currentStateVariablesCte(pos));
       args[pos++] = variable.getKey();
       args[pos++] = variable.getValue();
     }
@@ -471,7 +707,11 @@ public class WorkflowInstanceDao {
     }
     String sql = "update nflow_workflow set " + join(vars, ", ") + " where id = ? and executor_id is null";
     args.add(instance.id);
-    return jdbc.update(sql, args.toArray()) == 1;
+    boolean updated = jdbc.update(sql, args.toArray()) == 1;
+    if (updated && instance.nextActivation != null && !instance.nextActivation.isAfterNow()) {
+      wakeUpDispatcherAfterCommit(emptyList());
+    }
+    return updated;
   }
 
   public boolean wakeUpWorkflowExternally(long workflowInstanceId, List<String> expectedStates) {
@@ -480,7 +720,11 @@ public class WorkflowInstanceDao {
         .append(" then next_activation else current_timestamp end else next_activation end), ")
         .append("external_next_activation = current_timestamp where ").append(executorInfo.getExecutorGroupCondition())
         .append(" and id = ? and next_activation is not null");
-    return addExpectedStatesToQueryAndUpdate(sql, workflowInstanceId, expectedStates);
+    boolean updated = addExpectedStatesToQueryAndUpdate(sql, workflowInstanceId, expectedStates);
+    if (updated) {
+      wakeUpDispatcherAfterCommit(emptyList());
+    }
+    return updated;
   }
 
   public boolean wakeupWorkflowInstanceIfNotExecuting(long workflowInstanceId, List<String> expectedStates) {
@@ -488,7 +732,11 @@ public class WorkflowInstanceDao {
         .append(" where id = ? and executor_id is null and status in (").append(sqlVariants.workflowStatus(inProgress))
         .append(", ").append(sqlVariants.workflowStatus(created))
         .append(") and (next_activation is null or next_activation > current_timestamp)");
-    return addExpectedStatesToQueryAndUpdate(sql, workflowInstanceId, expectedStates);
+    boolean updated = addExpectedStatesToQueryAndUpdate(sql, workflowInstanceId, expectedStates);
+    if (updated) {
+      wakeUpDispatcherAfterCommit(emptyList());
+    }
+    return updated;
   }
 
   private boolean addExpectedStatesToQueryAndUpdate(StringBuilder sql, long workflowInstanceId, List<String> expectedStates) {
@@ -521,23 +769,229 @@ public class WorkflowInstanceDao {
   }
 
   private void fillState(final WorkflowInstance instance) {
-    jdbc.query("select outside.state_key, outside.state_value from nflow_workflow_state outside inner join "
-        + "(select workflow_id, max(action_id) action_id, state_key from nflow_workflow_state where workflow_id = ? group by workflow_id, state_key) inside "
-        + "on outside.workflow_id = inside.workflow_id and outside.action_id = inside.action_id and outside.state_key = inside.state_key",
-        new RowCallbackHandler() {
-          @Override
-          public void processRow(ResultSet rs) throws SQLException {
-            instance.stateVariables.put(rs.getString(1), rs.getString(2));
-          }
-        }, instance.id);
+    String sql;
+    if (currentStateVariables) {
+      sql = "select state_key, state_value from nflow_workflow_state_current where workflow_id = ?";
+    } else {
+      sql = "select outside.state_key, outside.state_value from nflow_workflow_state outside inner join "
+          + "(select workflow_id, max(action_id) action_id, state_key from nflow_workflow_state where workflow_id = ? group by workflow_id, state_key) inside "
+          + "on outside.workflow_id = inside.workflow_id and outside.action_id = inside.action_id and outside.state_key = inside.state_key";
+    }
+    jdbc.query(sql, new RowCallbackHandler() {
+      @Override
+      public void processRow(ResultSet rs) throws SQLException {
+        instance.stateVariables.put(rs.getString(1), rs.getString(2));
+      }
+    }, instance.id);
     instance.originalStateVariables.putAll(instance.stateVariables);
   }
 
+  /**
+   * Fill the current state variables table from the state variable history, if current state variables are enabled and the
+   * table is empty. The table is not maintained while current state variables are disabled, so it must be emptied before
+   * enabling them again.
+   */
+  public void fillCurrentStateVariables() {
+    if (!currentStateVariables
+        || !jdbc.queryForList(sqlVariants.limit("select workflow_id from nflow_workflow_state_current", 1), Long.class).isEmpty()) {
+      return;
+    }
+    logger.info("Filling current state variables from the state variable history.");
+    try {
+      int filled = jdbc.update("insert into nflow_workflow_state_current(workflow_id, state_key, state_value) "
+          + "select h.workflow_id, h.state_key, h.state_value from nflow_workflow_state h inner join "
+          + "(select workflow_id, max(action_id) action_id, state_key from nflow_workflow_state group by workflow_id, state_key) l "
+          + "on h.workflow_id = l.workflow_id and h.action_id = l.action_id and h.state_key = l.state_key "
+          + "where not exists (select 1 from nflow_workflow_state_current c "
+          + "where c.workflow_id = h.workflow_id and c.state_key = h.state_key)");
+      logger.info("Filled {} current state variables.", filled);
+    } catch (DataIntegrityViolationException e) {
+      // another executor filled the table at the same time
+      logger.info("Current state variables were filled by another executor.");
+    }
+  }
+
+  public Map<String, String> getStateVariables(long workflowInstanceId, Collection<String> keys) {
+    Map<String, String> variables = new LinkedHashMap<>();
+    if (keys.isEmpty()) {
+      return variables;
+    }
+    Object[] args = new Object[1 + keys.size()];
+    args[0] = workflowInstanceId;
+    StringBuilder keyParams = new StringBuilder();
+    int i = 1;
+    for (String key : keys) {
+      keyParams.append(i == 1 ? "?" : ",?");
+      args[i++] = key;
+    }
+    String sql;
+    if (currentStateVariables) {
+      sql = "select state_key, state_value from nflow_workflow_state_current where workflow_id = ? and state_key in ("
+          + keyParams + ")";
+    } else {
+      sql = "select outside.state_key, outside.state_value from nflow_workflow_state outside inner join "
+          + "(select workflow_id, max(action_id) action_id, state_key from nflow_workflow_state where workflow_id = ? and state_key in ("
+          + keyParams + ") group by workflow_id, state_key) inside "
+          + "on outside.workflow_id = inside.workflow_id and outside.action_id = inside.action_id and outside.state_key = inside.state_key";
+    }
+    jdbc.query(sql, rs -> {
+      variables.put(rs.getString(1), rs.getString(2));
+    }, args);
+    return variables;
+  }
+
+  public List<WorkflowInstance> pollNextWorkflowInstances(int batchSize, boolean includeChildWorkflowIds) {
+    return pollNextWorkflowInstances(batchSize, includeChildWorkflowIds, emptyMap());
+  }
+
+  public List<WorkflowInstance> pollNextWorkflowInstances(int batchSize, boolean includeChildWorkflowIds,
+      Map<String, Integer> typeCapacities) {
+    return pollNextWorkflowInstances(batchSize, includeChildWorkflowIds, typeCapacities, emptySet(), false);
+  }
+
+  public List<WorkflowInstance> pollNextWorkflowInstancesOfTypes(int batchSize, boolean includeChildWorkflowIds,
+      Map<String, Integer> typeCapacities, Collection<String> types) {
+    Map<String, Integer> capacities = new LinkedHashMap<>(typeCapacities);
+    capacities.keySet().retainAll(types);
+    Set<String> otherTypes = new LinkedHashSet<>(types);
+    otherTypes.removeAll(capacities.keySet());
+    return pollNextWorkflowInstances(batchSize, includeChildWorkflowIds, capacities, otherTypes, true);
+  }
+
+  public List<WorkflowInstance> pollNextWorkflowInstancesExcludingTypes(int batchSize, boolean includeChildWorkflowIds,
+      Map<String, Integer> typeCapacities, Collection<String> excludedTypes) {
+    Map<String, Integer> capacities = new LinkedHashMap<>(typeCapacities);
+    capacities.keySet().removeAll(excludedTypes);
+    return pollNextWorkflowInstances(batchSize, includeChildWorkflowIds, capacities, excludedTypes, false);
+  }
+
+  private List<WorkflowInstance> pollNextWorkflowInstances(int batchSize, boolean includeChildWorkflowIds,
+      Map<String, Integer> typeCapacities, Collection<String> otherTypes, boolean onlyOtherTypes) {
+    if (!sqlVariants.hasUpdateReturning()) {
+      return getWorkflowInstancesForExecution(pollNextWorkflowInstanceIds(batchSize, typeCapacities, otherTypes, onlyOtherTypes),
+          includeChildWorkflowIds);
+    }
+    List<WorkflowInstance> instances = pollWithTypeCapacities(batchSize, typeCapacities, otherTypes, onlyOtherTypes,
+        (limit, typeCondition, typeArgs) -> {
+          String sql = updateInstanceForExecutionQuery() + " where id in (" + selectNextWorkflowInstanceIds(limit, typeCondition)
+              + ") and executor_id is null returning *";
+          return jdbc.query(sql, new WorkflowInstanceRowMapper(), typeArgs).stream().map(WorkflowInstance.Builder::build)
+              .collect(toList());
+        });
+    fillExecutionData(instances, includeChildWorkflowIds);
+    return instances;
+  }
+
+  public List<WorkflowInstance> getWorkflowInstancesForExecution(Collection<Long> instanceIds, boolean includeChildWorkflowIds) {
+    if (instanceIds.isEmpty()) {
+      return emptyList();
+    }
+    List<WorkflowInstance> instances = jdbc
+        .query("select * from nflow_workflow where id in (" + join(instanceIds, ",") + ")", new WorkflowInstanceRowMapper())
+        .stream().map(WorkflowInstance.Builder::build).collect(toList());
+    fillExecutionData(instances, includeChildWorkflowIds);
+    return instances;
+  }
+
+  private void fillExecutionData(List<WorkflowInstance> instances, boolean includeChildWorkflowIds) {
+    if (instances.isEmpty()) {
+      return;
+    }
+    Map<Long, WorkflowInstance> instancesById = instances.stream().collect(toMap(instance -> instance.id, identity()));
+    String ids = join(instancesById.keySet(), ",");
+    if (!lazyStateVariables) {
+      fillCurrentStateVariables(instances, instancesById, ids);
+    }
+    if (includeChildWorkflowIds) {
+      jdbc.query("select parent_workflow_id, parent_action_id, id from nflow_workflow where parent_workflow_id in (" + ids + ")",
+          rs -> {
+            instancesById.get(rs.getLong(1)).childWorkflows.computeIfAbsent(rs.getLong(2), k -> new ArrayList<>())
+                .add(rs.getLong(3));
+          });
+    }
+  }
+
+  private void fillCurrentStateVariables(List<WorkflowInstance> instances, Map<Long, WorkflowInstance> instancesById,
+      String ids) {
+    String sql;
+    if (currentStateVariables) {
+      sql = "select workflow_id, state_key, state_value from nflow_workflow_state_current where workflow_id in (" + ids + ")";
+    } else {
+      sql = "select outside.workflow_id, outside.state_key, outside.state_value from nflow_workflow_state outside inner join "
+          + "(select workflow_id, max(action_id) action_id, state_key from nflow_workflow_state where workflow_id in (" + ids
+          + ") group by workflow_id, state_key) inside "
+          + "on outside.workflow_id = inside.workflow_id and outside.action_id = inside.action_id and outside.state_key = inside.state_key";
+    }
+    jdbc.query(sql, rs -> {
+      instancesById.get(rs.getLong(1)).stateVariables.put(rs.getString(2), rs.getString(3));
+    });
+    for (WorkflowInstance instance : instances) {
+      instance.originalStateVariables.putAll(instance.stateVariables);
+    }
+  }
+
   public List<Long> pollNextWorkflowInstanceIds(final int batchSize) {
-    if (sqlVariants.hasUpdateReturning()) {
-      return pollNextWorkflowInstanceIdsWithUpdateReturning(batchSize);
+    return pollNextWorkflowInstanceIds(batchSize, emptyMap());
+  }
+
+  public List<Long> pollNextWorkflowInstanceIds(final int batchSize, Map<String, Integer> typeCapacities) {
+    return pollNextWorkflowInstanceIds(batchSize, typeCapacities, emptySet(), false);
+  }
+
+  private List<Long> pollNextWorkflowInstanceIds(int batchSize, Map<String, Integer> typeCapacities,
+      Collection<String> otherTypes, boolean onlyOtherTypes) {
+    return pollWithTypeCapacities(batchSize, typeCapacities, otherTypes, onlyOtherTypes, (limit, typeCondition, typeArgs) -> {
+      if (sqlVariants.hasUpdateReturning()) {
+        return pollNextWorkflowInstanceIdsWithUpdateReturning(limit, typeCondition, typeArgs);
+      }
+      if (sqlVariants.hasSkipLocked()) {
+        return pollNextWorkflowInstanceIdsWithSkipLocked(limit, typeCondition, typeArgs);
+      }
+      return pollNextWorkflowInstanceIdsWithTransaction(limit, typeCondition, typeArgs);
+    });
+  }
+
+  // after the types with capacities, polls either only the other types or all types except the other types
+  private <T> List<T> pollWithTypeCapacities(int batchSize, Map<String, Integer> typeCapacities, Collection<String> otherTypes,
+      boolean onlyOtherTypes, TypedPoll<T> poll) {
+    if (typeCapacities.isEmpty() && otherTypes.isEmpty()) {
+      return onlyOtherTypes ? emptyList() : poll.poll(batchSize, "", new Object[0]);
+    }
+    List<T> polled = new ArrayList<>(batchSize);
+    RuntimeException pollException = null;
+    for (Entry<String, Integer> typeCapacity : typeCapacities.entrySet()) {
+      int limit = min(typeCapacity.getValue(), batchSize - polled.size());
+      if (limit > 0) {
+        try {
+          polled.addAll(poll.poll(limit, " and type = ?", new Object[] { typeCapacity.getKey() }));
+        } catch (PollingRaceConditionException | PollingBatchException e) {
+          pollException = e;
+        }
+      }
     }
-    return pollNextWorkflowInstanceIdsWithTransaction(batchSize);
+    int limit = batchSize - polled.size();
+    Set<String> types = new LinkedHashSet<>(otherTypes);
+    if (!onlyOtherTypes) {
+      types.addAll(typeCapacities.keySet());
+    }
+    if (limit > 0 && !types.isEmpty()) {
+      String placeholders = join(nCopies(types.size(), "?"), ",");
+      String typeCondition = onlyOtherTypes ? " and type in (" + placeholders + ")" : " and type not in (" + placeholders + ")";
+      try {
+        polled.addAll(poll.poll(limit, typeCondition, types.toArray()));
+      } catch (PollingRaceConditionException | PollingBatchException e) {
+        pollException = e;
+      }
+    }
+    // instances claimed by the other polls must be returned even if one of the polls failed
+    if (polled.isEmpty() && pollException != null) {
+      throw pollException;
+    }
+    return polled;
+  }
+
+  private interface TypedPoll<T> {
+    List<T> poll(int limit, String typeCondition, Object[] typeArgs);
   }
 
   String updateInstanceForExecutionQuery() {
@@ -546,22 +1000,96 @@ public class WorkflowInstanceDao {
   }
 
   String whereConditionForInstanceUpdate() {
-    return "where executor_id is null and status in (" + sqlVariants.workflowStatus(created) + ", "
+    return whereConditionForInstanceUpdate("");
+  }
+
+  private String whereConditionForInstanceUpdate(String typeCondition) {
+    return "where " + executableInstanceCondition() + executorInfo.getShardCondition() + typeCondition + " order by priority desc, next_activation asc";
+  }
+
+  private String executableInstanceCondition() {
+    return "executor_id is null and status in (" + sqlVariants.workflowStatus(created) + ", "
         + sqlVariants.workflowStatus(inProgress) + ") and " + sqlVariants.dateLtEqDiff("next_activation", "current_timestamp")
-        + " and " + executorInfo.getExecutorGroupCondition() + " order by priority desc, next_activation asc";
+        + " and " + executorInfo.getExecutorGroupCondition();
+  }
+
+  public List<Long> claimWorkflowInstances(Collection<Long> instanceIds) {
+    return claimWorkflowInstances(instanceIds, emptyList());
+  }
+
+  public List<Long> claimWorkflowInstances(Collection<Long> instanceIds, Collection<String> excludedTypes) {
+    if (instanceIds.isEmpty()) {
+      return emptyList();
+    }
+    String typeCondition = excludedTypes.isEmpty() ? ""
+        : " and type not in (" + join(nCopies(excludedTypes.size(), "?"), ",") + ")";
+    if (sqlVariants.hasUpdateReturning()) {
+      String sql = updateInstanceForExecutionQuery() + " where id in (" + join(instanceIds, ",") + ") and "
+          + executableInstanceCondition() + typeCondition + " returning id";
+      return jdbc.queryForList(sql, Long.class, excludedTypes.toArray());
+    }
+    String sql = updateInstanceForExecutionQuery() + " where id = ? and " + executableInstanceCondition() + typeCondition;
+    return instanceIds.stream().filter(id -> {
+      List<Object> args = new ArrayList<>(excludedTypes.size() + 1);
+      args.add(id);
+      args.addAll(excludedTypes);
+      return jdbc.update(sql, args.toArray()) == 1;
+    }).collect(toList());
+  }
+
+  public int releaseWorkflowInstances(Collection<Long> instanceIds) {
+    if (instanceIds.isEmpty()) {
+      return 0;
+    }
+    return jdbc.update("update nflow_workflow set executor_id = null, status = " + sqlVariants.workflowStatus(inProgress)
+        + " where id in (" + join(instanceIds, ",") + ") and executor_id = " + executorInfo.getExecutorId() + " and status = "
+        + sqlVariants.workflowStatus(executing));
+  }
+
+  public Map<String, Integer> getExecutingWorkflowInstanceCounts(Collection<String> types, boolean onlyThisExecutor) {
+    if (types.isEmpty()) {
+      return emptyMap();
+    }
+    String executorCondition = onlyThisExecutor ? "executor_id = " + executorInfo.getExecutorId()
+        : "executor_id is not null and " + executorInfo.getExecutorGroupCondition();
+    Map<String, Integer> counts = new LinkedHashMap<>();
+    jdbc.query("select type, count(1) from nflow_workflow where " + executorCondition + " and type in ("
+        + join(nCopies(types.size(), "?"), ",") + ") group by type", rs -> {
+          counts.put(rs.getString(1), rs.getInt(2));
+        }, types.toArray());
+    return counts;
   }
 
-  private List<Long> pollNextWorkflowInstanceIdsWithUpdateReturning(int batchSize) {
-    String sql = updateInstanceForExecutionQuery() + " where id in ("
-        + sqlVariants.limit("select id from nflow_workflow " + whereConditionForInstanceUpdate(), batchSize)
+  private List<Long> pollNextWorkflowInstanceIdsWithUpdateReturning(int batchSize, String typeCondition, Object[] typeArgs) {
+    String sql = updateInstanceForExecutionQuery() + " where id in (" + selectNextWorkflowInstanceIds(batchSize, typeCondition)
         + ") and executor_id is null returning id";
-    return jdbc.queryForList(sql, Long.class);
+    return jdbc.queryForList(sql, Long.class, typeArgs);
   }
 
-  private List<Long> pollNextWorkflowInstanceIdsWithTransaction(final int batchSize) {
-    String sql = sqlVariants.limit("select id, modified from nflow_workflow " + whereConditionForInstanceUpdate(), batchSize);
+  private String selectNextWorkflowInstanceIds(int batchSize, String typeCondition) {
+    String sql = "select id from nflow_workflow " + whereConditionForInstanceUpdate(typeCondition);
+    if (sqlVariants.hasSkipLocked()) {
+      return sqlVariants.limitForUpdateSkipLocked(sql, batchSize);
+    }
+    return sqlVariants.limit(sql, batchSize);
+  }
+
+  private List<Long> pollNextWorkflowInstanceIdsWithSkipLocked(int batchSize, String typeCondition, Object[] typeArgs) {
+    String sql = selectNextWorkflowInstanceIds(batchSize, typeCondition);
+    return transaction.execute(transactionStatus -> {
+      List<Long> ids = jdbc.queryForList(sql, Long.class, typeArgs);
+      if (!ids.isEmpty()) {
+        jdbc.update(updateInstanceForExecutionQuery() + " where id in (" + join(ids, ",") + ")");
+      }
+      return ids;
+    });
+  }
+
+  private List<Long> pollNextWorkflowInstanceIdsWithTransaction(final int batchSize, String typeCondition, Object[] typeArgs) {
+    String sql = sqlVariants.limit("select id, modified from nflow_workflow " + whereConditionForInstanceUpdate(typeCondition),
+        batchSize);
     List<OptimisticLockKey> instances = jdbc.query(sql,
-            (rs, rowNum) -> new OptimisticLockKey(rs.getLong("id"), sqlVariants.getTimestamp(rs, "modified")));
+            (rs, rowNum) -> new OptimisticLockKey(rs.getLong("id"), sqlVariants.getTimestamp(rs, "modified")), typeArgs);
     if (instances.isEmpty()) {
       return emptyList();
     }
@@ -733,6 +1261,49 @@ public class WorkflowInstanceDao {
     return actionId;
   }
 
+  // returns the ids of the inserted actions in the same order as the actions
+  private List<Long> insertWorkflowInstanceActions(List<WorkflowInstanceAction> actions) {
+    if (!sqlVariants.hasUpdateReturning()) {
+      return actions.stream().map(this::insertWorkflowInstanceAction).collect(toList());
+    }
+    List<Long> ids = new ArrayList<>(actions.size());
+    for (int start = 0; start < actions.size(); start += INSERT_BATCH_SIZE) {
+      List<WorkflowInstanceAction> chunk = actions.subList(start, min(start + INSERT_BATCH_SIZE, actions.size()));
+      ids.addAll(insertWorkflowInstanceActionsReturningIds(chunk));
+    }
+    return ids;
+  }
+
+  private List<Long> insertWorkflowInstanceActionsReturningIds(List<WorkflowInstanceAction> actions) {
+    int executorId = executorInfo.getExecutorId();
+    String row = "(?, ?, " + sqlVariants.actionType() + ", ?, ?, ?, ?, ?)";
+    List<Object> args = new ArrayList<>(actions.size() * 8);
+    for (WorkflowInstanceAction action : actions) {
+      args.addAll(Arrays.asList(action.workflowInstanceId, executorId, action.type.name(), action.state,
+          abbreviate(action.stateText, getActionStateTextLength()), action.retryNo, toTimestamp(action.executionStart),
+          toTimestamp(action.executionEnd)));
+    }
+    Map<Long, List<Long>> idsByWorkflowId = new HashMap<>();
+    jdbc.query(insertWorkflowActionSql() + " values " + join(nCopies(actions.size(), row), ", ") + " returning id, workflow_id",
+        (RowCallbackHandler) rs -> idsByWorkflowId.computeIfAbsent(rs.getLong("workflow_id"), id -> new ArrayList<>())
+            .add(rs.getLong("id")),
+        args.toArray());
+    // the ids are generated in the order of the rows, so the ids of each workflow instance are in the order of its actions
+    Map<Long, Iterator<Long>> nextIds = new HashMap<>();
+    idsByWorkflowId.forEach((workflowId, ids) -> {
+      sort(ids);
+      nextIds.put(workflowId, ids.iterator());
+    });
+    return actions.stream().map(action -> {
+      Iterator<Long> ids = nextIds.get(action.workflowInstanceId);
+      if (ids == null || !ids.hasNext()) {
+        throw new IllegalStateException(
+            "Failed to read the id of inserted action of workflow instance " + action.workflowInstanceId);
+      }
+      return ids.next();
+    }).collect(toList());
+  }
+
   public long insertWorkflowInstanceAction(final WorkflowInstanceAction action) {
     KeyHolder keyHolder = new GeneratedKeyHolder();
     jdbc.update(new PreparedStatementCreator() {
@@ -0,0 +1,48 @@
+package io.nflow.engine.internal.executor;
+
+import static java.lang.Math.max;
+import static java.lang.Math.min;
+
+public class AdaptivePollInterval {
+  private final long minIntervalMillis;
+  private final long maxIntervalMillis;
+  private volatile long intervalMillis;
+  private volatile double lastPollYield;
+
+  public AdaptivePollInterval(long minIntervalMillis, long maxIntervalMillis) {
+    this.minIntervalMillis = minIntervalMillis;
+    this.maxIntervalMillis = max(minIntervalMillis, maxIntervalMillis);
+    this.intervalMillis = minIntervalMillis;
+  }
+
+  public long afterPoll(int foundInstances, int batchSize) {
+    if (batchSize <= 0) {
+      // nothing could be polled, so polling again immediately would only spin
+      return intervalMillis;
+    }
+    lastPollYield = (double) foundInstances / batchSize;
+    if (foundInstances >= batchSize) {
+      intervalMillis = minIntervalMillis;
+      return 0;
+    }
+    if (foundInstances > 0) {
+      intervalMillis = minIntervalMillis;
+      return minIntervalMillis;
+    }
+    long waitMillis = intervalMillis;
+    intervalMillis = min(maxIntervalMillis, max(1, intervalMillis * 2));
+    return waitMillis;
+  }
+
+  public void reset() {
+    intervalMillis = minIntervalMillis;
+  }
+
+  public long getIntervalMillis() {
+    return intervalMillis;
+  }
+
+  public double getLastPollYield() {
+    return lastPollYield;
+  }
+}
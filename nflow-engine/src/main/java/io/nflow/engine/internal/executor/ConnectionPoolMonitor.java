@@ -0,0 +1,70 @@
+package io.nflow.engine.internal.executor;
+
+import static org.slf4j.LoggerFactory.getLogger;
+
+import java.sql.SQLException;
+
+import javax.inject.Inject;
+import javax.sql.DataSource;
+
+import org.slf4j.Logger;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Component;
+
+import com.zaxxer.hikari.HikariDataSource;
+import com.zaxxer.hikari.HikariPoolMXBean;
+
+import io.nflow.engine.config.NFlow;
+
+@Component
+public class ConnectionPoolMonitor {
+
+  private static final Logger logger = getLogger(ConnectionPoolMonitor.class);
+
+  private final HikariDataSource dataSource;
+
+  @Inject
+  public ConnectionPoolMonitor(@NFlow JdbcTemplate nflowJdbcTemplate) {
+    this.dataSource = findHikariDataSource(nflowJdbcTemplate.getDataSource());
+    if (dataSource == null) {
+      logger.info("nFlow data source is not a HikariCP data source, polling is not limited by available database connections.");
+    }
+  }
+
+  private static HikariDataSource findHikariDataSource(DataSource dataSource) {
+    if (dataSource instanceof HikariDataSource) {
+      return (HikariDataSource) dataSource;
+    }
+    try {
+      if (dataSource != null && dataSource.isWrapperFor(HikariDataSource.class)) {
+        return dataSource.unwrap(HikariDataSource.class);
+      }
+    } catch (SQLException e) {
+      logger.debug("Failed to unwrap data source: {}", e.getMessage());
+    }
+    return null;
+  }
+
+  public int getAvailableConnections() {
+    HikariPoolMXBean pool = dataSource == null ? null : dataSource.getHikariPoolMXBean();
+    if (pool == null) {
+      return Integer.MAX_VALUE;
+    }
+    return dataSource.getMaximumPoolSize() - pool.getActiveConnections() - pool.getThreadsAwaitingConnection();
+  }
+
+  public int getActiveConnections() {
+    HikariPoolMXBean pool = dataSource == null ? null : dataSource.getHikariPoolMXBean();
+    return pool == null ? -1 : pool.getActiveConnections();
+  }
+
+  public int getIdleConnections() {
+    HikariPoolMXBean pool = dataSource == null ? null : dataSource.getHikariPoolMXBean();
+    return pool == null ? -1 : pool.getIdleConnections();
+  }
+
+  public int getThreadsAwaitingConnection() {
+    HikariPoolMXBean pool = dataSource == null ? null : dataSource.getHikariPoolMXBean();
+    return pool == null ? -1 : pool.getThreadsAwaitingConnection();
+  }
+}
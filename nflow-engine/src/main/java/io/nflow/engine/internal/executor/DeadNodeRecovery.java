@@ -0,0 +1,88 @@
+package io.nflow.engine.internal.executor;
+
+import static java.util.concurrent.Executors.newSingleThreadExecutor;
+import static org.joda.time.DateTimeUtils.currentTimeMillis;
+import static org.slf4j.LoggerFactory.getLogger;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.slf4j.Logger;
+import org.springframework.core.env.Environment;
+import org.springframework.scheduling.concurrent.CustomizableThreadFactory;
+
+import io.nflow.engine.internal.dao.WorkflowInstanceDao;
+
+// Recovers the workflow instances of expired executors in batches in a background thread, so that recovering many instances
+// does not stop the dispatcher from polling.
+class DeadNodeRecovery {
+  private static final Logger logger = getLogger(DeadNodeRecovery.class);
+
+  private final WorkflowInstanceDao workflowInstances;
+  private final int batchSize;
+  private final ExecutorService recoveryExecutor;
+  private final AtomicBoolean recoveryRequested = new AtomicBoolean();
+  private final AtomicLong recoveredInstances = new AtomicLong();
+  private volatile int lastRecoveredInstances;
+  private volatile boolean running;
+
+  DeadNodeRecovery(WorkflowInstanceDao workflowInstances, Environment env) {
+    this.workflowInstances = workflowInstances;
+    this.batchSize = env.getRequiredProperty("nflow.executor.recovery.batchSize", Integer.class);
+    CustomizableThreadFactory threadFactory = new CustomizableThreadFactory("nflow-recovery-");
+    threadFactory.setDaemon(true);
+    recoveryExecutor = newSingleThreadExecutor(threadFactory);
+  }
+
+  public void requestRecovery() {
+    // at most one recovery is waiting while another one is running
+    if (recoveryRequested.compareAndSet(false, true)) {
+      try {
+        recoveryExecutor.execute(this::recover);
+      } catch (@SuppressWarnings("unused") RejectedExecutionException e) {
+        recoveryRequested.set(false);
+      }
+    }
+  }
+
+  public void shutdown() {
+    recoveryExecutor.shutdownNow();
+  }
+
+  public long getRecoveredInstances() {
+    return recoveredInstances.get();
+  }
+
+  public int getLastRecoveredInstances() {
+    return lastRecoveredInstances;
+  }
+
+  public boolean isRunning() {
+    return running;
+  }
+
+  void recover() {
+    recoveryRequested.set(false);
+    running = true;
+    long start = currentTimeMillis();
+    int recovered = 0;
+    try {
+      int batch;
+      do {
+        batch = workflowInstances.recoverWorkflowInstancesFromDeadNodes(batchSize);
+        recovered += batch;
+        recoveredInstances.addAndGet(batch);
+      } while (batch > 0 && !Thread.currentThread().isInterrupted());
+    } catch (Exception e) {
+      logger.error("Failed to recover workflow instances from dead executors", e);
+    } finally {
+      running = false;
+      lastRecoveredInstances = recovered;
+    }
+    if (recovered > 0) {
+      logger.info("Recovered {} workflow instances from dead executors in {} ms.", recovered, currentTimeMillis() - start);
+    }
+  }
+}
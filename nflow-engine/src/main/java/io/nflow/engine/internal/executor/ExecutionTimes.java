@@ -0,0 +1,16 @@
+package io.nflow.engine.internal.executor;
+
+// Sum of the processing times of the state processors of an executor since the previous sum
+class ExecutionTimes {
+  final long count;
+  final long wallNanos;
+  final long cpuNanos;
+  final long dbNanos;
+
+  ExecutionTimes(long count, long wallNanos, long cpuNanos, long dbNanos) {
+    this.count = count;
+    this.wallNanos = wallNanos;
+    this.cpuNanos = cpuNanos;
+    this.dbNanos = dbNanos;
+  }
+}
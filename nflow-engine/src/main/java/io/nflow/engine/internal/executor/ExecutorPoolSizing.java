@@ -0,0 +1,49 @@
+package io.nflow.engine.internal.executor;
+
+import static java.lang.Math.max;
+import static java.lang.Math.min;
+import static java.lang.Runtime.getRuntime;
+
+import org.springframework.core.env.Environment;
+
+public final class ExecutorPoolSizing {
+
+  // connections not used by executor threads: one for the dispatcher and one for API calls
+  public static final int RESERVED_CONNECTIONS = 2;
+
+  private ExecutorPoolSizing() {
+    // utility class
+  }
+
+  public static int executorThreadCount(Environment env) {
+    Integer threadCount = env.getProperty("nflow.executor.thread.count", Integer.class);
+    if (threadCount != null) {
+      return threadCount;
+    }
+    return limitByConnectionPool(env, 2 * getRuntime().availableProcessors());
+  }
+
+  // the upper bound of the thread count when the thread count is tuned, otherwise the thread count
+  public static int maxExecutorThreadCount(Environment env) {
+    if (!env.getRequiredProperty("nflow.executor.autotune.enabled", Boolean.class)) {
+      return executorThreadCount(env);
+    }
+    Integer threadCount = env.getProperty("nflow.executor.autotune.thread.count.max", Integer.class);
+    if (threadCount != null) {
+      return threadCount;
+    }
+    return max(executorThreadCount(env), limitByConnectionPool(env, 8 * getRuntime().availableProcessors()));
+  }
+
+  private static int limitByConnectionPool(Environment env, int defaultThreadCount) {
+    Integer maxPoolSize = env.getProperty("nflow.db.max_pool_size", Integer.class);
+    if (maxPoolSize == null) {
+      return defaultThreadCount;
+    }
+    return max(1, min(defaultThreadCount, maxPoolSize - RESERVED_CONNECTIONS));
+  }
+
+  public static int defaultMaxPoolSize(Environment env) {
+    return maxExecutorThreadCount(env) + RESERVED_CONNECTIONS;
+  }
+}
@@ -0,0 +1,131 @@
+package io.nflow.engine.internal.executor;
+
+import static org.apache.commons.lang3.StringUtils.split;
+import static org.apache.commons.lang3.StringUtils.trimToNull;
+import static org.slf4j.LoggerFactory.getLogger;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import org.slf4j.Logger;
+import org.springframework.core.env.Environment;
+import org.springframework.scheduling.concurrent.CustomizableThreadFactory;
+
+import io.nflow.engine.internal.util.PeriodicLogger;
+import io.nflow.engine.service.WorkflowDefinitionService;
+import io.nflow.engine.workflow.definition.AbstractWorkflowDefinition;
+
+class ExecutorPools {
+
+  private static final Logger logger = getLogger(ExecutorPools.class);
+  private static final PeriodicLogger periodicLogger = new PeriodicLogger(logger, 60);
+
+  private final WorkflowDefinitionService workflowDefinitions;
+  private final Map<String, WorkflowInstanceExecutor> pools = new LinkedHashMap<>();
+  // pools assigned with properties override the pools in workflow settings
+  private final Map<String, String> configuredPools = new HashMap<>();
+
+  ExecutorPools(WorkflowDefinitionService workflowDefinitions, Environment env) {
+    this.workflowDefinitions = workflowDefinitions;
+    String[] poolNames = split(env.getProperty("nflow.executor.pools", ""), ", ");
+    if (poolNames.length == 0) {
+      return;
+    }
+    int awaitTerminationSeconds = env.getRequiredProperty("nflow.dispatcher.await.termination.seconds", Integer.class);
+    int keepAliveSeconds = env.getRequiredProperty("nflow.dispatcher.executor.thread.keepalive.seconds", Integer.class);
+    int defaultMaxAsyncInFlight = env.getRequiredProperty("nflow.executor.async.maxInFlight", Integer.class);
+    for (String pool : poolNames) {
+      String prefix = "nflow.executor.pool." + pool + ".";
+      int threadCount = env.getRequiredProperty(prefix + "thread.count", Integer.class);
+      int queueSize = env.getProperty(prefix + "queue.size", Integer.class, 2 * threadCount);
+      int notifyThreshold = env.getProperty(prefix + "queue.wait_until_threshold", Integer.class, queueSize / 2);
+      int maxAsyncInFlight = env.getProperty(prefix + "async.maxInFlight", Integer.class, defaultMaxAsyncInFlight);
+      CustomizableThreadFactory threadFactory = new CustomizableThreadFactory("nflow-executor-" + pool + "-");
+      threadFactory.setThreadGroupName("nflow");
+      pools.put(pool, new WorkflowInstanceExecutor(queueSize, threadCount, notifyThreshold, awaitTerminationSeconds,
+          keepAliveSeconds, maxAsyncInFlight, threadFactory));
+      for (String type : split(env.getProperty(prefix + "types", ""), ", ")) {
+        configuredPools.put(type, pool);
+      }
+      logger.info("Executor pool {} has {} threads and queue size {}.", pool, threadCount, queueSize);
+    }
+  }
+
+  public boolean isEmpty() {
+    return pools.isEmpty();
+  }
+
+  public Map<String, WorkflowInstanceExecutor> getPools() {
+    return pools;
+  }
+
+  public Map<String, Set<String>> getPoolTypes() {
+    Map<String, Set<String>> poolTypes = new LinkedHashMap<>();
+    if (pools.isEmpty()) {
+      return poolTypes;
+    }
+    pools.keySet().forEach(pool -> poolTypes.put(pool, new LinkedHashSet<>()));
+    configuredPools.forEach((type, pool) -> poolTypes.get(pool).add(type));
+    for (AbstractWorkflowDefinition<?> definition : workflowDefinitions.getWorkflowDefinitions()) {
+      String type = definition.getType();
+      String pool = trimToNull(definition.getSettings().executorPool);
+      if (pool == null || configuredPools.containsKey(type)) {
+        continue;
+      }
+      Set<String> types = poolTypes.get(pool);
+      if (types == null) {
+        periodicLogger.warn("Workflow type {} uses executor pool {} that is not configured, using the default pool.", type, pool);
+      } else {
+        types.add(type);
+      }
+    }
+    return poolTypes;
+  }
+
+  public Set<String> getPooledTypes(Map<String, Set<String>> poolTypes) {
+    Set<String> pooledTypes = new LinkedHashSet<>();
+    for (Collection<String> types : poolTypes.values()) {
+      pooledTypes.addAll(types);
+    }
+    return pooledTypes;
+  }
+
+  public WorkflowInstanceExecutor getExecutor(String type) {
+    if (pools.isEmpty()) {
+      return null;
+    }
+    String pool = configuredPools.get(type);
+    if (pool == null) {
+      AbstractWorkflowDefinition<?> definition = workflowDefinitions.getWorkflowDefinition(type);
+      pool = definition == null ? null : trimToNull(definition.getSettings().executorPool);
+    }
+    return pool == null ? null : pools.get(pool);
+  }
+
+  public boolean hasRemainingCapacity() {
+    // pools without workflow types are not polled, so their free capacity does not help the dispatcher
+    return getPoolTypes().entrySet().stream()
+        .anyMatch(pool -> !pool.getValue().isEmpty() && pools.get(pool.getKey()).getQueueRemainingCapacity() > 0);
+  }
+
+  public List<Runnable> shutdownAndDrainQueues() {
+    List<Runnable> unstarted = new ArrayList<>();
+    pools.values().forEach(pool -> unstarted.addAll(pool.shutdownAndDrainQueue()));
+    return unstarted;
+  }
+
+  public void awaitTermination() {
+    pools.values().forEach(WorkflowInstanceExecutor::awaitTermination);
+  }
+
+  public void shutdown() {
+    shutdownAndDrainQueues();
+    awaitTermination();
+  }
+}
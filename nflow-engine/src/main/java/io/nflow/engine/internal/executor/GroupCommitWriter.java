@@ -0,0 +1,138 @@
+package io.nflow.engine.internal.executor;
+
+import static java.util.Collections.emptyList;
+import static org.slf4j.LoggerFactory.getLogger;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.LinkedBlockingQueue;
+
+import javax.inject.Inject;
+
+import org.slf4j.Logger;
+import org.springframework.core.env.Environment;
+import org.springframework.stereotype.Component;
+
+import io.nflow.engine.internal.dao.WorkflowInstanceDao;
+import io.nflow.engine.workflow.instance.WorkflowInstance;
+import io.nflow.engine.workflow.instance.WorkflowInstanceAction;
+
+@Component
+public class GroupCommitWriter {
+  private static final Logger logger = getLogger(GroupCommitWriter.class);
+
+  private final WorkflowInstanceDao workflowInstanceDao;
+  private final boolean enabled;
+  private final int maxBatchSize;
+  private final BlockingQueue<PendingUpdate> queue = new LinkedBlockingQueue<>();
+  private volatile Thread writer;
+  private volatile boolean shutdownRequested;
+
+  @Inject
+  public GroupCommitWriter(WorkflowInstanceDao workflowInstanceDao, Environment env) {
+    this.workflowInstanceDao = workflowInstanceDao;
+    this.enabled = env.getRequiredProperty("nflow.executor.groupCommit.enabled", Boolean.class);
+    this.maxBatchSize = env.getRequiredProperty("nflow.executor.groupCommit.maxBatchSize", Integer.class);
+  }
+
+  public synchronized void start() {
+    if (enabled && writer == null) {
+      writer = new Thread(this::writeUntilShutdown, "nflow-group-commit");
+      writer.setDaemon(true);
+      writer.start();
+    }
+  }
+
+  public boolean isEnabled() {
+    return enabled;
+  }
+
+  public void updateWorkflowInstanceAfterExecution(WorkflowInstance instance, WorkflowInstanceAction action,
+      boolean createAction) {
+    boolean actionNeeded = createAction || !instance.getChangedStateVariables().isEmpty();
+    PendingUpdate update = new PendingUpdate(instance, actionNeeded ? action : null);
+    queue.add(update);
+    if ((writer == null || shutdownRequested) && queue.remove(update)) {
+      // the writer thread is not started or may already have stopped
+      write(update);
+    }
+    try {
+      update.committed.get();
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new IllegalStateException("Interrupted while waiting for workflow instance " + instance.id + " to be saved", e);
+    } catch (ExecutionException e) {
+      if (e.getCause() instanceof RuntimeException) {
+        throw (RuntimeException) e.getCause();
+      }
+      throw new IllegalStateException("Failed to save workflow instance " + instance.id, e.getCause());
+    }
+  }
+
+  public synchronized void shutdown() {
+    if (writer != null) {
+      shutdownRequested = true;
+      writer.interrupt();
+    }
+  }
+
+  private void writeUntilShutdown() {
+    List<PendingUpdate> batch = new ArrayList<>(maxBatchSize);
+    while (!shutdownRequested || !queue.isEmpty()) {
+      try {
+        batch.add(queue.take());
+      } catch (@SuppressWarnings("unused") InterruptedException e) {
+        // shutdown requested, write remaining updates
+      }
+      queue.drainTo(batch, maxBatchSize - batch.size());
+      if (!batch.isEmpty()) {
+        write(batch);
+        batch.clear();
+      }
+    }
+  }
+
+  private void write(List<PendingUpdate> batch) {
+    List<WorkflowInstance> instances = new ArrayList<>(batch.size());
+    List<WorkflowInstanceAction> actions = new ArrayList<>(batch.size());
+    for (PendingUpdate update : batch) {
+      instances.add(update.instance);
+      actions.add(update.action);
+    }
+    try {
+      workflowInstanceDao.updateWorkflowInstancesAfterExecution(instances, actions);
+      logger.debug("Saved {} workflow instances in one transaction", batch.size());
+      batch.forEach(update -> update.committed.complete(null));
+    } catch (RuntimeException e) {
+      logger.warn("Failed to save {} workflow instances in one transaction, saving them separately", batch.size(), e);
+      batch.forEach(this::write);
+    }
+  }
+
+  private void write(PendingUpdate update) {
+    try {
+      if (update.action == null) {
+        workflowInstanceDao.updateWorkflowInstance(update.instance);
+      } else {
+        workflowInstanceDao.updateWorkflowInstanceAfterExecution(update.instance, update.action, emptyList(), emptyList(), true);
+      }
+      update.committed.complete(null);
+    } catch (RuntimeException e) {
+      update.committed.completeExceptionally(e);
+    }
+  }
+
+  private static class PendingUpdate {
+    final WorkflowInstance instance;
+    final WorkflowInstanceAction action;
+    final CompletableFuture<Void> committed = new CompletableFuture<>();
+
+    PendingUpdate(WorkflowInstance instance, WorkflowInstanceAction action) {
+      this.instance = instance;
+      this.action = action;
+    }
+  }
+}
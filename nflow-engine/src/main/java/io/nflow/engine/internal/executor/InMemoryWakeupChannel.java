@@ -0,0 +1,41 @@
+package io.nflow.engine.internal.executor;
+
+import static java.util.concurrent.TimeUnit.MILLISECONDS;
+import static java.util.concurrent.TimeUnit.NANOSECONDS;
+
+import io.nflow.engine.workflow.executor.WakeupChannel;
+
+public class InMemoryWakeupChannel implements WakeupChannel {
+  private final Object lock = new Object();
+  private boolean wakeUpRequested;
+
+  @Override
+  public void notifyWorkAvailable() {
+    wakeUp();
+  }
+
+  @Override
+  public void wakeUp() {
+    synchronized (lock) {
+      wakeUpRequested = true;
+      lock.notifyAll();
+    }
+  }
+
+  @Override
+  public boolean awaitWork(long timeoutMillis) throws InterruptedException {
+    synchronized (lock) {
+      long deadline = System.nanoTime() + MILLISECONDS.toNanos(timeoutMillis);
+      while (!wakeUpRequested) {
+        long remainingMillis = MILLISECONDS.convert(deadline - System.nanoTime(), NANOSECONDS);
+        if (remainingMillis <= 0) {
+          break;
+        }
+        lock.wait(remainingMillis);
+      }
+      boolean wokenUp = wakeUpRequested;
+      wakeUpRequested = false;
+      return wokenUp;
+    }
+  }
+}
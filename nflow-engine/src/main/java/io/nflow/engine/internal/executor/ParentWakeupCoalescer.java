@@ -0,0 +1,140 @@
+package io.nflow.engine.internal.executor;
+
+import static java.lang.Math.max;
+import static java.lang.Math.min;
+import static java.util.Collections.emptyList;
+import static java.util.concurrent.TimeUnit.MILLISECONDS;
+import static org.slf4j.LoggerFactory.getLogger;
+
+import java.util.ArrayList;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+
+import javax.inject.Inject;
+
+import org.slf4j.Logger;
+import org.springframework.core.env.Environment;
+import org.springframework.scheduling.concurrent.CustomizableThreadFactory;
+import org.springframework.stereotype.Component;
+
+import io.nflow.engine.internal.dao.WorkflowInstanceDao;
+
+// Wakes up a parent workflow instance once per window, however many of its children finish during the window, so that
+// children finishing together do not all update the same parent row. The window starts when the first child asks for the
+// wake-up, and the children that finish after the wake-up is written start a new window.
+@Component
+public class ParentWakeupCoalescer {
+  private static final Logger logger = getLogger(ParentWakeupCoalescer.class);
+  private static final long MAX_RETRY_DELAY_MILLIS = 60_000;
+
+  private final WorkflowInstanceDao workflowInstanceDao;
+  private final long windowMillis;
+  // expected states by parent workflow instance id, empty list means any state
+  private final Map<Long, List<String>> pendingWakeUps = new ConcurrentHashMap<>();
+  private final Map<Long, Integer> failedAttempts = new ConcurrentHashMap<>();
+  private final ScheduledThreadPoolExecutor scheduler;
+
+  @Inject
+  public ParentWakeupCoalescer(WorkflowInstanceDao workflowInstanceDao, Environment env) {
+    this.workflowInstanceDao = workflowInstanceDao;
+    this.windowMillis = env.getRequiredProperty("nflow.executor.parentWakeup.window.ms", Long.class);
+    if (windowMillis > 0) {
+      CustomizableThreadFactory threadFactory = new CustomizableThreadFactory("nflow-parent-wakeup-");
+      threadFactory.setDaemon(true);
+      scheduler = new ScheduledThreadPoolExecutor(1, threadFactory);
+    } else {
+      scheduler = null;
+    }
+  }
+
+  public boolean isEnabled() {
+    return scheduler != null;
+  }
+
+  public void wakeUpParent(long parentWorkflowId, List<String> expectedStates) {
+    addPendingWakeUp(parentWorkflowId, expectedStates, windowMillis);
+  }
+
+  private void addPendingWakeUp(long parentWorkflowId, List<String> expectedStates, long delayMillis) {
+    boolean[] first = new boolean[1];
+    pendingWakeUps.compute(parentWorkflowId, (id, pending) -> {
+      if (pending == null) {
+        first[0] = true;
+        return expectedStates;
+      }
+      return merge(pending, expectedStates);
+    });
+    if (first[0]) {
+      schedule(parentWorkflowId, delayMillis);
+    }
+  }
+
+  private static List<String> merge(List<String> pending, List<String> expectedStates) {
+    if (pending.isEmpty() || expectedStates.isEmpty()) {
+      return emptyList();
+    }
+    if (pending.equals(expectedStates)) {
+      return pending;
+    }
+    Set<String> states = new LinkedHashSet<>(pending);
+    states.addAll(expectedStates);
+    return new ArrayList<>(states);
+  }
+
+  private void schedule(long parentWorkflowId, long delayMillis) {
+    try {
+      scheduler.schedule(() -> wakeUp(parentWorkflowId), delayMillis, MILLISECONDS);
+    } catch (@SuppressWarnings("unused") RejectedExecutionException e) {
+      // shutting down
+      wakeUp(parentWorkflowId);
+    }
+  }
+
+  private void wakeUp(long parentWorkflowId) {
+    List<String> expectedStates = pendingWakeUps.remove(parentWorkflowId);
+    if (expectedStates == null) {
+      return;
+    }
+    try {
+      if (workflowInstanceDao.wakeUpWorkflowExternally(parentWorkflowId, expectedStates)) {
+        logger.info("Woke up parent workflow instance {}", parentWorkflowId);
+      } else {
+        logger.info("Did not wake up parent workflow instance {}", parentWorkflowId);
+      }
+      failedAttempts.remove(parentWorkflowId);
+    } catch (RuntimeException e) {
+      if (scheduler.isShutdown()) {
+        logger.warn("Failed to wake up parent workflow instance {}", parentWorkflowId, e);
+        return;
+      }
+      int attempts = failedAttempts.merge(parentWorkflowId, 1, Integer::sum);
+      long delayMillis = retryDelayMillis(attempts);
+      // the stack trace is logged only once, the same failure usually repeats until the database recovers
+      if (attempts == 1) {
+        logger.warn("Failed to wake up parent workflow instance {}, trying again in {} ms", parentWorkflowId, delayMillis, e);
+      } else {
+        logger.warn("Failed to wake up parent workflow instance {} {} times, trying again in {} ms: {}", parentWorkflowId,
+            attempts, delayMillis, e.getMessage());
+      }
+      addPendingWakeUp(parentWorkflowId, expectedStates, delayMillis);
+    }
+  }
+
+  // the retry delay doubles after each failed attempt, starting from the window, up to one minute
+  long retryDelayMillis(int attempts) {
+    return max(windowMillis, min(MAX_RETRY_DELAY_MILLIS, windowMillis << min(attempts, 20)));
+  }
+
+  public void shutdown() {
+    if (scheduler != null) {
+      scheduler.shutdownNow();
+      pendingWakeUps.keySet().forEach(this::wakeUp);
+      failedAttempts.clear();
+    }
+  }
+}
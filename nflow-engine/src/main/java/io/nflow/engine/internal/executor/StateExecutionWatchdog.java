@@ -0,0 +1,73 @@
+package io.nflow.engine.internal.executor;
+
+import static org.slf4j.LoggerFactory.getLogger;
+
+import javax.inject.Inject;
+
+import org.slf4j.Logger;
+import org.springframework.core.env.Environment;
+import org.springframework.stereotype.Component;
+
+import io.nflow.engine.internal.util.PeriodicLogger;
+
+// Enforces state method timeouts and detects potentially stuck state processors in its own thread, so that the checks do not
+// delay the dispatcher polling.
+@Component
+public class StateExecutionWatchdog {
+  private static final Logger logger = getLogger(StateExecutionWatchdog.class);
+  private static final PeriodicLogger periodicLogger = new PeriodicLogger(logger, 60);
+
+  private final WorkflowStateProcessorFactory stateProcessorFactory;
+  private final WorkflowInstanceExecutor executor;
+  private final long intervalMillis;
+  private Thread watchdog;
+  private volatile boolean shutdownRequested;
+
+  @Inject
+  public StateExecutionWatchdog(WorkflowStateProcessorFactory stateProcessorFactory, WorkflowInstanceExecutor executor,
+      Environment env) {
+    this.stateProcessorFactory = stateProcessorFactory;
+    this.executor = executor;
+    this.intervalMillis = env.getRequiredProperty("nflow.executor.watchdog.interval.ms", Long.class);
+  }
+
+  public synchronized void start() {
+    if (watchdog == null) {
+      watchdog = new Thread(this::watchUntilShutdown, "nflow-watchdog");
+      watchdog.setDaemon(true);
+      watchdog.start();
+    }
+  }
+
+  public synchronized void shutdown() {
+    if (watchdog != null) {
+      shutdownRequested = true;
+      watchdog.interrupt();
+    }
+  }
+
+  private void watchUntilShutdown() {
+    while (!shutdownRequested) {
+      try {
+        Thread.sleep(intervalMillis);
+        check();
+      } catch (@SuppressWarnings("unused") InterruptedException e) {
+        // shutdown requested
+      } catch (Exception e) {
+        logger.error("Failed to check state processors", e);
+      }
+    }
+  }
+
+  void check() {
+    int timedOut = stateProcessorFactory.timeOutStateMethods();
+    if (timedOut > 0) {
+      logger.warn("{} state methods exceeded their execution timeout", timedOut);
+    }
+    int potentiallyStuckProcessors = stateProcessorFactory.getPotentiallyStuckProcessors();
+    if (potentiallyStuckProcessors > 0) {
+      periodicLogger.warn("{} of {} state processor threads are potentially stuck (processing longer than {} seconds)",
+          potentiallyStuckProcessors, executor.getThreadCount(), stateProcessorFactory.getStuckThreadThresholdSeconds());
+    }
+  }
+}
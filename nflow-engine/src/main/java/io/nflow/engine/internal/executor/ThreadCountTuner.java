@@ -0,0 +1,159 @@
+package io.nflow.engine.internal.executor;
+
+import static io.nflow.engine.internal.executor.ExecutorPoolSizing.maxExecutorThreadCount;
+import static java.lang.Math.ceil;
+import static java.lang.Math.max;
+import static java.lang.Math.min;
+import static java.lang.Math.round;
+import static java.lang.management.ManagementFactory.getThreadMXBean;
+import static java.util.concurrent.TimeUnit.SECONDS;
+import static org.slf4j.LoggerFactory.getLogger;
+
+import javax.inject.Inject;
+
+import org.slf4j.Logger;
+import org.springframework.core.env.Environment;
+import org.springframework.stereotype.Component;
+
+// Resizes the executor thread pool based on the measured processing times: CPU-bound state processing needs about one
+// thread per processor, while processing that waits for I/O needs more threads to keep the processors busy. Threads are not
+// added when the executor is mostly idle or when the processing mostly waits for the database, because more threads would
+// only wait longer for the database.
+@Component
+public class ThreadCountTuner {
+  private static final Logger logger = getLogger(ThreadCountTuner.class);
+  private static final int MIN_EXECUTIONS = 10;
+  private static final double LOW_UTILIZATION = 0.5;
+
+  private final WorkflowInstanceExecutor executor;
+  private final boolean enabled;
+  private final int processors;
+  private final int minThreads;
+  private final int maxThreads;
+  private final double maxDbWaitShare;
+  private final long intervalSeconds;
+  private Thread tuner;
+  private volatile boolean shutdownRequested;
+  private volatile double lastCpuShare;
+  private volatile double lastDbWaitShare;
+  private volatile double lastUtilization;
+
+  @Inject
+  public ThreadCountTuner(WorkflowInstanceExecutor executor, Environment env) {
+    this.executor = executor;
+    processors = Runtime.getRuntime().availableProcessors();
+    maxThreads = maxExecutorThreadCount(env);
+    int configuredMinThreads = env.getProperty("nflow.executor.autotune.thread.count.min", Integer.class, processors);
+    if (configuredMinThreads > maxThreads) {
+      logger.warn("Minimum executor thread count {} is greater than maximum thread count {}, using {}", configuredMinThreads,
+          maxThreads, maxThreads);
+    }
+    // the default minimum is the processor count, which may be more than the configured maximum
+    minThreads = min(configuredMinThreads, maxThreads);
+    maxDbWaitShare = env.getRequiredProperty("nflow.executor.autotune.maxDbWaitShare", Double.class);
+    intervalSeconds = env.getRequiredProperty("nflow.executor.autotune.interval.seconds", Long.class);
+    boolean autotune = env.getRequiredProperty("nflow.executor.autotune.enabled", Boolean.class);
+    if (autotune && !getThreadMXBean().isCurrentThreadCpuTimeSupported()) {
+      logger.warn("Executor thread count is not tuned, the JVM does not support measuring thread CPU time");
+      autotune = false;
+    }
+    enabled = autotune;
+  }
+
+  public synchronized void start() {
+    if (!enabled || tuner != null) {
+      return;
+    }
+    executor.setRecordingExecutionTimes(true);
+    int threadCount = max(minThreads, min(maxThreads, executor.getThreadCount()));
+    if (threadCount != executor.getThreadCount()) {
+      executor.setThreadCount(threadCount);
+    }
+    logger.info("Tuning executor thread count between {} and {} threads every {} seconds", minThreads, maxThreads,
+        intervalSeconds);
+    tuner = new Thread(this::tuneUntilShutdown, "nflow-thread-tuner");
+    tuner.setDaemon(true);
+    tuner.start();
+  }
+
+  public synchronized void shutdown() {
+    if (tuner != null) {
+      shutdownRequested = true;
+      tuner.interrupt();
+    }
+  }
+
+  private void tuneUntilShutdown() {
+    while (!shutdownRequested) {
+      try {
+        SECONDS.sleep(intervalSeconds);
+        tune(SECONDS.toNanos(intervalSeconds));
+      } catch (@SuppressWarnings("unused") InterruptedException e) {
+        // shutdown requested
+      } catch (Exception e) {
+        logger.error("Failed to tune executor thread count", e);
+      }
+    }
+  }
+
+  int tune(long intervalNanos) {
+    ExecutionTimes times = executor.sumExecutionTimesThenReset();
+    int current = executor.getThreadCount();
+    if (times.count < MIN_EXECUTIONS || times.wallNanos <= 0 || times.cpuNanos <= 0) {
+      logger.debug("Not enough state executions ({}) to tune executor thread count", times.count);
+      return current;
+    }
+    double cpuShare = min(1, (double) times.cpuNanos / times.wallNanos);
+    double dbWaitShare = min(1, (double) times.dbNanos / times.wallNanos);
+    double utilization = (double) times.wallNanos / (intervalNanos * current);
+    lastCpuShare = cpuShare;
+    lastDbWaitShare = dbWaitShare;
+    lastUtilization = utilization;
+    // threads needed to keep all processors busy when each thread uses the processor for cpuShare of its time
+    int target = (int) ceil(processors / cpuShare);
+    if (utilization < LOW_UTILIZATION || dbWaitShare > maxDbWaitShare) {
+      target = min(target, current);
+    }
+    // change gradually, so that one unusual interval does not resize the pool too much
+    target = max(current / 2, min(2 * current, target));
+    target = max(minThreads, min(maxThreads, target));
+    if (target == current) {
+      logger.debug("Executor thread count {} unchanged: {} executions, CPU {}%, database wait {}%, utilization {}%", current,
+          times.count, percent(cpuShare), percent(dbWaitShare), percent(utilization));
+      return current;
+    }
+    executor.setThreadCount(target);
+    logger.info("Executor thread count changed from {} to {} (queue threshold {}): {} executions, CPU {}%, database wait {}%, "
+        + "utilization {}%", current, target, executor.getQueueThreshold(), times.count, percent(cpuShare),
+        percent(dbWaitShare), percent(utilization));
+    return target;
+  }
+
+  private static long percent(double share) {
+    return round(100 * share);
+  }
+
+  public boolean isEnabled() {
+    return enabled;
+  }
+
+  public int getThreadCount() {
+    return executor.getThreadCount();
+  }
+
+  public int getQueueThreshold() {
+    return executor.getQueueThreshold();
+  }
+
+  public double getLastCpuShare() {
+    return lastCpuShare;
+  }
+
+  public double getLastDbWaitShare() {
+    return lastDbWaitShare;
+  }
+
+  public double getLastUtilization() {
+    return lastUtilization;
+  }
+}
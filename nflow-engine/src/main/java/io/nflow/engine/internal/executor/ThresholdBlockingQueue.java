@@ -11,28 +11,51 @@ import java.util.concurrent.TimeUnit;
 
 import org.joda.time.DateTime;
 
+import edu.umd.cs.findbugs.annotations.SuppressFBWarnings;
+
+// The dispatcher waits on the monitor of the queue until the queue size drops to the notify threshold. Consumers enter the
+// monitor only when the dispatcher is waiting and the size is at most the threshold, so dequeuing does not contend on it.
 public class ThresholdBlockingQueue<E> extends AbstractQueue<E> implements BlockingQueue<E> {
   private final LinkedBlockingQueue<E> queue;
-  private final int notifyThreshHold;
+  private volatile int notifyThreshHold;
+  private volatile int waiters;
 
   public ThresholdBlockingQueue(int capacity, int notifyThreshHold) {
     this.notifyThreshHold = notifyThreshHold;
     queue = new LinkedBlockingQueue<>(capacity);
   }
 
-  public synchronized void notifyIfNotFull() {
-    if (queue.size() <= notifyThreshHold) {
-      notifyAll();
+  public int getNotifyThreshold() {
+    return notifyThreshHold;
+  }
+
+  public synchronized void setNotifyThreshold(int notifyThreshold) {
+    this.notifyThreshHold = notifyThreshold;
+    notifyIfNotFull();
+  }
+
+  public void notifyIfNotFull() {
+    // the waiter is registered before it checks the size, so either the waiter sees the new size or this sees the waiter
+    if (waiters > 0 && queue.size() <= notifyThreshHold) {
+      synchronized (this) {
+        notifyAll();
+      }
     }
   }
 
+  @SuppressFBWarnings(value = "VO_VOLATILE_INCREMENT", justification = "waiters is only modified while holding the monitor")
   public synchronized void waitUntilQueueSizeLowerThanThreshold(DateTime waitUntil) throws InterruptedException {
-    while (queue.size() > notifyThreshHold) {
-      long sleep = waitUntil.getMillis() - currentTimeMillis();
-      if (sleep <= 0) {
-        break;
+    waiters++;
+    try {
+      while (queue.size() > notifyThreshHold) {
+        long sleep = waitUntil.getMillis() - currentTimeMillis();
+        if (sleep <= 0) {
+          break;
+        }
+        wait(sleep);
       }
-      wait(sleep);
+    } finally {
+      waiters--;
     }
   }
 
@@ -44,7 +67,9 @@ public class ThresholdBlockingQueue<E> extends AbstractQueue<E> implements Block
   @Override
   public E poll() {
     E o = queue.poll();
-    notifyIfNotFull();
+    if (o != null) {
+      notifyIfNotFull();
+    }
     return o;
   }
 
@@ -58,6 +83,15 @@ public class ThresholdBlockingQueue<E> extends AbstractQueue<E> implements Block
     return queue.iterator();
   }
 
+  @Override
+  public boolean remove(Object o) {
+    boolean removed = queue.remove(o);
+    if (removed) {
+      notifyIfNotFull();
+    }
+    return removed;
+  }
+
   @Override
   public int size() {
     return queue.size();
@@ -83,7 +117,9 @@ public class ThresholdBlockingQueue<E> extends AbstractQueue<E> implements Block
   @Override
   public E poll(long timeout, TimeUnit unit) throws InterruptedException {
     E o = queue.poll(timeout, unit);
-    notifyIfNotFull();
+    if (o != null) {
+      notifyIfNotFull();
+    }
     return o;
   }
 
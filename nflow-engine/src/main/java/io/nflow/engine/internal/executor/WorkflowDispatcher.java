@@ -1,15 +1,22 @@
 package io.nflow.engine.internal.executor;
 
+import static java.lang.Math.max;
+import static java.lang.Math.min;
 import static org.slf4j.LoggerFactory.getLogger;
 
+import java.util.ArrayList;
 import java.util.List;
+import java.util.Map;
+import java.util.Map.Entry;
 import java.util.Random;
+import java.util.Set;
 import java.util.concurrent.CountDownLatch;
 
 import javax.inject.Inject;
 
 import org.slf4j.Logger;
 import org.springframework.beans.factory.BeanCreationException;
+import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.core.env.Environment;
 import org.springframework.stereotype.Component;
 
@@ -18,15 +25,14 @@ import io.nflow.engine.internal.dao.ExecutorDao;
 import io.nflow.engine.internal.dao.PollingBatchException;
 import io.nflow.engine.internal.dao.PollingRaceConditionException;
 import io.nflow.engine.internal.dao.WorkflowInstanceDao;
-import io.nflow.engine.internal.util.PeriodicLogger;
 import io.nflow.engine.service.WorkflowDefinitionService;
+import io.nflow.engine.workflow.instance.WorkflowInstance;
 
 @Component
 @SuppressFBWarnings(value = "MDM_RANDOM_SEED", justification = "rand does not need to be secure")
 public class WorkflowDispatcher implements Runnable {
 
   private static final Logger logger = getLogger(WorkflowDispatcher.class);
-  private static final PeriodicLogger periodicLogger = new PeriodicLogger(logger, 60);
 
   private volatile boolean shutdownRequested;
   private volatile boolean running = false;
@@ -39,8 +45,13 @@ public class WorkflowDispatcher implements Runnable {
   private final WorkflowDefinitionService workflowDefinitions;
   private final ExecutorDao executorDao;
   private final long sleepTimeMillis;
-  private final int stuckThreadThresholdSeconds;
+  private final boolean fetchChildWorkflowIds;
+  private final AdaptivePollInterval pollInterval;
+  private final WorkflowTypeLimiter typeLimiter;
+  private final ExecutorPools executorPools;
+  private final DeadNodeRecovery deadNodeRecovery;
   private final Random rand = new Random();
+  private ConnectionPoolMonitor connectionPool;
 
   @Inject
   @SuppressFBWarnings(value = "WEM_WEAK_EXCEPTION_MESSAGING", justification = "Transaction support exception message is fine")
@@ -53,7 +64,13 @@ public class WorkflowDispatcher implements Runnable {
     this.workflowDefinitions = workflowDefinitions;
     this.executorDao = executorDao;
     this.sleepTimeMillis = env.getRequiredProperty("nflow.dispatcher.sleep.ms", Long.class);
-    this.stuckThreadThresholdSeconds = env.getRequiredProperty("nflow.executor.stuckThreadThreshold.seconds", Integer.class);
+    this.fetchChildWorkflowIds = env.getRequiredProperty("nflow.executor.fetchChildWorkflowIds", Boolean.class);
+    long maxSleepTimeMillis = sleepTimeMillis * env.getRequiredProperty("nflow.dispatcher.sleep.max.multiplier", Integer.class);
+    this.pollInterval = new AdaptivePollInterval(sleepTimeMillis, maxSleepTimeMillis);
+    executor.setMaxWakeUpDelayMillis(maxSleepTimeMillis);
+    this.typeLimiter = new WorkflowTypeLimiter(workflowDefinitions, workflowInstances);
+    this.executorPools = new ExecutorPools(workflowDefinitions, env);
+    this.deadNodeRecovery = new DeadNodeRecovery(workflowInstances, env);
 
     if (!executorDao.isTransactionSupportEnabled()) {
       throw new BeanCreationException("Transaction support must be enabled");
@@ -68,23 +85,23 @@ public class WorkflowDispatcher implements Runnable {
     logger.info("Starting.");
     try {
       workflowDefinitions.postProcessWorkflowDefinitions();
+      workflowInstances.fillCurrentStateVariables();
       running = true;
       while (!shutdownRequested) {
         if (paused) {
           sleep(false);
         } else {
           try {
-            executor.waitUntilQueueSizeLowerThanThreshold(executorDao.getMaxWaitUntil());
+            // the dispatcher must not wait for the default pool when the other pools can take more work
+            if (!executorPools.hasRemainingCapacity()) {
+              executor.waitUntilQueueSizeLowerThanThreshold(executorDao.getMaxWaitUntil());
+            }
             if (!shutdownRequested) {
               if (executorDao.tick()) {
-                workflowInstances.recoverWorkflowInstancesFromDeadNodes();
-              }
-              int potentiallyStuckProcessors = stateProcessorFactory.getPotentiallyStuckProcessors();
-              if (potentiallyStuckProcessors > 0) {
-                periodicLogger.warn("{} of {} state processor threads are potentially stuck (processing longer than {} seconds)",
-                    potentiallyStuckProcessors, executor.getThreadCount(), stuckThreadThresholdSeconds);
+                deadNodeRecovery.requestRecovery();
               }
-              dispatch(getNextInstanceIds());
+              dispatchCreatedInstances();
+              dispatchNextInstances();
             }
           } catch (PollingRaceConditionException pex) {
             logger.debug(pex.getMessage());
@@ -109,6 +126,7 @@ public class WorkflowDispatcher implements Runnable {
 
   public void shutdown() {
     shutdownRequested = true;
+    executor.wakeUpDispatcher();
     if (running) {
       logger.info("Shutdown requested.");
     } else {
@@ -123,6 +141,11 @@ public class WorkflowDispatcher implements Runnable {
     }
   }
 
+  @Autowired(required = false)
+  public void setConnectionPoolMonitor(ConnectionPoolMonitor connectionPool) {
+    this.connectionPool = connectionPool;
+  }
+
   public void pause() {
     paused = true;
   }
@@ -139,30 +162,143 @@ public class WorkflowDispatcher implements Runnable {
     return running;
   }
 
+  public long getPollIntervalMillis() {
+    return pollInterval.getIntervalMillis();
+  }
+
+  public double getLastPollYield() {
+    return pollInterval.getLastPollYield();
+  }
+
+  public long getRecoveredInstances() {
+    return deadNodeRecovery.getRecoveredInstances();
+  }
+
+  public int getLastRecoveredInstances() {
+    return deadNodeRecovery.getLastRecoveredInstances();
+  }
+
+  public boolean isRecoveryRunning() {
+    return deadNodeRecovery.isRunning();
+  }
+
   private void shutdownPool() {
+    deadNodeRecovery.shutdown();
     try {
-      executor.shutdown();
+      List<Runnable> unstarted = executor.shutdownAndDrainQueue();
+      unstarted.addAll(executorPools.shutdownAndDrainQueues());
+      releaseUnstartedInstances(unstarted);
+      executor.awaitTermination();
+      executorPools.awaitTermination();
     } catch (Exception e) {
       logger.error("Error in shutting down thread pool.", e);
     }
   }
 
-  private void dispatch(List<Long> nextInstanceIds) {
-    if (nextInstanceIds.isEmpty()) {
-      logger.debug("Found no workflow instances, sleeping.");
-      sleep(false);
-      return;
+  private void releaseUnstartedInstances(List<Runnable> unstarted) {
+    // queued instances are released immediately, so that other executors do not have to wait for dead node recovery
+    List<Long> instanceIds = new ArrayList<>(unstarted.size());
+    for (Runnable runnable : unstarted) {
+      if (runnable instanceof WorkflowStateProcessor) {
+        instanceIds.add(((WorkflowStateProcessor) runnable).getInstanceId());
+      }
     }
-    logger.debug("Found {} workflow instances, dispatching executors.", nextInstanceIds.size());
-    for (Long instanceId : nextInstanceIds) {
-      executor.execute(stateProcessorFactory.createProcessor(instanceId));
+    if (!instanceIds.isEmpty()) {
+      int released = workflowInstances.releaseWorkflowInstances(instanceIds);
+      logger.info("Released {} queued workflow instances for other executors.", released);
     }
   }
 
-  private List<Long> getNextInstanceIds() {
-    int nextBatchSize = executor.getQueueRemainingCapacity();
-    logger.debug("Polling next {} workflow instances.", nextBatchSize);
-    return workflowInstances.pollNextWorkflowInstanceIds(nextBatchSize);
+  private void dispatchNextInstances() {
+    int availableConnections = Integer.MAX_VALUE;
+    if (connectionPool != null) {
+      availableConnections = getConnectionHeadroom();
+      if (availableConnections <= 0) {
+        logger.debug("No free database connections, sleeping {} ms.", pollInterval.getIntervalMillis());
+        waitForWork(pollInterval.getIntervalMillis());
+        return;
+      }
+    }
+    Map<String, Integer> typeCapacities = typeLimiter.getTypeCapacities();
+    Map<String, Set<String>> poolTypes = executorPools.getPoolTypes();
+    List<WorkflowInstance> nextInstances = new ArrayList<>();
+    int pooledBatchSize = 0;
+    // the batch size without the connection limit, a batch limited by free connections is not a full batch
+    int queueBatchSize = 0;
+    for (Entry<String, Set<String>> pool : poolTypes.entrySet()) {
+      int poolCapacity = executorPools.getPools().get(pool.getKey()).getQueueRemainingCapacity();
+      int poolBatchSize = min(poolCapacity, availableConnections - pooledBatchSize);
+      if (poolBatchSize > 0 && !pool.getValue().isEmpty()) {
+        logger.debug("Polling next {} workflow instances for executor pool {}.", poolBatchSize, pool.getKey());
+        nextInstances.addAll(workflowInstances.pollNextWorkflowInstancesOfTypes(poolBatchSize, fetchChildWorkflowIds,
+            typeCapacities, pool.getValue()));
+        pooledBatchSize += poolBatchSize;
+        queueBatchSize += poolCapacity;
+      }
+    }
+    int defaultCapacity = executor.getQueueRemainingCapacity();
+    int defaultBatchSize = max(0, min(defaultCapacity, availableConnections - pooledBatchSize));
+    if (defaultBatchSize > 0) {
+      logger.debug("Polling next {} workflow instances.", defaultBatchSize);
+      if (poolTypes.isEmpty()) {
+        nextInstances.addAll(workflowInstances.pollNextWorkflowInstances(defaultBatchSize, fetchChildWorkflowIds, typeCapacities));
+      } else {
+        nextInstances.addAll(workflowInstances.pollNextWorkflowInstancesExcludingTypes(defaultBatchSize, fetchChildWorkflowIds,
+            typeCapacities, executorPools.getPooledTypes(poolTypes)));
+      }
+    }
+    if (defaultBatchSize > 0) {
+      queueBatchSize += defaultCapacity;
+    }
+    typeLimiter.executionsStarted(nextInstances);
+    long waitMillis = pollInterval.afterPoll(nextInstances.size(), queueBatchSize);
+    if (nextInstances.isEmpty()) {
+      logger.debug("Found no workflow instances, sleeping {} ms.", waitMillis);
+    } else {
+      logger.debug("Found {} workflow instances, dispatching executors.", nextInstances.size());
+      dispatch(nextInstances);
+    }
+    if (waitMillis > 0) {
+      waitForWork(waitMillis);
+    }
+  }
+
+  // Queued instances and started state processors that do not have a connection yet will soon use the free connections.
+  private int getConnectionHeadroom() {
+    int queued = executor.getQueueSize();
+    int started = executor.getActiveThreadCount();
+    for (WorkflowInstanceExecutor pool : executorPools.getPools().values()) {
+      queued += pool.getQueueSize();
+      started += pool.getActiveThreadCount();
+    }
+    // threads waiting for a connection are already subtracted from the available connections
+    int startedWithoutConnection = started - connectionPool.getActiveConnections() - connectionPool.getThreadsAwaitingConnection();
+    return connectionPool.getAvailableConnections() - queued - max(0, startedWithoutConnection);
+  }
+
+  private void dispatchCreatedInstances() {
+    List<Long> createdInstanceIds = executor.pollCreatedInstances(executor.getQueueRemainingCapacity());
+    if (createdInstanceIds.isEmpty()) {
+      return;
+    }
+    // instances of types with execution limits or own executor pools are left for the next poll, which enforces the limits
+    Set<String> excludedTypes = executorPools.getPooledTypes(executorPools.getPoolTypes());
+    excludedTypes.addAll(typeLimiter.getLimitedTypes());
+    List<Long> claimedInstanceIds = workflowInstances.claimWorkflowInstances(createdInstanceIds, excludedTypes);
+    logger.debug("Claimed {} of {} workflow instances created by this executor, dispatching executors.",
+        claimedInstanceIds.size(), createdInstanceIds.size());
+    dispatch(workflowInstances.getWorkflowInstancesForExecution(claimedInstanceIds, fetchChildWorkflowIds));
+  }
+
+  private void dispatch(List<WorkflowInstance> instances) {
+    for (WorkflowInstance instance : instances) {
+      WorkflowInstanceExecutor poolExecutor = executorPools.getExecutor(instance.type);
+      if (poolExecutor == null) {
+        executor.execute(stateProcessorFactory.createProcessor(instance));
+      } else {
+        poolExecutor.execute(stateProcessorFactory.createProcessor(instance, poolExecutor));
+      }
+    }
   }
 
   @SuppressFBWarnings(value = "MDM_THREAD_YIELD", justification = "Intentionally masking race condition")
@@ -171,7 +307,16 @@ public class WorkflowDispatcher implements Runnable {
       if (randomize) {
         Thread.sleep((long) (sleepTimeMillis * rand.nextFloat()));
       } else {
-        Thread.sleep(sleepTimeMillis);
+        waitForWork(sleepTimeMillis);
+      }
+    } catch (@SuppressWarnings("unused") InterruptedException ok) {
+    }
+  }
+
+  private void waitForWork(long waitMillis) {
+    try {
+      if (executor.waitForDispatcherWakeUp(waitMillis)) {
+        pollInterval.reset();
       }
     } catch (@SuppressWarnings("unused") InterruptedException ok) {
     }
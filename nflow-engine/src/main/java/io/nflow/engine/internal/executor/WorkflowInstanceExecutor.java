@@ -1,58 +1,292 @@
 package io.nflow.engine.internal.executor;
 
+import static java.lang.Math.max;
+import static java.lang.Math.min;
 import static java.lang.Thread.currentThread;
+import static java.util.Collections.emptyList;
+import static java.util.concurrent.TimeUnit.MILLISECONDS;
 import static java.util.concurrent.TimeUnit.SECONDS;
+import static org.joda.time.DateTimeUtils.currentTimeMillis;
 import static org.slf4j.LoggerFactory.getLogger;
 
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentSkipListSet;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.Semaphore;
 import java.util.concurrent.ThreadFactory;
 import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
 
 import org.joda.time.DateTime;
 import org.slf4j.Logger;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.scheduling.concurrent.CustomizableThreadFactory;
+
+import io.nflow.engine.workflow.executor.WakeupChannel;
 
 public class WorkflowInstanceExecutor {
   private static final Logger logger = getLogger(WorkflowInstanceExecutor.class);
+  private static final int MAX_CREATED_INSTANCE_IDS = 1024;
+  private static final int MAX_SCHEDULED_WAKE_UPS = 1024;
 
   private final int awaitTerminationSeconds;
-  private final int threadCount;
+  private volatile int threadCount;
+  private final int initialThreadCount;
+  private final int maxQueueSize;
+  private final int initialNotifyThreshold;
   final ThreadPoolExecutor executor;
   final ThresholdBlockingQueue<Runnable> queue;
+  private final BlockingQueue<Long> createdInstanceIds = new LinkedBlockingQueue<>(MAX_CREATED_INSTANCE_IDS);
+  private WakeupChannel wakeupChannel = new InMemoryWakeupChannel();
+  private final ConcurrentSkipListSet<Long> scheduledWakeUps = new ConcurrentSkipListSet<>();
+  private final AtomicInteger scheduledWakeUpCount = new AtomicInteger();
+  private volatile long maxWakeUpDelayMillis;
+  private final int maxAsyncInFlight;
+  private final Semaphore asyncInFlight;
+  private final ScheduledThreadPoolExecutor retryScheduler;
+  private final Set<Runnable> delayedExecutions = ConcurrentHashMap.newKeySet();
+  private volatile boolean recordingExecutionTimes;
+  private final LongAdder executionCount = new LongAdder();
+  private final LongAdder executionWallNanos = new LongAdder();
+  private final LongAdder executionCpuNanos = new LongAdder();
+  private final LongAdder executionDbNanos = new LongAdder();
 
   public WorkflowInstanceExecutor(int maxQueueSize, int threadCount, int notifyThreshold, int awaitTerminationSeconds,
       int keepAliveSeconds,
       ThreadFactory threadFactory) {
-    queue = new ThresholdBlockingQueue<>(maxQueueSize, notifyThreshold);
+    this(maxQueueSize, threadCount, notifyThreshold, awaitTerminationSeconds, keepAliveSeconds, 0, threadFactory);
+  }
+
+  public WorkflowInstanceExecutor(int maxQueueSize, int threadCount, int notifyThreshold, int awaitTerminationSeconds,
+      int keepAliveSeconds, int maxAsyncInFlight, ThreadFactory threadFactory) {
+    // the queue has a reserved slot for each instance waiting for an asynchronous state method or a retry, so that resuming
+    // never fails
+    queue = new ThresholdBlockingQueue<>(maxQueueSize + maxAsyncInFlight, notifyThreshold);
+    this.maxAsyncInFlight = maxAsyncInFlight;
+    asyncInFlight = new Semaphore(maxAsyncInFlight);
     executor = new ThreadPoolExecutor(threadCount, threadCount, keepAliveSeconds, SECONDS, queue, threadFactory);
     executor.allowCoreThreadTimeOut(keepAliveSeconds > 0);
     this.awaitTerminationSeconds = awaitTerminationSeconds;
     this.threadCount = threadCount;
+    this.initialThreadCount = threadCount;
+    this.maxQueueSize = maxQueueSize;
+    this.initialNotifyThreshold = notifyThreshold;
+    CustomizableThreadFactory retryThreadFactory = new CustomizableThreadFactory("nflow-retry-");
+    retryThreadFactory.setDaemon(true);
+    // the thread is created when the first retry is scheduled
+    retryScheduler = new ScheduledThreadPoolExecutor(1, retryThreadFactory);
   }
 
   public int getThreadCount() {
     return threadCount;
   }
 
+  // the notify threshold of the queue is scaled with the thread count, capped by the queue size
+  public synchronized void setThreadCount(int threadCount) {
+    if (threadCount < this.threadCount) {
+      executor.setCorePoolSize(threadCount);
+      executor.setMaximumPoolSize(threadCount);
+    } else {
+      executor.setMaximumPoolSize(threadCount);
+      executor.setCorePoolSize(threadCount);
+    }
+    this.threadCount = threadCount;
+    long notifyThreshold = (long) initialNotifyThreshold * threadCount / initialThreadCount;
+    queue.setNotifyThreshold((int) min(notifyThreshold, maxQueueSize));
+  }
+
+  public int getQueueThreshold() {
+    return queue.getNotifyThreshold();
+  }
+
+  public boolean isRecordingExecutionTimes() {
+    return recordingExecutionTimes;
+  }
+
+  public void setRecordingExecutionTimes(boolean recordingExecutionTimes) {
+    this.recordingExecutionTimes = recordingExecutionTimes;
+  }
+
+  public void recordExecution(long wallNanos, long cpuNanos) {
+    executionCount.increment();
+    executionWallNanos.add(wallNanos);
+    executionCpuNanos.add(cpuNanos);
+  }
+
+  public void recordDbWait(long dbNanos) {
+    if (recordingExecutionTimes) {
+      executionDbNanos.add(dbNanos);
+    }
+  }
+
+  ExecutionTimes sumExecutionTimesThenReset() {
+    return new ExecutionTimes(executionCount.sumThenReset(), executionWallNanos.sumThenReset(),
+        executionCpuNanos.sumThenReset(), executionDbNanos.sumThenReset());
+  }
+
   public void waitUntilQueueSizeLowerThanThreshold(DateTime waitUntil) throws InterruptedException {
     queue.waitUntilQueueSizeLowerThanThreshold(waitUntil);
   }
 
-  public void wakeUpDispatcherIfNeeded() {
-    queue.notifyIfNotFull();
+  @Autowired(required = false)
+  public void setWakeupChannel(WakeupChannel wakeupChannel) {
+    this.wakeupChannel = wakeupChannel;
+  }
+
+  public void notifyWorkAvailable() {
+    wakeupChannel.notifyWorkAvailable();
+  }
+
+  public void notifyWorkAvailableInTransaction() {
+    wakeupChannel.notifyWorkAvailableInTransaction();
+  }
+
+  public void wakeUpDispatcher() {
+    wakeupChannel.wakeUp();
+  }
+
+  public boolean waitForDispatcherWakeUp(long timeoutMillis) throws InterruptedException {
+    if (removeDueWakeUps()) {
+      return true;
+    }
+    Long nextWakeUp = scheduledWakeUps.isEmpty() ? null : scheduledWakeUps.first();
+    long untilNextWakeUp = nextWakeUp == null ? Long.MAX_VALUE : nextWakeUp - currentTimeMillis();
+    if (untilNextWakeUp >= timeoutMillis) {
+      return wakeupChannel.awaitWork(timeoutMillis);
+    }
+    if (untilNextWakeUp > 0 && !wakeupChannel.awaitWork(untilNextWakeUp)) {
+      removeDueWakeUps();
+    }
+    return true;
+  }
+
+  public void setMaxWakeUpDelayMillis(long maxWakeUpDelayMillis) {
+    this.maxWakeUpDelayMillis = maxWakeUpDelayMillis;
+  }
+
+  public void scheduleWakeUp(DateTime activation) {
+    if (activation == null) {
+      return;
+    }
+    long delay = activation.getMillis() - currentTimeMillis();
+    // activations that are already due or later than the longest polling interval are found by polling
+    if (delay <= 0 || delay > maxWakeUpDelayMillis || scheduledWakeUpCount.get() >= MAX_SCHEDULED_WAKE_UPS) {
+      return;
+    }
+    if (scheduledWakeUps.add(activation.getMillis())) {
+      scheduledWakeUpCount.incrementAndGet();
+    }
+  }
+
+  private boolean removeDueWakeUps() {
+    boolean removed = false;
+    long now = currentTimeMillis();
+    while (!scheduledWakeUps.isEmpty() && scheduledWakeUps.first() <= now) {
+      if (scheduledWakeUps.pollFirst() != null) {
+        scheduledWakeUpCount.decrementAndGet();
+        removed = true;
+      }
+    }
+    return removed;
+  }
+
+  public void addCreatedInstance(long instanceId) {
+    // when full, the instance is left to be found by the next poll
+    createdInstanceIds.offer(instanceId);
+  }
+
+  public List<Long> pollCreatedInstances(int maxInstances) {
+    if (maxInstances <= 0 || createdInstanceIds.isEmpty()) {
+      return emptyList();
+    }
+    List<Long> instanceIds = new ArrayList<>();
+    createdInstanceIds.drainTo(instanceIds, maxInstances);
+    return instanceIds;
   }
 
   public void execute(Runnable runnable) {
     executor.execute(runnable);
   }
 
+  // the runnable must have reserved a queue slot with tryStartAsyncWait
+  public void executeAfter(Runnable runnable, long delayMillis) {
+    delayedExecutions.add(runnable);
+    try {
+      retryScheduler.schedule(() -> {
+        if (delayedExecutions.remove(runnable)) {
+          try {
+            execute(runnable);
+          } catch (RejectedExecutionException e) {
+            logger.warn("Executor is shut down, dropped delayed execution", e);
+          }
+        }
+      }, delayMillis, MILLISECONDS);
+    } catch (RejectedExecutionException e) {
+      delayedExecutions.remove(runnable);
+      throw e;
+    }
+  }
+
+  public int getDelayedExecutionCount() {
+    return delayedExecutions.size();
+  }
+
   public int getQueueRemainingCapacity() {
-    return queue.remainingCapacity();
+    return max(0, queue.remainingCapacity() - maxAsyncInFlight);
+  }
+
+  public int getQueueSize() {
+    return queue.size();
+  }
+
+  public int getActiveThreadCount() {
+    return executor.getActiveCount();
+  }
+
+  public boolean tryStartAsyncWait() {
+    return asyncInFlight.tryAcquire();
+  }
+
+  public void asyncWaitFinished() {
+    asyncInFlight.release();
+  }
+
+  public int getAsyncInFlight() {
+    return maxAsyncInFlight - asyncInFlight.availablePermits();
   }
 
   public void shutdown() {
+    shutdownAndDrainQueue();
+    awaitTermination();
+  }
+
+  public List<Runnable> shutdownAndDrainQueue() {
+    retryScheduler.shutdownNow();
     executor.shutdown();
+    List<Runnable> unstarted = new ArrayList<>();
+    queue.drainTo(unstarted);
+    for (Runnable delayed : delayedExecutions) {
+      if (delayedExecutions.remove(delayed)) {
+        unstarted.add(delayed);
+      }
+    }
+    return unstarted;
+  }
+
+  public void awaitTermination() {
     try {
       if (!executor.awaitTermination(awaitTerminationSeconds, SECONDS)) {
-        logger.warn("Timed out while waiting for executor to terminate");
+        // interrupt the state methods that are still running instead of leaving the threads behind
+        logger.warn("Timed out while waiting for executor to terminate, interrupting {} running state processors",
+            executor.getActiveCount());
+        executor.shutdownNow();
       }
     } catch (@SuppressWarnings("unused") InterruptedException ex) {
       logger.warn("Interrupted while waiting for executor to terminate");
@@ -18,12 +18,22 @@ public class WorkflowLifecycle implements SmartLifecycle {
   private static final Logger logger = getLogger(WorkflowLifecycle.class);
 
   private final WorkflowDispatcher dispatcher;
+  private final GroupCommitWriter groupCommitWriter;
+  private final ParentWakeupCoalescer parentWakeups;
+  private final StateExecutionWatchdog watchdog;
+  private final ThreadCountTuner threadCountTuner;
   private final boolean autoStart;
   private final Thread dispatcherThread;
 
   @Inject
-  public WorkflowLifecycle(WorkflowDispatcher dispatcher, @NFlow ThreadFactory nflowThreadFactory, Environment env) {
+  public WorkflowLifecycle(WorkflowDispatcher dispatcher, GroupCommitWriter groupCommitWriter,
+      ParentWakeupCoalescer parentWakeups, StateExecutionWatchdog watchdog, ThreadCountTuner threadCountTuner,
+      @NFlow ThreadFactory nflowThreadFactory, Environment env) {
     this.dispatcher = dispatcher;
+    this.groupCommitWriter = groupCommitWriter;
+    this.parentWakeups = parentWakeups;
+    this.watchdog = watchdog;
+    this.threadCountTuner = threadCountTuner;
     autoStart = env.getRequiredProperty("nflow.autostart", Boolean.class);
     dispatcherThread = nflowThreadFactory.newThread(dispatcher);
     dispatcherThread.setName("nflow-dispatcher");
@@ -44,6 +54,9 @@ public class WorkflowLifecycle implements SmartLifecycle {
 
   @Override
   public void start() {
+    groupCommitWriter.start();
+    threadCountTuner.start();
+    watchdog.start();
     dispatcherThread.start();
   }
 
@@ -66,7 +79,12 @@ public class WorkflowLifecycle implements SmartLifecycle {
 
   @Override
   public void stop() {
+    // the dispatcher waits for the state processors, which may still use the other threads
     dispatcher.shutdown();
+    watchdog.shutdown();
+    threadCountTuner.shutdown();
+    groupCommitWriter.shutdown();
+    parentWakeups.shutdown();
   }
 
   @Override
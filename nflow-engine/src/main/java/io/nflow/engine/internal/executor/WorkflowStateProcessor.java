@@ -8,24 +8,33 @@ import static io.nflow.engine.workflow.instance.WorkflowInstance.WorkflowInstanc
 import static io.nflow.engine.workflow.instance.WorkflowInstance.WorkflowInstanceStatus.inProgress;
 import static io.nflow.engine.workflow.instance.WorkflowInstanceAction.WorkflowActionType.stateExecution;
 import static io.nflow.engine.workflow.instance.WorkflowInstanceAction.WorkflowActionType.stateExecutionFailed;
+import static java.lang.Math.min;
 import static java.lang.String.format;
+import static java.lang.System.nanoTime;
 import static java.lang.Thread.currentThread;
-import static java.util.Arrays.asList;
+import static java.lang.management.ManagementFactory.getThreadMXBean;
+import static java.util.Arrays.stream;
 import static java.util.Collections.emptyList;
+import static java.util.Collections.singletonList;
 import static java.util.concurrent.TimeUnit.SECONDS;
+import static org.apache.commons.lang3.StringUtils.join;
 import static org.apache.commons.lang3.exception.ExceptionUtils.getStackTrace;
 import static org.joda.time.DateTime.now;
 import static org.joda.time.DateTimeUtils.currentTimeMillis;
 import static org.joda.time.Duration.standardMinutes;
 import static org.slf4j.LoggerFactory.getLogger;
-import static org.springframework.util.ReflectionUtils.invokeMethod;
+import static org.springframework.util.ReflectionUtils.rethrowRuntimeException;
 
+import java.lang.management.ThreadMXBean;
 import java.util.ArrayList;
-import java.util.Collection;
 import java.util.EnumSet;
-import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.CompletionStage;
+import java.util.concurrent.RejectedExecutionException;
 
 import org.joda.time.DateTime;
 import org.joda.time.Duration;
@@ -44,12 +53,14 @@ import io.nflow.engine.listener.ListenerChain;
 import io.nflow.engine.listener.WorkflowExecutorListener;
 import io.nflow.engine.listener.WorkflowExecutorListener.ListenerContext;
 import io.nflow.engine.service.WorkflowDefinitionService;
+import io.nflow.engine.service.WorkflowInstanceInclude;
 import io.nflow.engine.service.WorkflowInstanceService;
 import io.nflow.engine.workflow.definition.AbstractWorkflowDefinition;
 import io.nflow.engine.workflow.definition.NextAction;
 import io.nflow.engine.workflow.definition.WorkflowSettings;
 import io.nflow.engine.workflow.definition.WorkflowState;
 import io.nflow.engine.workflow.definition.WorkflowStateType;
+import io.nflow.engine.workflow.executor.StateExecutionTimeoutException;
 import io.nflow.engine.workflow.executor.StateVariableValueTooLongException;
 import io.nflow.engine.workflow.instance.WorkflowInstance;
 import io.nflow.engine.workflow.instance.WorkflowInstance.WorkflowInstanceStatus;
@@ -62,6 +73,20 @@ class WorkflowStateProcessor implements Runnable {
   private static final PeriodicLogger laggingLogger = new PeriodicLogger(logger, 30);
   private static final PeriodicLogger threadStuckLogger = new PeriodicLogger(logger, 60);
   private static final String MDC_KEY = "workflowInstanceId";
+  private static final long MIN_RETRY_DELAY_MILLIS = 1000;
+  private static final int MAX_RETRY_BACKOFF_SHIFT = 16;
+  private static final ThreadMXBean threadMXBean = getThreadMXBean();
+  private static final ClassValue<Boolean> PROCESS_OVERRIDDEN = new ClassValue<Boolean>() {
+    @Override
+    protected Boolean computeValue(Class<?> listenerClass) {
+      try {
+        return listenerClass.getMethod("process", ListenerContext.class, ListenerChain.class)
+            .getDeclaringClass() != WorkflowExecutorListener.class;
+      } catch (@SuppressWarnings("unused") NoSuchMethodException e) {
+        return true;
+      }
+    }
+  };
 
   private final long instanceId;
   private final WorkflowDefinitionService workflowDefinitions;
@@ -69,7 +94,12 @@ class WorkflowStateProcessor implements Runnable {
   private final WorkflowInstancePreProcessor workflowInstancePreProcessor;
   final ObjectStringMapper objectMapper;
   private final WorkflowInstanceDao workflowInstanceDao;
-  private final List<WorkflowExecutorListener> executorListeners;
+  private final GroupCommitWriter groupCommitWriter;
+  private final ParentWakeupCoalescer parentWakeups;
+  private final WorkflowInstanceExecutor workflowInstanceExecutor;
+  private final WorkflowExecutorListener[] executorListeners;
+  // listeners that wrap or skip the state method in process() must see the asynchronous state method start
+  private final boolean asyncThreadRelease;
   final String illegalStateChangeAction;
   private final int unknownWorkflowTypeRetryDelay;
   private final int unknownWorkflowStateRetryDelay;
@@ -77,22 +107,45 @@ class WorkflowStateProcessor implements Runnable {
   private final int stateSaveRetryDelay;
   private final int stateVariableValueTooLongRetryDelay;
   private final boolean fetchChildWorkflowIds;
+  private final boolean lazyStateVariables;
   private boolean internalRetryEnabled = true;
   private final Map<Long, WorkflowStateProcessor> processingInstances;
   private long startTimeSeconds;
   private Thread thread;
+  private WorkflowInstance polledInstance;
+  private volatile PendingStateExecution pendingExecution;
+  private PendingSave pendingSave;
+  // true when the next run resumes a suspended processing instead of starting a new one
+  private volatile boolean resuming;
+  // failed attempts since the last successful save, the retry delay grows with each failed attempt
+  private int failedAttempts;
+  // transient states executed in memory since the last saved state execution
+  private final List<String> executedTransientStates = new ArrayList<>();
+  private DateTime transientExecutionStart;
+  // state method timeout, zero when no state method with a timeout is running
+  private volatile long stateMethodDeadline;
+  private Thread stateMethodThread;
+  private CompletableFuture<?> stateMethodResult;
+  private boolean stateMethodInterrupted;
 
   WorkflowStateProcessor(long instanceId, ObjectStringMapper objectMapper, WorkflowDefinitionService workflowDefinitions,
-      WorkflowInstanceService workflowInstances, WorkflowInstanceDao workflowInstanceDao,
-      WorkflowInstancePreProcessor workflowInstancePreProcessor, Environment env,
-      Map<Long, WorkflowStateProcessor> processingInstances, WorkflowExecutorListener... executorListeners) {
+      WorkflowInstanceService workflowInstances, WorkflowInstanceDao workflowInstanceDao, GroupCommitWriter groupCommitWriter,
+      ParentWakeupCoalescer parentWakeups, WorkflowInstancePreProcessor workflowInstancePreProcessor,
+      WorkflowInstanceExecutor workflowInstanceExecutor, Environment env, Map<Long, WorkflowStateProcessor> processingInstances,
+      WorkflowExecutorListener... executorListeners) {
     this.instanceId = instanceId;
     this.objectMapper = objectMapper;
     this.workflowDefinitions = workflowDefinitions;
     this.workflowInstances = workflowInstances;
     this.workflowInstanceDao = workflowInstanceDao;
+    this.groupCommitWriter = groupCommitWriter;
+    this.parentWakeups = parentWakeups;
+    this.workflowInstanceExecutor = workflowInstanceExecutor;
     this.processingInstances = processingInstances;
-    this.executorListeners = asList(executorListeners);
+    // the listener array is created once by the factory and shared by all processors, it must not be modified
+    this.executorListeners = executorListeners;
+    this.asyncThreadRelease = stream(executorListeners)
+        .noneMatch(listener -> listener != null && PROCESS_OVERRIDDEN.get(listener.getClass()));
     this.workflowInstancePreProcessor = workflowInstancePreProcessor;
     illegalStateChangeAction = env.getRequiredProperty("nflow.illegal.state.change.action");
     unknownWorkflowTypeRetryDelay = env.getRequiredProperty("nflow.unknown.workflow.type.retry.delay.minutes", Integer.class);
@@ -103,56 +156,154 @@ class WorkflowStateProcessor implements Runnable {
         Integer.class);
     // TODO remove flag in 7.x release and default to not fetching child ids (or alternatively, let each step of WorkflowDefinition override what information needs to be fetched)
     fetchChildWorkflowIds = env.getRequiredProperty("nflow.executor.fetchChildWorkflowIds", Boolean.class);
+    // only the state variables declared as state method parameters are loaded before executing a state, others when used
+    lazyStateVariables = env.getRequiredProperty("nflow.executor.stateVariables.lazy", Boolean.class);
+  }
+
+  WorkflowStateProcessor withPolledInstance(WorkflowInstance instance) {
+    Assert.isTrue(instance.id == instanceId, "Polled workflow instance id does not match");
+    polledInstance = instance;
+    return this;
   }
 
   @Override
   public void run() {
     MDC.put(MDC_KEY, String.valueOf(instanceId));
-    startTimeSeconds = currentTimeMillis() / 1000;
+    boolean recordTimes = workflowInstanceExecutor.isRecordingExecutionTimes();
+    long wallStart = recordTimes ? nanoTime() : 0;
+    long cpuStart = recordTimes ? threadMXBean.getCurrentThreadCpuTime() : 0;
     thread = currentThread();
-    processingInstances.put(instanceId, this);
+    if (resuming) {
+      resuming = false;
+      workflowInstanceExecutor.asyncWaitFinished();
+    } else {
+      startTimeSeconds = currentTimeMillis() / 1000;
+      processingInstances.put(instanceId, this);
+    }
     boolean stateProcessingFinished = false;
+    boolean suspended = false;
     do {
       try {
-        runImpl();
+        suspended = runImpl();
         stateProcessingFinished = true;
       } catch (Throwable ex) {
-        logger.error("Failed to process workflow instance, retrying after {} seconds", stateProcessingRetryDelay, ex);
-        sleepIgnoreInterrupted(stateProcessingRetryDelay);
+        long retryDelayMillis = nextRetryDelayMillis(stateProcessingRetryDelay);
+        logger.error("Failed to process workflow instance, retrying after {} ms", retryDelayMillis, ex);
+        if (retryLater(retryDelayMillis)) {
+          suspended = true;
+          break;
+        }
+        sleepIgnoreInterrupted(retryDelayMillis);
       }
     } while (!stateProcessingFinished && internalRetryEnabled);
-    processingInstances.remove(instanceId);
+    if (!suspended) {
+      processingInstances.remove(instanceId);
+    }
+    if (recordTimes) {
+      workflowInstanceExecutor.recordExecution(nanoTime() - wallStart, threadMXBean.getCurrentThreadCpuTime() - cpuStart);
+    }
     MDC.remove(MDC_KEY);
   }
 
-  private void runImpl() {
-    logger.debug("Starting.");
-    WorkflowInstance instance = workflowInstances.getWorkflowInstance(instanceId,
-        fetchChildWorkflowIds ? EnumSet.of(CHILD_WORKFLOW_IDS, CURRENT_STATE_VARIABLES) : EnumSet.of(CURRENT_STATE_VARIABLES), null);
-    logIfLagging(instance);
-    AbstractWorkflowDefinition<? extends WorkflowState> definition = workflowDefinitions.getWorkflowDefinition(instance.type);
-    if (definition == null) {
-      rescheduleUnknownWorkflowType(instance);
-      return;
+  private boolean runImpl() {
+    PendingStateExecution resumed = pendingExecution;
+    pendingExecution = null;
+    PendingSave retriedSave = pendingSave;
+    pendingSave = null;
+    WorkflowInstance instance;
+    AbstractWorkflowDefinition<? extends WorkflowState> definition;
+    int subsequentStateExecutions;
+    if (retriedSave != null) {
+      logger.debug("Retrying to save the new state.");
+      definition = retriedSave.definition;
+      subsequentStateExecutions = retriedSave.subsequentStateExecutions;
+      instance = persistOrRetryLater(retriedSave);
+      if (instance == null) {
+        return true;
+      }
+    } else if (resumed == null) {
+      logger.debug("Starting.");
+      executedTransientStates.clear();
+      instance = polledInstance;
+      // after a failure, the instance must be read again from the database
+      polledInstance = null;
+      if (instance == null) {
+        long dbStart = nanoTime();
+        Set<WorkflowInstanceInclude> includes = EnumSet.noneOf(WorkflowInstanceInclude.class);
+        if (fetchChildWorkflowIds) {
+          includes.add(CHILD_WORKFLOW_IDS);
+        }
+        if (!lazyStateVariables) {
+          includes.add(CURRENT_STATE_VARIABLES);
+        }
+        instance = workflowInstances.getWorkflowInstance(instanceId, includes, null);
+        workflowInstanceExecutor.recordDbWait(nanoTime() - dbStart);
+      }
+      logIfLagging(instance);
+      definition = workflowDefinitions.getWorkflowDefinition(instance.type);
+      if (definition == null) {
+        rescheduleUnknownWorkflowType(instance);
+        return false;
+      }
+      subsequentStateExecutions = 0;
+    } else {
+      logger.debug("Resuming after asynchronous state method.");
+      instance = resumed.instance;
+      definition = resumed.definition;
+      subsequentStateExecutions = resumed.subsequentStateExecutions;
     }
     WorkflowSettings settings = definition.getSettings();
-    int subsequentStateExecutions = 0;
     while (instance.status == executing) {
-      StateExecutionImpl execution = new StateExecutionImpl(instance, objectMapper, workflowInstanceDao,
-          workflowInstancePreProcessor, workflowInstances);
-      ListenerContext listenerContext = new ListenerContext(definition, instance, execution);
-      WorkflowInstanceAction.Builder actionBuilder = new WorkflowInstanceAction.Builder(instance);
+      StateExecutionImpl execution;
+      ListenerContext listenerContext;
+      WorkflowInstanceAction.Builder actionBuilder;
       WorkflowState state;
-      try {
-        state = definition.getState(instance.state);
-      } catch (@SuppressWarnings("unused") IllegalStateException e) {
-        rescheduleUnknownWorkflowState(instance);
-        return;
+      AsyncStateInvocation asyncInvocation = null;
+      if (resumed == null) {
+        execution = new StateExecutionImpl(instance, objectMapper, workflowInstanceDao, workflowInstancePreProcessor,
+            workflowInstances);
+        execution.setLazyStateVariables(lazyStateVariables);
+        listenerContext = new ListenerContext(definition, instance, execution);
+        if (executedTransientStates.isEmpty()) {
+          transientExecutionStart = now();
+        }
+        // the saved action covers also the executions of the preceding transient states
+        actionBuilder = new WorkflowInstanceAction.Builder(instance).setExecutionStart(transientExecutionStart);
+        try {
+          state = definition.getState(instance.state);
+        } catch (@SuppressWarnings("unused") IllegalStateException e) {
+          rescheduleUnknownWorkflowState(instance);
+          return false;
+        }
+        if (lazyStateVariables) {
+          loadDeclaredStateVariables(definition, instance, execution);
+        }
+      } else {
+        execution = resumed.execution;
+        listenerContext = resumed.listenerContext;
+        actionBuilder = resumed.actionBuilder;
+        state = resumed.state;
+        asyncInvocation = resumed.asyncInvocation;
       }
       boolean saveInstanceState = true;
       try {
-        processBeforeListeners(listenerContext);
-        listenerContext.nextAction = processWithListeners(listenerContext, instance, definition, execution, state);
+        if (resumed == null) {
+          processBeforeListeners(listenerContext);
+          if (asyncThreadRelease) {
+            asyncInvocation = invokeAsyncStateMethod(instance, definition, execution, state);
+          }
+          if (asyncInvocation != null && suspendUntilComplete(asyncInvocation)) {
+            pendingExecution = new PendingStateExecution(instance, definition, subsequentStateExecutions, execution,
+                listenerContext, actionBuilder, state, asyncInvocation);
+            resuming = true;
+            asyncInvocation.result.whenComplete((nextAction, thrown) -> resume());
+            saveInstanceState = false;
+            return true;
+          }
+        }
+        resumed = null;
+        listenerContext.nextAction = processWithListeners(listenerContext, instance, definition, execution, state,
+            asyncInvocation);
       } catch (StateVariableValueTooLongException e) {
         instance = rescheduleStateVariableValueTooLong(e, instance);
         saveInstanceState = false;
@@ -172,11 +323,181 @@ class WorkflowStateProcessor implements Runnable {
             optionallyCleanupWorkflowInstanceHistory(definition.getSettings(), execution);
           }
           subsequentStateExecutions = busyLoopPrevention(state, settings, subsequentStateExecutions, execution);
-          instance = saveWorkflowInstanceState(execution, instance, definition, actionBuilder);
+          instance = saveWorkflowInstanceState(execution, instance, definition, state, actionBuilder, subsequentStateExecutions);
         }
       }
+      if (instance == null) {
+        // the save is retried later
+        return true;
+      }
     }
     logger.debug("Finished.");
+    return false;
+  }
+
+  private void loadDeclaredStateVariables(AbstractWorkflowDefinition<?> definition, WorkflowInstance instance,
+      StateExecutionImpl execution) {
+    WorkflowStateMethod method = definition.getMethod(instance.state);
+    if (method != null && !method.stateVariableKeys.isEmpty()) {
+      long dbStart = nanoTime();
+      execution.loadStateVariables(method.stateVariableKeys);
+      workflowInstanceExecutor.recordDbWait(nanoTime() - dbStart);
+    }
+  }
+
+  private AsyncStateInvocation invokeAsyncStateMethod(WorkflowInstance instance, AbstractWorkflowDefinition<?> definition,
+      StateExecutionImpl execution, WorkflowState state) {
+    WorkflowStateMethod method = definition.getMethod(instance.state);
+    if (method == null || !method.async) {
+      return null;
+    }
+    return startAsyncStateMethod(method, definition, execution, state, objectMapper.createArguments(execution, method));
+  }
+
+  private AsyncStateInvocation startAsyncStateMethod(WorkflowStateMethod method, AbstractWorkflowDefinition<?> definition,
+      StateExecutionImpl execution, WorkflowState state, Object[] args) {
+    execution.setStateProcessInvoked(true);
+    Integer timeoutSeconds = definition.getSettings().getStateExecutionTimeoutSeconds(state);
+    long deadline = timeoutSeconds == null ? 0 : currentTimeMillis() + SECONDS.toMillis(timeoutSeconds);
+    CompletionStage<?> stage = (CompletionStage<?>) invokeStateMethod(method, definition, state, args);
+    CompletableFuture<?> result = stage == null ? null : stage.toCompletableFuture();
+    if (deadline != 0 && result != null && !result.isDone()) {
+      stateMethodPending(result, deadline);
+    }
+    return new AsyncStateInvocation(args, result);
+  }
+
+  private Object invokeStateMethod(WorkflowStateMethod method, AbstractWorkflowDefinition<?> definition, WorkflowState state,
+      Object[] args) {
+    Integer timeoutSeconds = definition.getSettings().getStateExecutionTimeoutSeconds(state);
+    if (timeoutSeconds == null) {
+      return method.invoke(definition, args);
+    }
+    stateMethodStarted(timeoutSeconds);
+    Object result = null;
+    RuntimeException failure = null;
+    boolean timedOut;
+    try {
+      result = method.invoke(definition, args);
+    } catch (RuntimeException e) {
+      failure = e;
+    } finally {
+      timedOut = stateMethodReturned();
+    }
+    if (timedOut) {
+      throw new StateExecutionTimeoutException(
+          format("State method %s timed out after %s seconds and was interrupted", state.name(), timeoutSeconds), failure);
+    }
+    if (failure != null) {
+      throw failure;
+    }
+    return result;
+  }
+
+  private synchronized void stateMethodStarted(int timeoutSeconds) {
+    stateMethodThread = currentThread();
+    stateMethodResult = null;
+    stateMethodInterrupted = false;
+    stateMethodDeadline = currentTimeMillis() + SECONDS.toMillis(timeoutSeconds);
+  }
+
+  private synchronized boolean stateMethodReturned() {
+    stateMethodThread = null;
+    stateMethodDeadline = 0;
+    if (stateMethodInterrupted) {
+      // the interrupt was meant for the state method only
+      Thread.interrupted();
+      return true;
+    }
+    return false;
+  }
+
+  // the timeout of an asynchronous state method applies until the returned stage completes
+  private synchronized void stateMethodPending(CompletableFuture<?> result, long deadline) {
+    stateMethodResult = result;
+    stateMethodDeadline = deadline;
+  }
+
+  private void stateMethodCompleted() {
+    if (stateMethodDeadline != 0) {
+      synchronized (this) {
+        stateMethodDeadline = 0;
+        stateMethodResult = null;
+      }
+    }
+  }
+
+  boolean timeOutStateMethod(long currentTimeMillis) {
+    long deadline = stateMethodDeadline;
+    if (deadline == 0 || currentTimeMillis < deadline) {
+      return false;
+    }
+    CompletableFuture<?> result;
+    synchronized (this) {
+      if (stateMethodDeadline == 0) {
+        return false;
+      }
+      result = stateMethodResult;
+      if (result == null) {
+        if (stateMethodThread == null || stateMethodInterrupted) {
+          return false;
+        }
+        stateMethodInterrupted = true;
+        logger.warn("State method of workflow instance {} timed out, interrupting thread {}", instanceId,
+            stateMethodThread.getName());
+        stateMethodThread.interrupt();
+        return true;
+      }
+      stateMethodDeadline = 0;
+    }
+    // completed outside the lock, because completing runs the callbacks of the stage
+    logger.warn("Asynchronous state method of workflow instance {} timed out, failing the state execution", instanceId);
+    return result.completeExceptionally(new StateExecutionTimeoutException("Asynchronous state method timed out"));
+  }
+
+  private boolean suspendUntilComplete(AsyncStateInvocation asyncInvocation) {
+    // when the in-flight limit is reached, the executor thread waits for the result like with synchronous state methods
+    return asyncInvocation.result != null && !asyncInvocation.result.isDone() && workflowInstanceExecutor.tryStartAsyncWait();
+  }
+
+  private long nextRetryDelayMillis(int maxDelaySeconds) {
+    long delay = min(SECONDS.toMillis(maxDelaySeconds), MIN_RETRY_DELAY_MILLIS << min(failedAttempts, MAX_RETRY_BACKOFF_SHIFT));
+    failedAttempts++;
+    return delay;
+  }
+
+  // the retry waits in the scheduler of the executor without a thread, unless the limit of suspended instances is reached
+  private boolean retryLater(long delayMillis) {
+    if (!internalRetryEnabled || !workflowInstanceExecutor.tryStartAsyncWait()) {
+      return false;
+    }
+    resuming = true;
+    try {
+      workflowInstanceExecutor.executeAfter(this, delayMillis);
+      return true;
+    } catch (@SuppressWarnings("unused") RejectedExecutionException e) {
+      resuming = false;
+      workflowInstanceExecutor.asyncWaitFinished();
+      return false;
+    }
+  }
+
+  private void resume() {
+    try {
+      workflowInstanceExecutor.execute(this);
+    } catch (RejectedExecutionException e) {
+      workflowInstanceExecutor.asyncWaitFinished();
+      processingInstances.remove(instanceId);
+      resuming = false;
+      logger.warn("Failed to resume workflow instance {} after asynchronous state method, executor is shut down", instanceId, e);
+      // the state is executed again by the next executor that polls the instance
+      try {
+        workflowInstanceDao.releaseWorkflowInstances(singletonList(instanceId));
+      } catch (RuntimeException releaseFailure) {
+        logger.warn("Failed to release workflow instance {}, it is recovered when this executor expires", instanceId,
+            releaseFailure);
+      }
+    }
   }
 
   void logIfLagging(WorkflowInstance instance) {
@@ -226,7 +547,8 @@ class WorkflowStateProcessor implements Runnable {
   }
 
   private WorkflowInstance saveWorkflowInstanceState(StateExecutionImpl execution, WorkflowInstance instance,
-      AbstractWorkflowDefinition<?> definition, WorkflowInstanceAction.Builder actionBuilder) {
+      AbstractWorkflowDefinition<? extends WorkflowState> definition, WorkflowState state,
+      WorkflowInstanceAction.Builder actionBuilder, int subsequentStateExecutions) {
     if (definition.getMethod(execution.getNextState()) == null && execution.getNextActivation() != null) {
       logger.debug("No handler method defined for {}, clearing next activation", execution.getNextState());
       execution.setNextActivation(null);
@@ -235,11 +557,8 @@ class WorkflowStateProcessor implements Runnable {
     if (instance.parentWorkflowId != null && nextState.getType() == WorkflowStateType.end) {
       String parentType = workflowInstanceDao.getWorkflowInstanceType(instance.parentWorkflowId);
       AbstractWorkflowDefinition<? extends WorkflowState> parentDefinition = workflowDefinitions.getWorkflowDefinition(parentType);
-      String[] waitStates = parentDefinition.getStates().stream()
-              .filter(state -> state.getType() == WorkflowStateType.wait)
-              .map(WorkflowState::name)
-              .toArray(String[]::new);
-      if (waitStates.length > 0) {
+      List<String> waitStates = parentDefinition.getWaitStates();
+      if (!waitStates.isEmpty()) {
         execution.wakeUpParentWorkflow(waitStates);
       }
     }
@@ -249,16 +568,53 @@ class WorkflowStateProcessor implements Runnable {
         .setStateText(getStateText(instance, execution)) //
         .setState(execution.getNextState()) //
         .setRetries(execution.isRetry() ? execution.getRetries() + 1 : 0);
+    WorkflowSettings settings = definition.getSettings();
+    if (isTransientExecution(settings, state, execution, nextState)) {
+      logger.debug("Continuing from transient state {} to {} without saving", state.name(), nextState.name());
+      executedTransientStates.add(state.name());
+      // the original state variables are kept, so that the changes of all transient states are saved with the next save
+      return instanceBuilder.build();
+    }
+    String transientStates = null;
+    if (!executedTransientStates.isEmpty()) {
+      if (settings.recordTransientStates) {
+        transientStates = join(executedTransientStates, ", ");
+      }
+      executedTransientStates.clear();
+    }
+    return persistOrRetryLater(new PendingSave(definition, subsequentStateExecutions, execution, instance.stateVariables,
+        actionBuilder, instanceBuilder, transientStates));
+  }
+
+  private boolean isTransientExecution(WorkflowSettings settings, WorkflowState state, StateExecutionImpl execution,
+      WorkflowState nextState) {
+    return settings.isTransientState(state) && getStatus(execution, nextState) == executing && !execution.isFailed()
+        && !execution.isRetry() && !execution.isRetryCountExceeded() && execution.getNewChildWorkflows().isEmpty()
+        && execution.getNewWorkflows().isEmpty();
+  }
+
+  // returns null when the save is retried later by the scheduler of the executor
+  private WorkflowInstance persistOrRetryLater(PendingSave save) {
     do {
+      long dbStart = nanoTime();
       try {
-        return persistWorkflowInstanceState(execution, instance.stateVariables, actionBuilder, instanceBuilder);
+        WorkflowInstance instance = persistWorkflowInstanceState(save);
+        workflowInstanceExecutor.recordDbWait(nanoTime() - dbStart);
+        failedAttempts = 0;
+        return instance;
       } catch (Exception ex) {
-        logger.error("Failed to save workflow instance {} new state, retrying after {} seconds", instance.id, stateSaveRetryDelay,
-            ex);
-        sleepIgnoreInterrupted(stateSaveRetryDelay);
+        workflowInstanceExecutor.recordDbWait(nanoTime() - dbStart);
+        long retryDelayMillis = nextRetryDelayMillis(stateSaveRetryDelay);
+        logger.error("Failed to save workflow instance {} new state, retrying after {} ms", instanceId, retryDelayMillis, ex);
+        pendingSave = save;
+        if (retryLater(retryDelayMillis)) {
+          return null;
+        }
+        pendingSave = null;
+        sleepIgnoreInterrupted(retryDelayMillis);
       }
     } while (internalRetryEnabled);
-    throw new IllegalStateException(format("Failed to save workflow instance %s new state", instance.id));
+    throw new IllegalStateException(format("Failed to save workflow instance %s new state", instanceId));
   }
 
   /**
@@ -268,33 +624,52 @@ class WorkflowStateProcessor implements Runnable {
     this.internalRetryEnabled = internalRetryEnabled;
   }
 
-  private WorkflowInstance persistWorkflowInstanceState(StateExecutionImpl execution, Map<String, String> originalStateVars,
-      WorkflowInstanceAction.Builder actionBuilder, WorkflowInstance.Builder instanceBuilder) {
+  private WorkflowInstance persistWorkflowInstanceState(PendingSave save) {
+    StateExecutionImpl execution = save.execution;
+    WorkflowInstance.Builder instanceBuilder = save.instanceBuilder;
     if (execution.isStateProcessInvoked()) {
-      WorkflowInstanceAction action = actionBuilder.setExecutionEnd(now()).setType(getActionType(execution))
-          .setStateText(execution.getNextStateReason()).build();
+      String stateText = execution.getNextStateReason();
+      if (save.transientStates != null) {
+        stateText = format("%s (after transient states %s)", stateText, save.transientStates);
+      }
+      WorkflowInstanceAction action = save.actionBuilder.setExecutionEnd(now()).setType(getActionType(execution))
+          .setStateText(stateText).build();
       WorkflowInstance instance = instanceBuilder.setStartedIfNotSet(action.executionStart).build();
       if (execution.isFailed()) {
-        workflowInstanceDao.updateWorkflowInstanceAfterExecution(instance, action, emptyList(), emptyList(), true);
+        updateWorkflowInstanceAfterExecution(instance, action, emptyList(), emptyList(), true);
       } else {
-        workflowInstanceDao.updateWorkflowInstanceAfterExecution(instance, action, execution.getNewChildWorkflows(),
-            execution.getNewWorkflows(), execution.createAction());
+        updateWorkflowInstanceAfterExecution(instance, action, execution.getNewChildWorkflows(), execution.getNewWorkflows(),
+            execution.createAction());
         processSuccess(execution, instance);
       }
     } else {
       workflowInstanceDao.updateWorkflowInstance(instanceBuilder.build());
     }
-    return instanceBuilder.setOriginalStateVariables(originalStateVars).build();
+    return instanceBuilder.setOriginalStateVariables(save.originalStateVariables).build();
+  }
+
+  private void updateWorkflowInstanceAfterExecution(WorkflowInstance instance, WorkflowInstanceAction action,
+      List<WorkflowInstance> childWorkflows, List<WorkflowInstance> workflows, boolean createAction) {
+    if (groupCommitWriter.isEnabled() && childWorkflows.isEmpty() && workflows.isEmpty()) {
+      groupCommitWriter.updateWorkflowInstanceAfterExecution(instance, action, createAction);
+    } else {
+      workflowInstanceDao.updateWorkflowInstanceAfterExecution(instance, action, childWorkflows, workflows, createAction);
+    }
   }
 
   private void processSuccess(StateExecutionImpl execution, WorkflowInstance instance) {
     execution.getWakeUpParentWorkflowStates().ifPresent(expectedStates -> {
+      if (parentWakeups.isEnabled()) {
+        logger.debug("Waking up parent workflow instance {} after the coalescing window", instance.parentWorkflowId);
+        parentWakeups.wakeUpParent(instance.parentWorkflowId, expectedStates);
+        return;
+      }
       logger.debug("Possibly waking up parent workflow instance {}", instance.parentWorkflowId);
       boolean notified = workflowInstanceDao.wakeUpWorkflowExternally(instance.parentWorkflowId, expectedStates);
       if (notified) {
         logger.info("Woke up parent workflow instance {}", instance.parentWorkflowId);
       } else {
-        logger.info("Did not woke up parent workflow instance {}", instance.parentWorkflowId);
+        logger.info("Did not wake up parent workflow instance {}", instance.parentWorkflowId);
       }
     });
   }
@@ -326,12 +701,16 @@ class WorkflowStateProcessor implements Runnable {
   }
 
   private NextAction processWithListeners(ListenerContext listenerContext, WorkflowInstance instance,
-      AbstractWorkflowDefinition<? extends WorkflowState> definition, StateExecutionImpl execution, WorkflowState state) {
-    ProcessingExecutorListener processingListener = new ProcessingExecutorListener(instance, definition, execution, state);
-    List<WorkflowExecutorListener> chain = new ArrayList<>(executorListeners.size() + 1);
-    chain.addAll(executorListeners);
-    chain.add(processingListener);
-    NextAction nextAction = new ExecutorListenerChain(chain).next(listenerContext);
+      AbstractWorkflowDefinition<? extends WorkflowState> definition, StateExecutionImpl execution, WorkflowState state,
+      AsyncStateInvocation asyncInvocation) {
+    ProcessingExecutorListener processingListener = new ProcessingExecutorListener(instance, definition, execution, state,
+        asyncInvocation);
+    NextAction nextAction;
+    if (executorListeners.length == 0) {
+      nextAction = processingListener.process(listenerContext, null);
+    } else {
+      nextAction = new ExecutorListenerChain(executorListeners, processingListener).next(listenerContext);
+    }
     if (execution.isStateProcessInvoked()) {
       return nextAction;
     }
@@ -350,25 +729,30 @@ class WorkflowStateProcessor implements Runnable {
     }
   }
 
-  private void sleepIgnoreInterrupted(int seconds) {
+  private void sleepIgnoreInterrupted(long millis) {
     try {
-      Thread.sleep(SECONDS.toMillis(seconds));
+      Thread.sleep(millis);
     } catch (@SuppressWarnings("unused") InterruptedException ok) {
     }
   }
 
   static class ExecutorListenerChain implements ListenerChain {
-    private final Iterator<WorkflowExecutorListener> chain;
+    private final WorkflowExecutorListener[] listeners;
+    private final WorkflowExecutorListener last;
+    private int position;
 
-    ExecutorListenerChain(Collection<WorkflowExecutorListener> chain) {
-      this.chain = chain.iterator();
+    ExecutorListenerChain(WorkflowExecutorListener[] listeners, WorkflowExecutorListener last) {
+      this.listeners = listeners;
+      this.last = last;
     }
 
     @Override
     public NextAction next(ListenerContext context) {
-      Assert.isTrue(chain.hasNext(), "Ran out of listeners in listener chain. The last listener must not call "
+      Assert.isTrue(position <= listeners.length, "Ran out of listeners in listener chain. The last listener must not call "
           + this.getClass().getSimpleName() + ".next().");
-      return chain.next().process(context, this);
+      WorkflowExecutorListener listener = position < listeners.length ? listeners[position] : last;
+      position++;
+      return listener.process(context, this);
     }
   }
 
@@ -377,32 +761,53 @@ class WorkflowStateProcessor implements Runnable {
     private final AbstractWorkflowDefinition<? extends WorkflowState> definition;
     private final StateExecutionImpl execution;
     private final WorkflowState state;
+    private final AsyncStateInvocation asyncInvocation;
 
     public ProcessingExecutorListener(WorkflowInstance instance, AbstractWorkflowDefinition<? extends WorkflowState> definition,
-        StateExecutionImpl execution, WorkflowState state) {
+        StateExecutionImpl execution, WorkflowState state, AsyncStateInvocation asyncInvocation) {
       this.instance = instance;
       this.definition = definition;
       this.execution = execution;
       this.state = state;
+      this.asyncInvocation = asyncInvocation;
     }
 
     @Override
     public NextAction process(ListenerContext listenerContext, ListenerChain chain) {
-      return new NormalStateHandler(instance, definition, execution, state).processState();
+      return new NormalStateHandler(instance, definition, execution, state, asyncInvocation).processState();
     }
   }
 
   private class NormalStateHandler extends StateHandler {
+    private final AsyncStateInvocation asyncInvocation;
 
     public NormalStateHandler(WorkflowInstance instance, AbstractWorkflowDefinition<?> definition, StateExecutionImpl execution,
-        WorkflowState currentState) {
+        WorkflowState currentState, AsyncStateInvocation asyncInvocation) {
       super(instance, definition, execution, currentState);
+      this.asyncInvocation = asyncInvocation;
+    }
+
+    @Override
+    protected Object[] createArguments(WorkflowStateMethod method) {
+      return asyncInvocation == null ? super.createArguments(method) : asyncInvocation.args;
     }
 
     @Override
     protected NextAction getNextAction(WorkflowStateMethod method, Object... args) {
       execution.setStateProcessInvoked(true);
-      return (NextAction) invokeMethod(method.method, definition, args);
+      AsyncStateInvocation invocation = asyncInvocation;
+      if (invocation == null && method.async) {
+        // started from the end of the listener chain, the executor thread waits for the result
+        invocation = startAsyncStateMethod(method, definition, execution, currentState, args);
+      }
+      if (invocation != null) {
+        try {
+          return invocation.getNextAction();
+        } finally {
+          stateMethodCompleted();
+        }
+      }
+      return (NextAction) invokeStateMethod(method, definition, currentState, args);
     }
   }
 
@@ -437,6 +842,10 @@ class WorkflowStateProcessor implements Runnable {
 
     protected abstract NextAction getNextAction(WorkflowStateMethod method, Object... args);
 
+    protected Object[] createArguments(WorkflowStateMethod method) {
+      return objectMapper.createArguments(execution, method);
+    }
+
     public NextAction processState() {
       WorkflowStateMethod method = definition.getMethod(instance.state);
       if (method == null) {
@@ -444,7 +853,7 @@ class WorkflowStateProcessor implements Runnable {
         return stopInState(currentState, "Execution finished.");
       }
       NextAction nextAction;
-      Object[] args = objectMapper.createArguments(execution, method);
+      Object[] args = createArguments(method);
       if (currentState.getType().isFinal()) {
         getNextAction(method, args);
         nextAction = stopInState(currentState, "Stopped in final state");
@@ -528,21 +937,113 @@ class WorkflowStateProcessor implements Runnable {
     }
   }
 
+  public long getInstanceId() {
+    return instanceId;
+  }
+
   public long getStartTimeSeconds() {
     return startTimeSeconds;
   }
 
   public void logPotentiallyStuck(long processingTimeSeconds) {
+    if (resuming && pendingExecution == null) {
+      threadStuckLogger.warn("Workflow instance {} has been processed for {} seconds, waiting for a retry after a failure.",
+          instanceId, processingTimeSeconds);
+      return;
+    }
+    if (pendingExecution != null) {
+      threadStuckLogger.warn("Workflow instance {} has been processed for {} seconds, waiting for asynchronous state method.",
+          instanceId, processingTimeSeconds);
+      return;
+    }
+    // the stack trace is collected only if the message is logged
     threadStuckLogger.warn("Workflow instance {} has been processed for {} seconds, it may be stuck.\n{}", instanceId,
-        processingTimeSeconds, getStackTraceAsString());
+        processingTimeSeconds, new LazyStackTrace(thread));
+  }
+
+  private static class AsyncStateInvocation {
+    final Object[] args;
+    final CompletableFuture<?> result;
+
+    AsyncStateInvocation(Object[] args, CompletableFuture<?> result) {
+      this.args = args;
+      this.result = result;
+    }
+
+    NextAction getNextAction() {
+      if (result == null) {
+        return null;
+      }
+      try {
+        return (NextAction) result.join();
+      } catch (CompletionException e) {
+        rethrowRuntimeException(e.getCause());
+        throw e;
+      }
+    }
   }
 
-  private StringBuilder getStackTraceAsString() {
-    StringBuilder sb = new StringBuilder(2000);
-    for (StackTraceElement element : thread.getStackTrace()) {
-      sb.append(element).append('\n');
+  private static class PendingStateExecution {
+    final WorkflowInstance instance;
+    final AbstractWorkflowDefinition<? extends WorkflowState> definition;
+    final int subsequentStateExecutions;
+    final StateExecutionImpl execution;
+    final ListenerContext listenerContext;
+    final WorkflowInstanceAction.Builder actionBuilder;
+    final WorkflowState state;
+    final AsyncStateInvocation asyncInvocation;
+
+    PendingStateExecution(WorkflowInstance instance, AbstractWorkflowDefinition<? extends WorkflowState> definition,
+        int subsequentStateExecutions, StateExecutionImpl execution, ListenerContext listenerContext,
+        WorkflowInstanceAction.Builder actionBuilder, WorkflowState state, AsyncStateInvocation asyncInvocation) {
+      this.instance = instance;
+      this.definition = definition;
+      this.subsequentStateExecutions = subsequentStateExecutions;
+      this.execution = execution;
+      this.listenerContext = listenerContext;
+      this.actionBuilder = actionBuilder;
+      this.state = state;
+      this.asyncInvocation = asyncInvocation;
+    }
+  }
+
+  private static class PendingSave {
+    final AbstractWorkflowDefinition<? extends WorkflowState> definition;
+    final int subsequentStateExecutions;
+    final StateExecutionImpl execution;
+    final Map<String, String> originalStateVariables;
+    final WorkflowInstanceAction.Builder actionBuilder;
+    final WorkflowInstance.Builder instanceBuilder;
+    final String transientStates;
+
+    PendingSave(AbstractWorkflowDefinition<? extends WorkflowState> definition, int subsequentStateExecutions,
+        StateExecutionImpl execution, Map<String, String> originalStateVariables, WorkflowInstanceAction.Builder actionBuilder,
+        WorkflowInstance.Builder instanceBuilder, String transientStates) {
+      this.definition = definition;
+      this.subsequentStateExecutions = subsequentStateExecutions;
+      this.execution = execution;
+      this.originalStateVariables = originalStateVariables;
+      this.actionBuilder = actionBuilder;
+      this.instanceBuilder = instanceBuilder;
+      this.transientStates = transientStates;
+    }
+  }
+
+  private static class LazyStackTrace {
+    private final Thread thread;
+
+    LazyStackTrace(Thread thread) {
+      this.thread = thread;
+    }
+
+    @Override
+    public String toString() {
+      StringBuilder sb = new StringBuilder(2000);
+      for (StackTraceElement element : thread.getStackTrace()) {
+        sb.append(element).append('\n');
+      }
+      return sb.toString();
     }
-    return sb;
   }
 
 }
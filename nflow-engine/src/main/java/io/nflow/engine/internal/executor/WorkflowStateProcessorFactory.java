@@ -17,6 +17,7 @@ import io.nflow.engine.internal.workflow.WorkflowInstancePreProcessor;
 import io.nflow.engine.listener.WorkflowExecutorListener;
 import io.nflow.engine.service.WorkflowDefinitionService;
 import io.nflow.engine.service.WorkflowInstanceService;
+import io.nflow.engine.workflow.instance.WorkflowInstance;
 
 @Component
 public class WorkflowStateProcessorFactory {
@@ -24,7 +25,10 @@ public class WorkflowStateProcessorFactory {
   private final WorkflowInstanceService workflowInstances;
   private final ObjectStringMapper objectMapper;
   private final WorkflowInstanceDao workflowInstanceDao;
+  private final GroupCommitWriter groupCommitWriter;
+  private final ParentWakeupCoalescer parentWakeups;
   private final WorkflowInstancePreProcessor workflowInstancePreProcessor;
+  private final WorkflowInstanceExecutor workflowInstanceExecutor;
   private final Environment env;
   @Autowired(required = false)
   protected WorkflowExecutorListener[] listeners = new WorkflowExecutorListener[0];
@@ -33,20 +37,51 @@ public class WorkflowStateProcessorFactory {
 
   @Inject
   public WorkflowStateProcessorFactory(WorkflowDefinitionService workflowDefinitions, WorkflowInstanceService workflowInstances,
-      ObjectStringMapper objectMapper, WorkflowInstanceDao workflowInstanceDao,
-      WorkflowInstancePreProcessor workflowInstancePreProcessor, Environment env) {
+      ObjectStringMapper objectMapper, WorkflowInstanceDao workflowInstanceDao, GroupCommitWriter groupCommitWriter,
+      ParentWakeupCoalescer parentWakeups, WorkflowInstancePreProcessor workflowInstancePreProcessor,
+      WorkflowInstanceExecutor workflowInstanceExecutor, Environment env) {
     this.workflowDefinitions = workflowDefinitions;
     this.workflowInstances = workflowInstances;
     this.objectMapper = objectMapper;
     this.workflowInstanceDao = workflowInstanceDao;
+    this.groupCommitWriter = groupCommitWriter;
+    this.parentWakeups = parentWakeups;
     this.workflowInstancePreProcessor = workflowInstancePreProcessor;
+    this.workflowInstanceExecutor = workflowInstanceExecutor;
     this.stuckThreadThresholdSeconds = env.getRequiredProperty("nflow.executor.stuckThreadThreshold.seconds", Integer.class);
     this.env = env;
   }
 
   public WorkflowStateProcessor createProcessor(long instanceId) {
+    return createProcessor(instanceId, workflowInstanceExecutor);
+  }
+
+  public WorkflowStateProcessor createProcessor(WorkflowInstance instance) {
+    return createProcessor(instance.id).withPolledInstance(instance);
+  }
+
+  public WorkflowStateProcessor createProcessor(WorkflowInstance instance, WorkflowInstanceExecutor executor) {
+    return createProcessor(instance.id, executor).withPolledInstance(instance);
+  }
+
+  private WorkflowStateProcessor createProcessor(long instanceId, WorkflowInstanceExecutor executor) {
     return new WorkflowStateProcessor(instanceId, objectMapper, workflowDefinitions, workflowInstances, workflowInstanceDao,
-        workflowInstancePreProcessor, env, processingInstances, listeners);
+        groupCommitWriter, parentWakeups, workflowInstancePreProcessor, executor, env, processingInstances, listeners);
+  }
+
+  public int timeOutStateMethods() {
+    long now = currentTimeMillis();
+    int timedOut = 0;
+    for (WorkflowStateProcessor processor : processingInstances.values()) {
+      if (processor.timeOutStateMethod(now)) {
+        timedOut++;
+      }
+    }
+    return timedOut;
+  }
+
+  public int getStuckThreadThresholdSeconds() {
+    return stuckThreadThresholdSeconds;
   }
 
   public int getPotentiallyStuckProcessors() {
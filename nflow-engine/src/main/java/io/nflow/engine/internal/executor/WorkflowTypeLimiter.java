@@ -0,0 +1,113 @@
+package io.nflow.engine.internal.executor;
+
+import static java.lang.Math.max;
+import static java.lang.Math.min;
+import static java.util.Collections.emptyMap;
+import static java.util.concurrent.TimeUnit.SECONDS;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Function;
+
+import io.nflow.engine.internal.dao.WorkflowInstanceDao;
+import io.nflow.engine.service.WorkflowDefinitionService;
+import io.nflow.engine.workflow.definition.AbstractWorkflowDefinition;
+import io.nflow.engine.workflow.definition.WorkflowSettings;
+import io.nflow.engine.workflow.instance.WorkflowInstance;
+
+class WorkflowTypeLimiter {
+
+  private final WorkflowDefinitionService workflowDefinitions;
+  private final WorkflowInstanceDao workflowInstances;
+  private final Map<String, ExecutionRate> executionRates = new HashMap<>();
+
+  WorkflowTypeLimiter(WorkflowDefinitionService workflowDefinitions, WorkflowInstanceDao workflowInstances) {
+    this.workflowDefinitions = workflowDefinitions;
+    this.workflowInstances = workflowInstances;
+  }
+
+  public Collection<String> getLimitedTypes() {
+    return getLimitedTypeSettings().keySet();
+  }
+
+  public Map<String, Integer> getTypeCapacities() {
+    Map<String, WorkflowSettings> limitedTypes = getLimitedTypeSettings();
+    if (limitedTypes.isEmpty()) {
+      return emptyMap();
+    }
+    Map<String, Integer> nodeCounts = getExecutingCounts(limitedTypes, settings -> settings.maxConcurrentInstancesPerNode, true);
+    Map<String, Integer> clusterCounts = getExecutingCounts(limitedTypes, settings -> settings.maxConcurrentInstancesPerCluster,
+        false);
+    long now = System.nanoTime();
+    Map<String, Integer> capacities = new LinkedHashMap<>();
+    limitedTypes.forEach((type, settings) -> {
+      int capacity = Integer.MAX_VALUE;
+      if (settings.maxConcurrentInstancesPerNode != null) {
+        capacity = min(capacity, settings.maxConcurrentInstancesPerNode - nodeCounts.getOrDefault(type, 0));
+      }
+      if (settings.maxConcurrentInstancesPerCluster != null) {
+        capacity = min(capacity, settings.maxConcurrentInstancesPerCluster - clusterCounts.getOrDefault(type, 0));
+      }
+      if (settings.maxExecutionsPerSecond != null) {
+        ExecutionRate rate = executionRates.computeIfAbsent(type, t -> new ExecutionRate(now));
+        capacity = min(capacity, rate.available(settings.maxExecutionsPerSecond, now));
+      }
+      capacities.put(type, max(0, capacity));
+    });
+    return capacities;
+  }
+
+  public void executionsStarted(List<WorkflowInstance> instances) {
+    for (WorkflowInstance instance : instances) {
+      ExecutionRate rate = executionRates.get(instance.type);
+      if (rate != null) {
+        rate.consume();
+      }
+    }
+  }
+
+  private Map<String, WorkflowSettings> getLimitedTypeSettings() {
+    Map<String, WorkflowSettings> limitedTypes = new LinkedHashMap<>();
+    for (AbstractWorkflowDefinition<?> definition : workflowDefinitions.getWorkflowDefinitions()) {
+      WorkflowSettings settings = definition.getSettings();
+      if (settings.hasExecutionLimits()) {
+        limitedTypes.put(definition.getType(), settings);
+      }
+    }
+    return limitedTypes;
+  }
+
+  private Map<String, Integer> getExecutingCounts(Map<String, WorkflowSettings> limitedTypes,
+      Function<WorkflowSettings, Integer> limit, boolean onlyThisExecutor) {
+    List<String> types = new ArrayList<>();
+    limitedTypes.forEach((type, settings) -> {
+      if (limit.apply(settings) != null) {
+        types.add(type);
+      }
+    });
+    return workflowInstances.getExecutingWorkflowInstanceCounts(types, onlyThisExecutor);
+  }
+
+  private static class ExecutionRate {
+    private double tokens = Double.MAX_VALUE;
+    private long lastRefillNanos;
+
+    ExecutionRate(long now) {
+      lastRefillNanos = now;
+    }
+
+    int available(double executionsPerSecond, long now) {
+      tokens = min(max(1, executionsPerSecond), tokens + (now - lastRefillNanos) * executionsPerSecond / SECONDS.toNanos(1));
+      lastRefillNanos = now;
+      return (int) tokens;
+    }
+
+    void consume() {
+      tokens -= 1;
+    }
+  }
+}
@@ -9,6 +9,23 @@ import io.nflow.engine.workflow.instance.WorkflowInstance.WorkflowInstanceStatus
  */
 public class MySQLVariants implements SQLVariants {
 
+  private final boolean hasSkipLocked;
+
+  /**
+   * Create a new instance for a database version that does not support skipping locked rows.
+   */
+  public MySQLVariants() {
+    this(false);
+  }
+
+  /**
+   * Create a new instance.
+   * @param hasSkipLocked True for MySQL 8.0 or newer and MariaDB 10.6 or newer.
+   */
+  public MySQLVariants(boolean hasSkipLocked) {
+    this.hasSkipLocked = hasSkipLocked;
+  }
+
   /**
    * Returns SQL representing the current database time plus given amount of seconds.
    */
@@ -81,6 +98,14 @@ public class MySQLVariants implements SQLVariants {
     return query + " limit " + limit;
   }
 
+  /**
+   * Returns true for database versions that support skipping locked rows.
+   */
+  @Override
+  public boolean hasSkipLocked() {
+    return hasSkipLocked;
+  }
+
   /**
    * Returns the SQL type for long text.
    */
@@ -96,4 +121,13 @@ public class MySQLVariants implements SQLVariants {
   public boolean useBatchUpdate() {
     return true;
   }
+
+  /**
+   * Returns SQL for inserting or updating the current value of a state variable.
+   */
+  @Override
+  public String upsertCurrentStateVariable() {
+    return "insert into nflow_workflow_state_current(workflow_id, state_key, state_value) values (?, ?, ?) "
+        + "on duplicate key update state_value = values(state_value)";
+  }
 }
@@ -0,0 +1,134 @@
+package io.nflow.engine.internal.storage.db;
+
+import static org.slf4j.LoggerFactory.getLogger;
+
+import java.lang.reflect.Method;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.sql.Statement;
+
+import javax.sql.DataSource;
+
+import org.slf4j.Logger;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.RowCallbackHandler;
+
+import io.nflow.engine.internal.executor.InMemoryWakeupChannel;
+
+public class PostgreSQLNotifyWakeupChannel extends InMemoryWakeupChannel implements AutoCloseable {
+  private static final Logger logger = getLogger(PostgreSQLNotifyWakeupChannel.class);
+  static final String CHANNEL = "nflow_wakeup";
+  private static final RowCallbackHandler IGNORE_ROWS = rs -> {
+    // pg_notify returns void
+  };
+
+  private final JdbcTemplate jdbc;
+  private final String executorGroup;
+  private final int listenTimeoutMillis;
+  private final String connectionClassName;
+  private final String notificationClassName;
+  private final Thread listener;
+  private volatile boolean closed;
+
+  public PostgreSQLNotifyWakeupChannel(JdbcTemplate jdbc, String executorGroup, int listenTimeoutMillis) {
+    this(jdbc, executorGroup, listenTimeoutMillis, "org.postgresql.PGConnection", "org.postgresql.PGNotification");
+  }
+
+  PostgreSQLNotifyWakeupChannel(JdbcTemplate jdbc, String executorGroup, int listenTimeoutMillis, String connectionClassName,
+      String notificationClassName) {
+    this.jdbc = jdbc;
+    this.executorGroup = executorGroup;
+    this.listenTimeoutMillis = listenTimeoutMillis;
+    this.connectionClassName = connectionClassName;
+    this.notificationClassName = notificationClassName;
+    listener = new Thread(this::listen, "nflow-wakeup-listener");
+    listener.setDaemon(true);
+    listener.start();
+  }
+
+  /**
+   * Sends the notification with the connection of the current transaction. PostgreSQL delivers it when the transaction is
+   * committed, and only once even if it is sent several times in the same transaction.
+   */
+  @Override
+  public void notifyWorkAvailableInTransaction() {
+    try {
+      jdbc.query("select pg_notify(?, ?)", IGNORE_ROWS, CHANNEL, executorGroup);
+    } catch (RuntimeException e) {
+      logger.warn("Failed to notify other nFlow nodes, they will find the work on next poll: {}", e.getMessage());
+    }
+  }
+
+  @Override
+  public void close() {
+    closed = true;
+    listener.interrupt();
+  }
+
+  boolean isListening() {
+    return listener.isAlive();
+  }
+
+  private void listen() {
+    DataSource dataSource = jdbc.getDataSource();
+    while (!closed) {
+      // the connection is reserved from the nFlow connection pool as long as the channel is listening
+      try (Connection connection = dataSource.getConnection()) {
+        try (Statement statement = connection.createStatement()) {
+          connection.setAutoCommit(true);
+          statement.execute("listen " + CHANNEL);
+          logger.info("Listening for workflow dispatcher wakeup notifications");
+          // notifications sent while reconnecting are lost
+          wakeUp();
+          receiveNotifications(connection);
+        } finally {
+          unlisten(connection);
+        }
+      } catch (ClassNotFoundException e) {
+        logger.error("PostgreSQL JDBC driver does not support notifications, stopping wakeup listener", e);
+        return;
+      } catch (Exception e) {
+        if (!closed) {
+          logger.warn("Wakeup listener failed, reconnecting: {}", e.getMessage());
+          sleepBeforeReconnect();
+        }
+      }
+    }
+  }
+
+  private void receiveNotifications(Connection connection) throws Exception {
+    Class<?> pgConnectionClass = Class.forName(connectionClassName);
+    Object pgConnection = connection.unwrap(pgConnectionClass);
+    Method getNotifications = pgConnectionClass.getMethod("getNotifications", int.class);
+    Method getParameter = Class.forName(notificationClassName).getMethod("getParameter");
+    while (!closed) {
+      Object[] notifications = (Object[]) getNotifications.invoke(pgConnection, listenTimeoutMillis);
+      if (notifications != null) {
+        for (Object notification : notifications) {
+          if (executorGroup.equals(getParameter.invoke(notification))) {
+            wakeUp();
+            break;
+          }
+        }
+      }
+    }
+  }
+
+  // the pooled connection must not receive notifications after it is returned to the pool
+  private void unlisten(Connection connection) {
+    try (Statement statement = connection.createStatement()) {
+      statement.execute("unlisten *");
+    } catch (SQLException e) {
+      logger.debug("Failed to stop listening for wakeup notifications: {}", e.getMessage());
+    }
+  }
+
+  private void sleepBeforeReconnect() {
+    try {
+      Thread.sleep(listenTimeoutMillis);
+    } catch (@SuppressWarnings("unused") InterruptedException e) {
+      Thread.currentThread().interrupt();
+      closed = true;
+    }
+  }
+}
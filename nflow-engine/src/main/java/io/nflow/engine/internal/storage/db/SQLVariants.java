@@ -32,10 +32,22 @@ public interface SQLVariants {
 
   boolean useBatchUpdate();
 
+  default boolean hasSkipLocked() {
+    return false;
+  }
+
+  default String limitForUpdateSkipLocked(String query, long limit) {
+    return limit(query, limit) + " for update skip locked";
+  }
+
   default String dateLtEqDiff(String next_activation, String current_timestamp) {
     return next_activation + " <= " + current_timestamp;
   }
 
+  default String mod(String column, int divisor) {
+    return "mod(" + column + ", " + divisor + ")";
+  }
+
   default Object getTimestamp(ResultSet rs, String columnName) throws SQLException {
     return rs.getTimestamp(columnName);
   }
@@ -55,4 +67,12 @@ public interface SQLVariants {
   default Object tuneTimestampForDb(Object timestamp) {
     return timestamp;
   }
+
+  // parameters: workflow_id, state_key, state_value
+  default String upsertCurrentStateVariable() {
+    return "merge into nflow_workflow_state_current c using (values (?, ?, ?)) s(workflow_id, state_key, state_value) "
+        + "on c.workflow_id = s.workflow_id and c.state_key = s.state_key "
+        + "when matched then update set state_value = s.state_value "
+        + "when not matched then insert (workflow_id, state_key, state_value) values (s.workflow_id, s.state_key, s.state_value)";
+  }
 }
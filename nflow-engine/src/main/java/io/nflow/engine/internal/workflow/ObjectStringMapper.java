@@ -4,6 +4,8 @@ import java.io.IOException;
 import java.lang.reflect.Constructor;
 import java.lang.reflect.InvocationTargetException;
 import java.lang.reflect.Type;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
 
 import javax.inject.Inject;
 
@@ -12,6 +14,7 @@ import org.springframework.stereotype.Component;
 import com.fasterxml.jackson.core.JsonProcessingException;
 import com.fasterxml.jackson.databind.JavaType;
 import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectReader;
 
 import edu.umd.cs.findbugs.annotations.SuppressFBWarnings;
 import io.nflow.engine.config.NFlow;
@@ -22,6 +25,8 @@ import io.nflow.engine.workflow.definition.StateExecution;
 @Component
 public class ObjectStringMapper {
   private final ObjectMapper mapper;
+  // state method parameter types are fixed, so the readers are resolved only once per type
+  private final ConcurrentMap<Type, ObjectReader> readers = new ConcurrentHashMap<>();
 
   @Inject
   public ObjectStringMapper(@NFlow ObjectMapper nflowObjectMapper) {
@@ -62,14 +67,19 @@ public class ObjectStringMapper {
   }
 
   public Object convertToObject(Type type, String key, String value) {
-    JavaType javaType = mapper.getTypeFactory().constructType(type);
+    ObjectReader reader = readers.computeIfAbsent(type, this::createReader);
     try {
-      return mapper.readValue(value, javaType);
+      return reader.readValue(value);
     } catch (IOException e) {
       throw new RuntimeException("Failed to deserialize value for " + key, e);
     }
   }
 
+  private ObjectReader createReader(Type type) {
+    JavaType javaType = mapper.getTypeFactory().constructType(type);
+    return mapper.readerFor(javaType);
+  }
+
   @SuppressWarnings("unchecked")
   public void storeArguments(StateExecution execution,
       WorkflowStateMethod method, Object[] args) {
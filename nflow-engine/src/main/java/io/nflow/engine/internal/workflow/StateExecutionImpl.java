@@ -1,14 +1,20 @@
 package io.nflow.engine.internal.workflow;
 
+import static java.util.Arrays.asList;
+import static java.util.Collections.singletonList;
 import static java.util.Collections.unmodifiableList;
+import static java.util.stream.Collectors.toList;
 import static org.joda.time.DateTime.now;
 import static org.slf4j.LoggerFactory.getLogger;
 import static org.springframework.util.Assert.notNull;
 
-import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashSet;
 import java.util.LinkedList;
 import java.util.List;
+import java.util.Map;
 import java.util.Optional;
+import java.util.Set;
 
 import org.joda.time.DateTime;
 import org.slf4j.Logger;
@@ -43,8 +49,11 @@ public class StateExecutionImpl extends ModelObject implements StateExecution {
   private final List<WorkflowInstance> newChildWorkflows = new LinkedList<>();
   private final List<WorkflowInstance> newWorkflows = new LinkedList<>();
   private boolean createAction = true;
-  private String[] wakeUpParentStates;
+  private List<String> wakeUpParentStates;
   private boolean historyCleaningForced = false;
+  private boolean lazyStateVariables;
+  // lazily loaded state variables that do not exist
+  private final Set<String> missingStateVariables = new HashSet<>();
 
   public StateExecutionImpl(WorkflowInstance instance, ObjectStringMapper objectMapper, WorkflowInstanceDao workflowDao,
       WorkflowInstancePreProcessor workflowInstancePreProcessor, WorkflowInstanceService workflowInstanceService) {
@@ -104,6 +113,7 @@ public class StateExecutionImpl extends ModelObject implements StateExecution {
   @Override
   @SuppressWarnings("unchecked")
   public <T> T getVariable(String name, Class<T> type, T defaultValue) {
+    loadStateVariable(name);
     String value = instance.stateVariables.get(name);
     if (value != null) {
       return (T) objectMapper.convertToObject(type, name, value);
@@ -113,9 +123,37 @@ public class StateExecutionImpl extends ModelObject implements StateExecution {
 
   @Override
   public String getVariable(String name, String defaultValue) {
+    loadStateVariable(name);
     return instance.stateVariables.getOrDefault(name, defaultValue);
   }
 
+  private void loadStateVariable(String name) {
+    if (lazyStateVariables && !instance.stateVariables.containsKey(name) && !missingStateVariables.contains(name)) {
+      loadStateVariables(singletonList(name));
+    }
+  }
+
+  public void setLazyStateVariables(boolean lazyStateVariables) {
+    this.lazyStateVariables = lazyStateVariables;
+  }
+
+  // loads the current values of the given state variables that have not been loaded yet with one query
+  public void loadStateVariables(Collection<String> names) {
+    if (!lazyStateVariables) {
+      return;
+    }
+    List<String> unloaded = names.stream()
+        .filter(name -> !instance.stateVariables.containsKey(name) && !missingStateVariables.contains(name)).distinct()
+        .collect(toList());
+    if (unloaded.isEmpty()) {
+      return;
+    }
+    Map<String, String> loaded = workflowDao.getStateVariables(instance.id, unloaded);
+    instance.stateVariables.putAll(loaded);
+    instance.originalStateVariables.putAll(loaded);
+    unloaded.stream().filter(name -> !loaded.containsKey(name)).forEach(missingStateVariables::add);
+  }
+
   @Override
   public void setVariable(String name, String value) {
     workflowDao.checkStateVariableValueLength(name, value);
@@ -214,11 +252,15 @@ public class StateExecutionImpl extends ModelObject implements StateExecution {
       LOG.warn("wakeUpParentWorkflow called on non-child workflow");
       return;
     }
+    wakeUpParentStates = asList(expectedStates);
+  }
+
+  public void wakeUpParentWorkflow(List<String> expectedStates) {
     wakeUpParentStates = expectedStates;
   }
 
   public Optional<List<String>> getWakeUpParentWorkflowStates() {
-    return Optional.ofNullable(wakeUpParentStates).map(Arrays::asList);
+    return Optional.ofNullable(wakeUpParentStates);
   }
 
   @Override
@@ -25,6 +25,7 @@ import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.CompletionStage;
 import java.util.stream.Stream;
 
 import org.slf4j.Logger;
@@ -120,11 +121,21 @@ public class WorkflowDefinitionScanner {
       int mod = method.getModifiers();
       Class<?>[] parameterTypes = method.getParameterTypes();
       return isPublic(mod) && !isStatic(mod) && hasStateExecutionParameter(parameterTypes) &&
-          hasValidReturnType(method.getReturnType());
+          hasValidReturnType(method);
     }
 
-    private boolean hasValidReturnType(Class<?> returnType) {
-      return NextAction.class.equals(returnType) || Void.TYPE.equals(returnType);
+    private boolean hasValidReturnType(Method method) {
+      Class<?> returnType = method.getReturnType();
+      return NextAction.class.equals(returnType) || Void.TYPE.equals(returnType) || isNextActionStage(method);
+    }
+
+    private boolean isNextActionStage(Method method) {
+      if (!CompletionStage.class.isAssignableFrom(method.getReturnType())) {
+        return false;
+      }
+      Type returnType = method.getGenericReturnType();
+      return returnType instanceof ParameterizedType
+          && NextAction.class.equals(((ParameterizedType) returnType).getActualTypeArguments()[0]);
     }
 
     private boolean hasStateExecutionParameter(Class<?>... parameterTypes) {
@@ -4,6 +4,12 @@ import static io.nflow.engine.workflow.instance.WorkflowInstance.WorkflowInstanc
 import static java.util.UUID.randomUUID;
 import static org.springframework.util.StringUtils.isEmpty;
 
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
 import javax.inject.Inject;
 
 import org.springframework.stereotype.Component;
@@ -29,10 +35,28 @@ public class WorkflowInstancePreProcessor {
 
   // TODO should this set next_activation for child workflows?
   public WorkflowInstance process(WorkflowInstance instance) {
-    AbstractWorkflowDefinition<?> def = workflowDefinitionService.getWorkflowDefinition(instance.type);
+    return process(instance, getWorkflowDefinition(instance.type));
+  }
+
+  // looks up the workflow definition once per type
+  public List<WorkflowInstance> process(Collection<WorkflowInstance> instances) {
+    Map<String, AbstractWorkflowDefinition<?>> definitions = new HashMap<>();
+    List<WorkflowInstance> processed = new ArrayList<>(instances.size());
+    for (WorkflowInstance instance : instances) {
+      processed.add(process(instance, definitions.computeIfAbsent(instance.type, this::getWorkflowDefinition)));
+    }
+    return processed;
+  }
+
+  private AbstractWorkflowDefinition<?> getWorkflowDefinition(String type) {
+    AbstractWorkflowDefinition<?> def = workflowDefinitionService.getWorkflowDefinition(type);
     if (def == null) {
-      throw new RuntimeException("No workflow definition found for type [" + instance.type + "]");
+      throw new RuntimeException("No workflow definition found for type [" + type + "]");
     }
+    return def;
+  }
+
+  private WorkflowInstance process(WorkflowInstance instance, AbstractWorkflowDefinition<?> def) {
     WorkflowInstance.Builder builder = new WorkflowInstance.Builder(instance);
     if (instance.state == null) {
       builder.setState(def.getInitialState().name());
@@ -1,7 +1,19 @@
 package io.nflow.engine.internal.workflow;
 
+import static java.lang.invoke.MethodType.genericMethodType;
+import static java.util.Collections.unmodifiableList;
+import static java.util.stream.Collectors.toList;
+import static org.springframework.util.ReflectionUtils.invokeMethod;
+import static org.springframework.util.ReflectionUtils.makeAccessible;
+import static org.springframework.util.ReflectionUtils.rethrowRuntimeException;
+
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
 import java.lang.reflect.Method;
 import java.lang.reflect.Type;
+import java.util.List;
+import java.util.concurrent.CompletionStage;
+import java.util.stream.Stream;
 
 import edu.umd.cs.findbugs.annotations.SuppressFBWarnings;
 import io.nflow.engine.model.ModelObject;
@@ -9,7 +21,11 @@ import io.nflow.engine.model.ModelObject;
 @SuppressFBWarnings(value="EI_EXPOSE_REP2", justification = "internal class, not important for security")
 public class WorkflowStateMethod extends ModelObject {
   public final Method method;
+  public final boolean async;
   final StateParameter[] params;
+  // names of the state variables declared as parameters, loaded before invoking the method when state variables are lazy
+  public final List<String> stateVariableKeys;
+  private final transient MethodHandle invoker;
 
   static class StateParameter extends ModelObject {
     final String key;
@@ -29,6 +45,33 @@ public class WorkflowStateMethod extends ModelObject {
 
   public WorkflowStateMethod(Method method, StateParameter... params) {
     this.method = method;
+    this.async = CompletionStage.class.isAssignableFrom(method.getReturnType());
     this.params = params;
+    this.stateVariableKeys = unmodifiableList(Stream.of(params).map(param -> param.key).collect(toList()));
+    this.invoker = createInvoker(method);
+  }
+
+  // (Object target, Object[] args) -> Object, so that invoking does not need the reflection access checks and boxing of Method
+  private static MethodHandle createInvoker(Method method) {
+    try {
+      makeAccessible(method);
+      int parameterCount = method.getParameterCount();
+      return MethodHandles.lookup().unreflect(method).asType(genericMethodType(parameterCount + 1))
+          .asSpreader(Object[].class, parameterCount);
+    } catch (@SuppressWarnings("unused") IllegalAccessException | RuntimeException e) {
+      return null;
+    }
+  }
+
+  public Object invoke(Object target, Object... args) {
+    if (invoker == null) {
+      return invokeMethod(method, target, args);
+    }
+    try {
+      return invoker.invokeExact(target, args);
+    } catch (Throwable t) {
+      rethrowRuntimeException(t);
+      return null;
+    }
   }
 }
@@ -101,6 +101,11 @@ public interface WorkflowExecutorListener {
    *     return chain.next(listenerContext);
    *   }
    * </code>
+   * <p>
+   * A state method that returns a <code>CompletionStage</code> is started by the last element of the chain. When any
+   * listener overrides this method, the executor thread waits for the stage to complete inside the chain. Otherwise the
+   * executor thread is released while the stage is incomplete.
+   * </p>
    *
    * @param listenerContext The listener context.
    * @param chain The listener chain.
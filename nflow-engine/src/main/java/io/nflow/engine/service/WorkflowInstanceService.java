@@ -3,6 +3,7 @@ package io.nflow.engine.service;
 import static org.slf4j.LoggerFactory.getLogger;
 import static org.springframework.util.StringUtils.isEmpty;
 
+import java.util.ArrayList;
 import java.util.Collection;
 import java.util.List;
 import java.util.Optional;
@@ -67,9 +68,32 @@ public class WorkflowInstanceService {
     Assert.notNull(workflowInstancePreProcessor, "workflowInstancePreProcessor can not be null");
     WorkflowInstance processedInstance = workflowInstancePreProcessor.process(instance);
     long id = workflowInstanceDao.insertWorkflowInstance(processedInstance);
+    return getExistingIdIfNotInserted(id, instance);
+  }
+
+  /**
+   * Insert the workflow instances to the database in batches and return the ids of the instances in the same order as the
+   * given instances. If an instance already exists, return the id of the existing instance. This is much faster than
+   * inserting the instances one by one when creating a large number of instances.
+   * @param instances The workflow instances to be inserted.
+   * @return The ids of the inserted or existing workflow instances.
+   */
+  public List<Long> insertWorkflowInstances(Collection<WorkflowInstance> instances) {
+    Assert.notNull(workflowInstancePreProcessor, "workflowInstancePreProcessor can not be null");
+    List<WorkflowInstance> originalInstances = new ArrayList<>(instances);
+    List<WorkflowInstance> processedInstances = workflowInstancePreProcessor.process(originalInstances);
+    List<Long> insertedIds = workflowInstanceDao.insertWorkflowInstances(processedInstances);
+    List<Long> ids = new ArrayList<>(insertedIds.size());
+    for (int i = 0; i < insertedIds.size(); i++) {
+      ids.add(getExistingIdIfNotInserted(insertedIds.get(i), originalInstances.get(i)));
+    }
+    return ids;
+  }
+
+  private long getExistingIdIfNotInserted(long id, WorkflowInstance instance) {
     if (id == -1 && !isEmpty(instance.externalId)) {
       QueryWorkflowInstances query = new QueryWorkflowInstances.Builder().addTypes(instance.type).setExternalId(instance.externalId).build();
-      id = workflowInstanceDao.queryWorkflowInstances(query).get(0).id;
+      return workflowInstanceDao.queryWorkflowInstances(query).get(0).id;
     }
     return id;
   }
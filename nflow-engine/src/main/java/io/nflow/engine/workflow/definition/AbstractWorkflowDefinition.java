@@ -2,6 +2,8 @@ package io.nflow.engine.workflow.definition;
 
 import static java.lang.String.format;
 import static java.util.Collections.emptyMap;
+import static java.util.Collections.unmodifiableList;
+import static java.util.stream.Collectors.toList;
 
 import java.util.ArrayList;
 import java.util.LinkedHashMap;
@@ -31,6 +33,7 @@ public abstract class AbstractWorkflowDefinition<S extends WorkflowState> extend
   protected final Map<String, List<String>> allowedTransitions = new LinkedHashMap<>();
   protected final Map<String, WorkflowState> failureTransitions = new LinkedHashMap<>();
   private Map<String, WorkflowStateMethod> stateMethods;
+  private transient volatile List<String> waitStates;
 
   protected AbstractWorkflowDefinition(String type, S initialState, S errorState) {
     this(type, initialState, errorState, new WorkflowSettings.Builder().build());
@@ -193,9 +196,10 @@ public abstract class AbstractWorkflowDefinition<S extends WorkflowState> extend
     if (stateMethod != null) {
       WorkflowStateType stateType = state.getType();
       Class<?> returnType = stateMethod.method.getReturnType();
-      if (!stateType.isFinal() && !NextAction.class.equals(returnType)) {
-        String msg = format("Class '%s' has a non-final state method '%s' that does not return NextAction", this.getClass()
-            .getName(), state.name());
+      if (!stateType.isFinal() && !NextAction.class.equals(returnType) && !stateMethod.async) {
+        String msg = format(
+            "Class '%s' has a non-final state method '%s' that does not return NextAction or CompletionStage<NextAction>",
+            this.getClass().getName(), state.name());
         throw new IllegalArgumentException(msg);
       }
       if (stateType.isFinal() && !Void.TYPE.equals(returnType)) {
@@ -230,6 +234,20 @@ public abstract class AbstractWorkflowDefinition<S extends WorkflowState> extend
     throw new IllegalStateException("No state '" + state + "' in workflow definiton " + getType());
   }
 
+  /**
+   * Return the names of the wait states of the workflow. The names are resolved when this method is called for the first time.
+   * @return The names of the wait states.
+   */
+  public List<String> getWaitStates() {
+    List<String> states = waitStates;
+    if (states == null) {
+      states = unmodifiableList(getStates().stream().filter(state -> state.getType() == WorkflowStateType.wait)
+          .map(WorkflowState::name).collect(toList()));
+      waitStates = states;
+    }
+    return states;
+  }
+
   /**
    * Check if the given state is a valid start state.
    * @param state The name of the workflow state.
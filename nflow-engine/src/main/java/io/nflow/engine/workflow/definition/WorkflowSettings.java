@@ -2,6 +2,7 @@ package io.nflow.engine.workflow.definition;
 
 import static java.lang.Math.max;
 import static java.lang.Math.min;
+import static java.util.Arrays.asList;
 import static java.util.concurrent.TimeUnit.DAYS;
 import static java.util.concurrent.TimeUnit.MINUTES;
 import static java.util.concurrent.TimeUnit.SECONDS;
@@ -9,8 +10,10 @@ import static org.joda.time.DateTime.now;
 
 import java.math.BigInteger;
 import java.util.HashMap;
+import java.util.HashSet;
 import java.util.Map;
 import java.util.Random;
+import java.util.Set;
 import java.util.function.BooleanSupplier;
 
 import org.joda.time.DateTime;
@@ -65,6 +68,41 @@ public class WorkflowSettings extends ModelObject {
    * Default priority for new workflow instances.
    */
   public final short defaultPriority;
+  /**
+   * Maximum number of instances of the workflow type that are executed concurrently by one executor. Null means no limit.
+   */
+  public final Integer maxConcurrentInstancesPerNode;
+  /**
+   * Maximum number of instances of the workflow type that are executed concurrently by all executors of the executor group.
+   * Null means no limit.
+   */
+  public final Integer maxConcurrentInstancesPerCluster;
+  /**
+   * Maximum number of state executions of the workflow type started per second by one executor. Null means no limit.
+   */
+  public final Double maxExecutionsPerSecond;
+  /**
+   * Name of the executor pool that executes the instances of the workflow type. Null means the default executor pool.
+   */
+  public final String executorPool;
+  /**
+   * Maximum execution time of a state method. The state method is interrupted and the state execution is retried after the
+   * timeout. Null means no timeout. Unit is seconds.
+   */
+  public final Integer stateExecutionTimeoutSeconds;
+  /**
+   * Maximum execution time of a state method, per state. Unit is seconds.
+   */
+  public final Map<WorkflowState, Integer> stateExecutionTimeoutSecondsPerState;
+  /**
+   * States whose executions are not saved when they move the workflow instance to the next state immediately. The changes are
+   * saved together with the next state execution that is saved.
+   */
+  public final Set<WorkflowState> transientStates;
+  /**
+   * True if the transient states that were executed are listed in the state text of the next saved action.
+   */
+  public final boolean recordTransientStates;
 
   WorkflowSettings(Builder builder) {
     this.minErrorTransitionDelay = builder.minErrorTransitionDelay;
@@ -77,6 +115,14 @@ public class WorkflowSettings extends ModelObject {
     this.historyDeletableAfterHours = builder.historyDeletableAfterHours;
     this.deleteHistoryCondition = builder.deleteHistoryCondition;
     this.defaultPriority = builder.defaultPriority;
+    this.maxConcurrentInstancesPerNode = builder.maxConcurrentInstancesPerNode;
+    this.maxConcurrentInstancesPerCluster = builder.maxConcurrentInstancesPerCluster;
+    this.maxExecutionsPerSecond = builder.maxExecutionsPerSecond;
+    this.executorPool = builder.executorPool;
+    this.stateExecutionTimeoutSeconds = builder.stateExecutionTimeoutSeconds;
+    this.stateExecutionTimeoutSecondsPerState = new HashMap<>(builder.stateExecutionTimeoutSecondsPerState);
+    this.transientStates = new HashSet<>(builder.transientStates);
+    this.recordTransientStates = builder.recordTransientStates;
   }
 
   /**
@@ -94,6 +140,14 @@ public class WorkflowSettings extends ModelObject {
     Map<WorkflowState, Integer> maxSubsequentStateExecutionsPerState = new HashMap<>();
     Integer historyDeletableAfterHours;
     short defaultPriority = 0;
+    Integer maxConcurrentInstancesPerNode;
+    Integer maxConcurrentInstancesPerCluster;
+    Double maxExecutionsPerSecond;
+    String executorPool;
+    Integer stateExecutionTimeoutSeconds;
+    Map<WorkflowState, Integer> stateExecutionTimeoutSecondsPerState = new HashMap<>();
+    Set<WorkflowState> transientStates = new HashSet<>();
+    boolean recordTransientStates = true;
     Random rnd = new Random();
     BooleanSupplier deleteHistoryCondition = new BooleanSupplier() {
 
@@ -231,6 +285,115 @@ public class WorkflowSettings extends ModelObject {
       return this;
     }
 
+    /**
+     * Set the maximum number of instances of the workflow type that are executed concurrently by one executor. The default
+     * value (<code>null</code>) indicates no limit.
+     *
+     * @param maxConcurrentInstancesPerNode
+     *          Maximum number of concurrently executing instances.
+     * @return this.
+     */
+    public Builder setMaxConcurrentInstancesPerNode(Integer maxConcurrentInstancesPerNode) {
+      this.maxConcurrentInstancesPerNode = maxConcurrentInstancesPerNode;
+      return this;
+    }
+
+    /**
+     * Set the maximum number of instances of the workflow type that are executed concurrently by all executors of the
+     * executor group. The default value (<code>null</code>) indicates no limit.
+     *
+     * @param maxConcurrentInstancesPerCluster
+     *          Maximum number of concurrently executing instances.
+     * @return this.
+     */
+    public Builder setMaxConcurrentInstancesPerCluster(Integer maxConcurrentInstancesPerCluster) {
+      this.maxConcurrentInstancesPerCluster = maxConcurrentInstancesPerCluster;
+      return this;
+    }
+
+    /**
+     * Set the maximum number of state executions of the workflow type started per second by one executor. The default value
+     * (<code>null</code>) indicates no limit.
+     *
+     * @param maxExecutionsPerSecond
+     *          Maximum number of state executions per second.
+     * @return this.
+     */
+    public Builder setMaxExecutionsPerSecond(Double maxExecutionsPerSecond) {
+      this.maxExecutionsPerSecond = maxExecutionsPerSecond;
+      return this;
+    }
+
+    /**
+     * Set the name of the executor pool that executes the instances of the workflow type. The pool must be configured with
+     * <code>nflow.executor.pools</code> property. The default value (<code>null</code>) indicates the default executor pool.
+     *
+     * @param executorPool
+     *          Name of the executor pool.
+     * @return this.
+     */
+    public Builder setExecutorPool(String executorPool) {
+      this.executorPool = executorPool;
+      return this;
+    }
+
+    /**
+     * Set the maximum execution time of state methods. When the timeout expires, the thread executing the state method is
+     * interrupted and the state execution fails and is retried. Asynchronous state methods are failed by completing the
+     * returned stage exceptionally. The default value (<code>null</code>) indicates no timeout.
+     *
+     * @param stateExecutionTimeoutSeconds
+     *          Maximum execution time in seconds.
+     * @return this.
+     */
+    public Builder setStateExecutionTimeoutSeconds(Integer stateExecutionTimeoutSeconds) {
+      this.stateExecutionTimeoutSeconds = stateExecutionTimeoutSeconds;
+      return this;
+    }
+
+    /**
+     * Set the maximum execution time of the state method of given state.
+     *
+     * @param state
+     *          The state for which the timeout is applied.
+     * @param stateExecutionTimeoutSeconds
+     *          Maximum execution time in seconds.
+     * @return this.
+     */
+    public Builder setStateExecutionTimeoutSeconds(WorkflowState state, int stateExecutionTimeoutSeconds) {
+      this.stateExecutionTimeoutSecondsPerState.put(state, stateExecutionTimeoutSeconds);
+      return this;
+    }
+
+    /**
+     * Set states whose executions are saved only when the workflow instance does not move to the next state immediately. A
+     * chain of immediate transitions through transient states is executed in memory and saved once, together with the next
+     * state execution that is saved. Failed executions and executions that create new workflow instances are always saved.
+     * If the processing is interrupted, for example by a node crash, the transient states are executed again, so their state
+     * methods must be safe to repeat.
+     *
+     * @param states
+     *          The transient states.
+     * @return this.
+     */
+    public Builder setTransientStates(WorkflowState... states) {
+      this.transientStates.clear();
+      this.transientStates.addAll(asList(states));
+      return this;
+    }
+
+    /**
+     * Set whether the executed transient states are listed in the state text of the next saved action. Default is true.
+     *
+     * @param recordTransientStates
+     *          True to list the transient states.
+     * @return this.
+     */
+    public Builder setRecordTransientStates(boolean recordTransientStates) {
+      this.recordTransientStates = recordTransientStates;
+      return this;
+    }
+
     /**
      * Create workflow settings object.
      *
@@ -292,6 +455,27 @@ public class WorkflowSettings extends ModelObject {
     return maxSubsequentStateExecutionsPerState.getOrDefault(state, maxSubsequentStateExecutions);
   }
 
+  /**
+   * Return the maximum execution time of the state method of given state.
+   * @param state The state for which the timeout is checked.
+   *
+   * @return The maximum execution time in seconds, or null if there is no timeout.
+   */
+  public Integer getStateExecutionTimeoutSeconds(WorkflowState state) {
+    return stateExecutionTimeoutSecondsPerState.getOrDefault(state, stateExecutionTimeoutSeconds);
+  }
+
+  /**
+   * Return true if the executions of given state are saved only when the workflow instance does not move to the next state
+   * immediately.
+   * @param state The state to check.
+   *
+   * @return True if the state is transient.
+   */
+  public boolean isTransientState(WorkflowState state) {
+    return transientStates.contains(state);
+  }
+
   /**
    * Return true if workflow instance history should be deleted. Called by WorkflowStateProcessor after processing a state if historyDeletableAfterHours is
    * set. With default settings, returns true roughly every tenth time. To override, set deleteHistoryCondition.
@@ -302,6 +486,15 @@ public class WorkflowSettings extends ModelObject {
     return deleteHistoryCondition.getAsBoolean();
   }
 
+  /**
+   * Return true if the number of concurrently executing instances or the execution rate of the workflow type is limited.
+   *
+   * @return True if the workflow type has execution limits.
+   */
+  public boolean hasExecutionLimits() {
+    return maxConcurrentInstancesPerNode != null || maxConcurrentInstancesPerCluster != null || maxExecutionsPerSecond != null;
+  }
+
   /**
    * Return default priority for new workflow instances.
    *
@@ -0,0 +1,14 @@
+package io.nflow.engine.workflow.executor;
+
+public class StateExecutionTimeoutException extends RuntimeException {
+
+  private static final long serialVersionUID = 1L;
+
+  public StateExecutionTimeoutException(String message) {
+    super(message);
+  }
+
+  public StateExecutionTimeoutException(String message, Throwable cause) {
+    super(message, cause);
+  }
+}
@@ -0,0 +1,39 @@
+package io.nflow.engine.workflow.executor;
+
+/**
+ * Channel for waking up workflow dispatchers when workflow instances become executable. When the dispatcher finds no work, it
+ * waits on the channel instead of sleeping for the whole polling interval. Implementations may deliver the notifications to
+ * the dispatchers of other nFlow nodes too. The polling interval is still used as the maximum wait time, so a lost
+ * notification only delays the execution until the next poll.
+ */
+public interface WakeupChannel {
+
+  /**
+   * Notify the dispatchers of the executor group that workflow instances may be ready for execution. Called after the
+   * transaction that made the instances executable has been committed.
+   */
+  void notifyWorkAvailable();
+
+  /**
+   * Notify the dispatchers of the executor group in the transaction that makes workflow instances executable. Called before
+   * the transaction is committed, or before <code>notifyWorkAvailable</code> when there is no transaction. Channels that
+   * deliver the notifications through the database can use the connection of the transaction. The default implementation
+   * does nothing.
+   */
+  default void notifyWorkAvailableInTransaction() {
+    // no-op
+  }
+
+  /**
+   * Wake up the dispatcher of this node only.
+   */
+  void wakeUp();
+
+  /**
+   * Wait until woken up or until the timeout expires.
+   * @param timeoutMillis The maximum time to wait in milliseconds.
+   * @return True if woken up, false if the timeout expired.
+   * @throws InterruptedException If the waiting thread is interrupted.
+   */
+  boolean awaitWork(long timeoutMillis) throws InterruptedException;
+}
@@ -53,6 +53,14 @@ create table if not exists nflow_workflow_state (
   foreign key (workflow_id) references nflow_workflow(id) on delete cascade
 );
 
+create table if not exists nflow_workflow_state_current (
+  workflow_id int not null,
+  state_key varchar(64) not null,
+  state_value varchar(10240) not null,
+  primary key (workflow_id, state_key),
+  foreign key (workflow_id) references nflow_workflow(id) on delete cascade
+);
+
 create table if not exists nflow_executor (
   id int not null auto_increment primary key,
   host varchar(253) not null,
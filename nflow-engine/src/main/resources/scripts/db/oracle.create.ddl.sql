@@ -90,6 +90,15 @@ create table nflow_workflow_state (
 )
 /
 
+create table nflow_workflow_state_current (
+  workflow_id int not null,
+  state_key varchar(64) not null,
+  state_value clob not null,
+  primary key (workflow_id, state_key),
+  foreign key (workflow_id) references nflow_workflow(id) on delete cascade
+)
+/
+
 create table nflow_executor (
   id int not null primary key,
   host varchar(253) not null,
@@ -81,6 +81,15 @@ create table nflow_workflow_state (
 if not exists (select 1 from sys.indexes where name='nflow_workflow_state_workflow')
 create index nflow_workflow_state_workflow on nflow_workflow_state(workflow_id);
 
+if not exists (select 1 from sys.tables where name='nflow_workflow_state_current')
+create table nflow_workflow_state_current (
+  workflow_id int not null,
+  state_key varchar(64) not null,
+  state_value text not null,
+  primary key (workflow_id, state_key),
+  foreign key (workflow_id) references nflow_workflow(id) on delete cascade
+);
+
 if not exists (select 1 from sys.tables where name='nflow_executor')
 create table nflow_executor (
   id int not null identity(1,1) primary key,
@@ -0,0 +1,18 @@
+-- The current state variables table is used when nflow.db.currentStateVariables.enabled is true. The insert below
+-- fills it from the state variable history. The table is not updated while the property is false. Before setting the
+-- property to true again, delete the rows of the table. nFlow fills an empty table from the history when it starts.
+
+create table nflow_workflow_state_current (
+  workflow_id int not null,
+  state_key varchar(64) not null,
+  state_value clob not null,
+  primary key (workflow_id, state_key),
+  foreign key (workflow_id) references nflow_workflow(id) on delete cascade
+)
+/
+
+insert into nflow_workflow_state_current(workflow_id, state_key, state_value)
+select outside.workflow_id, outside.state_key, outside.state_value from nflow_workflow_state outside inner join
+  (select workflow_id, max(action_id) action_id, state_key from nflow_workflow_state group by workflow_id, state_key) inside
+  on outside.workflow_id = inside.workflow_id and outside.action_id = inside.action_id and outside.state_key = inside.state_key
+/
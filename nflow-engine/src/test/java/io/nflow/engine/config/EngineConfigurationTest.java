@@ -27,7 +27,9 @@ public class EngineConfigurationTest {
   @Spy
   private final MockEnvironment environment = new MockEnvironment().withProperty("nflow.executor.thread.count", "100")
       .withProperty("nflow.dispatcher.await.termination.seconds", "60")
-      .withProperty("nflow.dispatcher.executor.thread.keepalive.seconds", "0");
+      .withProperty("nflow.dispatcher.executor.thread.keepalive.seconds", "0")
+      .withProperty("nflow.executor.async.maxInFlight", "1000")
+      .withProperty("nflow.executor.autotune.enabled", "false");
   @Mock
   private ThreadFactory threadFactory;
 
@@ -14,13 +14,17 @@ import javax.inject.Inject;
 
 import org.joda.time.DateTime;
 
+import io.nflow.engine.internal.storage.db.SQLVariants;
 import io.nflow.engine.workflow.executor.WorkflowExecutor;
 import org.junit.jupiter.api.Test;
+import org.springframework.mock.env.MockEnvironment;
 
 public class ExecutorDaoTest extends BaseDaoTest {
 
   @Inject
   ExecutorDao dao;
+  @Inject
+  SQLVariants sqlVariants;
 
   @Test
   public void tickCausesDeadNodeRecoveryPeriodically() {
@@ -66,4 +70,44 @@ public class ExecutorDaoTest extends BaseDaoTest {
     assertThat(executor.stopped, is(notNullValue()));
     assertThat(executor.stopped.isAfterNow(), is(false));
   }
+
+  @Test
+  public void liveExecutorsSplitPollingShards() {
+    MockEnvironment env = new MockEnvironment().withProperty("nflow.executor.group", "sharded")
+        .withProperty("nflow.executor.timeout.seconds", "900").withProperty("nflow.executor.keepalive.seconds", "60")
+        .withProperty("nflow.executor.shards", "4");
+    ExecutorDao first = new ExecutorDao(sqlVariants, jdbc, env);
+    ExecutorDao second = new ExecutorDao(sqlVariants, jdbc, env);
+
+    first.tick();
+    assertThat(first.getShardCondition(), is(""));
+
+    second.tick();
+    first.updateShards();
+    assertThat(first.getShardCondition(), is(" and mod(id, 4) in (0,2)"));
+    assertThat(second.getShardCondition(), is(" and mod(id, 4) in (1,3)"));
+
+    second.markShutdown();
+    first.updateShards();
+    assertThat(first.getShardCondition(), is(""));
+  }
+
+  @Test
+  public void shardsOfExecutorThatMissedKeepalivesAreTakenOver() {
+    MockEnvironment env = new MockEnvironment().withProperty("nflow.executor.group", "sharded")
+        .withProperty("nflow.executor.timeout.seconds", "900").withProperty("nflow.executor.keepalive.seconds", "60")
+        .withProperty("nflow.executor.shards", "4");
+    ExecutorDao first = new ExecutorDao(sqlVariants, jdbc, env);
+    ExecutorDao crashed = new ExecutorDao(sqlVariants, jdbc, env);
+    first.tick();
+    crashed.tick();
+    first.updateShards();
+    assertThat(first.getShardCondition(), is(" and mod(id, 4) in (0,2)"));
+
+    // the crashed executor has not expired yet, but it has missed its keepalives
+    jdbc.update("update nflow_executor set active = ? where id = ?", now().minusMinutes(4).toDate(), crashed.getExecutorId());
+    first.updateShards();
+
+    assertThat(first.getShardCondition(), is(""));
+  }
 }
@@ -16,6 +16,7 @@ import static java.util.Arrays.asList;
 import static java.util.Collections.emptyList;
 import static java.util.Collections.emptyMap;
 import static java.util.Collections.emptySet;
+import static java.util.Collections.singletonMap;
 import static org.apache.commons.lang3.StringUtils.countMatches;
 import static org.apache.commons.lang3.StringUtils.repeat;
 import static org.hamcrest.CoreMatchers.equalTo;
@@ -33,10 +34,16 @@ import static org.junit.jupiter.api.Assertions.assertNull;
 import static org.junit.jupiter.api.Assertions.assertThrows;
 import static org.junit.jupiter.api.Assertions.assertTrue;
 import static org.junit.jupiter.api.Assertions.fail;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyList;
 import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.doAnswer;
 import static org.mockito.Mockito.lenient;
 import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
+import static org.springframework.test.util.AopTestUtils.getTargetObject;
+import static org.springframework.transaction.support.TransactionSynchronizationManager.isActualTransactionActive;
 
 import java.sql.ResultSet;
 import java.sql.SQLException;
@@ -65,7 +72,9 @@ import org.springframework.transaction.support.TransactionTemplate;
 
 import io.nflow.engine.config.db.PgDatabaseConfiguration.PostgreSQLVariants;
 import io.nflow.engine.internal.dao.WorkflowInstanceDao.WorkflowInstanceActionRowMapper;
+import io.nflow.engine.internal.executor.InMemoryWakeupChannel;
 import io.nflow.engine.internal.executor.WorkflowInstanceExecutor;
+import io.nflow.engine.internal.storage.db.MySQLVariants;
 import io.nflow.engine.internal.storage.db.SQLVariants;
 import io.nflow.engine.service.WorkflowInstanceInclude;
 import io.nflow.engine.workflow.executor.StateVariableValueTooLongException;
@@ -252,6 +261,183 @@ public class WorkflowInstanceDaoTest extends BaseDaoTest {
     assertThat(updatedInstance().actions.size(), is(1));
   }
 
+  @Test
+  public void updateWorkflowInstancesAfterExecutionCreatesActionsAndStateVariables() {
+    WorkflowInstance instance = updateInstanceBuilder().putStateVariable("foo", "bar").build();
+    WorkflowInstanceAction action = constructActionBuilder(instance.id).build();
+    claim(instance.id);
+
+    dao.updateWorkflowInstancesAfterExecution(asList(instance), asList(action));
+
+    assertThat(updatedInstance().actions.size(), is(1));
+    assertThat(dao.getWorkflowInstance(instance.id, EnumSet.of(CURRENT_STATE_VARIABLES), null).stateVariables.get("foo"),
+        is("bar"));
+  }
+
+  @Test
+  public void updateWorkflowInstancesAfterExecutionSkipsActionOfInstanceThatWasNotUpdated() {
+    WorkflowInstance instance = updateInstanceBuilder().putStateVariable("foo", "bar").build();
+    WorkflowInstance missing = new WorkflowInstance.Builder(instance).setId(instance.id + 1000).build();
+    claim(instance.id);
+
+    dao.updateWorkflowInstancesAfterExecution(asList(missing, instance),
+        asList(constructActionBuilder(missing.id).build(), constructActionBuilder(instance.id).build()));
+
+    assertThat(updatedInstance().actions.size(), is(1));
+    assertThat(jdbc.queryForObject("select count(*) from nflow_workflow_action where workflow_id = ?", Integer.class, missing.id),
+        is(0));
+  }
+
+  @Test
+  public void fakePostgreSQLupdateWorkflowInstancesAfterExecutionInsertsActionsInOneStatement() throws SQLException {
+    JdbcTemplate j = mock(JdbcTemplate.class);
+    TransactionTemplate transactionTemplate = mock(TransactionTemplate.class);
+    when(transactionTemplate.execute(any()))
+        .thenAnswer(invocation -> ((TransactionCallback<?>) invocation.getArgument(0)).doInTransaction(null));
+    WorkflowInstanceDao d = prepareDao(new PostgreSQLVariants(), j, transactionTemplate);
+    WorkflowInstance first = constructWorkflowInstanceBuilder().setId(1L).setStateVariables(singletonMap("foo", "1"))
+        .build();
+    WorkflowInstance notUpdated = constructWorkflowInstanceBuilder().setId(2L).setStateVariables(singletonMap("foo", "2"))
+        .build();
+    WorkflowInstance second = constructWorkflowInstanceBuilder().setId(3L).setStateVariables(singletonMap("foo", "3"))
+        .build();
+    when(j.batchUpdate(any(String.class), anyList())).thenReturn(new int[] { 1, 0, 1 }, new int[] { 1, 1 });
+    ResultSet rs = mock(ResultSet.class);
+    when(rs.getLong("workflow_id")).thenReturn(3L, 1L);
+    when(rs.getLong("id")).thenReturn(11L, 10L);
+    ArgumentCaptor<String> sql = ArgumentCaptor.forClass(String.class);
+    doAnswer(invocation -> {
+      RowCallbackHandler handler = invocation.getArgument(1);
+      handler.processRow(rs);
+      handler.processRow(rs);
+      return null;
+    }).when(j).query(sql.capture(), any(RowCallbackHandler.class), (Object[]) any());
+
+    d.updateWorkflowInstancesAfterExecution(asList(first, notUpdated, second), asList(constructActionBuilder(1L).build(),
+        constructActionBuilder(2L).build(), constructActionBuilder(3L).build()));
+
+    assertThat(sql.getValue(), is(d.insertWorkflowActionSql() + " values (?, ?, ?::action_type, ?, ?, ?, ?, ?), "
+        + "(?, ?, ?::action_type, ?, ?, ?, ?, ?) returning id, workflow_id"));
+    @SuppressWarnings("unchecked")
+    ArgumentCaptor<List<Object[]>> variables = ArgumentCaptor.forClass(List.class);
+    verify(j).batchUpdate(eq(d.insertWorkflowInstanceStateSql() + " values (?,?,?,?)"), variables.capture());
+    assertThat(variables.getValue().size(), is(2));
+    assertThat(variables.getValue().get(0), is(new Object[] { 1L, 10L, "foo", "1" }));
+    assertThat(variables.getValue().get(1), is(new Object[] { 3L, 11L, "foo", "3" }));
+  }
+
+  @Test
+  public void getStateVariablesReturnsCurrentValuesOfRequestedVariables() {
+    WorkflowInstance instance = updateInstanceBuilder().putStateVariable("foo", "1").putStateVariable("bar", "2").build();
+    dao.updateWorkflowInstanceAfterExecution(instance, constructActionBuilder(instance.id).build(), noChildWorkflows,
+        emptyWorkflows, true);
+    WorkflowInstance updated = new WorkflowInstance.Builder(instance).setOriginalStateVariables(instance.stateVariables)
+        .putStateVariable("foo", "3").build();
+    dao.updateWorkflowInstanceAfterExecution(updated, constructActionBuilder(instance.id).build(), noChildWorkflows,
+        emptyWorkflows, true);
+
+    Map<String, String> variables = dao.getStateVariables(instance.id, asList("foo", "missing"));
+
+    assertThat(variables.size(), is(1));
+    assertThat(variables.get("foo"), is("3"));
+  }
+
+  @Test
+  public void currentStateVariablesAreKeptInCurrentStateVariablesTable() {
+    WorkflowInstanceDao target = getTargetObject(dao);
+    target.currentStateVariables = true;
+    try {
+      long id = dao.insertWorkflowInstance(constructWorkflowInstanceBuilder().putStateVariable("foo", "1")
+          .putStateVariable("bar", "2").build());
+      WorkflowInstance instance = new WorkflowInstance.Builder(
+          dao.getWorkflowInstance(id, EnumSet.of(CURRENT_STATE_VARIABLES), null)).setStatus(inProgress)
+              .putStateVariable("foo", "3").build();
+      dao.updateWorkflowInstanceAfterExecution(instance, constructActionBuilder(id).build(), noChildWorkflows, emptyWorkflows,
+          true);
+      instance = new WorkflowInstance.Builder(dao.getWorkflowInstance(id, EnumSet.of(CURRENT_STATE_VARIABLES), null))
+          .putStateVariable("bar", "4").build();
+      claim(id);
+      dao.updateWorkflowInstancesAfterExecution(asList(instance), asList(constructActionBuilder(id).build()));
+
+      assertThat(jdbc.queryForObject("select count(*) from nflow_workflow_state_current where workflow_id = ?", Integer.class, id),
+          is(3));
+      // the values are read from the current state variables table
+      jdbc.update("update nflow_workflow_state_current set state_value = ? where workflow_id = ? and state_key = ?", "5", id,
+          "foo");
+      WorkflowInstance loaded = dao.getWorkflowInstance(id, EnumSet.of(CURRENT_STATE_VARIABLES), null);
+      assertThat(loaded.stateVariables.get("foo"), is("5"));
+      assertThat(loaded.stateVariables.get("bar"), is("4"));
+      assertThat(dao.getStateVariables(id, asList("foo", "missing")), is(singletonMap("foo", "5")));
+    } finally {
+      target.currentStateVariables = false;
+    }
+  }
+
+  @Test
+  public void currentStateVariablesAreFilledFromHistoryWhenEnabled() {
+    long id = dao.insertWorkflowInstance(constructWorkflowInstanceBuilder().putStateVariable("foo", "1").build());
+    WorkflowInstance instance = new WorkflowInstance.Builder(
+        dao.getWorkflowInstance(id, EnumSet.of(CURRENT_STATE_VARIABLES), null)).setStatus(inProgress)
+            .putStateVariable("foo", "3").build();
+    dao.updateWorkflowInstanceAfterExecution(instance, constructActionBuilder(id).build(), noChildWorkflows, emptyWorkflows,
+        true);
+    // the table is not maintained when current state variables are disabled
+    assertThat(jdbc.queryForObject("select count(*) from nflow_workflow_state_current where workflow_id = ?", Integer.class, id),
+        is(0));
+    dao.fillCurrentStateVariables();
+    assertThat(jdbc.queryForObject("select count(*) from nflow_workflow_state_current", Integer.class), is(0));
+
+    WorkflowInstanceDao target = getTargetObject(dao);
+    target.currentStateVariables = true;
+    try {
+      jdbc.update("delete from nflow_workflow_state_current");
+      dao.fillCurrentStateVariables();
+      assertThat(dao.getStateVariables(id, asList("foo")), is(singletonMap("foo", "3")));
+      assertThat(jdbc.queryForObject("select count(*) from nflow_workflow_state_current where workflow_id = ?", Integer.class, id),
+          is(2));
+    } finally {
+      target.currentStateVariables = false;
+    }
+  }
+
+  @Test
+  public void insertWorkflowInstancesReturnsIdsInOrder() {
+    WorkflowInstance first = constructWorkflowInstanceBuilder().putStateVariable("foo", "1").build();
+    WorkflowInstance second = constructWorkflowInstanceBuilder().setType("other").build();
+    WorkflowInstance third = constructWorkflowInstanceBuilder().setStateVariables(emptyMap()).build();
+
+    List<Long> ids = dao.insertWorkflowInstances(asList(first, second, third));
+
+    assertThat(ids.size(), is(3));
+    assertThat(dao.getWorkflowInstance(ids.get(0), EnumSet.of(CURRENT_STATE_VARIABLES), null).stateVariables.get("foo"),
+        is("1"));
+    assertThat(dao.getWorkflowInstance(ids.get(1), emptySet(), null).externalId, is(second.externalId));
+    assertThat(dao.getWorkflowInstance(ids.get(1), emptySet(), null).type, is("other"));
+    assertThat(dao.getWorkflowInstance(ids.get(2), emptySet(), null).externalId, is(third.externalId));
+  }
+
+  @Test
+  public void insertWorkflowInstancesReturnsMinusOneForExistingInstances() {
+    WorkflowInstance existing = constructWorkflowInstanceBuilder().build();
+    long existingId = dao.insertWorkflowInstance(existing);
+    WorkflowInstance created = constructWorkflowInstanceBuilder().build();
+
+    List<Long> ids = dao.insertWorkflowInstances(asList(created, existing));
+
+    assertThat(ids.get(1), is(-1L));
+    assertThat(ids.get(0), not(existingId));
+    assertThat(dao.getWorkflowInstance(ids.get(0), emptySet(), null).externalId, is(created.externalId));
+  }
+
+  @Test
+  public void updateWorkflowInstancesAfterExecutionDoesNotCreateActionWithoutAction() {
+    WorkflowInstance instance = updateInstanceBuilder().build();
+
+    dao.updateWorkflowInstancesAfterExecution(asList(instance), asList((WorkflowInstanceAction) null));
+
+    assertThat(updatedInstance().actions.isEmpty(), is(true));
+  }
+
   private WorkflowInstance.Builder updateInstanceBuilder() {
     WorkflowInstance instance = constructWorkflowInstanceBuilder().setStatus(created).setBusinessKey("updatedKey").build();
     long id = dao.insertWorkflowInstance(instance);
@@ -262,6 +448,10 @@ public class WorkflowInstanceDaoTest extends BaseDaoTest {
             .setStateText("update text");
   }
 
+  private void claim(long id) {
+    jdbc.update("update nflow_workflow set executor_id = ? where id = ?", executorDao.getExecutorId(), id);
+  }
+
   private WorkflowInstance updatedInstance() {
     QueryWorkflowInstances query = new QueryWorkflowInstances.Builder() //
         .setBusinessKey("updatedKey") //
@@ -650,6 +840,49 @@ public class WorkflowInstanceDaoTest extends BaseDaoTest {
     assertThat(secondBatch.size(), equalTo(0));
   }
 
+  @Test
+  public void pollNextWorkflowInstancesLimitsInstancesOfTypesWithCapacity() {
+    long limitedId = dao.insertWorkflowInstance(constructWorkflowInstanceBuilder().setType("limited")
+        .setNextActivation(now().minusMinutes(2)).setExecutorGroup("junit").build());
+    dao.insertWorkflowInstance(constructWorkflowInstanceBuilder().setType("limited").setNextActivation(now().minusMinutes(1))
+        .setExecutorGroup("junit").build());
+    long blockedId = dao.insertWorkflowInstance(constructWorkflowInstanceBuilder().setType("blocked")
+        .setNextActivation(now().minusMinutes(1)).setExecutorGroup("junit").build());
+    long otherId = dao.insertWorkflowInstance(constructWorkflowInstanceBuilder().setNextActivation(now().minusMinutes(1))
+        .setExecutorGroup("junit").build());
+    Map<String, Integer> typeCapacities = new LinkedHashMap<>();
+    typeCapacities.put("limited", 1);
+    typeCapacities.put("blocked", 0);
+
+    List<Long> ids = dao.pollNextWorkflowInstanceIds(100, typeCapacities);
+
+    assertThat(ids, containsInAnyOrder(limitedId, otherId));
+    assertThat(dao.getExecutingWorkflowInstanceCounts(asList("limited", "blocked"), true).get("limited"), is(1));
+    assertThat(dao.claimWorkflowInstances(asList(blockedId), asList("blocked")).isEmpty(), is(true));
+  }
+
+  @Test
+  public void pollNextWorkflowInstancesWithStateVariablesAndChildWorkflowIds() {
+    WorkflowInstance parent = constructWorkflowInstanceBuilder().setNextActivation(now().minusMinutes(1)).setExecutorGroup("junit")
+        .build();
+    long parentId = dao.insertWorkflowInstance(parent);
+    long actionId = dao.insertWorkflowInstanceAction(constructActionBuilder(parentId).build());
+    WorkflowInstance child = constructWorkflowInstanceBuilder().setParentWorkflowId(parentId).setParentActionId(actionId)
+        .setNextActivation(null).setExecutorGroup("junit").build();
+    long childId = dao.insertWorkflowInstance(child);
+
+    List<WorkflowInstance> instances = dao.pollNextWorkflowInstances(100, true);
+
+    assertThat(instances.size(), is(1));
+    WorkflowInstance polled = instances.get(0);
+    assertThat(polled.id, is(parentId));
+    assertThat(polled.status, is(executing));
+    assertThat(polled.stateVariables, is(parent.stateVariables));
+    assertThat(polled.originalStateVariables, is(parent.stateVariables));
+    assertThat(polled.childWorkflows.get(actionId), contains(childId));
+    assertThat(dao.pollNextWorkflowInstances(100, true).isEmpty(), is(true));
+  }
+
   @Test
   public void pollNextWorkflowInstancesReturnInstancesInCorrectOrder() {
     long olderLowPrio = createInstance(2, (short) 1);
@@ -674,25 +907,95 @@ public class WorkflowInstanceDaoTest extends BaseDaoTest {
         .setPriority(priority).setExecutorGroup("junit").build());
   }
 
+  @Test
+  public void claimWorkflowInstancesClaimsOnlyExecutableInstances() {
+    long executable = createInstance(1, (short) 0);
+    long scheduled = dao.insertWorkflowInstance(constructWorkflowInstanceBuilder().setNextActivation(now().plusMinutes(1))
+        .setExecutorGroup("junit").build());
+    assertThat(dao.claimWorkflowInstances(asList(executable, scheduled)), contains(executable));
+    assertThat(dao.claimWorkflowInstances(asList(executable)).size(), equalTo(0));
+    assertThat(dao.getWorkflowInstance(executable, emptySet(), null).status, is(executing));
+    assertThat(dao.pollNextWorkflowInstanceIds(100).size(), equalTo(0));
+  }
+
+  @Test
+  public void releaseWorkflowInstancesReleasesOnlyInstancesExecutedByThisExecutor() {
+    long claimed = createInstance(1, (short) 0);
+    long notClaimed = createInstance(1, (short) 0);
+    assertThat(dao.claimWorkflowInstances(asList(claimed)), contains(claimed));
+
+    assertThat(dao.releaseWorkflowInstances(asList(claimed, notClaimed)), is(1));
+
+    WorkflowInstance released = dao.getWorkflowInstance(claimed, emptySet(), null);
+    assertThat(released.status, is(inProgress));
+    assertThat(released.executorId, is(nullValue()));
+    assertThat(dao.pollNextWorkflowInstanceIds(100), containsInAnyOrder(claimed, notClaimed));
+  }
+
+  @Test
+  public void insertingExecutableWorkflowInstanceWakesUpDispatcher() throws InterruptedException {
+    workflowInstanceExecutor.waitForDispatcherWakeUp(0);
+    createInstance(1, (short) 0);
+    assertThat(workflowInstanceExecutor.waitForDispatcherWakeUp(0), is(true));
+  }
+
+  @Test
+  public void otherNodesAreNotifiedInTransactionThatInsertsExecutableWorkflowInstance() {
+    List<Boolean> notifiedInTransaction = new ArrayList<>();
+    workflowInstanceExecutor.setWakeupChannel(new InMemoryWakeupChannel() {
+      @Override
+      public void notifyWorkAvailableInTransaction() {
+        notifiedInTransaction.add(isActualTransactionActive());
+      }
+    });
+    try {
+      transaction.execute(status -> createInstance(1, (short) 0));
+    } finally {
+      workflowInstanceExecutor.setWakeupChannel(new InMemoryWakeupChannel());
+    }
+    assertThat(notifiedInTransaction, contains(true));
+  }
+
   @Test
   public void fakePostgreSQLpollNextWorkflowInstances() {
     JdbcTemplate j = mock(JdbcTemplate.class);
     WorkflowInstanceDao d = preparePostgreSQLDao(j);
     ArgumentCaptor<String> sql = ArgumentCaptor.forClass(String.class);
-    when(j.queryForList(sql.capture(), eq(Long.class))).thenReturn(asList(1L, 2L, 3L));
+    when(j.queryForList(sql.capture(), eq(Long.class), any(Object[].class))).thenReturn(asList(1L, 2L, 3L));
+    assertThat(d.pollNextWorkflowInstanceIds(5), is(asList(1L, 2L, 3L)));
+    assertEquals(
+        "update nflow_workflow set executor_id = 42, status = 'executing'::workflow_status, external_next_activation = null where id in (select id from nflow_workflow where executor_id is null and status in ('created'::workflow_status, 'inProgress'::workflow_status) and next_activation <= current_timestamp and group matches order by priority desc, next_activation asc limit 5 for update skip locked) and executor_id is null returning id",
+        sql.getValue());
+  }
+
+  @Test
+  public void fakeMySQLpollNextWorkflowInstancesWithSkipLocked() {
+    JdbcTemplate j = mock(JdbcTemplate.class);
+    TransactionTemplate transactionTemplate = mock(TransactionTemplate.class);
+    when(transactionTemplate.execute(any()))
+        .thenAnswer(invocation -> ((TransactionCallback<?>) invocation.getArgument(0)).doInTransaction(null));
+    WorkflowInstanceDao d = prepareDao(new MySQLVariants(true), j, transactionTemplate);
+    ArgumentCaptor<String> sql = ArgumentCaptor.forClass(String.class);
+    when(j.queryForList(sql.capture(), eq(Long.class), any(Object[].class))).thenReturn(asList(1L, 2L, 3L));
     assertThat(d.pollNextWorkflowInstanceIds(5), is(asList(1L, 2L, 3L)));
     assertEquals(
-        "update nflow_workflow set executor_id = 42, status = 'executing'::workflow_status, external_next_activation = null where id in (select id from nflow_workflow where executor_id is null and status in ('created'::workflow_status, 'inProgress'::workflow_status) and next_activation <= current_timestamp and group matches order by priority desc, next_activation asc limit 5) and executor_id is null returning id",
+        "select id from nflow_workflow where executor_id is null and status in ('created', 'inProgress') and next_activation <= current_timestamp and group matches order by priority desc, next_activation asc limit 5 for update skip locked",
         sql.getValue());
+    verify(j).update(
+        "update nflow_workflow set executor_id = 42, status = 'executing', external_next_activation = null where id in (1,2,3)");
   }
 
   private WorkflowInstanceDao preparePostgreSQLDao(JdbcTemplate jdbcTemplate) {
+    return prepareDao(new PostgreSQLVariants(), jdbcTemplate, mock(TransactionTemplate.class));
+  }
+
+  private WorkflowInstanceDao prepareDao(SQLVariants variants, JdbcTemplate jdbcTemplate, TransactionTemplate transactionTemplate) {
     ExecutorDao eDao = mock(ExecutorDao.class);
     lenient().when(eDao.getExecutorGroupCondition()).thenReturn("group matches");
     lenient().when(eDao.getExecutorId()).thenReturn(42);
+    lenient().when(eDao.getShardCondition()).thenReturn("");
     NamedParameterJdbcTemplate namedJdbc = mock(NamedParameterJdbcTemplate.class);
-    TransactionTemplate transactionTemplate = mock(TransactionTemplate.class);
-    WorkflowInstanceDao d = new WorkflowInstanceDao(new PostgreSQLVariants(), jdbcTemplate, transactionTemplate, namedJdbc, eDao,
+    WorkflowInstanceDao d = new WorkflowInstanceDao(variants, jdbcTemplate, transactionTemplate, namedJdbc, eDao,
         workflowInstanceExecutor, workflowInstanceFactory, env);
 
     d.instanceStateTextLength = 128;
@@ -905,6 +1208,32 @@ public class WorkflowInstanceDaoTest extends BaseDaoTest {
     assertThat(workflowInstanceAction.stateText, is("Recovered"));
   }
 
+  @Test
+  public void recoverWorkflowInstancesFromDeadNodesRecoversInBatches() {
+    int crashedExecutorId = 999;
+    insertCrashedExecutor(crashedExecutorId, executorDao.getExecutorGroup());
+    List<Long> ids = new ArrayList<>();
+    for (int i = 0; i < 3; i++) {
+      long id = dao.insertWorkflowInstance(new WorkflowInstance.Builder().setType("test").setExternalId("extId" + i)
+          .setExecutorGroup(executorDao.getExecutorGroup()).setStatus(executing).setState("processing").setPriority((short) 0)
+          .build());
+      jdbc.update("update nflow_workflow set executor_id = ? where id = ?", crashedExecutorId, id);
+      ids.add(id);
+    }
+
+    assertThat(dao.recoverWorkflowInstancesFromDeadNodes(2), is(2));
+    assertThat(dao.recoverWorkflowInstancesFromDeadNodes(2), is(1));
+    assertThat(dao.recoverWorkflowInstancesFromDeadNodes(2), is(0));
+
+    for (long id : ids) {
+      List<WorkflowInstanceAction> actions = jdbc.query("select * from nflow_workflow_action where workflow_id = ?",
+          new WorkflowInstanceActionRowMapper(sqlVariant, Collections.emptyMap()), id);
+      assertThat(actions.size(), is(1));
+      assertThat(actions.get(0).type, is(recovery));
+      assertThat(actions.get(0).state, is("processing"));
+    }
+  }
+
   @Test
   public void settingSignalInsertsAction() {
     WorkflowInstance i = constructWorkflowInstanceBuilder().setBusinessKey("setSignalTest").build();
@@ -0,0 +1,55 @@
+package io.nflow.engine.internal.executor;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.is;
+
+import org.junit.jupiter.api.Test;
+
+public class AdaptivePollIntervalTest {
+
+  private final AdaptivePollInterval interval = new AdaptivePollInterval(100, 350);
+
+  @Test
+  public void fullBatchIsPolledAgainImmediately() {
+    assertThat(interval.afterPoll(10, 10), is(0L));
+    assertThat(interval.getLastPollYield(), is(1.0));
+  }
+
+  @Test
+  public void partialBatchWaitsMinimumInterval() {
+    assertThat(interval.afterPoll(5, 10), is(100L));
+    assertThat(interval.getLastPollYield(), is(0.5));
+  }
+
+  @Test
+  public void emptyPollsBackOffExponentiallyUpToMaximum() {
+    assertThat(interval.afterPoll(0, 10), is(100L));
+    assertThat(interval.afterPoll(0, 10), is(200L));
+    assertThat(interval.afterPoll(0, 10), is(350L));
+    assertThat(interval.afterPoll(0, 10), is(350L));
+    assertThat(interval.getIntervalMillis(), is(350L));
+    assertThat(interval.getLastPollYield(), is(0.0));
+  }
+
+  @Test
+  public void emptyBatchWaitsCurrentInterval() {
+    interval.afterPoll(0, 10);
+    assertThat(interval.afterPoll(0, 0), is(200L));
+    assertThat(interval.getIntervalMillis(), is(200L));
+  }
+
+  @Test
+  public void foundInstancesResetBackOff() {
+    interval.afterPoll(0, 10);
+    interval.afterPoll(0, 10);
+    assertThat(interval.afterPoll(1, 10), is(100L));
+    assertThat(interval.getIntervalMillis(), is(100L));
+  }
+
+  @Test
+  public void resetRestoresMinimumInterval() {
+    interval.afterPoll(0, 10);
+    interval.reset();
+    assertThat(interval.getIntervalMillis(), is(100L));
+  }
+}
@@ -0,0 +1,80 @@
+package io.nflow.engine.internal.executor;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.is;
+import static org.mockito.Mockito.timeout;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.mock.env.MockEnvironment;
+
+import io.nflow.engine.internal.dao.WorkflowInstanceDao;
+
+@ExtendWith(MockitoExtension.class)
+public class DeadNodeRecoveryTest {
+
+  @Mock
+  WorkflowInstanceDao workflowInstances;
+  MockEnvironment env = new MockEnvironment();
+  DeadNodeRecovery recovery;
+
+  @BeforeEach
+  public void setup() {
+    env.setProperty("nflow.executor.recovery.batchSize", "2");
+    recovery = new DeadNodeRecovery(workflowInstances, env);
+  }
+
+  @AfterEach
+  public void shutdown() {
+    recovery.shutdown();
+  }
+
+  @Test
+  public void recoversInBatchesUntilNothingIsRecovered() {
+    when(workflowInstances.recoverWorkflowInstancesFromDeadNodes(2)).thenReturn(2, 1, 0);
+
+    recovery.recover();
+
+    verify(workflowInstances, times(3)).recoverWorkflowInstancesFromDeadNodes(2);
+    assertThat(recovery.getLastRecoveredInstances(), is(3));
+    assertThat(recovery.getRecoveredInstances(), is(3L));
+    assertThat(recovery.isRunning(), is(false));
+  }
+
+  @Test
+  public void recoveredInstancesAreCountedOverRecoveries() {
+    when(workflowInstances.recoverWorkflowInstancesFromDeadNodes(2)).thenReturn(1, 0, 0);
+
+    recovery.recover();
+    recovery.recover();
+
+    assertThat(recovery.getLastRecoveredInstances(), is(0));
+    assertThat(recovery.getRecoveredInstances(), is(1L));
+  }
+
+  @Test
+  public void failedRecoveryIsStopped() {
+    when(workflowInstances.recoverWorkflowInstancesFromDeadNodes(2)).thenReturn(2).thenThrow(new RuntimeException("test"));
+
+    recovery.recover();
+
+    assertThat(recovery.getLastRecoveredInstances(), is(2));
+    assertThat(recovery.isRunning(), is(false));
+  }
+
+  @Test
+  public void requestedRecoveryIsRunInBackground() {
+    when(workflowInstances.recoverWorkflowInstancesFromDeadNodes(2)).thenReturn(0);
+
+    recovery.requestRecovery();
+
+    verify(workflowInstances, timeout(5000)).recoverWorkflowInstancesFromDeadNodes(2);
+  }
+}
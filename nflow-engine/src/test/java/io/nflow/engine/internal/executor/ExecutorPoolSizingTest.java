@@ -0,0 +1,60 @@
+package io.nflow.engine.internal.executor;
+
+import static io.nflow.engine.internal.executor.ExecutorPoolSizing.defaultMaxPoolSize;
+import static io.nflow.engine.internal.executor.ExecutorPoolSizing.executorThreadCount;
+import static io.nflow.engine.internal.executor.ExecutorPoolSizing.maxExecutorThreadCount;
+import static java.lang.Runtime.getRuntime;
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.is;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.mock.env.MockEnvironment;
+
+public class ExecutorPoolSizingTest {
+
+  private final MockEnvironment env = new MockEnvironment().withProperty("nflow.executor.autotune.enabled", "false");
+
+  @Test
+  public void explicitThreadCountIsUsed() {
+    env.setProperty("nflow.executor.thread.count", "7");
+    env.setProperty("nflow.db.max_pool_size", "3");
+    assertThat(executorThreadCount(env), is(7));
+  }
+
+  @Test
+  public void threadCountDefaultsToTwoThreadsPerProcessor() {
+    assertThat(executorThreadCount(env), is(2 * getRuntime().availableProcessors()));
+  }
+
+  @Test
+  public void threadCountIsLimitedByExplicitPoolSize() {
+    env.setProperty("nflow.db.max_pool_size", "4");
+    assertThat(executorThreadCount(env), is(2));
+  }
+
+  @Test
+  public void threadCountIsAtLeastOne() {
+    env.setProperty("nflow.db.max_pool_size", "1");
+    assertThat(executorThreadCount(env), is(1));
+  }
+
+  @Test
+  public void defaultPoolSizeHasConnectionForEachThread() {
+    env.setProperty("nflow.executor.thread.count", "7");
+    assertThat(defaultMaxPoolSize(env), is(9));
+  }
+
+  @Test
+  public void maxThreadCountIsThreadCountWithoutTuning() {
+    env.setProperty("nflow.executor.thread.count", "7");
+    assertThat(maxExecutorThreadCount(env), is(7));
+  }
+
+  @Test
+  public void defaultPoolSizeHasConnectionForEachThreadOfTunedExecutor() {
+    env.setProperty("nflow.executor.autotune.enabled", "true");
+    env.setProperty("nflow.executor.autotune.thread.count.max", "20");
+    assertThat(maxExecutorThreadCount(env), is(20));
+    assertThat(defaultMaxPoolSize(env), is(22));
+  }
+}
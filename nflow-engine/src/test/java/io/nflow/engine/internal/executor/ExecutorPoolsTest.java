@@ -0,0 +1,164 @@
+package io.nflow.engine.internal.executor;
+
+import static java.util.Arrays.asList;
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.contains;
+import static org.hamcrest.Matchers.containsInAnyOrder;
+import static org.hamcrest.Matchers.empty;
+import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.notNullValue;
+import static org.hamcrest.Matchers.nullValue;
+import static org.hamcrest.Matchers.sameInstance;
+import static org.mockito.Mockito.doReturn;
+import static org.mockito.Mockito.lenient;
+import static org.mockito.Mockito.mock;
+
+import java.util.Map;
+import java.util.Set;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.mock.env.MockEnvironment;
+
+import io.nflow.engine.service.WorkflowDefinitionService;
+import io.nflow.engine.workflow.definition.AbstractWorkflowDefinition;
+import io.nflow.engine.workflow.definition.WorkflowSettings;
+
+@ExtendWith(MockitoExtension.class)
+public class ExecutorPoolsTest {
+
+  @Mock
+  WorkflowDefinitionService workflowDefinitions;
+  MockEnvironment env = new MockEnvironment();
+  ExecutorPools pools;
+
+  @BeforeEach
+  public void setup() {
+    env.setProperty("nflow.dispatcher.await.termination.seconds", "1");
+    env.setProperty("nflow.dispatcher.executor.thread.keepalive.seconds", "0");
+    env.setProperty("nflow.executor.async.maxInFlight", "2");
+    AbstractWorkflowDefinition<?> slow = definition("slow", "batch");
+    AbstractWorkflowDefinition<?> fast = definition("fast", null);
+    AbstractWorkflowDefinition<?> unknown = definition("unknown", "missing");
+    lenient().doReturn(asList(slow, fast, unknown)).when(workflowDefinitions).getWorkflowDefinitions();
+  }
+
+  @AfterEach
+  public void shutdown() {
+    if (pools != null) {
+      pools.shutdown();
+    }
+  }
+
+  @Test
+  public void noPoolsAreCreatedByDefault() {
+    pools = new ExecutorPools(workflowDefinitions, env);
+
+    assertThat(pools.isEmpty(), is(true));
+    assertThat(pools.getPoolTypes().isEmpty(), is(true));
+    assertThat(pools.getExecutor("slow"), is(nullValue()));
+    assertThat(pools.hasRemainingCapacity(), is(false));
+  }
+
+  @Test
+  public void poolsAreCreatedFromProperties() {
+    env.setProperty("nflow.executor.pools", "batch,interactive");
+    env.setProperty("nflow.executor.pool.batch.thread.count", "2");
+    env.setProperty("nflow.executor.pool.interactive.thread.count", "3");
+    env.setProperty("nflow.executor.pool.interactive.queue.size", "10");
+
+    pools = new ExecutorPools(workflowDefinitions, env);
+
+    assertThat(pools.getPools().keySet(), contains("batch", "interactive"));
+    assertThat(pools.getPools().get("batch").getQueueRemainingCapacity(), is(4));
+    assertThat(pools.getPools().get("interactive").getQueueRemainingCapacity(), is(10));
+    assertThat(pools.hasRemainingCapacity(), is(true));
+  }
+
+  @Test
+  public void poolsWithoutTypesHaveNoRemainingCapacity() {
+    env.setProperty("nflow.executor.pools", "interactive");
+    env.setProperty("nflow.executor.pool.interactive.thread.count", "1");
+
+    pools = new ExecutorPools(workflowDefinitions, env);
+
+    assertThat(pools.getPools().get("interactive").getQueueRemainingCapacity(), is(2));
+    assertThat(pools.hasRemainingCapacity(), is(false));
+  }
+
+  @Test
+  public void typesAreAssignedToPoolsBySettingsAndProperties() {
+    env.setProperty("nflow.executor.pools", "batch, interactive");
+    env.setProperty("nflow.executor.pool.batch.thread.count", "1");
+    env.setProperty("nflow.executor.pool.interactive.thread.count", "1");
+    env.setProperty("nflow.executor.pool.interactive.types", "fast");
+
+    pools = new ExecutorPools(workflowDefinitions, env);
+    Map<String, Set<String>> poolTypes = pools.getPoolTypes();
+
+    assertThat(poolTypes.get("batch"), contains("slow"));
+    assertThat(poolTypes.get("interactive"), contains("fast"));
+    assertThat(pools.getPooledTypes(poolTypes), containsInAnyOrder("slow", "fast"));
+  }
+
+  @Test
+  public void propertiesOverridePoolInSettings() {
+    env.setProperty("nflow.executor.pools", "batch,interactive");
+    env.setProperty("nflow.executor.pool.batch.thread.count", "1");
+    env.setProperty("nflow.executor.pool.interactive.thread.count", "1");
+    env.setProperty("nflow.executor.pool.interactive.types", "slow");
+
+    pools = new ExecutorPools(workflowDefinitions, env);
+    Map<String, Set<String>> poolTypes = pools.getPoolTypes();
+
+    assertThat(poolTypes.get("batch"), is(empty()));
+    assertThat(poolTypes.get("interactive"), contains("slow"));
+    assertThat(pools.getExecutor("slow"), is(sameInstance(pools.getPools().get("interactive"))));
+  }
+
+  @Test
+  public void typesWithoutConfiguredPoolUseDefaultPool() {
+    env.setProperty("nflow.executor.pools", "batch");
+    env.setProperty("nflow.executor.pool.batch.thread.count", "1");
+    doReturn(definition("slow", "batch")).when(workflowDefinitions).getWorkflowDefinition("slow");
+    doReturn(definition("fast", null)).when(workflowDefinitions).getWorkflowDefinition("fast");
+    doReturn(definition("unknown", "missing")).when(workflowDefinitions).getWorkflowDefinition("unknown");
+
+    pools = new ExecutorPools(workflowDefinitions, env);
+
+    assertThat(pools.getExecutor("slow"), is(notNullValue()));
+    assertThat(pools.getExecutor("fast"), is(nullValue()));
+    assertThat(pools.getExecutor("unknown"), is(nullValue()));
+  }
+
+  @Test
+  public void poolsAllowAsyncWaitsUpToLimit() {
+    env.setProperty("nflow.executor.pools", "batch,interactive");
+    env.setProperty("nflow.executor.pool.batch.thread.count", "1");
+    env.setProperty("nflow.executor.pool.interactive.thread.count", "1");
+    env.setProperty("nflow.executor.pool.interactive.async.maxInFlight", "0");
+    doReturn(definition("slow", "batch")).when(workflowDefinitions).getWorkflowDefinition("slow");
+
+    pools = new ExecutorPools(workflowDefinitions, env);
+    WorkflowInstanceExecutor batch = pools.getExecutor("slow");
+
+    assertThat(batch.tryStartAsyncWait(), is(true));
+    assertThat(batch.tryStartAsyncWait(), is(true));
+    assertThat(batch.tryStartAsyncWait(), is(false));
+    assertThat(batch.getQueueRemainingCapacity(), is(2));
+    batch.asyncWaitFinished();
+    assertThat(batch.tryStartAsyncWait(), is(true));
+    assertThat(pools.getPools().get("interactive").tryStartAsyncWait(), is(false));
+  }
+
+  private AbstractWorkflowDefinition<?> definition(String type, String executorPool) {
+    AbstractWorkflowDefinition<?> definition = mock(AbstractWorkflowDefinition.class);
+    lenient().doReturn(type).when(definition).getType();
+    lenient().doReturn(new WorkflowSettings.Builder().setExecutorPool(executorPool).build()).when(definition).getSettings();
+    return definition;
+  }
+}
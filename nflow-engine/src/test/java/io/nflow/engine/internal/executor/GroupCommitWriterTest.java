@@ -0,0 +1,83 @@
+package io.nflow.engine.internal.executor;
+
+import static io.nflow.engine.workflow.instance.WorkflowInstanceAction.WorkflowActionType.stateExecution;
+import static java.util.Arrays.asList;
+import static java.util.Collections.emptyList;
+import static java.util.Collections.singletonList;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.mockito.ArgumentMatchers.anyList;
+import static org.mockito.Mockito.doThrow;
+import static org.mockito.Mockito.verify;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.mock.env.MockEnvironment;
+
+import io.nflow.engine.internal.dao.WorkflowInstanceDao;
+import io.nflow.engine.workflow.instance.WorkflowInstance;
+import io.nflow.engine.workflow.instance.WorkflowInstanceAction;
+
+@ExtendWith(MockitoExtension.class)
+public class GroupCommitWriterTest {
+
+  @Mock
+  WorkflowInstanceDao workflowInstanceDao;
+  MockEnvironment env = new MockEnvironment();
+  GroupCommitWriter writer;
+  WorkflowInstance instance = new WorkflowInstance.Builder().setId(1).build();
+  WorkflowInstanceAction action = new WorkflowInstanceAction.Builder().setType(stateExecution)
+      .setWorkflowInstanceId(1).build();
+
+  @BeforeEach
+  public void setup() {
+    env.setProperty("nflow.executor.groupCommit.enabled", "true");
+    env.setProperty("nflow.executor.groupCommit.maxBatchSize", "100");
+    writer = new GroupCommitWriter(workflowInstanceDao, env);
+    writer.start();
+  }
+
+  @AfterEach
+  public void shutdown() {
+    writer.shutdown();
+  }
+
+  @Test
+  public void updateIsSavedInBatch() {
+    writer.updateWorkflowInstanceAfterExecution(instance, action, true);
+    verify(workflowInstanceDao).updateWorkflowInstancesAfterExecution(singletonList(instance), singletonList(action));
+  }
+
+  @Test
+  public void actionIsNotCreatedWhenNotNeeded() {
+    writer.updateWorkflowInstanceAfterExecution(instance, action, false);
+    verify(workflowInstanceDao).updateWorkflowInstancesAfterExecution(singletonList(instance), asList((WorkflowInstanceAction) null));
+  }
+
+  @Test
+  public void updateIsSavedDirectlyWhenWriterIsNotRunning() {
+    writer.shutdown();
+    writer.updateWorkflowInstanceAfterExecution(instance, action, true);
+    verify(workflowInstanceDao).updateWorkflowInstanceAfterExecution(instance, action, emptyList(), emptyList(), true);
+  }
+
+  @Test
+  public void updateIsSavedSeparatelyWhenBatchFails() {
+    doThrow(new IllegalStateException("batch failed")).when(workflowInstanceDao).updateWorkflowInstancesAfterExecution(anyList(),
+        anyList());
+    writer.updateWorkflowInstanceAfterExecution(instance, action, true);
+    verify(workflowInstanceDao).updateWorkflowInstanceAfterExecution(instance, action, emptyList(), emptyList(), true);
+  }
+
+  @Test
+  public void failureToSaveIsThrownToCaller() {
+    doThrow(new IllegalStateException("batch failed")).when(workflowInstanceDao).updateWorkflowInstancesAfterExecution(anyList(),
+        anyList());
+    doThrow(new IllegalStateException("save failed")).when(workflowInstanceDao).updateWorkflowInstanceAfterExecution(instance,
+        action, emptyList(), emptyList(), true);
+    assertThrows(IllegalStateException.class, () -> writer.updateWorkflowInstanceAfterExecution(instance, action, true));
+  }
+}
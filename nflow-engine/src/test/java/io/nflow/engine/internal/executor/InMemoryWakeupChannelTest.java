@@ -0,0 +1,41 @@
+package io.nflow.engine.internal.executor;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.is;
+
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import org.junit.jupiter.api.Test;
+
+public class InMemoryWakeupChannelTest {
+
+  private final InMemoryWakeupChannel channel = new InMemoryWakeupChannel();
+
+  @Test
+  public void awaitWorkTimesOutWithoutNotification() throws InterruptedException {
+    assertThat(channel.awaitWork(1), is(false));
+  }
+
+  @Test
+  public void notificationBeforeWaitingIsNotLost() throws InterruptedException {
+    channel.notifyWorkAvailable();
+    assertThat(channel.awaitWork(0), is(true));
+    assertThat(channel.awaitWork(0), is(false));
+  }
+
+  @Test
+  public void notificationEndsWaitingInAnotherThread() throws InterruptedException {
+    AtomicBoolean wokenUp = new AtomicBoolean();
+    Thread waiter = new Thread(() -> {
+      try {
+        wokenUp.set(channel.awaitWork(60000));
+      } catch (@SuppressWarnings("unused") InterruptedException e) {
+        Thread.currentThread().interrupt();
+      }
+    });
+    waiter.start();
+    channel.wakeUp();
+    waiter.join(10000);
+    assertThat(wokenUp.get(), is(true));
+  }
+}
@@ -0,0 +1,113 @@
+package io.nflow.engine.internal.executor;
+
+import static java.util.Arrays.asList;
+import static java.util.Collections.emptyList;
+import static java.util.Collections.singletonList;
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.is;
+import static org.mockito.Mockito.timeout;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.verifyNoMoreInteractions;
+import static org.mockito.Mockito.when;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.mock.env.MockEnvironment;
+
+import io.nflow.engine.internal.dao.WorkflowInstanceDao;
+
+@ExtendWith(MockitoExtension.class)
+public class ParentWakeupCoalescerTest {
+
+  @Mock
+  WorkflowInstanceDao workflowInstanceDao;
+  MockEnvironment env = new MockEnvironment();
+  ParentWakeupCoalescer coalescer;
+
+  @AfterEach
+  public void shutdown() {
+    if (coalescer != null) {
+      coalescer.shutdown();
+    }
+  }
+
+  private ParentWakeupCoalescer createCoalescer(long windowMillis) {
+    env.setProperty("nflow.executor.parentWakeup.window.ms", Long.toString(windowMillis));
+    coalescer = new ParentWakeupCoalescer(workflowInstanceDao, env);
+    return coalescer;
+  }
+
+  @Test
+  public void isDisabledWithZeroWindow() {
+    assertThat(createCoalescer(0).isEnabled(), is(false));
+  }
+
+  @Test
+  public void parentIsWokenUpAfterWindow() {
+    createCoalescer(10).wakeUpParent(1, singletonList("wait"));
+
+    verify(workflowInstanceDao, timeout(5000)).wakeUpWorkflowExternally(1, singletonList("wait"));
+  }
+
+  @Test
+  public void parentIsWokenUpOncePerWindow() {
+    createCoalescer(60000);
+    for (int i = 0; i < 10; i++) {
+      coalescer.wakeUpParent(1, singletonList("wait"));
+    }
+    coalescer.wakeUpParent(2, singletonList("wait"));
+
+    coalescer.shutdown();
+
+    verify(workflowInstanceDao).wakeUpWorkflowExternally(1, singletonList("wait"));
+    verify(workflowInstanceDao).wakeUpWorkflowExternally(2, singletonList("wait"));
+    verifyNoMoreInteractions(workflowInstanceDao);
+  }
+
+  @Test
+  public void expectedStatesAreMerged() {
+    createCoalescer(60000);
+    coalescer.wakeUpParent(1, singletonList("wait1"));
+    coalescer.wakeUpParent(1, asList("wait2", "wait1"));
+
+    coalescer.shutdown();
+
+    verify(workflowInstanceDao).wakeUpWorkflowExternally(1, asList("wait1", "wait2"));
+  }
+
+  @Test
+  public void anyStateWinsWhenMergingExpectedStates() {
+    createCoalescer(60000);
+    coalescer.wakeUpParent(1, singletonList("wait"));
+    coalescer.wakeUpParent(1, emptyList());
+    coalescer.wakeUpParent(1, singletonList("wait2"));
+
+    coalescer.shutdown();
+
+    verify(workflowInstanceDao).wakeUpWorkflowExternally(1, emptyList());
+  }
+
+  @Test
+  public void failedWakeUpIsRetried() {
+    when(workflowInstanceDao.wakeUpWorkflowExternally(1, singletonList("wait"))).thenThrow(new RuntimeException("test"))
+        .thenReturn(true);
+
+    createCoalescer(10).wakeUpParent(1, singletonList("wait"));
+
+    verify(workflowInstanceDao, timeout(5000).times(2)).wakeUpWorkflowExternally(1, singletonList("wait"));
+  }
+
+  @Test
+  public void retryDelayDoublesUpToOneMinute() {
+    createCoalescer(100);
+
+    assertThat(coalescer.retryDelayMillis(1), is(200L));
+    assertThat(coalescer.retryDelayMillis(2), is(400L));
+    assertThat(coalescer.retryDelayMillis(10), is(60000L));
+    assertThat(coalescer.retryDelayMillis(100), is(60000L));
+  }
+}
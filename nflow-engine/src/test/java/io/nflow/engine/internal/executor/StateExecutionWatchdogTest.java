@@ -0,0 +1,79 @@
+package io.nflow.engine.internal.executor;
+
+import static org.mockito.Mockito.atLeast;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+import static org.slf4j.Logger.ROOT_LOGGER_NAME;
+import static org.slf4j.LoggerFactory.getLogger;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.ArgumentCaptor;
+import org.mockito.Captor;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.mock.env.MockEnvironment;
+
+import ch.qos.logback.classic.Level;
+import ch.qos.logback.classic.Logger;
+import ch.qos.logback.classic.spi.ILoggingEvent;
+import ch.qos.logback.core.Appender;
+
+@ExtendWith(MockitoExtension.class)
+public class StateExecutionWatchdogTest {
+
+  @Mock
+  WorkflowStateProcessorFactory stateProcessorFactory;
+  @Mock
+  WorkflowInstanceExecutor executor;
+  @Mock
+  Appender<ILoggingEvent> mockAppender;
+  @Captor
+  ArgumentCaptor<ILoggingEvent> loggingEventCaptor;
+  MockEnvironment env = new MockEnvironment();
+  StateExecutionWatchdog watchdog;
+
+  @BeforeEach
+  public void setup() {
+    // the checks are run by the test
+    env.setProperty("nflow.executor.watchdog.interval.ms", "3600000");
+    watchdog = new StateExecutionWatchdog(stateProcessorFactory, executor, env);
+    Logger logger = (Logger) getLogger(ROOT_LOGGER_NAME);
+    logger.addAppender(mockAppender);
+  }
+
+  @AfterEach
+  public void teardown() {
+    watchdog.shutdown();
+    Logger logger = (Logger) getLogger(ROOT_LOGGER_NAME);
+    logger.detachAppender(mockAppender);
+  }
+
+  @Test
+  public void checkTimesOutStateMethods() {
+    watchdog.check();
+
+    verify(stateProcessorFactory).timeOutStateMethods();
+  }
+
+  @Test
+  public void checkLogsWarningWhenAllThreadsArePotentiallyStuck() {
+    when(executor.getThreadCount()).thenReturn(2);
+    when(stateProcessorFactory.getPotentiallyStuckProcessors()).thenReturn(2);
+    when(stateProcessorFactory.getStuckThreadThresholdSeconds()).thenReturn(60);
+
+    watchdog.check();
+
+    verify(mockAppender, atLeast(1)).doAppend(loggingEventCaptor.capture());
+    for (ILoggingEvent event : loggingEventCaptor.getAllValues()) {
+      if (event.getLevel().equals(Level.WARN) && event.getFormattedMessage()
+          .equals("2 of 2 state processor threads are potentially stuck (processing longer than 60 seconds)")) {
+        return;
+      }
+    }
+    Assertions.fail("Expected warning was not logged");
+  }
+}
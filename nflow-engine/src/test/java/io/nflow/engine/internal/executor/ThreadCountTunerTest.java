@@ -0,0 +1,106 @@
+package io.nflow.engine.internal.executor;
+
+import static java.lang.Math.max;
+import static java.lang.Math.min;
+import static java.util.concurrent.TimeUnit.SECONDS;
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.is;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.mock.env.MockEnvironment;
+import org.springframework.scheduling.concurrent.CustomizableThreadFactory;
+
+public class ThreadCountTunerTest {
+  private static final long INTERVAL_NANOS = SECONDS.toNanos(10);
+  private final int processors = Runtime.getRuntime().availableProcessors();
+  private WorkflowInstanceExecutor executor;
+  private ThreadCountTuner tuner;
+
+  @BeforeEach
+  public void setup() {
+    executor = new WorkflowInstanceExecutor(100, 4, 4, 0, 0, new CustomizableThreadFactory("test"));
+    executor.setRecordingExecutionTimes(true);
+    tuner = new ThreadCountTuner(executor, environment(true));
+  }
+
+  @AfterEach
+  public void shutdown() {
+    executor.shutdown();
+  }
+
+  private static MockEnvironment environment(boolean autotune) {
+    MockEnvironment env = new MockEnvironment();
+    env.setProperty("nflow.executor.autotune.enabled", Boolean.toString(autotune));
+    env.setProperty("nflow.executor.autotune.interval.seconds", "30");
+    env.setProperty("nflow.executor.autotune.maxDbWaitShare", "0.5");
+    env.setProperty("nflow.executor.autotune.thread.count.min", "1");
+    env.setProperty("nflow.executor.autotune.thread.count.max", "1000");
+    return env;
+  }
+
+  @Test
+  public void tuningCanBeDisabled() {
+    assertThat(new ThreadCountTuner(executor, environment(false)).isEnabled(), is(false));
+  }
+
+  @Test
+  public void threadCountIsNotChangedWithoutEnoughExecutions() {
+    record(5, INTERVAL_NANOS, INTERVAL_NANOS / 10, 0);
+
+    assertThat(tuner.tune(INTERVAL_NANOS), is(4));
+  }
+
+  @Test
+  public void threadCountIsIncreasedGraduallyWhenProcessingWaitsForIo() {
+    record(100, 4 * INTERVAL_NANOS, 4 * INTERVAL_NANOS / 100, 0);
+
+    assertThat(tuner.tune(INTERVAL_NANOS), is(8));
+    assertThat(executor.executor.getMaximumPoolSize(), is(8));
+    assertThat(executor.getQueueThreshold(), is(8));
+    assertThat(tuner.getLastCpuShare(), is(0.01));
+    assertThat(tuner.getLastUtilization(), is(1.0));
+  }
+
+  @Test
+  public void threadCountIsNotIncreasedWhenProcessingWaitsForDatabase() {
+    record(100, 4 * INTERVAL_NANOS, 4 * INTERVAL_NANOS / 100, 3 * INTERVAL_NANOS);
+
+    assertThat(tuner.tune(INTERVAL_NANOS), is(4));
+    assertThat(tuner.getLastDbWaitShare(), is(0.75));
+  }
+
+  @Test
+  public void threadCountIsNotIncreasedWhenExecutorIsMostlyIdle() {
+    record(100, INTERVAL_NANOS, INTERVAL_NANOS / 100, 0);
+
+    assertThat(tuner.tune(INTERVAL_NANOS), is(4));
+  }
+
+  @Test
+  public void threadCountIsDecreasedTowardsProcessorCountWhenProcessingIsCpuBound() {
+    record(100, 4 * INTERVAL_NANOS, 4 * INTERVAL_NANOS, 0);
+
+    assertThat(tuner.tune(INTERVAL_NANOS), is(max(2, min(8, processors))));
+    assertThat(tuner.tune(INTERVAL_NANOS), is(max(2, min(8, processors))));
+  }
+
+  @Test
+  public void minimumThreadCountIsLimitedToMaximumThreadCount() {
+    MockEnvironment env = environment(true);
+    env.setProperty("nflow.executor.autotune.thread.count.min", "16");
+    env.setProperty("nflow.executor.autotune.thread.count.max", "2");
+    tuner = new ThreadCountTuner(executor, env);
+    record(100, 4 * INTERVAL_NANOS, 4 * INTERVAL_NANOS / 100, 0);
+
+    assertThat(tuner.tune(INTERVAL_NANOS), is(2));
+  }
+
+  private void record(int count, long wallNanos, long cpuNanos, long dbNanos) {
+    for (int i = 0; i < count; i++) {
+      executor.recordExecution(wallNanos / count, cpuNanos / count);
+    }
+    executor.recordDbWait(dbNanos);
+  }
+}
@@ -104,4 +104,49 @@ public class ThresholdBlockingQueueTest {
       assertThat(result.get(), is(3));
     });
   }
+
+  @Test
+  public void raisingThresholdWakesUpWaiter() {
+    assertTimeout(ofMillis(5000), () -> {
+      q.put(100);
+      q.put(200);
+      Future<?> result = newSingleThreadExecutor().submit(() -> {
+        q.waitUntilQueueSizeLowerThanThreshold(DateTime.now().plusMinutes(1));
+        return null;
+      });
+      sleep(100);
+      assertThat(result.isDone(), is(false));
+      q.setNotifyThreshold(2);
+      result.get();
+      assertThat(q.getNotifyThreshold(), is(2));
+    });
+  }
+
+  @Test
+  public void removeWakesUpWaiter() {
+    assertTimeout(ofMillis(5000), () -> {
+      q.put(100);
+      q.put(200);
+      Future<?> result = newSingleThreadExecutor().submit(() -> {
+        q.waitUntilQueueSizeLowerThanThreshold(DateTime.now().plusMinutes(1));
+        return null;
+      });
+      sleep(100);
+      assertThat(result.isDone(), is(false));
+      assertThat(q.remove(100), is(true));
+      result.get();
+    });
+  }
+
+  @Test
+  public void dequeueDoesNotEnterMonitorWithoutWaiter() {
+    assertTimeout(ofMillis(5000), () -> {
+      q.put(100);
+      q.put(200);
+      synchronized (q) {
+        Future<Integer> result = newSingleThreadExecutor().submit(() -> q.take() + q.poll());
+        assertThat(result.get(), is(300));
+      }
+    });
+  }
 }
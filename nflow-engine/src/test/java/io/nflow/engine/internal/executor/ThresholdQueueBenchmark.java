@@ -0,0 +1,107 @@
+package io.nflow.engine.internal.executor;
+
+import java.util.concurrent.TimeUnit;
+
+import org.joda.time.DateTime;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Group;
+import org.openjdk.jmh.annotations.GroupThreads;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Timeout;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+/**
+ * Measures the executor queue with one producer (the dispatcher) and many consumers (the executor threads).
+ * Run with <code>main</code> from the test classpath, it runs the benchmark with 8, 32 and 128 consumer threads.
+ * <ul>
+ * <li><code>executorQueue</code>: non-blocking offer and poll</li>
+ * <li><code>blockingTake</code>: blocking put and take</li>
+ * <li><code>thresholdWait</code>: the dispatcher waits until the queue size drops to the threshold and fills the queue, the
+ * executor threads take the instances like the thread pool workers do</li>
+ * </ul>
+ * Executor threads blocked in <code>take</code> when the iteration ends are interrupted after the timeout.
+ * Run it on a host with at least as many cores as consumer threads, otherwise the consumers do not contend.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@State(Scope.Group)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@Timeout(time = 2)
+public class ThresholdQueueBenchmark {
+
+  private static final int CAPACITY = 256;
+  private static final Integer ELEMENT = 1;
+
+  private ThresholdBlockingQueue<Integer> queue;
+
+  @Setup
+  public void setup() {
+    queue = new ThresholdBlockingQueue<>(CAPACITY, CAPACITY / 2);
+  }
+
+  @Benchmark
+  @Group("executorQueue")
+  @GroupThreads(1)
+  public boolean dispatcherOffer() {
+    return queue.offer(ELEMENT);
+  }
+
+  @Benchmark
+  @Group("executorQueue")
+  @GroupThreads(8)
+  public Integer executorPoll() {
+    return queue.poll();
+  }
+
+  @Benchmark
+  @Group("blockingTake")
+  @GroupThreads(1)
+  public void dispatcherPut() throws InterruptedException {
+    queue.put(ELEMENT);
+  }
+
+  @Benchmark
+  @Group("blockingTake")
+  @GroupThreads(8)
+  public Integer executorTake() throws InterruptedException {
+    return queue.take();
+  }
+
+  @Benchmark
+  @Group("thresholdWait")
+  @GroupThreads(1)
+  public int dispatcherWaitAndFill() throws InterruptedException {
+    queue.waitUntilQueueSizeLowerThanThreshold(DateTime.now().plusSeconds(1));
+    int offered = 0;
+    while (queue.offer(ELEMENT)) {
+      offered++;
+    }
+    return offered;
+  }
+
+  @Benchmark
+  @Group("thresholdWait")
+  @GroupThreads(8)
+  public Integer executorWaitingTake() throws InterruptedException {
+    return queue.take();
+  }
+
+  public static void main(String[] args) throws RunnerException {
+    for (int executorThreads : new int[] { 8, 32, 128 }) {
+      new Runner(new OptionsBuilder().include(ThresholdQueueBenchmark.class.getSimpleName()).threadGroups(1, executorThreads)
+          .build()).run();
+    }
+  }
+}
@@ -1,34 +1,34 @@
 package io.nflow.engine.internal.executor;
 
 import static edu.umd.cs.mtc.TestFramework.runOnce;
-import static java.util.Arrays.asList;
 import static java.util.Collections.emptyList;
+import static java.util.stream.Collectors.toList;
 import static org.hamcrest.CoreMatchers.is;
 import static org.hamcrest.MatcherAssert.assertThat;
 import static org.junit.jupiter.api.Assertions.assertEquals;
 import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyBoolean;
 import static org.mockito.ArgumentMatchers.anyInt;
-import static org.mockito.Mockito.atLeast;
+import static org.mockito.ArgumentMatchers.anyMap;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.doReturn;
 import static org.mockito.Mockito.doThrow;
 import static org.mockito.Mockito.inOrder;
 import static org.mockito.Mockito.never;
 import static org.mockito.Mockito.times;
 import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
-import static org.slf4j.Logger.ROOT_LOGGER_NAME;
-import static org.slf4j.LoggerFactory.getLogger;
 
 import java.util.List;
 import java.util.concurrent.BlockingQueue;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.stream.Stream;
 
-import org.junit.jupiter.api.AfterEach;
 import org.junit.jupiter.api.Assertions;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 import org.junit.jupiter.api.extension.ExtendWith;
-import org.mockito.ArgumentCaptor;
-import org.mockito.Captor;
 import org.mockito.InOrder;
 import org.mockito.Mock;
 import org.mockito.Mockito;
@@ -40,15 +40,12 @@ import org.springframework.mock.env.MockEnvironment;
 import org.springframework.scheduling.concurrent.CustomizableThreadFactory;
 import org.springframework.scheduling.concurrent.ThreadPoolTaskExecutor;
 
-import ch.qos.logback.classic.Level;
-import ch.qos.logback.classic.Logger;
-import ch.qos.logback.classic.spi.ILoggingEvent;
-import ch.qos.logback.core.Appender;
 import edu.umd.cs.mtc.MultithreadedTestCase;
 import io.nflow.engine.internal.dao.ExecutorDao;
 import io.nflow.engine.internal.dao.WorkflowInstanceDao;
 import io.nflow.engine.listener.WorkflowExecutorListener;
 import io.nflow.engine.service.WorkflowDefinitionService;
+import io.nflow.engine.workflow.instance.WorkflowInstance;
 
 @ExtendWith(MockitoExtension.class)
 public class WorkflowDispatcherTest {
@@ -64,37 +61,27 @@ public class WorkflowDispatcherTest {
   ExecutorDao executorDao;
   @Mock
   WorkflowStateProcessorFactory executorFactory;
-  @Mock
-  Appender<ILoggingEvent> mockAppender;
-  @Captor
-  ArgumentCaptor<ILoggingEvent> loggingEventCaptor;
 
   @BeforeEach
   public void setup() {
     env.setProperty("nflow.autoinit", "true");
     env.setProperty("nflow.dispatcher.sleep.ms", "0");
+    env.setProperty("nflow.dispatcher.sleep.max.multiplier", "4");
+    env.setProperty("nflow.executor.recovery.batchSize", "1000");
     env.setProperty("nflow.dispatcher.executor.queue.wait_until_threshold", "0");
     env.setProperty("nflow.illegal.state.change.action", "ignore");
     env.setProperty("nflow.unknown.workflow.type.retry.delay.minutes", "60");
     env.setProperty("nflow.unknown.workflow.state.retry.delay.minutes", "60");
-    env.setProperty("nflow.executor.stuckThreadThreshold.seconds", "60");
     env.setProperty("nflow.executor.stateProcessingRetryDelay.seconds", "1");
     env.setProperty("nflow.executor.stateSaveRetryDelay.seconds", "60");
     env.setProperty("nflow.executor.stateVariableValueTooLongRetryDelay.minutes", "60");
     env.setProperty("nflow.executor.fetchChildWorkflowIds", "false");
     env.setProperty("nflow.db.workflowInstanceType.cacheSize", "10000");
+    env.setProperty("nflow.executor.stateVariables.lazy", "false");
     when(executorDao.isTransactionSupportEnabled()).thenReturn(true);
     when(executorDao.isAutoCommitEnabled()).thenReturn(true);
     executor = new WorkflowInstanceExecutor(3, 2, 0, 10, 0, new CustomizableThreadFactory("nflow-executor-"));
     dispatcher = new WorkflowDispatcher(executor, workflowInstances, executorFactory, workflowDefinitions, executorDao, env);
-    Logger logger = (Logger) getLogger(ROOT_LOGGER_NAME);
-    logger.addAppender(mockAppender);
-  }
-
-  @AfterEach
-  public void teardown() {
-    Logger logger = (Logger) getLogger(ROOT_LOGGER_NAME);
-    logger.detachAppender(mockAppender);
   }
 
   @Test
@@ -116,13 +103,13 @@ public class WorkflowDispatcherTest {
     @SuppressWarnings("unused")
     class ExceptionDuringDispatcherExecutionCausesRetry extends MultithreadedTestCase {
       public void threadDispatcher() {
-        when(workflowInstances.pollNextWorkflowInstanceIds(anyInt())).thenReturn(ids(1L))
+        when(workflowInstances.pollNextWorkflowInstances(anyInt(), anyBoolean(), anyMap())).thenReturn(instances(1L))
             .thenThrow(new RuntimeException("Expected: exception during dispatcher execution"))
-            .thenAnswer(waitForTickAndAnswer(2, ids(2L), this));
+            .thenAnswer(waitForTickAndAnswer(2, instances(2L), this));
         WorkflowStateProcessor fakeWorkflowExecutor = fakeWorkflowExecutor(1, noOpRunnable());
-        when(executorFactory.createProcessor(1)).thenReturn(fakeWorkflowExecutor);
+        when(executorFactory.createProcessor(instance(1L))).thenReturn(fakeWorkflowExecutor);
         WorkflowStateProcessor fakeWorkflowExecutor2 = fakeWorkflowExecutor(2, noOpRunnable());
-        when(executorFactory.createProcessor(2)).thenReturn(fakeWorkflowExecutor2);
+        when(executorFactory.createProcessor(instance(2L))).thenReturn(fakeWorkflowExecutor2);
         dispatcher.run();
       }
 
@@ -133,10 +120,10 @@ public class WorkflowDispatcherTest {
 
       @Override
       public void finish() {
-        verify(workflowInstances, times(3)).pollNextWorkflowInstanceIds(anyInt());
+        verify(workflowInstances, times(3)).pollNextWorkflowInstances(anyInt(), anyBoolean(), anyMap());
         InOrder inOrder = inOrder(executorFactory);
-        inOrder.verify(executorFactory).createProcessor(1);
-        inOrder.verify(executorFactory).createProcessor(2);
+        inOrder.verify(executorFactory).createProcessor(instance(1L));
+        inOrder.verify(executorFactory).createProcessor(instance(2L));
       }
     }
     runOnce(new ExceptionDuringDispatcherExecutionCausesRetry());
@@ -147,7 +134,7 @@ public class WorkflowDispatcherTest {
     @SuppressWarnings("unused")
     class ErrorDuringDispatcherExecutionStopsDispatcher extends MultithreadedTestCase {
       public void threadDispatcher() {
-        when(workflowInstances.pollNextWorkflowInstanceIds(anyInt())).thenThrow(new AssertionError()).thenReturn(ids(1L));
+        when(workflowInstances.pollNextWorkflowInstances(anyInt(), anyBoolean(), anyMap())).thenThrow(new AssertionError()).thenReturn(instances(1L));
         try {
           dispatcher.run();
           Assertions.fail("Error should stop the dispatcher");
@@ -158,8 +145,8 @@ public class WorkflowDispatcherTest {
 
       @Override
       public void finish() {
-        verify(workflowInstances).pollNextWorkflowInstanceIds(anyInt());
-        verify(executorFactory, never()).createProcessor(anyInt());
+        verify(workflowInstances).pollNextWorkflowInstances(anyInt(), anyBoolean(), anyMap());
+        verify(executorFactory, never()).createProcessor(any(WorkflowInstance.class));
       }
     }
     runOnce(new ErrorDuringDispatcherExecutionStopsDispatcher());
@@ -171,8 +158,8 @@ public class WorkflowDispatcherTest {
     class EmptyPollResultCausesNoTasksToBeScheduled extends MultithreadedTestCase {
       @SuppressWarnings("unchecked")
       public void threadDispatcher() {
-        when(workflowInstances.pollNextWorkflowInstanceIds(anyInt())).thenReturn(ids(), ids())
-            .thenAnswer(waitForTickAndAnswer(2, ids(), this));
+        when(workflowInstances.pollNextWorkflowInstances(anyInt(), anyBoolean(), anyMap())).thenReturn(instances(), instances())
+            .thenAnswer(waitForTickAndAnswer(2, instances(), this));
         dispatcher.run();
       }
 
@@ -183,21 +170,112 @@ public class WorkflowDispatcherTest {
 
       @Override
       public void finish() {
-        verify(workflowInstances, times(3)).pollNextWorkflowInstanceIds(anyInt());
-        verify(executorFactory, never()).createProcessor(anyInt());
+        verify(workflowInstances, times(3)).pollNextWorkflowInstances(anyInt(), anyBoolean(), anyMap());
+        verify(executorFactory, never()).createProcessor(any(WorkflowInstance.class));
       }
     }
     runOnce(new EmptyPollResultCausesNoTasksToBeScheduled());
   }
 
+  @Test
+  public void pollBatchSizeIsLimitedByAvailableDatabaseConnections() throws Throwable {
+    ConnectionPoolMonitor connectionPool = Mockito.mock(ConnectionPoolMonitor.class);
+    dispatcher.setConnectionPoolMonitor(connectionPool);
+    @SuppressWarnings("unused")
+    class PollBatchSizeIsLimitedByAvailableDatabaseConnections extends MultithreadedTestCase {
+      public void threadDispatcher() {
+        when(connectionPool.getAvailableConnections()).thenReturn(0, 1);
+        when(workflowInstances.pollNextWorkflowInstances(anyInt(), anyBoolean(), anyMap()))
+            .thenAnswer(waitForTickAndAnswer(2, instances(), this));
+        dispatcher.run();
+      }
+
+      public void threadShutdown() {
+        waitForTick(1);
+        dispatcher.shutdown();
+      }
+
+      @Override
+      public void finish() {
+        verify(workflowInstances).pollNextWorkflowInstances(eq(1), anyBoolean(), anyMap());
+      }
+    }
+    runOnce(new PollBatchSizeIsLimitedByAvailableDatabaseConnections());
+  }
+
+  @Test
+  public void queuedAndStartedInstancesReduceAvailableDatabaseConnections() throws Throwable {
+    ConnectionPoolMonitor connectionPool = Mockito.mock(ConnectionPoolMonitor.class);
+    @SuppressWarnings("unused")
+    class QueuedAndStartedInstancesReduceAvailableDatabaseConnections extends MultithreadedTestCase {
+      @Override
+      public void initialize() {
+        WorkflowInstanceExecutor poolSpy = Mockito.spy(executor);
+        dispatcher = new WorkflowDispatcher(poolSpy, workflowInstances, executorFactory, workflowDefinitions, executorDao, env);
+        dispatcher.setConnectionPoolMonitor(connectionPool);
+        doReturn(1).when(poolSpy).getQueueSize();
+        doReturn(2).when(poolSpy).getActiveThreadCount();
+      }
+
+      public void threadDispatcher() {
+        when(connectionPool.getAvailableConnections()).thenReturn(3);
+        when(connectionPool.getActiveConnections()).thenReturn(1);
+        when(workflowInstances.pollNextWorkflowInstances(anyInt(), anyBoolean(), anyMap()))
+            .thenAnswer(waitForTickAndAnswer(2, instances(), this));
+        dispatcher.run();
+      }
+
+      public void threadShutdown() {
+        waitForTick(1);
+        dispatcher.shutdown();
+      }
+
+      @Override
+      public void finish() {
+        // 3 available connections - 1 queued instance - 1 started instance without connection
+        verify(workflowInstances).pollNextWorkflowInstances(eq(1), anyBoolean(), anyMap());
+      }
+    }
+    runOnce(new QueuedAndStartedInstancesReduceAvailableDatabaseConnections());
+  }
+
+  @Test
+  public void pollBatchLimitedByDatabaseConnectionsIsNotFullBatch() throws Throwable {
+    ConnectionPoolMonitor connectionPool = Mockito.mock(ConnectionPoolMonitor.class);
+    dispatcher.setConnectionPoolMonitor(connectionPool);
+    @SuppressWarnings("unused")
+    class PollBatchLimitedByDatabaseConnectionsIsNotFullBatch extends MultithreadedTestCase {
+      public void threadDispatcher() {
+        when(connectionPool.getAvailableConnections()).thenReturn(1);
+        when(workflowInstances.pollNextWorkflowInstances(anyInt(), anyBoolean(), anyMap()))
+            .thenAnswer(waitForTickAndAnswer(2, instances(1L), this));
+        WorkflowStateProcessor fakeWorkflowExecutor = fakeWorkflowExecutor(1, noOpRunnable());
+        when(executorFactory.createProcessor(instance(1L))).thenReturn(fakeWorkflowExecutor);
+        dispatcher.run();
+      }
+
+      public void threadShutdown() {
+        waitForTick(1);
+        dispatcher.shutdown();
+      }
+
+      @Override
+      public void finish() {
+        verify(workflowInstances).pollNextWorkflowInstances(eq(1), anyBoolean(), anyMap());
+        assertThat(dispatcher.getLastPollYield(), is(1.0 / 3));
+      }
+    }
+    runOnce(new PollBatchLimitedByDatabaseConnectionsIsNotFullBatch());
+  }
+
   @Test
   public void shutdownBlocksUntilPoolShutdown() throws Throwable {
     @SuppressWarnings("unused")
     class ShutdownBlocksUntilPoolShutdown extends MultithreadedTestCase {
       public void threadDispatcher() {
-        when(workflowInstances.pollNextWorkflowInstanceIds(anyInt())).thenAnswer(waitForTickAndAnswer(2, ids(1L), this));
+        when(workflowInstances.pollNextWorkflowInstances(anyInt(), anyBoolean(), anyMap())).thenAnswer(waitForTickAndAnswer(2, instances(1L), this));
         WorkflowStateProcessor fakeWorkflowExecutor = fakeWorkflowExecutor(1, waitForTickRunnable(3, this));
-        when(executorFactory.createProcessor(anyInt())).thenReturn(fakeWorkflowExecutor);
+        when(executorFactory.createProcessor(any(WorkflowInstance.class))).thenReturn(fakeWorkflowExecutor);
         dispatcher.run();
       }
 
@@ -229,16 +307,16 @@ public class WorkflowDispatcherTest {
     @SuppressWarnings("unused")
     class ShutdownCanBeInterrupted extends MultithreadedTestCase {
       public void threadDispatcher() {
-        when(workflowInstances.pollNextWorkflowInstanceIds(anyInt())).thenAnswer(new Answer<Object>() {
+        when(workflowInstances.pollNextWorkflowInstances(anyInt(), anyBoolean(), anyMap())).thenAnswer(new Answer<Object>() {
           @Override
           public Object answer(InvocationOnMock invocation) throws Throwable {
             waitForTick(2);
             getThreadByName("threadShutdown").interrupt();
-            return ids(1L);
+            return instances(1L);
           }
         });
         WorkflowStateProcessor fakeWorkflowExecutor = fakeWorkflowExecutor(1, waitForTickRunnable(3, this));
-        when(executorFactory.createProcessor(anyInt())).thenReturn(fakeWorkflowExecutor);
+        when(executorFactory.createProcessor(any(WorkflowInstance.class))).thenReturn(fakeWorkflowExecutor);
         dispatcher.run();
       }
 
@@ -266,8 +344,8 @@ public class WorkflowDispatcherTest {
       }
 
       public void threadDispatcher() {
-        when(workflowInstances.pollNextWorkflowInstanceIds(anyInt())).thenAnswer(waitForTickAndAnswer(2, ids(), this));
-        doThrow(new RuntimeException("Expected: exception on pool shutdown")).when(poolSpy).shutdown();
+        when(workflowInstances.pollNextWorkflowInstances(anyInt(), anyBoolean(), anyMap())).thenAnswer(waitForTickAndAnswer(2, instances(), this));
+        doThrow(new RuntimeException("Expected: exception on pool shutdown")).when(poolSpy).shutdownAndDrainQueue();
         dispatcher.run();
       }
 
@@ -278,7 +356,8 @@ public class WorkflowDispatcherTest {
 
       @Override
       public void finish() {
-        verify(poolSpy).shutdown();
+        verify(poolSpy).shutdownAndDrainQueue();
+        verify(executorDao).markShutdown();
       }
     }
     runOnce(new ExceptionOnPoolShutdownIsNotPropagated());
@@ -289,7 +368,7 @@ public class WorkflowDispatcherTest {
     @SuppressWarnings("unused")
     class ShutdownCanBeCalledMultipleTimes extends MultithreadedTestCase {
       public void threadDispatcher() throws InterruptedException {
-        when(workflowInstances.pollNextWorkflowInstanceIds(anyInt())).thenAnswer(waitForTickAndAnswer(2, ids(), this));
+        when(workflowInstances.pollNextWorkflowInstances(anyInt(), anyBoolean(), anyMap())).thenAnswer(waitForTickAndAnswer(2, instances(), this));
         dispatcher.run();
       }
 
@@ -307,37 +386,6 @@ public class WorkflowDispatcherTest {
     runOnce(new ShutdownCanBeCalledMultipleTimes());
   }
 
-  @Test
-  public void dispatcherLogsWarningWhenAllThreadsArePotentiallyStuck() throws Throwable {
-    @SuppressWarnings("unused")
-    class DispatcherLogsWarning extends MultithreadedTestCase {
-      public void threadDispatcher() throws InterruptedException {
-        when(workflowInstances.pollNextWorkflowInstanceIds(anyInt()))
-            .thenAnswer(waitForTickAndAnswer(2, emptyList(), this));
-        when(executorFactory.getPotentiallyStuckProcessors()).thenReturn(executor.getThreadCount());
-        dispatcher.run();
-      }
-
-      public void threadShutdown() {
-        waitForTick(1);
-        dispatcher.shutdown();
-      }
-
-      @Override
-      public void finish() {
-        verify(mockAppender, atLeast(1)).doAppend(loggingEventCaptor.capture());
-        for (ILoggingEvent event : loggingEventCaptor.getAllValues()) {
-          if (event.getLevel().equals(Level.WARN) && event.getFormattedMessage()
-              .equals("2 of 2 state processor threads are potentially stuck (processing longer than 60 seconds)")) {
-            return;
-          }
-        }
-        Assertions.fail("Expected warning was not logged");
-      }
-    }
-    runOnce(new DispatcherLogsWarning());
-  }
-
   @Test
   public void pauseAndResumeWorks() {
     assertEquals(dispatcher.isPaused(), false);
@@ -369,7 +417,7 @@ public class WorkflowDispatcherTest {
   }
 
   WorkflowStateProcessor fakeWorkflowExecutor(long instanceId, final Runnable fakeCommand) {
-    return new WorkflowStateProcessor(instanceId, null, null, null, null, null, env,
+    return new WorkflowStateProcessor(instanceId, null, null, null, null, null, null, null, null, env,
         new ConcurrentHashMap<>(), (WorkflowExecutorListener) null) {
       @Override
       public void run() {
@@ -378,7 +426,8 @@ public class WorkflowDispatcherTest {
     };
   }
 
-  Answer<List<Long>> waitForTickAndAnswer(final int tick, final List<Long> answer, final MultithreadedTestCase mtc) {
+  Answer<List<WorkflowInstance>> waitForTickAndAnswer(final int tick, final List<WorkflowInstance> answer,
+      final MultithreadedTestCase mtc) {
     return invocation -> {
       mtc.waitForTick(tick);
       return answer;
@@ -393,7 +442,12 @@ public class WorkflowDispatcherTest {
     }
   }
 
-  static List<Long> ids(Long... ids) {
-    return asList(ids);
+  static List<WorkflowInstance> instances(Long... ids) {
+    return Stream.of(ids).map(WorkflowDispatcherTest::instance).collect(toList());
+  }
+
+  static WorkflowInstance instance(Long id) {
+    // fixed next activation time, so that instances created at different times are equal
+    return new WorkflowInstance.Builder().setId(id).setNextActivation(null).build();
   }
 }
@@ -1,13 +1,16 @@
 package io.nflow.engine.internal.executor;
 
+import static java.util.Arrays.asList;
 import static java.util.concurrent.TimeUnit.SECONDS;
 import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.contains;
 import static org.hamcrest.Matchers.is;
 import static org.hamcrest.Matchers.sameInstance;
 import static org.mockito.Mockito.timeout;
 import static org.mockito.Mockito.verify;
 
 import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CountDownLatch;
 import java.util.concurrent.ThreadFactory;
 
 import org.joda.time.DateTime;
@@ -42,6 +45,19 @@ public class WorkflowInstanceExecutorTest {
     assertThat(t.getQueueRemainingCapacity(), is(3));
   }
 
+  @Test
+  public void queueCapacityIsReservedForResumingAsyncStateMethods() {
+    WorkflowInstanceExecutor t = new WorkflowInstanceExecutor(3, 2, 1, 3, 4, 2, threadFactory);
+    assertThat(t.getQueueRemainingCapacity(), is(3));
+    assertThat(t.queue.remainingCapacity(), is(5));
+    assertThat(t.tryStartAsyncWait(), is(true));
+    assertThat(t.tryStartAsyncWait(), is(true));
+    assertThat(t.tryStartAsyncWait(), is(false));
+    assertThat(t.getAsyncInFlight(), is(2));
+    t.asyncWaitFinished();
+    assertThat(t.getAsyncInFlight(), is(1));
+  }
+
   @Test
   public void testExecute() {
     WorkflowInstanceExecutor t = new WorkflowInstanceExecutor(3, 2, 1, 3, 4, new CustomizableThreadFactory("test"));
@@ -56,6 +72,142 @@ public class WorkflowInstanceExecutorTest {
     t.waitUntilQueueSizeLowerThanThreshold(new DateTime().plusSeconds(5));
   }
 
+  @Test
+  public void wakeUpDispatcherEndsWaiting() throws InterruptedException {
+    WorkflowInstanceExecutor t = new WorkflowInstanceExecutor(3, 2, 1, 3, 4, threadFactory);
+    t.wakeUpDispatcher();
+    assertThat(t.waitForDispatcherWakeUp(10000), is(true));
+    assertThat(t.waitForDispatcherWakeUp(1), is(false));
+  }
+
+  @Test
+  public void workAvailableNotificationWakesUpDispatchersSharingWakeupChannel() throws InterruptedException {
+    InMemoryWakeupChannel channel = new InMemoryWakeupChannel();
+    WorkflowInstanceExecutor notifier = new WorkflowInstanceExecutor(3, 2, 1, 3, 4, threadFactory);
+    WorkflowInstanceExecutor waiter = new WorkflowInstanceExecutor(3, 2, 1, 3, 4, threadFactory);
+    notifier.setWakeupChannel(channel);
+    waiter.setWakeupChannel(channel);
+    notifier.notifyWorkAvailable();
+    assertThat(waiter.waitForDispatcherWakeUp(10000), is(true));
+  }
+
+  @Test
+  public void scheduledWakeUpEndsWaitingEarly() throws InterruptedException {
+    WorkflowInstanceExecutor t = new WorkflowInstanceExecutor(3, 2, 1, 3, 4, threadFactory);
+    t.setMaxWakeUpDelayMillis(10000);
+    t.scheduleWakeUp(new DateTime().plusMillis(50));
+    long start = System.currentTimeMillis();
+    assertThat(t.waitForDispatcherWakeUp(5000), is(true));
+    assertThat(System.currentTimeMillis() - start < 5000, is(true));
+    assertThat(t.waitForDispatcherWakeUp(1), is(false));
+  }
+
+  @Test
+  public void wakeUpIsNotScheduledBeyondMaxDelay() throws InterruptedException {
+    WorkflowInstanceExecutor t = new WorkflowInstanceExecutor(3, 2, 1, 3, 4, threadFactory);
+    t.setMaxWakeUpDelayMillis(100);
+    t.scheduleWakeUp(new DateTime().plusSeconds(10));
+    assertThat(t.waitForDispatcherWakeUp(1), is(false));
+  }
+
+  @Test
+  public void createdInstancesAreReturnedOnce() {
+    WorkflowInstanceExecutor t = new WorkflowInstanceExecutor(3, 2, 1, 3, 4, threadFactory);
+    t.addCreatedInstance(1);
+    t.addCreatedInstance(2);
+    assertThat(t.pollCreatedInstances(1), is(asList(1L)));
+    assertThat(t.pollCreatedInstances(5), is(asList(2L)));
+    assertThat(t.pollCreatedInstances(5).isEmpty(), is(true));
+  }
+
+  @Test
+  public void shutdownReturnsUnstartedTasks() throws InterruptedException {
+    WorkflowInstanceExecutor t = new WorkflowInstanceExecutor(3, 1, 1, 3, 4, new CustomizableThreadFactory("test"));
+    CountDownLatch started = new CountDownLatch(1);
+    CountDownLatch finish = new CountDownLatch(1);
+    t.execute(() -> {
+      started.countDown();
+      awaitQuietly(finish);
+    });
+    started.await();
+    Runnable queued1 = () -> { };
+    Runnable queued2 = () -> { };
+    t.execute(queued1);
+    t.execute(queued2);
+
+    assertThat(t.shutdownAndDrainQueue(), contains(queued1, queued2));
+    finish.countDown();
+    t.awaitTermination();
+    assertThat(t.executor.isTerminated(), is(true));
+  }
+
+  @Test
+  public void setThreadCountResizesPoolAndScalesQueueThreshold() {
+    WorkflowInstanceExecutor t = new WorkflowInstanceExecutor(10, 2, 2, 3, 4, threadFactory);
+
+    t.setThreadCount(4);
+    assertThat(t.getThreadCount(), is(4));
+    assertThat(t.executor.getCorePoolSize(), is(4));
+    assertThat(t.executor.getMaximumPoolSize(), is(4));
+    assertThat(t.getQueueThreshold(), is(4));
+
+    t.setThreadCount(20);
+    assertThat(t.getQueueThreshold(), is(10));
+
+    t.setThreadCount(1);
+    assertThat(t.executor.getCorePoolSize(), is(1));
+    assertThat(t.executor.getMaximumPoolSize(), is(1));
+    assertThat(t.getQueueThreshold(), is(1));
+  }
+
+  @Test
+  public void delayedExecutionIsExecutedAfterDelay() {
+    WorkflowInstanceExecutor t = new WorkflowInstanceExecutor(3, 1, 1, 3, 4, 1, new CustomizableThreadFactory("test"));
+    t.executeAfter(runnable, 10);
+
+    verify(runnable, timeout(5000)).run();
+    assertThat(t.getDelayedExecutionCount(), is(0));
+    t.shutdown();
+  }
+
+  @Test
+  public void shutdownReturnsDelayedExecutions() {
+    WorkflowInstanceExecutor t = new WorkflowInstanceExecutor(3, 1, 1, 3, 4, 1, new CustomizableThreadFactory("test"));
+    t.executeAfter(runnable, 60000);
+
+    assertThat(t.getDelayedExecutionCount(), is(1));
+    assertThat(t.shutdownAndDrainQueue(), contains(runnable));
+    t.awaitTermination();
+  }
+
+  @Test
+  public void runningTasksAreInterruptedWhenAwaitTerminationTimesOut() throws InterruptedException {
+    WorkflowInstanceExecutor t = new WorkflowInstanceExecutor(3, 1, 1, 0, 4, new CustomizableThreadFactory("test"));
+    CountDownLatch started = new CountDownLatch(1);
+    CountDownLatch interrupted = new CountDownLatch(1);
+    t.execute(() -> {
+      started.countDown();
+      try {
+        Thread.sleep(SECONDS.toMillis(60));
+      } catch (@SuppressWarnings("unused") InterruptedException e) {
+        interrupted.countDown();
+      }
+    });
+    started.await();
+
+    t.shutdown();
+
+    assertThat(interrupted.await(5, SECONDS), is(true));
+  }
+
+  private static void awaitQuietly(CountDownLatch latch) {
+    try {
+      latch.await();
+    } catch (@SuppressWarnings("unused") InterruptedException e) {
+      Thread.currentThread().interrupt();
+    }
+  }
+
   @Test
   public void testShutdown() {
     WorkflowInstanceExecutor t = new WorkflowInstanceExecutor(3, 2, 1, 3, 4, new CustomizableThreadFactory("test"));
@@ -3,6 +3,7 @@ package io.nflow.engine.internal.executor;
 import static java.lang.Boolean.TRUE;
 import static org.hamcrest.MatcherAssert.assertThat;
 import static org.hamcrest.Matchers.is;
+import static org.mockito.Mockito.inOrder;
 import static org.mockito.Mockito.mock;
 import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
@@ -12,6 +13,7 @@ import java.util.concurrent.ThreadFactory;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.InOrder;
 import org.mockito.Mock;
 import org.mockito.junit.jupiter.MockitoExtension;
 import org.springframework.core.env.Environment;
@@ -22,6 +24,14 @@ public class WorkflowLifecycleTest {
   @Mock
   private WorkflowDispatcher dispatcher;
   @Mock
+  private GroupCommitWriter groupCommitWriter;
+  @Mock
+  private ParentWakeupCoalescer parentWakeups;
+  @Mock
+  private StateExecutionWatchdog watchdog;
+  @Mock
+  private ThreadCountTuner threadCountTuner;
+  @Mock
   private ThreadFactory threadFactory;
   @Mock
   private Environment env;
@@ -34,7 +44,8 @@ public class WorkflowLifecycleTest {
   public void setup() {
     when(env.getRequiredProperty("nflow.autostart", Boolean.class)).thenReturn(TRUE);
     when(threadFactory.newThread(dispatcher)).thenReturn(dispatcherThread);
-    lifecycle = new WorkflowLifecycle(dispatcher, threadFactory, env);
+    lifecycle = new WorkflowLifecycle(dispatcher, groupCommitWriter, parentWakeups, watchdog, threadCountTuner, threadFactory,
+        env);
   }
 
   @Test
@@ -53,12 +64,33 @@ public class WorkflowLifecycleTest {
     verify(dispatcherThread).start();
   }
 
+  @Test
+  public void startStartsBackgroundThreadsBeforeDispatcherThread() {
+    lifecycle.start();
+    InOrder inOrder = inOrder(groupCommitWriter, threadCountTuner, watchdog, dispatcherThread);
+    inOrder.verify(groupCommitWriter).start();
+    inOrder.verify(threadCountTuner).start();
+    inOrder.verify(watchdog).start();
+    inOrder.verify(dispatcherThread).start();
+  }
+
   @Test
   public void stopStopsDispatcherThread() {
     lifecycle.stop();
     verify(dispatcher).shutdown();
   }
 
+  @Test
+  public void stopStopsBackgroundThreadsAfterDispatcher() {
+    lifecycle.stop();
+    InOrder inOrder = inOrder(dispatcher, watchdog, threadCountTuner, groupCommitWriter, parentWakeups);
+    inOrder.verify(dispatcher).shutdown();
+    inOrder.verify(watchdog).shutdown();
+    inOrder.verify(threadCountTuner).shutdown();
+    inOrder.verify(groupCommitWriter).shutdown();
+    inOrder.verify(parentWakeups).shutdown();
+  }
+
   @Test
   public void stopWithCallbackStopsDispatcherThreadAndRunsCallback() {
     Runnable callback = mock(Runnable.class);
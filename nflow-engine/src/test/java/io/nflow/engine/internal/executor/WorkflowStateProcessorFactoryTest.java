@@ -32,7 +32,13 @@ public class WorkflowStateProcessorFactoryTest extends BaseNflowTest {
   @Mock
   WorkflowInstanceDao workflowInstanceDao;
   @Mock
+  GroupCommitWriter groupCommitWriter;
+  @Mock
+  ParentWakeupCoalescer parentWakeups;
+  @Mock
   WorkflowInstancePreProcessor workflowInstancePreProcessor;
+  @Mock
+  WorkflowInstanceExecutor workflowInstanceExecutor;
   MockEnvironment env = new MockEnvironment();
   @Mock
   WorkflowExecutorListener listener1;
@@ -53,8 +59,9 @@ public class WorkflowStateProcessorFactoryTest extends BaseNflowTest {
     env.setProperty("nflow.executor.stateVariableValueTooLongRetryDelay.minutes", "60");
     env.setProperty("nflow.executor.fetchChildWorkflowIds", "false");
     env.setProperty("nflow.db.workflowInstanceType.cacheSize", "10000");
+    env.setProperty("nflow.executor.stateVariables.lazy", "false");
     factory = new WorkflowStateProcessorFactory(workflowDefinitions, workflowInstances, objectMapper, workflowInstanceDao,
-        workflowInstancePreProcessor, env);
+        groupCommitWriter, parentWakeups, workflowInstancePreProcessor, workflowInstanceExecutor, env);
   }
 
   @Test
@@ -85,4 +92,16 @@ public class WorkflowStateProcessorFactoryTest extends BaseNflowTest {
     verify(executor1).logPotentiallyStuck(anyLong());
     verify(executor2, never()).logPotentiallyStuck(anyLong());
   }
+
+  @Test
+  public void timeOutStateMethodsCountsTimedOutProcessors() {
+    WorkflowStateProcessor executor1 = mock(WorkflowStateProcessor.class);
+    WorkflowStateProcessor executor2 = mock(WorkflowStateProcessor.class);
+    when(executor1.timeOutStateMethod(anyLong())).thenReturn(true);
+    when(executor2.timeOutStateMethod(anyLong())).thenReturn(false);
+    factory.processingInstances.put(111L, executor1);
+    factory.processingInstances.put(222L, executor2);
+
+    assertThat(factory.timeOutStateMethods(), is(1));
+  }
 }
@@ -18,11 +18,14 @@ import static java.util.Arrays.asList;
 import static java.util.Collections.emptyList;
 import static java.util.Collections.singletonList;
 import static java.util.concurrent.Executors.newSingleThreadExecutor;
+import static java.util.concurrent.TimeUnit.MILLISECONDS;
+import static java.util.concurrent.TimeUnit.MINUTES;
 import static org.hamcrest.MatcherAssert.assertThat;
 import static org.hamcrest.Matchers.containsString;
 import static org.hamcrest.Matchers.empty;
 import static org.hamcrest.Matchers.greaterThanOrEqualTo;
 import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.lessThan;
 import static org.hamcrest.Matchers.notNullValue;
 import static org.hamcrest.Matchers.nullValue;
 import static org.joda.time.DateTime.now;
@@ -51,12 +54,17 @@ import static org.mockito.Mockito.when;
 import static org.mockito.hamcrest.MockitoHamcrest.argThat;
 
 import java.util.EnumSet;
+import java.util.HashMap;
 import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionStage;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
 import java.util.concurrent.ExecutorService;
+import java.util.concurrent.atomic.AtomicBoolean;
 
 import org.hamcrest.Description;
 import org.hamcrest.Matcher;
@@ -113,6 +121,15 @@ public class WorkflowStateProcessorTest extends BaseNflowTest {
   @Mock
   WorkflowInstanceDao workflowInstanceDao;
 
+  @Mock
+  GroupCommitWriter groupCommitWriter;
+
+  @Mock
+  ParentWakeupCoalescer parentWakeups;
+
+  @Mock
+  WorkflowInstanceExecutor workflowInstanceExecutor;
+
   MockEnvironment env = new MockEnvironment();
 
   @Mock
@@ -157,6 +174,12 @@ public class WorkflowStateProcessorTest extends BaseNflowTest {
 
   WorkflowDefinition<StateVariableWorkflow.State> stateVariableWf = new StateVariableWorkflow();
 
+  WorkflowDefinition<AsyncTestWorkflow.State> asyncWf = new AsyncTestWorkflow();
+
+  WorkflowDefinition<TimeoutTestWorkflow.State> timeoutWf = new TimeoutTestWorkflow();
+  WorkflowDefinition<PartialTimeoutTestWorkflow.State> partialTimeoutWf = new PartialTimeoutTestWorkflow();
+  WorkflowDefinition<TransientTestWorkflow.State> transientWf = new TransientTestWorkflow();
+
   static WorkflowInstance newChildWorkflow = mock(WorkflowInstance.class);
 
   static WorkflowInstance newWorkflow = mock(WorkflowInstance.class);
@@ -178,8 +201,10 @@ public class WorkflowStateProcessorTest extends BaseNflowTest {
     env.setProperty("nflow.executor.stateVariableValueTooLongRetryDelay.minutes", "60");
     env.setProperty("nflow.executor.fetchChildWorkflowIds", "true");
     env.setProperty("nflow.db.workflowInstanceType.cacheSize", "10000");
+    env.setProperty("nflow.executor.stateVariables.lazy", "false");
     executor = new WorkflowStateProcessor(1, objectMapper, workflowDefinitions, workflowInstances, workflowInstanceDao,
-        workflowInstancePreProcessor, env, processingInstances, listener1, listener2);
+        groupCommitWriter, parentWakeups, workflowInstancePreProcessor, workflowInstanceExecutor, env, processingInstances,
+        listener1, listener2);
     setCurrentMillisFixed(currentTimeMillis());
     lenient().doReturn(executeWf).when(workflowDefinitions).getWorkflowDefinition("execute-test");
     lenient().doReturn(forceWf).when(workflowDefinitions).getWorkflowDefinition("force-test");
@@ -188,6 +213,10 @@ public class WorkflowStateProcessorTest extends BaseNflowTest {
     lenient().doReturn(failingWf).when(workflowDefinitions).getWorkflowDefinition("failing-test");
     lenient().doReturn(wakeWf).when(workflowDefinitions).getWorkflowDefinition("wake-test");
     lenient().doReturn(stateVariableWf).when(workflowDefinitions).getWorkflowDefinition("state-variable");
+    lenient().doReturn(asyncWf).when(workflowDefinitions).getWorkflowDefinition("async-test");
+    lenient().doReturn(timeoutWf).when(workflowDefinitions).getWorkflowDefinition("timeout-test");
+    lenient().doReturn(partialTimeoutWf).when(workflowDefinitions).getWorkflowDefinition("partial-timeout-test");
+    lenient().doReturn(transientWf).when(workflowDefinitions).getWorkflowDefinition("transient-test");
     filterChain(listener1);
     filterChain(listener2);
     lenient().when(executionMock.getRetries()).thenReturn(testWorkflowDef.getSettings().maxRetries);
@@ -228,6 +257,20 @@ public class WorkflowStateProcessorTest extends BaseNflowTest {
         argThat(isEmptyWorkflowList()), argThat(isEmptyWorkflowList()), eq(true));
   }
 
+  @Test
+  public void runWorkflowThroughOneFailedStateWithGroupCommit() {
+    WorkflowInstance instance = executingInstanceBuilder().setType("failing-test").setState("start").build();
+    when(workflowInstances.getWorkflowInstance(instance.id, INCLUDES, null)).thenReturn(instance);
+    when(groupCommitWriter.isEnabled()).thenReturn(true);
+    runExecutorWithTimout();
+    verify(groupCommitWriter).updateWorkflowInstanceAfterExecution(
+        argThat(matchesWorkflowInstance(inProgress, FailingTestWorkflow.State.start, 1, containsString("test-fail"))),
+        argThat(
+            matchesWorkflowInstanceAction(FailingTestWorkflow.State.start, containsString("test-fail"), 0, stateExecutionFailed)),
+        eq(true));
+    verify(workflowInstanceDao, never()).updateWorkflowInstanceAfterExecution(any(), any(), any(), any(), anyBoolean());
+  }
+
   @Test
   public void runWorkflowThroughToFailureState() {
     WorkflowInstance instance = executingInstanceBuilder().setType("failing-test").setState("start")
@@ -291,6 +334,182 @@ public class WorkflowStateProcessorTest extends BaseNflowTest {
         matchesWorkflowInstanceAction(SimpleTestWorkflow.State.processing, is("Finished."), 0, stateExecution));
   }
 
+  @Test
+  public void asyncStateMethodReleasesThreadUntilStageCompletes() {
+    useListenersWithoutProcess();
+    WorkflowInstance instance = executingInstanceBuilder().setType("async-test").setState("start").build();
+    when(workflowInstances.getWorkflowInstance(instance.id, INCLUDES, null)).thenReturn(instance);
+    when(workflowInstanceExecutor.tryStartAsyncWait()).thenReturn(true);
+    doAnswer(invocation -> {
+      invocation.getArgument(0, Runnable.class).run();
+      return null;
+    }).when(workflowInstanceExecutor).execute(any(Runnable.class));
+    AsyncTestWorkflow.result = new CompletableFuture<>();
+
+    runExecutorWithTimout();
+
+    verify(workflowInstanceDao, never()).updateWorkflowInstanceAfterExecution(any(), any(), any(), any(), anyBoolean());
+    assertThat(processingInstances.containsKey(instance.id), is(true));
+
+    AsyncTestWorkflow.result.complete(stopInState(AsyncTestWorkflow.State.end, "Finished asynchronously."));
+
+    verify(workflowInstanceExecutor).asyncWaitFinished();
+    verify(workflowInstanceDao).updateWorkflowInstanceAfterExecution(
+        argThat(matchesWorkflowInstance(finished, AsyncTestWorkflow.State.end, 0, is("Stopped in state end"),
+            nullValue(DateTime.class))),
+        argThat(matchesWorkflowInstanceAction(AsyncTestWorkflow.State.start, is("Finished asynchronously."), 0, stateExecution)),
+        argThat(isEmptyWorkflowList()), argThat(isEmptyWorkflowList()), eq(true));
+    assertThat(processingInstances.containsKey(instance.id), is(false));
+  }
+
+  @Test
+  public void asyncStateMethodIsWaitedForWhenInFlightLimitIsReached() {
+    useListenersWithoutProcess();
+    WorkflowInstance instance = executingInstanceBuilder().setType("async-test").setState("start").build();
+    when(workflowInstances.getWorkflowInstance(instance.id, INCLUDES, null)).thenReturn(instance);
+    when(workflowInstanceExecutor.tryStartAsyncWait()).thenReturn(false);
+    AsyncTestWorkflow.result = new CompletableFuture<>();
+    ExecutorService completer = newSingleThreadExecutor();
+    try {
+      completer.submit(() -> {
+        Thread.sleep(100);
+        return AsyncTestWorkflow.result.complete(stopInState(AsyncTestWorkflow.State.end, "Finished asynchronously."));
+      });
+
+      runExecutorWithTimout();
+    } finally {
+      completer.shutdownNow();
+    }
+
+    verify(workflowInstanceExecutor, never()).execute(any(Runnable.class));
+    verify(workflowInstanceDao).updateWorkflowInstanceAfterExecution(
+        argThat(matchesWorkflowInstance(finished, AsyncTestWorkflow.State.end, 0, is("Stopped in state end"),
+            nullValue(DateTime.class))),
+        argThat(matchesWorkflowInstanceAction(AsyncTestWorkflow.State.start, is("Finished asynchronously."), 0, stateExecution)),
+        argThat(isEmptyWorkflowList()), argThat(isEmptyWorkflowList()), eq(true));
+  }
+
+  @Test
+  public void asyncStateMethodIsStartedAtEndOfListenerChainWhenListenerWrapsProcessing() {
+    WorkflowInstance instance = executingInstanceBuilder().setType("async-test").setState("start").build();
+    when(workflowInstances.getWorkflowInstance(instance.id, INCLUDES, null)).thenReturn(instance);
+    AsyncTestWorkflow.result = new CompletableFuture<>();
+    AsyncTestWorkflow.invoked = false;
+    AtomicBoolean invokedBeforeChain = new AtomicBoolean(true);
+    doAnswer(invocation -> {
+      invokedBeforeChain.set(AsyncTestWorkflow.invoked);
+      AsyncTestWorkflow.result.complete(stopInState(AsyncTestWorkflow.State.end, "Finished asynchronously."));
+      return invocation.getArgument(1, ListenerChain.class).next(invocation.getArgument(0));
+    }).when(listener1).process(any(ListenerContext.class), any(ListenerChain.class));
+
+    runExecutorWithTimout();
+
+    assertThat(invokedBeforeChain.get(), is(false));
+    assertThat(AsyncTestWorkflow.invoked, is(true));
+    verify(workflowInstanceExecutor, never()).tryStartAsyncWait();
+    verify(workflowInstanceDao).updateWorkflowInstanceAfterExecution(
+        argThat(matchesWorkflowInstance(finished, AsyncTestWorkflow.State.end, 0, is("Stopped in state end"),
+            nullValue(DateTime.class))),
+        argThat(matchesWorkflowInstanceAction(AsyncTestWorkflow.State.start, is("Finished asynchronously."), 0, stateExecution)),
+        argThat(isEmptyWorkflowList()), argThat(isEmptyWorkflowList()), eq(true));
+  }
+
+  @Test
+  public void asyncStateMethodIsNotStartedWhenListenerSkipsProcessing() {
+    DateTime skipped = now().plusHours(1);
+    WorkflowInstance instance = executingInstanceBuilder().setType("async-test").setState("start").build();
+    when(workflowInstances.getWorkflowInstance(instance.id, INCLUDES, null)).thenReturn(instance);
+    AsyncTestWorkflow.invoked = false;
+    doReturn(retryAfter(skipped, "")).when(listener1).process(any(ListenerContext.class), any(ListenerChain.class));
+
+    runExecutorWithTimout();
+
+    assertThat(AsyncTestWorkflow.invoked, is(false));
+    verify(workflowInstanceDao).updateWorkflowInstance(argThat(matchesWorkflowInstance(inProgress, AsyncTestWorkflow.State.start,
+        0, is("Scheduled by previous state start"), is(skipped), is(nullValue()))));
+  }
+
+  @Test
+  public void failedAsyncStateMethodIsRetried() {
+    WorkflowInstance instance = executingInstanceBuilder().setType("async-test").setState("start").build();
+    when(workflowInstances.getWorkflowInstance(instance.id, INCLUDES, null)).thenReturn(instance);
+    AsyncTestWorkflow.result = new CompletableFuture<>();
+    AsyncTestWorkflow.result.completeExceptionally(new RuntimeException("test-fail"));
+
+    runExecutorWithTimout();
+
+    verify(workflowInstanceExecutor, never()).tryStartAsyncWait();
+    verify(workflowInstanceDao).updateWorkflowInstanceAfterExecution(
+        argThat(matchesWorkflowInstance(inProgress, AsyncTestWorkflow.State.start, 1, containsString("test-fail"))),
+        argThat(
+            matchesWorkflowInstanceAction(AsyncTestWorkflow.State.start, containsString("test-fail"), 0, stateExecutionFailed)),
+        argThat(isEmptyWorkflowList()), argThat(isEmptyWorkflowList()), eq(true));
+  }
+
+  @Test
+  public void stateMethodExceedingTimeoutIsInterruptedAndRetried() {
+    WorkflowInstance instance = executingInstanceBuilder().setType("timeout-test").setState("start").build();
+    when(workflowInstances.getWorkflowInstance(instance.id, INCLUDES, null)).thenReturn(instance);
+    TimeoutTestWorkflow.started = new CountDownLatch(1);
+    ExecutorService watchdog = newSingleThreadExecutor();
+    try {
+      watchdog.submit(() -> {
+        TimeoutTestWorkflow.started.await();
+        return executor.timeOutStateMethod(Long.MAX_VALUE);
+      });
+
+      runExecutorWithTimout();
+    } finally {
+      watchdog.shutdownNow();
+    }
+
+    verify(workflowInstanceDao).updateWorkflowInstanceAfterExecution(
+        argThat(matchesWorkflowInstance(inProgress, TimeoutTestWorkflow.State.start, 1, containsString("timed out"))),
+        argThat(matchesWorkflowInstanceAction(TimeoutTestWorkflow.State.start, containsString("timed out"), 0,
+            stateExecutionFailed)),
+        argThat(isEmptyWorkflowList()), argThat(isEmptyWorkflowList()), eq(true));
+  }
+
+  @Test
+  public void asyncStateMethodExceedingTimeoutIsFailedAndRetried() {
+    useListenersWithoutProcess();
+    WorkflowInstance instance = executingInstanceBuilder().setType("timeout-test").setState("async").build();
+    when(workflowInstances.getWorkflowInstance(instance.id, INCLUDES, null)).thenReturn(instance);
+    when(workflowInstanceExecutor.tryStartAsyncWait()).thenReturn(true);
+    doAnswer(invocation -> {
+      invocation.getArgument(0, Runnable.class).run();
+      return null;
+    }).when(workflowInstanceExecutor).execute(any(Runnable.class));
+    TimeoutTestWorkflow.started = new CountDownLatch(1);
+
+    runExecutorWithTimout();
+
+    assertThat(executor.timeOutStateMethod(currentTimeMillis()), is(false));
+    assertThat(executor.timeOutStateMethod(Long.MAX_VALUE), is(true));
+
+    verify(workflowInstanceDao).updateWorkflowInstanceAfterExecution(
+        argThat(matchesWorkflowInstance(inProgress, TimeoutTestWorkflow.State.async, 1, containsString("timed out"))),
+        argThat(matchesWorkflowInstanceAction(TimeoutTestWorkflow.State.async, containsString("timed out"), 0,
+            stateExecutionFailed)),
+        argThat(isEmptyWorkflowList()), argThat(isEmptyWorkflowList()), eq(true));
+    assertThat(processingInstances.containsKey(instance.id), is(false));
+  }
+
+  @Test
+  public void asyncStateMethodWithoutTimeoutIsNotTimedOutAfterTimedStateMethod() {
+    useListenersWithoutProcess();
+    WorkflowInstance instance = executingInstanceBuilder().setType("partial-timeout-test").setState("timed").build();
+    when(workflowInstances.getWorkflowInstance(instance.id, INCLUDES, null)).thenReturn(instance);
+    when(workflowInstanceExecutor.tryStartAsyncWait()).thenReturn(true);
+    PartialTimeoutTestWorkflow.result = new CompletableFuture<>();
+
+    runExecutorWithTimout();
+
+    assertThat(processingInstances.containsKey(instance.id), is(true));
+    assertThat(executor.timeOutStateMethod(Long.MAX_VALUE), is(false));
+    assertThat(PartialTimeoutTestWorkflow.result.isDone(), is(false));
+  }
+
   @Test
   public void instanceWithUnsupportedStateIsRescheduled() {
     WorkflowInstance instance = executingInstanceBuilder().setType("simple-test").setState("invalid").build();
@@ -364,7 +583,8 @@ public class WorkflowStateProcessorTest extends BaseNflowTest {
     when(workflowInstances.getWorkflowInstance(instance.id, INCLUDES, null)).thenReturn(instance);
     WorkflowExecutorListener listener = mock(WorkflowExecutorListener.class);
     executor = new WorkflowStateProcessor(1, objectMapper, workflowDefinitions, workflowInstances, workflowInstanceDao,
-        workflowInstancePreProcessor, env, processingInstances, listener);
+        groupCommitWriter, parentWakeups, workflowInstancePreProcessor, workflowInstanceExecutor, env, processingInstances,
+        listener);
 
     doAnswer((Answer<NextAction>) invocation ->
             retryAfter(skipped, "")).when(listener).process(any(ListenerContext.class), any(ListenerChain.class));
@@ -399,6 +619,15 @@ public class WorkflowStateProcessorTest extends BaseNflowTest {
         matchesWorkflowInstanceAction(FailingTestWorkflow.State.error, is("Stopped in final state"), 0, stateExecution));
   }
 
+  // listeners that do not override process() let the executor thread be released during asynchronous state methods
+  private void useListenersWithoutProcess() {
+    executor = new WorkflowStateProcessor(1, objectMapper, workflowDefinitions, workflowInstances, workflowInstanceDao,
+        groupCommitWriter, parentWakeups, workflowInstancePreProcessor, workflowInstanceExecutor, env, processingInstances,
+        new WorkflowExecutorListener() {
+          // only the default methods
+        });
+  }
+
   private void filterChain(WorkflowExecutorListener listener) {
     lenient().doAnswer(invocation -> {
       ListenerContext context = (ListenerContext) invocation.getArguments()[0];
@@ -450,7 +679,8 @@ public class WorkflowStateProcessorTest extends BaseNflowTest {
     when(workflowInstanceDao.getWorkflowInstanceType(instance.parentWorkflowId)).thenReturn("parentType");
     TestDefinition parentDefinition = mock(TestDefinition.class);
     doReturn(parentDefinition).when(workflowDefinitions).getWorkflowDefinition("parentType");
-    when(parentDefinition.getStates()).thenReturn(new TestDefinition("parentType", TestDefinition.TestState.start1).getStates());
+    when(parentDefinition.getWaitStates())
+        .thenReturn(new TestDefinition("parentType", TestDefinition.TestState.start1).getWaitStates());
     when(workflowInstanceDao.wakeUpWorkflowExternally(999, emptyList())).thenReturn(true);
 
     runExecutorWithTimout();
@@ -466,7 +696,8 @@ public class WorkflowStateProcessorTest extends BaseNflowTest {
     when(workflowInstanceDao.getWorkflowInstanceType(instance.parentWorkflowId)).thenReturn("parentType");
     TestDefinition parentDefinition = mock(TestDefinition.class);
     doReturn(parentDefinition).when(workflowDefinitions).getWorkflowDefinition("parentType");
-    when(parentDefinition.getStates()).thenReturn(new TestDefinition("parentType", TestDefinition.TestState.start1).getStates());
+    when(parentDefinition.getWaitStates())
+        .thenReturn(new TestDefinition("parentType", TestDefinition.TestState.start1).getWaitStates());
     when(workflowInstanceDao.wakeUpWorkflowExternally(999, emptyList())).thenReturn(false);
 
     runExecutorWithTimout();
@@ -490,11 +721,29 @@ public class WorkflowStateProcessorTest extends BaseNflowTest {
 
   }
 
+  @SuppressWarnings("unchecked")
+  @Test
+  public void finishingChildWakesParentThroughCoalescerWhenEnabled() {
+    WorkflowInstance instance = executingInstanceBuilder().setParentWorkflowId(999L).setType("simple-test").setState("processing")
+        .build();
+    when(workflowInstances.getWorkflowInstance(instance.id, INCLUDES, null)).thenReturn(instance);
+    when(workflowInstanceDao.getWorkflowInstanceType(instance.parentWorkflowId)).thenReturn(BulkWorkflow.BULK_WORKFLOW_TYPE);
+    BulkWorkflow parentDefinition = new BulkWorkflow();
+    doReturn(parentDefinition).when(workflowDefinitions).getWorkflowDefinition(BulkWorkflow.BULK_WORKFLOW_TYPE);
+    when(parentWakeups.isEnabled()).thenReturn(true);
+
+    runExecutorWithTimout();
+
+    verify(parentWakeups).wakeUpParent(999, singletonList(waitForChildrenToFinish.name()));
+    verify(workflowInstanceDao, never()).wakeUpWorkflowExternally(any(Long.class), any(List.class));
+  }
+
   @Test
   public void goToErrorStateWhenNextStateIsInvalid() {
     env.setProperty("nflow.illegal.state.change.action", "ignore");
     executor = new WorkflowStateProcessor(1, objectMapper, workflowDefinitions, workflowInstances, workflowInstanceDao,
-        workflowInstancePreProcessor, env, processingInstances, listener1, listener2);
+        groupCommitWriter, parentWakeups, workflowInstancePreProcessor, workflowInstanceExecutor, env, processingInstances,
+        listener1, listener2);
 
     WorkflowInstance instance = executingInstanceBuilder().setType("failing-test").setState("invalidNextState").build();
     when(workflowInstances.getWorkflowInstance(instance.id, INCLUDES, null)).thenReturn(instance);
@@ -518,7 +767,8 @@ public class WorkflowStateProcessorTest extends BaseNflowTest {
   public void doNotFetchChildWorkflowIdsIfDisabledByConfig() {
     env.setProperty("nflow.executor.fetchChildWorkflowIds", "false");
     executor = new WorkflowStateProcessor(1, objectMapper, workflowDefinitions, workflowInstances, workflowInstanceDao,
-            workflowInstancePreProcessor, env, processingInstances, listener1, listener2);
+            groupCommitWriter, parentWakeups, workflowInstancePreProcessor, workflowInstanceExecutor, env, processingInstances,
+            listener1, listener2);
 
     WorkflowInstance instance = executingInstanceBuilder().setType("simple-test").setState("start").build();
     when(workflowInstances.getWorkflowInstance(instance.id, EnumSet.of(CURRENT_STATE_VARIABLES), null)).thenReturn(instance);
@@ -628,6 +878,39 @@ public class WorkflowStateProcessorTest extends BaseNflowTest {
     assertThat(state.get("hello"), is("[1,2,3]"));
   }
 
+  @Test
+  public void onlyDeclaredStateVariablesAreLoadedWhenStateVariablesAreLazy() {
+    env.setProperty("nflow.executor.stateVariables.lazy", "true");
+    executor = new WorkflowStateProcessor(1, objectMapper, workflowDefinitions, workflowInstances, workflowInstanceDao,
+        groupCommitWriter, parentWakeups, workflowInstancePreProcessor, workflowInstanceExecutor, env, processingInstances,
+        listener1, listener2);
+    Map<String, String> declaredState = new LinkedHashMap<>();
+    declaredState.put("string", "Str");
+    declaredState.put("pojo", "{\"field\": \"val\", \"test\": true}");
+    declaredState.put("immutablePojo", "{\"field\": \"unmodified\"}");
+    WorkflowInstance instance = executingInstanceBuilder().setType("execute-test").setState("process").build();
+    when(workflowInstances.getWorkflowInstance(instance.id, EnumSet.of(CHILD_WORKFLOW_IDS), null)).thenReturn(instance);
+    when(workflowInstanceDao.getStateVariables(instance.id,
+        asList("string", "int", "pojo", "nullPojo", "immutablePojo", "nullInt", "mutableString"))).thenReturn(declaredState);
+    // the processor reuses the original state variables of the saved instance, so the changes are read during the save
+    Map<String, String> changed = new HashMap<>();
+    doAnswer(invocation -> {
+      changed.putAll(invocation.getArgument(0, WorkflowInstance.class).getChangedStateVariables());
+      return null;
+    }).when(workflowInstanceDao).updateWorkflowInstanceAfterExecution(any(), any(), any(), any(), anyBoolean());
+
+    runExecutorWithTimout();
+
+    verify(workflowInstanceDao, times(1)).getStateVariables(anyLong(), any());
+    assertThat((String) lastArgs.get(0), is("Str"));
+    assertThat(((Pojo) lastArgs.get(2)).field, is("val modified"));
+    verify(workflowInstanceDao).updateWorkflowInstanceAfterExecution(any(),
+        argThat(matchesWorkflowInstanceAction(FailingTestWorkflow.State.process, is("Finished"), 0, stateExecution)),
+        argThat(isEmptyWorkflowList()), argThat(isEmptyWorkflowList()), eq(true));
+    assertThat(changed.containsKey("string"), is(false));
+    assertThat(changed.get("pojo"), is("{\"field\":\"val modified\",\"test\":true}"));
+  }
+
   private Matcher<WorkflowInstance> matchesWorkflowInstance(WorkflowInstanceStatus status, WorkflowState state, int retries,
       Matcher<String> stateTextMatcher) {
     return matchesWorkflowInstance(status, state, retries, stateTextMatcher, Matchers.any(DateTime.class));
@@ -777,7 +1060,8 @@ public class WorkflowStateProcessorTest extends BaseNflowTest {
   public void illegalStateChangeGoesToIllegalStateWhenActionIsLog() {
     env.setProperty("nflow.illegal.state.change.action", "log");
     executor = new WorkflowStateProcessor(1, objectMapper, workflowDefinitions, workflowInstances, workflowInstanceDao,
-        workflowInstancePreProcessor, env, processingInstances, listener1, listener2);
+        groupCommitWriter, parentWakeups, workflowInstancePreProcessor, workflowInstanceExecutor, env, processingInstances,
+        listener1, listener2);
 
     WorkflowInstance instance = executingInstanceBuilder().setType("simple-test").setState("illegalStateChange").build();
     when(workflowInstances.getWorkflowInstance(instance.id, INCLUDES, null)).thenReturn(instance);
@@ -796,7 +1080,8 @@ public class WorkflowStateProcessorTest extends BaseNflowTest {
   public void illegalStateChangeGoesToIllegalStateWhenActionIsIgnore() {
     env.setProperty("nflow.illegal.state.change.action", "ignore");
     executor = new WorkflowStateProcessor(1, objectMapper, workflowDefinitions, workflowInstances, workflowInstanceDao,
-        workflowInstancePreProcessor, env, processingInstances, listener1, listener2);
+        groupCommitWriter, parentWakeups, workflowInstancePreProcessor, workflowInstanceExecutor, env, processingInstances,
+        listener1, listener2);
 
     WorkflowInstance instance = executingInstanceBuilder().setType("simple-test").setState("illegalStateChange").build();
     when(workflowInstances.getWorkflowInstance(instance.id, INCLUDES, null)).thenReturn(instance);
@@ -841,6 +1126,125 @@ public class WorkflowStateProcessorTest extends BaseNflowTest {
     verify(workflowInstanceDao, atLeast(2)).updateWorkflowInstanceAfterExecution(any(), any(), any(), any(), anyBoolean());
   }
 
+  @Test
+  public void transientStatesAreSavedWithNextSavedStateExecution() {
+    WorkflowInstance instance = executingInstanceBuilder().setType("transient-test").setState("validate").build();
+    when(workflowInstances.getWorkflowInstance(instance.id, INCLUDES, null)).thenReturn(instance);
+    Map<String, String> changed = new HashMap<>();
+    doAnswer(invocation -> {
+      changed.putAll(invocation.getArgument(0, WorkflowInstance.class).getChangedStateVariables());
+      return null;
+    }).when(workflowInstanceDao).updateWorkflowInstanceAfterExecution(any(), any(), any(), any(), anyBoolean());
+
+    runExecutorWithTimout();
+
+    verify(workflowInstanceDao).updateWorkflowInstanceAfterExecution(update.capture(), action.capture(),
+        argThat(isEmptyWorkflowList()), argThat(isEmptyWorkflowList()), eq(true));
+    assertThat(update.getValue(), matchesWorkflowInstance(finished, TransientTestWorkflow.State.done, 0,
+        is("Stopped in state done"), nullValue(DateTime.class)));
+    assertThat(changed.get("validated"), is("true"));
+    assertThat(changed.get("checked"), is("true"));
+    assertThat(action.getValue(), matchesWorkflowInstanceAction(TransientTestWorkflow.State.store,
+        is("Stored (after transient states validate, check)"), 0, stateExecution));
+  }
+
+  @Test
+  public void failingTransientStateIsSaved() {
+    WorkflowInstance instance = executingInstanceBuilder().setType("transient-test").setState("validate")
+        .putStateVariable("fail", "true").build();
+    when(workflowInstances.getWorkflowInstance(instance.id, INCLUDES, null)).thenReturn(instance);
+
+    runExecutorWithTimout();
+
+    verify(workflowInstanceDao).updateWorkflowInstanceAfterExecution(update.capture(), action.capture(),
+        argThat(isEmptyWorkflowList()), argThat(isEmptyWorkflowList()), eq(true));
+    assertThat(update.getValue(), matchesWorkflowInstance(inProgress, TransientTestWorkflow.State.check, 1,
+        containsString("check failed")));
+    assertThat(action.getValue(), matchesWorkflowInstanceAction(TransientTestWorkflow.State.check,
+        containsString("(after transient states validate)"), 0, stateExecutionFailed));
+  }
+
+  @Test
+  public void failedSaveIsRetriedLaterWithoutBlockingThread() {
+    WorkflowInstance instance = executingInstanceBuilder().setType("execute-test").setState("start").build();
+    when(workflowInstances.getWorkflowInstance(instance.id, INCLUDES, null)).thenReturn(instance);
+    doThrow(new RuntimeException("some failure")).doNothing().when(workflowInstanceDao)
+        .updateWorkflowInstanceAfterExecution(any(), any(), any(), any(), anyBoolean());
+    when(workflowInstanceExecutor.tryStartAsyncWait()).thenReturn(true);
+
+    runExecutorWithTimout();
+
+    ArgumentCaptor<Runnable> retry = ArgumentCaptor.forClass(Runnable.class);
+    verify(workflowInstanceExecutor).executeAfter(retry.capture(), eq(1000L));
+    assertThat(processingInstances.containsKey(instance.id), is(true));
+
+    retry.getValue().run();
+
+    verify(workflowInstanceExecutor).asyncWaitFinished();
+    verify(workflowInstanceDao, times(2)).updateWorkflowInstanceAfterExecution(update.capture(), any(), any(), any(),
+        anyBoolean());
+    assertThat(update.getAllValues().get(1), matchesWorkflowInstance(inProgress, ExecuteTestWorkflow.State.process, 0,
+        is("Scheduled by previous state start")));
+    assertThat(processingInstances.containsKey(instance.id), is(false));
+    verify(workflowInstances).getWorkflowInstance(instance.id, INCLUDES, null);
+  }
+
+  @Test
+  public void retryDelayOfFailedSaveIsNotRecordedAsDatabaseWait() {
+    WorkflowInstance instance = executingInstanceBuilder().setType("execute-test").setState("start").build();
+    when(workflowInstances.getWorkflowInstance(instance.id, INCLUDES, null)).thenReturn(instance);
+    doThrow(new RuntimeException("some failure")).doNothing().when(workflowInstanceDao)
+        .updateWorkflowInstanceAfterExecution(any(), any(), any(), any(), anyBoolean());
+
+    runExecutorWithTimout();
+
+    ArgumentCaptor<Long> dbWaitNanos = ArgumentCaptor.forClass(Long.class);
+    verify(workflowInstanceExecutor, atLeast(2)).recordDbWait(dbWaitNanos.capture());
+    for (long nanos : dbWaitNanos.getAllValues()) {
+      assertThat(nanos, lessThan(MILLISECONDS.toNanos(500)));
+    }
+  }
+
+  @Test
+  public void failedProcessingIsRetriedLaterWithBackoff() {
+    WorkflowInstance instance = executingInstanceBuilder().setType("execute-test").setState("start").build();
+    doThrow(new RuntimeException("some failure")).when(workflowInstances).getWorkflowInstance(instance.id, INCLUDES, null);
+    when(workflowInstanceExecutor.tryStartAsyncWait()).thenReturn(true);
+    env.setProperty("nflow.executor.stateProcessingRetryDelay.seconds", "60");
+    executor = new WorkflowStateProcessor(1, objectMapper, workflowDefinitions, workflowInstances, workflowInstanceDao,
+        groupCommitWriter, parentWakeups, workflowInstancePreProcessor, workflowInstanceExecutor, env, processingInstances);
+
+    runExecutorWithTimout();
+    executor.run();
+    executor.run();
+
+    verify(workflowInstanceExecutor).executeAfter(executor, 1000L);
+    verify(workflowInstanceExecutor).executeAfter(executor, 2000L);
+    verify(workflowInstanceExecutor).executeAfter(executor, 4000L);
+    verify(workflowInstanceExecutor, times(2)).asyncWaitFinished();
+    assertThat(processingInstances.containsKey(instance.id), is(true));
+  }
+
+  @Test
+  public void processingFailingAfterLoadingInstanceIsRetriedLaterWithBackoff() {
+    WorkflowInstance instance = executingInstanceBuilder().setParentWorkflowId(999L).setType("simple-test").setState("processing")
+        .build();
+    when(workflowInstances.getWorkflowInstance(instance.id, INCLUDES, null)).thenReturn(instance);
+    doThrow(new RuntimeException("some failure")).when(workflowInstanceDao).getWorkflowInstanceType(instance.parentWorkflowId);
+    when(workflowInstanceExecutor.tryStartAsyncWait()).thenReturn(true);
+    env.setProperty("nflow.executor.stateProcessingRetryDelay.seconds", "60");
+    executor = new WorkflowStateProcessor(1, objectMapper, workflowDefinitions, workflowInstances, workflowInstanceDao,
+        groupCommitWriter, parentWakeups, workflowInstancePreProcessor, workflowInstanceExecutor, env, processingInstances);
+
+    runExecutorWithTimout();
+    executor.run();
+    executor.run();
+
+    verify(workflowInstanceExecutor).executeAfter(executor, 1000L);
+    verify(workflowInstanceExecutor).executeAfter(executor, 2000L);
+    verify(workflowInstanceExecutor).executeAfter(executor, 4000L);
+  }
+
   @Test
   public void deleteWorkflowInstanceHistoryNotExecutedWithDefaultSettings() {
     WorkflowInstance instance = executingInstanceBuilder().setType("simple-test").setState("start").build();
@@ -1138,6 +1542,171 @@ public class WorkflowStateProcessorTest extends BaseNflowTest {
     }
   }
 
+  public static class AsyncTestWorkflow extends WorkflowDefinition<AsyncTestWorkflow.State> {
+    static CompletableFuture<NextAction> result;
+    static volatile boolean invoked;
+
+    protected AsyncTestWorkflow() {
+      super("async", State.start, State.error);
+      permit(State.start, State.end);
+    }
+
+    public static enum State implements WorkflowState {
+      start(WorkflowStateType.start), end(WorkflowStateType.end), error(WorkflowStateType.end);
+
+      private final WorkflowStateType stateType;
+
+      private State(WorkflowStateType stateType) {
+        this.stateType = stateType;
+      }
+
+      @Override
+      public WorkflowStateType getType() {
+        return stateType;
+      }
+
+      @Override
+      public String getDescription() {
+        return name();
+      }
+    }
+
+    public CompletionStage<NextAction> start(@SuppressWarnings("unused") StateExecution execution) {
+      invoked = true;
+      return result;
+    }
+  }
+
+  public static class TimeoutTestWorkflow extends WorkflowDefinition<TimeoutTestWorkflow.State> {
+    static CountDownLatch started;
+
+    protected TimeoutTestWorkflow() {
+      super("timeout", State.start, State.error, new WorkflowSettings.Builder().setStateExecutionTimeoutSeconds(1).build());
+      permit(State.start, State.end);
+      permit(State.async, State.end);
+    }
+
+    public static enum State implements WorkflowState {
+      start(WorkflowStateType.start), async(WorkflowStateType.start), end(WorkflowStateType.end), error(WorkflowStateType.end);
+
+      private final WorkflowStateType stateType;
+
+      private State(WorkflowStateType stateType) {
+        this.stateType = stateType;
+      }
+
+      @Override
+      public WorkflowStateType getType() {
+        return stateType;
+      }
+
+      @Override
+      public String getDescription() {
+        return name();
+      }
+    }
+
+    public NextAction start(@SuppressWarnings("unused") StateExecution execution) throws InterruptedException {
+      started.countDown();
+      Thread.sleep(MINUTES.toMillis(1));
+      return moveToState(State.end, "Not interrupted");
+    }
+
+    public CompletionStage<NextAction> async(@SuppressWarnings("unused") StateExecution execution) {
+      started.countDown();
+      return new CompletableFuture<>();
+    }
+  }
+
+  public static class PartialTimeoutTestWorkflow extends WorkflowDefinition<PartialTimeoutTestWorkflow.State> {
+    static CompletableFuture<NextAction> result;
+
+    protected PartialTimeoutTestWorkflow() {
+      super("partial-timeout", State.timed, State.error,
+          new WorkflowSettings.Builder().setStateExecutionTimeoutSeconds(State.timed, 60).build());
+      permit(State.timed, State.untimedAsync);
+      permit(State.untimedAsync, State.end);
+    }
+
+    public static enum State implements WorkflowState {
+      timed(WorkflowStateType.start), untimedAsync(WorkflowStateType.normal), end(WorkflowStateType.end),
+      error(WorkflowStateType.end);
+
+      private final WorkflowStateType stateType;
+
+      private State(WorkflowStateType stateType) {
+        this.stateType = stateType;
+      }
+
+      @Override
+      public WorkflowStateType getType() {
+        return stateType;
+      }
+
+      @Override
+      public String getDescription() {
+        return name();
+      }
+    }
+
+    public NextAction timed(@SuppressWarnings("unused") StateExecution execution) {
+      return moveToState(State.untimedAsync, "Timed state finished");
+    }
+
+    public CompletionStage<NextAction> untimedAsync(@SuppressWarnings("unused") StateExecution execution) {
+      return result;
+    }
+  }
+
+  public static class TransientTestWorkflow extends WorkflowDefinition<TransientTestWorkflow.State> {
+
+    protected TransientTestWorkflow() {
+      super("transient", State.validate, State.error,
+          new WorkflowSettings.Builder().setTransientStates(State.validate, State.check).build());
+      permit(State.validate, State.check);
+      permit(State.check, State.store);
+      permit(State.store, State.done);
+    }
+
+    public static enum State implements WorkflowState {
+      validate(WorkflowStateType.start), check(WorkflowStateType.normal), store(WorkflowStateType.normal),
+      done(WorkflowStateType.end), error(WorkflowStateType.manual);
+
+      private final WorkflowStateType stateType;
+
+      private State(WorkflowStateType stateType) {
+        this.stateType = stateType;
+      }
+
+      @Override
+      public WorkflowStateType getType() {
+        return stateType;
+      }
+
+      @Override
+      public String getDescription() {
+        return name();
+      }
+    }
+
+    public NextAction validate(StateExecution execution) {
+      execution.setVariable("validated", "true");
+      return moveToState(State.check, "Validated");
+    }
+
+    public NextAction check(StateExecution execution) {
+      if (execution.getVariable("fail") != null) {
+        throw new IllegalStateException("check failed");
+      }
+      execution.setVariable("checked", "true");
+      return moveToState(State.store, "Checked");
+    }
+
+    public NextAction store(@SuppressWarnings("unused") StateExecution execution) {
+      return moveToState(State.done, "Stored");
+    }
+  }
+
   public static class NotifyTestWorkflow extends WorkflowDefinition<NotifyTestWorkflow.State> {
 
     protected NotifyTestWorkflow() {
@@ -0,0 +1,87 @@
+package io.nflow.engine.internal.executor;
+
+import static java.util.Arrays.asList;
+import static java.util.Collections.singletonMap;
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.contains;
+import static org.hamcrest.Matchers.is;
+import static org.mockito.Mockito.doReturn;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+import java.util.Map;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+
+import io.nflow.engine.internal.dao.WorkflowInstanceDao;
+import io.nflow.engine.service.WorkflowDefinitionService;
+import io.nflow.engine.workflow.definition.AbstractWorkflowDefinition;
+import io.nflow.engine.workflow.definition.WorkflowSettings;
+import io.nflow.engine.workflow.instance.WorkflowInstance;
+
+@ExtendWith(MockitoExtension.class)
+public class WorkflowTypeLimiterTest {
+
+  @Mock
+  WorkflowDefinitionService workflowDefinitions;
+  @Mock
+  WorkflowInstanceDao workflowInstances;
+  WorkflowTypeLimiter limiter;
+
+  @BeforeEach
+  public void setup() {
+    AbstractWorkflowDefinition<?> concurrencyLimited = definition("limited",
+        new WorkflowSettings.Builder().setMaxConcurrentInstancesPerNode(2).setMaxConcurrentInstancesPerCluster(3).build());
+    AbstractWorkflowDefinition<?> rateLimited = definition("rated",
+        new WorkflowSettings.Builder().setMaxExecutionsPerSecond(2.0).build());
+    AbstractWorkflowDefinition<?> unlimited = mock(AbstractWorkflowDefinition.class);
+    when(unlimited.getSettings()).thenReturn(new WorkflowSettings.Builder().build());
+    doReturn(asList(concurrencyLimited, rateLimited, unlimited)).when(workflowDefinitions).getWorkflowDefinitions();
+    limiter = new WorkflowTypeLimiter(workflowDefinitions, workflowInstances);
+  }
+
+  @Test
+  public void capacitiesAreLimitedByExecutingInstancesAndExecutionRate() {
+    when(workflowInstances.getExecutingWorkflowInstanceCounts(asList("limited"), true)).thenReturn(singletonMap("limited", 1));
+    when(workflowInstances.getExecutingWorkflowInstanceCounts(asList("limited"), false)).thenReturn(singletonMap("limited", 2));
+
+    Map<String, Integer> capacities = limiter.getTypeCapacities();
+
+    assertThat(capacities.keySet(), contains("limited", "rated"));
+    assertThat(capacities.get("limited"), is(1));
+    assertThat(capacities.get("rated"), is(2));
+  }
+
+  @Test
+  public void startedExecutionsConsumeExecutionRate() {
+    when(workflowInstances.getExecutingWorkflowInstanceCounts(asList("limited"), true)).thenReturn(singletonMap("limited", 0));
+    when(workflowInstances.getExecutingWorkflowInstanceCounts(asList("limited"), false)).thenReturn(singletonMap("limited", 3));
+    limiter.getTypeCapacities();
+
+    limiter.executionsStarted(asList(instance("rated"), instance("rated"), instance("other")));
+    Map<String, Integer> capacities = limiter.getTypeCapacities();
+
+    assertThat(capacities.get("limited"), is(0));
+    assertThat(capacities.get("rated"), is(0));
+  }
+
+  @Test
+  public void limitedTypesAreReturned() {
+    assertThat(limiter.getLimitedTypes(), contains("limited", "rated"));
+  }
+
+  private AbstractWorkflowDefinition<?> definition(String type, WorkflowSettings settings) {
+    AbstractWorkflowDefinition<?> definition = mock(AbstractWorkflowDefinition.class);
+    when(definition.getType()).thenReturn(type);
+    when(definition.getSettings()).thenReturn(settings);
+    return definition;
+  }
+
+  private WorkflowInstance instance(String type) {
+    return new WorkflowInstance.Builder().setType(type).build();
+  }
+}
@@ -0,0 +1,177 @@
+package io.nflow.engine.internal.storage.db;
+
+import static io.nflow.engine.internal.storage.db.PostgreSQLNotifyWakeupChannel.CHANNEL;
+import static java.util.concurrent.TimeUnit.MILLISECONDS;
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.is;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.doReturn;
+import static org.mockito.Mockito.doThrow;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+
+import javax.sql.DataSource;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.dao.DataAccessResourceFailureException;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.RowCallbackHandler;
+
+public class PostgreSQLNotifyWakeupChannelTest {
+
+  private final JdbcTemplate jdbc = mock(JdbcTemplate.class);
+  private final DataSource dataSource = mock(DataSource.class);
+  private final Connection connection = mock(Connection.class);
+  private final Statement statement = mock(Statement.class);
+  private final FakeConnection pgConnection = new FakeConnection();
+  private PostgreSQLNotifyWakeupChannel channel;
+
+  @BeforeEach
+  public void setup() throws SQLException {
+    when(jdbc.getDataSource()).thenReturn(dataSource);
+    when(connection.createStatement()).thenReturn(statement);
+    doReturn(pgConnection).when(connection).unwrap(FakePGConnection.class);
+  }
+
+  @AfterEach
+  public void close() {
+    if (channel != null) {
+      channel.close();
+    }
+  }
+
+  @Test
+  public void notificationsOfOwnExecutorGroupWakeUpDispatcher() throws Exception {
+    when(dataSource.getConnection()).thenReturn(connection);
+    channel = createChannel();
+    assertThat("woken up after starting to listen", channel.awaitWork(5000), is(true));
+    verify(statement).execute("listen " + CHANNEL);
+
+    pgConnection.send("other");
+    assertThat(channel.awaitWork(200), is(false));
+
+    pgConnection.send("other", "group");
+    assertThat(channel.awaitWork(5000), is(true));
+  }
+
+  @Test
+  public void listenerReconnectsWhenConnectionFails() throws Exception {
+    when(dataSource.getConnection()).thenThrow(new SQLException("test")).thenReturn(connection);
+    channel = createChannel();
+
+    assertThat(channel.awaitWork(5000), is(true));
+    verify(dataSource, times(2)).getConnection();
+  }
+
+  @Test
+  public void listenerReconnectsWhenReceivingNotificationsFails() throws Exception {
+    when(dataSource.getConnection()).thenReturn(connection);
+    channel = createChannel();
+    assertThat(channel.awaitWork(5000), is(true));
+
+    pgConnection.fail();
+
+    assertThat(channel.awaitWork(5000), is(true));
+    verify(dataSource, times(2)).getConnection();
+    verify(statement).execute("unlisten *");
+    verify(connection).close();
+    pgConnection.send("group");
+    assertThat(channel.awaitWork(5000), is(true));
+  }
+
+  @Test
+  public void closeStopsListenerAndReturnsConnection() throws Exception {
+    when(dataSource.getConnection()).thenReturn(connection);
+    channel = createChannel();
+    assertThat(channel.awaitWork(5000), is(true));
+
+    channel.close();
+
+    long deadline = System.currentTimeMillis() + 5000;
+    while (channel.isListening() && System.currentTimeMillis() < deadline) {
+      Thread.sleep(10);
+    }
+    assertThat(channel.isListening(), is(false));
+    verify(statement).execute("unlisten *");
+    verify(connection).close();
+    verify(dataSource).getConnection();
+  }
+
+  @Test
+  public void notificationIsSentToExecutorGroup() throws SQLException {
+    when(dataSource.getConnection()).thenReturn(connection);
+    channel = createChannel();
+
+    channel.notifyWorkAvailableInTransaction();
+
+    verify(jdbc).query(eq("select pg_notify(?, ?)"), any(RowCallbackHandler.class), eq(CHANNEL), eq("group"));
+  }
+
+  @Test
+  public void failureToSendNotificationIsIgnored() throws SQLException {
+    when(dataSource.getConnection()).thenReturn(connection);
+    doThrow(new DataAccessResourceFailureException("test")).when(jdbc).query(eq("select pg_notify(?, ?)"),
+        any(RowCallbackHandler.class), eq(CHANNEL), eq("group"));
+    channel = createChannel();
+
+    channel.notifyWorkAvailableInTransaction();
+
+    verify(jdbc).query(eq("select pg_notify(?, ?)"), any(RowCallbackHandler.class), eq(CHANNEL), eq("group"));
+  }
+
+  private PostgreSQLNotifyWakeupChannel createChannel() {
+    return new PostgreSQLNotifyWakeupChannel(jdbc, "group", 10, FakePGConnection.class.getName(),
+        FakePGNotification.class.getName());
+  }
+
+  public interface FakePGConnection {
+    FakePGNotification[] getNotifications(int timeoutMillis) throws SQLException;
+  }
+
+  public interface FakePGNotification {
+    String getParameter();
+  }
+
+  static class FakeConnection implements FakePGConnection {
+    private final BlockingQueue<Object> events = new LinkedBlockingQueue<>();
+
+    void send(String... executorGroups) {
+      FakePGNotification[] notifications = new FakePGNotification[executorGroups.length];
+      for (int i = 0; i < executorGroups.length; i++) {
+        String executorGroup = executorGroups[i];
+        notifications[i] = () -> executorGroup;
+      }
+      events.add(notifications);
+    }
+
+    void fail() {
+      events.add(new SQLException("test"));
+    }
+
+    @Override
+    public FakePGNotification[] getNotifications(int timeoutMillis) throws SQLException {
+      Object event;
+      try {
+        event = events.poll(timeoutMillis, MILLISECONDS);
+      } catch (@SuppressWarnings("unused") InterruptedException e) {
+        Thread.currentThread().interrupt();
+        return null;
+      }
+      if (event instanceof SQLException) {
+        throw (SQLException) event;
+      }
+      return (FakePGNotification[]) event;
+    }
+  }
+}
@@ -2,6 +2,7 @@ package io.nflow.engine.internal.workflow;
 
 import static java.util.Arrays.asList;
 import static java.util.Collections.singletonList;
+import static java.util.Collections.singletonMap;
 import static org.hamcrest.CoreMatchers.equalTo;
 import static org.hamcrest.CoreMatchers.is;
 import static org.hamcrest.CoreMatchers.notNullValue;
@@ -13,7 +14,11 @@ import static org.hamcrest.Matchers.emptyCollectionOf;
 import static org.hamcrest.Matchers.hasEntry;
 import static org.joda.time.DateTime.now;
 import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.mockito.ArgumentMatchers.anyCollection;
+import static org.mockito.ArgumentMatchers.anyLong;
 import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
 import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
 
@@ -198,6 +203,38 @@ public class StateExecutionImplTest {
     assertThat(execution.getVariable("foo", "default"), is("default"));
   }
 
+  @Test
+  public void lazyStateVariablesAreLoadedOnceWhenUsed() {
+    execution.setLazyStateVariables(true);
+    when(workflowDao.getStateVariables(99, singletonList("foo"))).thenReturn(singletonMap("foo", "bar"));
+
+    assertThat(execution.getVariable("foo"), is("bar"));
+    assertThat(execution.getVariable("foo", "default"), is("bar"));
+
+    verify(workflowDao, times(1)).getStateVariables(99, singletonList("foo"));
+    assertThat(instance.getChangedStateVariables().isEmpty(), is(true));
+  }
+
+  @Test
+  public void missingLazyStateVariablesAreLoadedOnce() {
+    execution.setLazyStateVariables(true);
+    when(workflowDao.getStateVariables(99, asList("foo", "bar"))).thenReturn(singletonMap("foo", "1"));
+
+    execution.loadStateVariables(asList("foo", "bar"));
+
+    assertThat(execution.getVariable("bar", "default"), is("default"));
+    assertThat(execution.getVariable("foo"), is("1"));
+    verify(workflowDao, times(1)).getStateVariables(anyLong(), anyCollection());
+  }
+
+  @Test
+  public void stateVariablesAreNotLoadedWhenNotLazy() {
+    execution.loadStateVariables(singletonList("foo"));
+
+    assertThat(execution.getVariable("foo"), is(nullValue()));
+    verify(workflowDao, never()).getStateVariables(anyLong(), anyCollection());
+  }
+
   @Test
   public void getVariableWorks() {
     Data data = new Data(47, "bar");
@@ -0,0 +1,120 @@
+package io.nflow.engine.internal.workflow;
+
+import static io.nflow.engine.workflow.definition.NextAction.moveToState;
+import static org.springframework.util.ReflectionUtils.invokeMethod;
+
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import io.nflow.engine.internal.workflow.WorkflowStateMethod.StateParameter;
+import io.nflow.engine.workflow.definition.NextAction;
+import io.nflow.engine.workflow.definition.StateExecution;
+import io.nflow.engine.workflow.definition.StateVar;
+import io.nflow.engine.workflow.definition.WorkflowDefinition;
+import io.nflow.engine.workflow.definition.WorkflowState;
+import io.nflow.engine.workflow.definition.WorkflowStateType;
+import io.nflow.engine.workflow.instance.WorkflowInstance;
+
+/**
+ * Measures the engine overhead of one state method call: mapping the state variables to arguments and invoking the method.
+ * The <code>reflection</code> benchmark does the same work with a type lookup per parameter and reflective invocation.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@State(Scope.Benchmark)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class StateMethodInvocationBenchmark {
+
+  private final ObjectMapper jackson = new ObjectMapper();
+  private final ObjectStringMapper objectMapper = new ObjectStringMapper(jackson);
+  private final BenchmarkWorkflow definition = new BenchmarkWorkflow();
+  private WorkflowStateMethod method;
+  private StateExecutionImpl execution;
+
+  @Setup
+  public void setup() {
+    method = definition.getMethod(BenchmarkWorkflow.State.start.name());
+    WorkflowInstance instance = new WorkflowInstance.Builder().setType("benchmark").setState("start")
+        .putStateVariable("text", "value").putStateVariable("count", "42").putStateVariable("data", "{\"value\":\"x\"}")
+        .build();
+    execution = new StateExecutionImpl(instance, objectMapper, null, null, null);
+  }
+
+  @Benchmark
+  public Object invoker() {
+    Object[] args = objectMapper.createArguments(execution, method);
+    return method.invoke(definition, args);
+  }
+
+  @Benchmark
+  public Object reflection() throws IOException {
+    Object[] args = new Object[method.params.length + 1];
+    args[0] = execution;
+    for (int i = 0; i < method.params.length; i++) {
+      StateParameter param = method.params[i];
+      String value = execution.getVariable(param.key);
+      args[i + 1] = String.class.equals(param.type) ? value
+          : jackson.readValue(value, jackson.getTypeFactory().constructType(param.type));
+    }
+    return invokeMethod(method.method, definition, args);
+  }
+
+  public static void main(String[] args) throws RunnerException {
+    new Runner(new OptionsBuilder().include(StateMethodInvocationBenchmark.class.getSimpleName()).build()).run();
+  }
+
+  public static class Data {
+    public String value;
+  }
+
+  public static class BenchmarkWorkflow extends WorkflowDefinition<BenchmarkWorkflow.State> {
+
+    public BenchmarkWorkflow() {
+      super("benchmark", State.start, State.end);
+      permit(State.start, State.end);
+    }
+
+    public static enum State implements WorkflowState {
+      start(WorkflowStateType.start), end(WorkflowStateType.end);
+
+      private final WorkflowStateType stateType;
+
+      private State(WorkflowStateType stateType) {
+        this.stateType = stateType;
+      }
+
+      @Override
+      public WorkflowStateType getType() {
+        return stateType;
+      }
+
+      @Override
+      public String getDescription() {
+        return name();
+      }
+    }
+
+    public NextAction start(@SuppressWarnings("unused") StateExecution execution, @StateVar("text") String text,
+        @StateVar(value = "count", readOnly = true) int count, @StateVar(value = "data", readOnly = true) Data data) {
+      return moveToState(State.end, text + count + data.value);
+    }
+  }
+}
@@ -1,6 +1,7 @@
 package io.nflow.engine.internal.workflow;
 
 import static com.nitorcreations.Matchers.hasItemsOf;
+import static io.nflow.engine.workflow.definition.NextAction.moveToState;
 import static java.lang.annotation.ElementType.PARAMETER;
 import static java.lang.annotation.RetentionPolicy.RUNTIME;
 import static java.util.Arrays.asList;
@@ -16,6 +17,8 @@ import java.lang.annotation.Target;
 import java.lang.reflect.Type;
 import java.util.Map;
 import java.util.Objects;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionStage;
 
 import org.hamcrest.CustomMatcher;
 import org.junit.jupiter.api.BeforeEach;
@@ -69,6 +72,30 @@ public class WorkflowDefinitionScannerTest {
     assertThat(methods.get("end").params[0], stateParam("paramKey", String.class, false, true));
   }
 
+  @Test
+  public void stateMethodReturningNextActionStageIsAsync() {
+    Map<String, WorkflowStateMethod> methods = scanner.getStateMethods(AsyncWorkflow.class);
+    assertThat(methods.keySet(), hasItemsOf(asList("start", "end")));
+    assertThat(methods.containsKey("notStateMethod"), is(false));
+    assertThat(methods.get("start").async, is(true));
+    assertThat(methods.get("end").async, is(false));
+  }
+
+  @Test
+  public void stateMethodIsInvokedWithArguments() {
+    Map<String, WorkflowStateMethod> methods = scanner.getStateMethods(InvokedWorkflow.class);
+    NextAction nextAction = (NextAction) methods.get("start").invoke(new InvokedWorkflow(), null, "value", 42);
+    assertThat(nextAction.getReason(), is("value 42"));
+  }
+
+  @Test
+  public void exceptionFromStateMethodIsRethrown() {
+    Map<String, WorkflowStateMethod> methods = scanner.getStateMethods(InvokedWorkflow.class);
+    IllegalStateException thrown = assertThrows(IllegalStateException.class,
+        () -> methods.get("end").invoke(new InvokedWorkflow(), (Object) null));
+    assertThat(thrown.getMessage(), is("end failed"));
+  }
+
   @Test
   public void instantiateNullFlagCausesParameterObjectToInstantiate() {
     Map<String, WorkflowStateMethod> methods = scanner.getStateMethods(InitiateParameterWorkflow.class);
@@ -256,6 +283,27 @@ public class WorkflowDefinitionScannerTest {
     public NextAction end(StateExecution exec, @Dummy @StateVar("paramKey") String param) { return null; }
   }
 
+  public static class AsyncWorkflow extends WorkflowDefinition<ScannerState> {
+    public AsyncWorkflow() {
+      super("async", ScannerState.start, ScannerState.end);
+    }
+    public CompletableFuture<NextAction> start(StateExecution exec) { return null; }
+    public void end(StateExecution exec) { }
+    public CompletionStage<String> notStateMethod(StateExecution exec) { return null; }
+  }
+
+  public static class InvokedWorkflow extends WorkflowDefinition<ScannerState> {
+    public InvokedWorkflow() {
+      super("invoked", ScannerState.start, ScannerState.end);
+    }
+    public NextAction start(StateExecution exec, @StateVar("string") String string, @StateVar("number") int number) {
+      return moveToState(ScannerState.end, string + " " + number);
+    }
+    public void end(StateExecution exec) {
+      throw new IllegalStateException("end failed");
+    }
+  }
+
   public static class MutableParamWorkflow extends WorkflowDefinition<ScannerState> {
     public MutableParamWorkflow() {
       super("mutableParam", ScannerState.start, ScannerState.end);
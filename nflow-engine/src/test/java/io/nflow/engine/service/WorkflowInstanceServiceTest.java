@@ -94,6 +94,19 @@ public class WorkflowInstanceServiceTest extends BaseNflowTest {
     assertThat(stored.getValue().status, is(created));
   }
 
+  @Test
+  public void insertWorkflowInstancesWorks() {
+    WorkflowInstance i1 = constructWorkflowInstanceBuilder().setExternalId("123").build();
+    WorkflowInstance i2 = constructWorkflowInstanceBuilder().setExternalId("456").build();
+    List<WorkflowInstance> instances = asList(i1, i2);
+    when(workflowInstancePreProcessor.process(instances)).thenReturn(instances);
+    when(workflowInstanceDao.insertWorkflowInstances(instances)).thenReturn(asList(42L, -1L));
+    when(workflowInstanceDao.queryWorkflowInstances(queryCapture.capture()))
+        .thenReturn(asList(constructWorkflowInstanceBuilder().setId(43).build()));
+    assertThat(service.insertWorkflowInstances(instances), is(asList(42L, 43L)));
+    assertThat(queryCapture.getValue().externalId, is("456"));
+  }
+
   @Test
   public void insertWorkflowInstanceWhenPreprocessorThrowsCausesException() {
     WorkflowInstance i = constructWorkflowInstanceBuilder().setType("nonexistent").build();
@@ -4,6 +4,8 @@ import static io.nflow.engine.workflow.definition.WorkflowStateType.end;
 import static io.nflow.engine.workflow.definition.WorkflowStateType.normal;
 import static io.nflow.engine.workflow.definition.WorkflowStateType.start;
 import static java.util.Arrays.asList;
+import static java.util.Collections.emptyList;
+import static java.util.Collections.singletonList;
 import static org.hamcrest.CoreMatchers.containsString;
 import static org.hamcrest.MatcherAssert.assertThat;
 import static org.hamcrest.Matchers.containsInAnyOrder;
@@ -113,6 +115,12 @@ public class WorkflowDefinitionTest {
     assertThat(workflow.isStartState("done"), equalTo(false));
   }
 
+  @Test
+  public void getWaitStatesWorks() {
+    assertThat(new BulkWorkflow().getWaitStates(), equalTo(singletonList(BulkWorkflow.State.waitForChildrenToFinish.name())));
+    assertThat(new TestDefinition("x", TestDefinition.TestState.start1).getWaitStates(), equalTo(emptyList()));
+  }
+
   public static class TestDefinition extends AbstractWorkflowDefinition<TestDefinition.TestState> {
 
     @Override
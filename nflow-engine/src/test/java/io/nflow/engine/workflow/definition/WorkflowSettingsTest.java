@@ -43,6 +43,24 @@ public class WorkflowSettingsTest {
     assertThat(delta, lessThanOrEqualTo(0L));
     assertThat(s.historyDeletableAfterHours, is(nullValue()));
     assertThat(s.defaultPriority, is((short) 0));
+    assertThat(s.hasExecutionLimits(), is(false));
+    assertThat(s.executorPool, is(nullValue()));
+  }
+
+  @Test
+  public void executionLimitsCanBeSet() {
+    WorkflowSettings s = new WorkflowSettings.Builder().setMaxConcurrentInstancesPerNode(2).setMaxConcurrentInstancesPerCluster(5)
+        .setMaxExecutionsPerSecond(10.0).build();
+    assertThat(s.maxConcurrentInstancesPerNode, is(2));
+    assertThat(s.maxConcurrentInstancesPerCluster, is(5));
+    assertThat(s.maxExecutionsPerSecond, is(10.0));
+    assertThat(s.hasExecutionLimits(), is(true));
+  }
+
+  @Test
+  public void executorPoolCanBeSet() {
+    WorkflowSettings s = new WorkflowSettings.Builder().setExecutorPool("batch").build();
+    assertThat(s.executorPool, is("batch"));
   }
 
   @Test
@@ -82,6 +100,36 @@ public class WorkflowSettingsTest {
     assertThat(s.getMaxSubsequentStateExecutions(TestWorkflow.State.begin), is(equalTo(executionsDefault)));
   }
 
+  @Test
+  public void getStateExecutionTimeoutSecondsReturnsNullByDefault() {
+    WorkflowSettings s = new WorkflowSettings.Builder().build();
+    assertThat(s.getStateExecutionTimeoutSeconds(TestWorkflow.State.begin), is(nullValue()));
+  }
+
+  @Test
+  public void getStateExecutionTimeoutSecondsReturnsValueDefinedForTheState() {
+    WorkflowSettings s = new WorkflowSettings.Builder().setStateExecutionTimeoutSeconds(60)
+        .setStateExecutionTimeoutSeconds(TestWorkflow.State.begin, 10).build();
+    assertThat(s.getStateExecutionTimeoutSeconds(TestWorkflow.State.begin), is(equalTo(10)));
+    assertThat(s.getStateExecutionTimeoutSeconds(TestWorkflow.State.process), is(equalTo(60)));
+  }
+
+  @Test
+  public void noStatesAreTransientByDefault() {
+    WorkflowSettings s = new WorkflowSettings.Builder().build();
+    assertThat(s.isTransientState(TestWorkflow.State.begin), is(false));
+    assertThat(s.recordTransientStates, is(true));
+  }
+
+  @Test
+  public void isTransientStateReturnsTrueForTransientStates() {
+    WorkflowSettings s = new WorkflowSettings.Builder().setTransientStates(TestWorkflow.State.begin)
+        .setRecordTransientStates(false).build();
+    assertThat(s.isTransientState(TestWorkflow.State.begin), is(true));
+    assertThat(s.isTransientState(TestWorkflow.State.process), is(false));
+    assertThat(s.recordTransientStates, is(false));
+  }
+
   @Test
   public void deleteHistoryReturnsFalseRoughlyNineTimesOfTenByDefault() {
     WorkflowSettings.Builder b = new WorkflowSettings.Builder();
@@ -1,4 +1,5 @@
 truncate table nflow_workflow_state;
+truncate table nflow_workflow_state_current;
 update nflow_workflow set parent_workflow_id = null, parent_action_id = null;
 delete from nflow_workflow_action;
 delete from nflow_workflow;
@@ -0,0 +1,39 @@
+package io.nflow.metrics;
+
+import static com.codahale.metrics.MetricRegistry.name;
+import static java.lang.String.format;
+
+import com.codahale.metrics.Gauge;
+import com.codahale.metrics.MetricRegistry;
+
+import io.nflow.engine.internal.dao.ExecutorDao;
+import io.nflow.engine.internal.executor.WorkflowDispatcher;
+
+/**
+ * Register gauges for the workflow dispatcher
+ * <ul>
+ * <li>Current polling interval in milliseconds</li>
+ * <li>Yield of the latest poll, the number of found workflow instances divided by the requested batch size</li>
+ * <li>Total number of workflow instances recovered from dead executors</li>
+ * <li>Number of workflow instances recovered by the latest recovery</li>
+ * <li>Whether a recovery is running</li>
+ * </ul>
+ */
+public class DispatcherMetrics {
+  private final MetricRegistry metricRegistry;
+  private final String prefix;
+
+  public DispatcherMetrics(MetricRegistry metricRegistry, ExecutorDao executors, WorkflowDispatcher dispatcher) {
+    this.metricRegistry = metricRegistry;
+    this.prefix = format("%s.%s.dispatcher", executors.getExecutorGroup(), executors.getExecutorId());
+    register("poll-interval-ms", dispatcher::getPollIntervalMillis);
+    register("poll-yield", dispatcher::getLastPollYield);
+    register("recovered-instances", dispatcher::getRecoveredInstances);
+    register("recovered-instances-last", dispatcher::getLastRecoveredInstances);
+    register("recovery-running", dispatcher::isRecoveryRunning);
+  }
+
+  private <T> void register(String type, Gauge<T> gauge) {
+    metricRegistry.register(name(prefix, type), gauge);
+  }
+}
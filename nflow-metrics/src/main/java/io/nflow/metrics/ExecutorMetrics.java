@@ -0,0 +1,39 @@
+package io.nflow.metrics;
+
+import static com.codahale.metrics.MetricRegistry.name;
+import static java.lang.String.format;
+
+import com.codahale.metrics.Gauge;
+import com.codahale.metrics.MetricRegistry;
+
+import io.nflow.engine.internal.dao.ExecutorDao;
+import io.nflow.engine.internal.executor.ThreadCountTuner;
+
+/**
+ * Register gauges for the workflow instance executor
+ * <ul>
+ * <li>Current number of executor threads</li>
+ * <li>Queue size below which the dispatcher polls more workflow instances</li>
+ * <li>Share of CPU time of the processing time in the latest thread count tuning interval</li>
+ * <li>Share of database wait of the processing time in the latest thread count tuning interval</li>
+ * <li>Share of the time the executor threads were processing in the latest thread count tuning interval</li>
+ * </ul>
+ */
+public class ExecutorMetrics {
+  private final MetricRegistry metricRegistry;
+  private final String prefix;
+
+  public ExecutorMetrics(MetricRegistry metricRegistry, ExecutorDao executors, ThreadCountTuner tuner) {
+    this.metricRegistry = metricRegistry;
+    this.prefix = format("%s.%s.executor", executors.getExecutorGroup(), executors.getExecutorId());
+    register("thread-count", tuner::getThreadCount);
+    register("queue-threshold", tuner::getQueueThreshold);
+    register("cpu-share", tuner::getLastCpuShare);
+    register("db-wait-share", tuner::getLastDbWaitShare);
+    register("utilization", tuner::getLastUtilization);
+  }
+
+  private <T> void register(String type, Gauge<T> gauge) {
+    metricRegistry.register(name(prefix, type), gauge);
+  }
+}
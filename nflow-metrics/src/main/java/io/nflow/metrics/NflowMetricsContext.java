@@ -17,6 +17,8 @@ import com.codahale.metrics.health.HealthCheckRegistry;
 import com.codahale.metrics.jmx.JmxReporter;
 
 import io.nflow.engine.internal.dao.ExecutorDao;
+import io.nflow.engine.internal.executor.ThreadCountTuner;
+import io.nflow.engine.internal.executor.WorkflowDispatcher;
 import io.nflow.engine.service.HealthCheckService;
 
 /**
@@ -52,6 +54,16 @@ public class NflowMetricsContext {
     return new MetricsWorkflowExecutorListener(metricRegistry, executors);
   }
 
+  @Bean
+  public DispatcherMetrics dispatcherMetrics(ExecutorDao executors, WorkflowDispatcher dispatcher) {
+    return new DispatcherMetrics(metricRegistry, executors, dispatcher);
+  }
+
+  @Bean
+  public ExecutorMetrics executorMetrics(ExecutorDao executors, ThreadCountTuner tuner) {
+    return new ExecutorMetrics(metricRegistry, executors, tuner);
+  }
+
   @Profile(JMX)
   @Bean(destroyMethod="stop")
   public JmxReporter jmxMetricsReporter() {
@@ -24,6 +24,8 @@ import com.codahale.metrics.health.HealthCheckRegistry;
 
 import io.nflow.engine.config.NFlow;
 import io.nflow.engine.internal.dao.ExecutorDao;
+import io.nflow.engine.internal.executor.ThreadCountTuner;
+import io.nflow.engine.internal.executor.WorkflowDispatcher;
 import io.nflow.engine.internal.storage.db.SQLVariants;
 import io.nflow.engine.listener.WorkflowExecutorListener;
 import io.nflow.engine.listener.WorkflowExecutorListener.ListenerContext;
@@ -99,6 +101,24 @@ public class MetricsWorkflowExecutorListenerTest {
     assertEquals(1, metricRegistry.getMeters().get("foobarName.0.myWorkflow.my-state.error-count").getCount());
   }
 
+  @Test
+  public void dispatcherGauges() {
+    WorkflowDispatcher dispatcher = ctx.getBean(WorkflowDispatcher.class);
+    when(dispatcher.getPollIntervalMillis()).thenReturn(4000L);
+    when(dispatcher.getLastPollYield()).thenReturn(0.5);
+    assertEquals(4000L, metricRegistry.getGauges().get("foobarName.0.dispatcher.poll-interval-ms").getValue());
+    assertEquals(0.5, metricRegistry.getGauges().get("foobarName.0.dispatcher.poll-yield").getValue());
+  }
+
+  @Test
+  public void executorGauges() {
+    ThreadCountTuner tuner = ctx.getBean(ThreadCountTuner.class);
+    when(tuner.getThreadCount()).thenReturn(16);
+    when(tuner.getLastUtilization()).thenReturn(0.75);
+    assertEquals(16, metricRegistry.getGauges().get("foobarName.0.executor.thread-count").getValue());
+    assertEquals(0.75, metricRegistry.getGauges().get("foobarName.0.executor.utilization").getValue());
+  }
+
   @Configuration
   @Import(NflowMetricsContext.class)
   public static class Config {
@@ -125,6 +145,16 @@ public class MetricsWorkflowExecutorListenerTest {
       return dao;
     }
 
+    @Bean
+    public WorkflowDispatcher workflowDispatcher() {
+      return mock(WorkflowDispatcher.class);
+    }
+
+    @Bean
+    public ThreadCountTuner threadCountTuner() {
+      return mock(ThreadCountTuner.class);
+    }
+
     @Bean
     public SQLVariants SQLVariants() {
       return mock(SQLVariants.class);
@@ -1,18 +1,29 @@
 package io.nflow.rest.v1;
 
+import static com.fasterxml.jackson.core.JsonToken.END_ARRAY;
+import static com.fasterxml.jackson.core.JsonToken.START_ARRAY;
 import static io.nflow.engine.workflow.instance.WorkflowInstanceAction.WorkflowActionType.externalChange;
+import static java.nio.charset.StandardCharsets.UTF_8;
 import static java.util.Collections.sort;
 import static java.util.Collections.unmodifiableMap;
+import static java.util.UUID.randomUUID;
+import static java.util.stream.Collectors.joining;
 import static java.util.stream.Collectors.toCollection;
 import static java.util.stream.Collectors.toMap;
 import static java.util.stream.Collectors.toSet;
+import static javax.validation.Validation.buildDefaultValidatorFactory;
 import static org.apache.commons.lang3.StringUtils.defaultIfBlank;
 import static org.apache.commons.lang3.StringUtils.isBlank;
 import static org.apache.commons.lang3.StringUtils.trimToEmpty;
 import static org.apache.commons.lang3.StringUtils.trimToNull;
 import static org.joda.time.DateTime.now;
+import static org.slf4j.LoggerFactory.getLogger;
 import static org.springframework.util.StringUtils.isEmpty;
 
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
 import java.util.AbstractMap.SimpleEntry;
 import java.util.ArrayList;
 import java.util.Collection;
@@ -22,10 +33,22 @@ import java.util.Map;
 import java.util.Map.Entry;
 import java.util.Objects;
 import java.util.Set;
+import java.util.function.Consumer;
 import java.util.stream.Stream;
 
+import javax.validation.ConstraintViolation;
+import javax.validation.Validator;
+
+import org.slf4j.Logger;
+import org.springframework.dao.DataAccessException;
 import org.springframework.dao.EmptyResultDataAccessException;
 
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.core.JsonToken;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
 import io.nflow.engine.internal.dao.WorkflowDefinitionDao;
 import io.nflow.engine.internal.dao.WorkflowInstanceDao;
 import io.nflow.engine.internal.workflow.StoredWorkflowDefinition;
@@ -39,8 +62,11 @@ import io.nflow.engine.workflow.instance.WorkflowInstance;
 import io.nflow.engine.workflow.instance.WorkflowInstance.WorkflowInstanceStatus;
 import io.nflow.engine.workflow.instance.WorkflowInstanceAction;
 import io.nflow.engine.workflow.instance.WorkflowInstanceFactory;
+import io.nflow.rest.v1.converter.CreateWorkflowConverter;
 import io.nflow.rest.v1.converter.ListWorkflowDefinitionConverter;
 import io.nflow.rest.v1.converter.ListWorkflowInstanceConverter;
+import io.nflow.rest.v1.msg.CreateWorkflowInstanceRequest;
+import io.nflow.rest.v1.msg.CreateWorkflowInstanceResult;
 import io.nflow.rest.v1.msg.ListWorkflowDefinitionResponse;
 import io.nflow.rest.v1.msg.ListWorkflowInstanceResponse;
 import io.nflow.rest.v1.msg.UpdateWorkflowInstanceRequest;
@@ -65,6 +91,13 @@ public abstract class ResourceBase {
           new SimpleEntry<>(actionStateVariables, WorkflowInstanceInclude.ACTION_STATE_VARIABLES),
           new SimpleEntry<>(childWorkflows, WorkflowInstanceInclude.CHILD_WORKFLOW_IDS))
       .collect(toMap(Entry::getKey, Entry::getValue)));
+  protected static final String APPLICATION_NDJSON = "application/x-ndjson";
+  protected static final int CREATE_WORKFLOW_INSTANCES_BATCH_SIZE = 1000;
+  private static final Logger logger = getLogger(ResourceBase.class);
+
+  private static class ValidatorHolder {
+    static final Validator VALIDATOR = buildDefaultValidatorFactory().getValidator();
+  }
 
   public List<ListWorkflowDefinitionResponse> listWorkflowDefinitions(final List<String> types,
       final WorkflowDefinitionService workflowDefinitions, final ListWorkflowDefinitionConverter converter,
@@ -92,6 +125,151 @@ public abstract class ResourceBase {
     return response;
   }
 
+  /**
+   * Create workflow instances from a JSON array or from newline delimited JSON objects. The requests are converted and
+   * inserted in batches of {@value #CREATE_WORKFLOW_INSTANCES_BATCH_SIZE} while they are read, and the results of each batch
+   * are passed to the result consumer before the next batch is read. Requests that fail Bean Validation are not created, and
+   * the constraint violations are returned as the error of the request. Reading stops at the first malformed JSON.
+   * @param requests The stream of workflow instance creation requests.
+   * @param resultConsumer The consumer of the results of each batch, in the same order as the requests.
+   * @param objectMapper The object mapper for reading the requests.
+   * @param createWorkflowConverter The converter for the requests.
+   * @param workflowInstances The workflow instance service.
+   * @throws IOException If reading the requests fails.
+   */
+  public void createWorkflowInstances(final InputStream requests,
+      final Consumer<List<CreateWorkflowInstanceResult>> resultConsumer, final ObjectMapper objectMapper,
+      final CreateWorkflowConverter createWorkflowConverter, final WorkflowInstanceService workflowInstances)
+      throws IOException {
+    List<CreateWorkflowInstanceResult> results = new ArrayList<>();
+    List<CreateWorkflowInstanceResult> insertResults = new ArrayList<>();
+    List<WorkflowInstance> instances = new ArrayList<>();
+    int index = 0;
+    try (JsonParser parser = objectMapper.getFactory().createParser(requests)) {
+      JsonToken token = parser.nextToken();
+      boolean array = token == START_ARRAY;
+      if (array) {
+        token = parser.nextToken();
+      }
+      while (token != null && !(array && token == END_ARRAY)) {
+        JsonNode request = objectMapper.readTree(parser);
+        CreateWorkflowInstanceResult result = new CreateWorkflowInstanceResult(index++);
+        results.add(result);
+        try {
+          CreateWorkflowInstanceRequest req = objectMapper.treeToValue(request, CreateWorkflowInstanceRequest.class);
+          result.error = validate(req);
+          if (result.error == null) {
+            instances.add(convert(req, createWorkflowConverter));
+            insertResults.add(result);
+          }
+        } catch (JsonProcessingException e) {
+          result.error = e.getOriginalMessage();
+        } catch (RuntimeException e) {
+          result.error = e.getMessage();
+        }
+        if (results.size() == CREATE_WORKFLOW_INSTANCES_BATCH_SIZE) {
+          insertWorkflowInstances(instances, insertResults, workflowInstances);
+          resultConsumer.accept(new ArrayList<>(results));
+          results.clear();
+        }
+        token = parser.nextToken();
+      }
+    } catch (JsonProcessingException e) {
+      CreateWorkflowInstanceResult result = new CreateWorkflowInstanceResult(index);
+      result.error = e.getOriginalMessage();
+      results.add(result);
+    }
+    insertWorkflowInstances(instances, insertResults, workflowInstances);
+    if (!results.isEmpty()) {
+      resultConsumer.accept(results);
+    }
+  }
+
+  /**
+   * Create workflow instances like {@link #createWorkflowInstances(InputStream, Consumer, ObjectMapper,
+   * CreateWorkflowConverter, WorkflowInstanceService)} and write the results as newline delimited JSON objects.
+   * @param requests The stream of workflow instance creation requests.
+   * @param responses The stream where the results are written. The stream is flushed after each batch.
+   * @param objectMapper The object mapper for reading the requests and writing the results.
+   * @param createWorkflowConverter The converter for the requests.
+   * @param workflowInstances The workflow instance service.
+   * @throws IOException If reading the requests or writing the results fails.
+   */
+  public void createWorkflowInstances(final InputStream requests, final OutputStream responses,
+      final ObjectMapper objectMapper, final CreateWorkflowConverter createWorkflowConverter,
+      final WorkflowInstanceService workflowInstances) throws IOException {
+    try {
+      createWorkflowInstances(requests, results -> {
+        try {
+          responses.write(toJsonLines(results, objectMapper).getBytes(UTF_8));
+          responses.flush();
+        } catch (IOException e) {
+          throw new UncheckedIOException(e);
+        }
+      }, objectMapper, createWorkflowConverter, workflowInstances);
+    } catch (UncheckedIOException e) {
+      throw e.getCause();
+    }
+  }
+
+  protected String toJsonLines(final List<CreateWorkflowInstanceResult> results, final ObjectMapper objectMapper) {
+    StringBuilder lines = new StringBuilder(results.size() * 32);
+    for (CreateWorkflowInstanceResult result : results) {
+      try {
+        lines.append(objectMapper.writeValueAsString(result)).append('\n');
+      } catch (JsonProcessingException e) {
+        throw new UncheckedIOException(e);
+      }
+    }
+    return lines.toString();
+  }
+
+  private String validate(CreateWorkflowInstanceRequest req) {
+    Set<ConstraintViolation<CreateWorkflowInstanceRequest>> violations = ValidatorHolder.VALIDATOR.validate(req);
+    if (violations.isEmpty()) {
+      return null;
+    }
+    return violations.stream().map(violation -> violation.getPropertyPath() + " " + violation.getMessage()).sorted()
+        .collect(joining(", "));
+  }
+
+  private WorkflowInstance convert(CreateWorkflowInstanceRequest req, CreateWorkflowConverter createWorkflowConverter) {
+    WorkflowInstance instance = createWorkflowConverter.convert(req);
+    if (isEmpty(instance.externalId)) {
+      // with an external id the instances inserted before a failure are not inserted again when retrying one by one
+      instance = new WorkflowInstance.Builder(instance).setExternalId(randomUUID().toString()).build();
+    }
+    return instance;
+  }
+
+  private void insertWorkflowInstances(List<WorkflowInstance> instances, List<CreateWorkflowInstanceResult> results,
+      WorkflowInstanceService workflowInstances) {
+    if (instances.isEmpty()) {
+      return;
+    }
+    try {
+      List<Long> ids = workflowInstances.insertWorkflowInstances(instances);
+      for (int i = 0; i < ids.size(); i++) {
+        results.get(i).id = ids.get(i);
+      }
+    } catch (RuntimeException e) {
+      // insert one by one to find out which instances failed
+      for (int i = 0; i < instances.size(); i++) {
+        try {
+          results.get(i).id = workflowInstances.insertWorkflowInstance(instances.get(i));
+        } catch (DataAccessException instanceException) {
+          // the database error may reveal the schema and the data of other instances, so it is only logged
+          logger.warn("Failed to create workflow instance {} of the bulk request", results.get(i).index, instanceException);
+          results.get(i).error = "Failed to create workflow instance";
+        } catch (RuntimeException instanceException) {
+          results.get(i).error = instanceException.getMessage();
+        }
+      }
+    }
+    instances.clear();
+    results.clear();
+  }
+
   public boolean updateWorkflowInstance(final long id,
       final UpdateWorkflowInstanceRequest req, final WorkflowInstanceFactory workflowInstanceFactory,
       final WorkflowInstanceService workflowInstances, WorkflowInstanceDao workflowInstanceDao) {
@@ -0,0 +1,35 @@
+package io.nflow.rest.v1.msg;
+
+import static com.fasterxml.jackson.annotation.JsonInclude.Include.NON_NULL;
+
+import com.fasterxml.jackson.annotation.JsonInclude;
+
+import edu.umd.cs.findbugs.annotations.SuppressFBWarnings;
+import io.nflow.engine.model.ModelObject;
+import io.swagger.annotations.ApiModel;
+import io.swagger.annotations.ApiModelProperty;
+
+@ApiModel(description = "Result of one workflow instance of a bulk workflow instance creation request")
+@SuppressFBWarnings(value = "URF_UNREAD_PUBLIC_OR_PROTECTED_FIELD", justification = "jackson reads dto fields")
+public class CreateWorkflowInstanceResult extends ModelObject {
+
+  @ApiModelProperty(value = "Index of the workflow instance in the request, starting from zero", required = true)
+  public int index;
+
+  @JsonInclude(NON_NULL)
+  @ApiModelProperty("Identifier of the new or existing workflow instance, if the workflow instance was created")
+  public Long id;
+
+  @JsonInclude(NON_NULL)
+  @ApiModelProperty("Reason why the workflow instance could not be created")
+  public String error;
+
+  public CreateWorkflowInstanceResult() {
+    // empty constructor is required by jersey object mapping
+  }
+
+  public CreateWorkflowInstanceResult(int index) {
+    this.index = index;
+  }
+
+}
@@ -1,5 +1,6 @@
 package io.nflow.rest.v1.jaxrs;
 
+import static io.nflow.rest.config.RestConfiguration.REST_OBJECT_MAPPER;
 import static io.nflow.rest.v1.ResourcePaths.NFLOW_WORKFLOW_INSTANCE_PATH;
 import static java.lang.String.format;
 import static java.util.Optional.ofNullable;
@@ -11,6 +12,7 @@ import static javax.ws.rs.core.Response.ok;
 import static javax.ws.rs.core.Response.status;
 import static javax.ws.rs.core.Response.Status.CONFLICT;
 
+import java.io.InputStream;
 import java.net.URI;
 import java.util.Collection;
 import java.util.Collections;
@@ -18,6 +20,7 @@ import java.util.EnumSet;
 import java.util.List;
 
 import javax.inject.Inject;
+import javax.inject.Named;
 import javax.validation.Valid;
 import javax.ws.rs.Consumes;
 import javax.ws.rs.GET;
@@ -29,10 +32,13 @@ import javax.ws.rs.PathParam;
 import javax.ws.rs.Produces;
 import javax.ws.rs.QueryParam;
 import javax.ws.rs.core.Response;
+import javax.ws.rs.core.StreamingOutput;
 
 import org.springframework.dao.EmptyResultDataAccessException;
 import org.springframework.stereotype.Component;
 
+import com.fasterxml.jackson.databind.ObjectMapper;
+
 import io.nflow.engine.internal.dao.WorkflowInstanceDao;
 import io.nflow.engine.service.WorkflowInstanceInclude;
 import io.nflow.engine.service.WorkflowInstanceService;
@@ -46,6 +52,7 @@ import io.nflow.rest.v1.converter.CreateWorkflowConverter;
 import io.nflow.rest.v1.converter.ListWorkflowInstanceConverter;
 import io.nflow.rest.v1.msg.CreateWorkflowInstanceRequest;
 import io.nflow.rest.v1.msg.CreateWorkflowInstanceResponse;
+import io.nflow.rest.v1.msg.CreateWorkflowInstanceResult;
 import io.nflow.rest.v1.msg.ListWorkflowInstanceResponse;
 import io.nflow.rest.v1.msg.SetSignalRequest;
 import io.nflow.rest.v1.msg.UpdateWorkflowInstanceRequest;
@@ -69,15 +76,18 @@ public class WorkflowInstanceResource extends ResourceBase {
   private final ListWorkflowInstanceConverter listWorkflowConverter;
   private final WorkflowInstanceFactory workflowInstanceFactory;
   private final WorkflowInstanceDao workflowInstanceDao;
+  private final ObjectMapper nflowRestObjectMapper;
 
   @Inject
   public WorkflowInstanceResource(WorkflowInstanceService workflowInstances, CreateWorkflowConverter createWorkflowConverter,
-      ListWorkflowInstanceConverter listWorkflowConverter, WorkflowInstanceFactory workflowInstanceFactory, WorkflowInstanceDao workflowInstanceDao) {
+      ListWorkflowInstanceConverter listWorkflowConverter, WorkflowInstanceFactory workflowInstanceFactory, WorkflowInstanceDao workflowInstanceDao,
+      @Named(REST_OBJECT_MAPPER) ObjectMapper nflowRestObjectMapper) {
     this.workflowInstances = workflowInstances;
     this.createWorkflowConverter = createWorkflowConverter;
     this.listWorkflowConverter = listWorkflowConverter;
     this.workflowInstanceFactory = workflowInstanceFactory;
     this.workflowInstanceDao = workflowInstanceDao;
+    this.nflowRestObjectMapper = nflowRestObjectMapper;
   }
 
   @OPTIONS
@@ -100,6 +110,21 @@ public class WorkflowInstanceResource extends ResourceBase {
     return created(URI.create(String.valueOf(id))).entity(createWorkflowConverter.convert(instance)).build();
   }
 
+  @PUT
+  @Path("/bulk")
+  @Consumes({ APPLICATION_JSON, APPLICATION_NDJSON })
+  @Produces(APPLICATION_NDJSON)
+  @ApiOperation(value = "Submit new workflow instances", notes = "The workflow instances are given as a JSON array or as "
+      + "newline delimited JSON objects. They are created in batches while the request is read, and the result of each "
+      + "workflow instance is streamed back as a newline delimited JSON object as soon as its batch has been created.")
+  @ApiResponses({ @ApiResponse(code = 200, message = "Result of each submitted workflow instance, in submission order",
+      response = CreateWorkflowInstanceResult.class, responseContainer = "List") })
+  public Response createWorkflowInstances(@ApiParam(value = "Submitted workflow instances", required = true) InputStream requests) {
+    StreamingOutput results = responses -> super.createWorkflowInstances(requests, responses, nflowRestObjectMapper,
+        createWorkflowConverter, workflowInstances);
+    return ok(results).build();
+  }
+
   @PUT
   @Path("/id/{id}")
   @ApiOperation(value = "Update workflow instance", notes = "The service is typically used in manual state "
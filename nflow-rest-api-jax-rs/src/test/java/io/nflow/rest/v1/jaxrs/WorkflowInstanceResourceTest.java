@@ -2,31 +2,47 @@ package io.nflow.rest.v1.jaxrs;
 
 import static com.nitorcreations.Matchers.hasField;
 import static io.nflow.engine.workflow.instance.WorkflowInstanceAction.WorkflowActionType.externalChange;
+import static java.nio.charset.StandardCharsets.UTF_8;
 import static java.util.Arrays.asList;
 import static java.util.Collections.emptySet;
+import static java.util.stream.Collectors.joining;
+import static java.util.stream.Collectors.toList;
 import static javax.ws.rs.core.Response.Status.CREATED;
 import static org.hamcrest.MatcherAssert.assertThat;
 import static org.hamcrest.Matchers.allOf;
 import static org.hamcrest.Matchers.contains;
 import static org.hamcrest.Matchers.equalTo;
 import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.startsWith;
 import static org.junit.jupiter.api.Assertions.assertEquals;
 import static org.junit.jupiter.api.Assertions.assertThrows;
 import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyList;
 import static org.mockito.ArgumentMatchers.eq;
 import static org.mockito.Mockito.lenient;
 import static org.mockito.Mockito.mock;
 import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
 import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
 import static org.mockito.hamcrest.MockitoHamcrest.argThat;
 
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.SequenceInputStream;
+import java.util.ArrayList;
 import java.util.EnumSet;
+import java.util.List;
 import java.util.Optional;
 import java.util.Set;
+import java.util.stream.IntStream;
+import java.util.stream.LongStream;
 
 import javax.ws.rs.NotFoundException;
 import javax.ws.rs.core.Response;
+import javax.ws.rs.core.StreamingOutput;
 
 import org.joda.time.DateTime;
 import org.junit.jupiter.api.BeforeEach;
@@ -36,10 +52,12 @@ import org.mockito.ArgumentCaptor;
 import org.mockito.Captor;
 import org.mockito.Mock;
 import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.dao.DataIntegrityViolationException;
 import org.springframework.dao.EmptyResultDataAccessException;
 
 import com.fasterxml.jackson.databind.ObjectMapper;
 import com.fasterxml.jackson.databind.node.TextNode;
+import com.fasterxml.jackson.datatype.joda.JodaModule;
 
 import io.nflow.engine.internal.dao.WorkflowInstanceDao;
 import io.nflow.engine.internal.workflow.ObjectStringMapper;
@@ -84,7 +102,7 @@ public class WorkflowInstanceResourceTest {
   @BeforeEach
   public void setup() {
     resource = new WorkflowInstanceResource(workflowInstances, createWorkflowConverter, listWorkflowConverter,
-        workflowInstanceFactory, workflowInstanceDao);
+        workflowInstanceFactory, workflowInstanceDao, new ObjectMapper());
     lenient().when(workflowInstanceFactory.newWorkflowInstanceBuilder())
     .thenReturn(new WorkflowInstance.Builder(new ObjectStringMapper(new ObjectMapper())));
   }
@@ -104,6 +122,110 @@ public class WorkflowInstanceResourceTest {
     }
   }
 
+  @Test
+  public void createWorkflowInstancesStreamsResults() throws IOException {
+    resource = new WorkflowInstanceResource(workflowInstances, createWorkflowConverter, listWorkflowConverter,
+        workflowInstanceFactory, workflowInstanceDao, new ObjectMapper().registerModule(new JodaModule()));
+    WorkflowInstance i1 = new WorkflowInstance.Builder().setType("dummy").setExternalId("1").build();
+    WorkflowInstance i2 = new WorkflowInstance.Builder().setType("dummy").setExternalId("2").build();
+    when(createWorkflowConverter.convert(any(CreateWorkflowInstanceRequest.class))).thenReturn(i1, i2);
+    when(workflowInstances.insertWorkflowInstances(asList(i1, i2))).thenReturn(asList(1L, 2L));
+    String requests = "{\"type\":\"dummy\",\"externalId\":\"1\"}\n{\"type\":\"dummy\",\"externalId\":\"2\"}\n"
+        + "{\"type\":\"dummy\",\"parentWorkflowId\":\"x\"}\n";
+    try (Response r = resource.createWorkflowInstances(new ByteArrayInputStream(requests.getBytes(UTF_8)))) {
+      ByteArrayOutputStream responses = new ByteArrayOutputStream();
+      ((StreamingOutput) r.getEntity()).write(responses);
+      String[] results = new String(responses.toByteArray(), UTF_8).split("\n");
+      assertThat(results.length, is(3));
+      assertThat(results[0], is("{\"index\":0,\"id\":1}"));
+      assertThat(results[1], is("{\"index\":1,\"id\":2}"));
+      assertThat(results[2], startsWith("{\"index\":2,\"error\":"));
+    }
+  }
+
+  @Test
+  public void createWorkflowInstancesReportsConstraintViolationsAndHidesDatabaseErrors() throws IOException {
+    WorkflowInstance i1 = new WorkflowInstance.Builder().setType("dummy").setExternalId("1").build();
+    when(createWorkflowConverter.convert(any(CreateWorkflowInstanceRequest.class))).thenReturn(i1);
+    when(workflowInstances.insertWorkflowInstances(asList(i1))).thenThrow(new DataIntegrityViolationException("batch"));
+    when(workflowInstances.insertWorkflowInstance(i1)).thenThrow(new DataIntegrityViolationException("secret sql"));
+    String requests = "[{\"type\":\"dummy\",\"externalId\":\"1\"},{\"externalId\":\"2\"}]";
+    try (Response r = resource.createWorkflowInstances(new ByteArrayInputStream(requests.getBytes(UTF_8)))) {
+      ByteArrayOutputStream responses = new ByteArrayOutputStream();
+      ((StreamingOutput) r.getEntity()).write(responses);
+      String[] results = new String(responses.toByteArray(), UTF_8).split("\n");
+      assertThat(results.length, is(2));
+      assertThat(results[0], is("{\"index\":0,\"error\":\"Failed to create workflow instance\"}"));
+      assertThat(results[1], is("{\"index\":1,\"error\":\"type must not be null\"}"));
+    }
+  }
+
+  @Test
+  public void createWorkflowInstancesCreatesLargeRequestsInBatches() throws IOException {
+    stubBulkCreation();
+    try (Response r = resource.createWorkflowInstances(new ByteArrayInputStream(bulkRequests(0, 2500).getBytes(UTF_8)))) {
+      ByteArrayOutputStream responses = new ByteArrayOutputStream();
+      ((StreamingOutput) r.getEntity()).write(responses);
+      String[] results = new String(responses.toByteArray(), UTF_8).split("\n");
+      assertThat(results.length, is(2500));
+      assertThat(results[999], is("{\"index\":999,\"id\":1000}"));
+      assertThat(results[1000], is("{\"index\":1000,\"id\":1}"));
+      assertThat(results[2499], is("{\"index\":2499,\"id\":500}"));
+    }
+    verify(workflowInstances, times(3)).insertWorkflowInstances(anyList());
+  }
+
+  @Test
+  public void createWorkflowInstancesWritesResultsBeforeRequestsAreRead() throws IOException {
+    stubBulkCreation();
+    ByteArrayOutputStream responses = new ByteArrayOutputStream();
+    List<Integer> writtenBeforeSecondBatch = new ArrayList<>();
+    InputStream secondBatch = new InputStream() {
+      private final InputStream requests = new ByteArrayInputStream(bulkRequests(1000, 1001).getBytes(UTF_8));
+
+      @Override
+      public int read() throws IOException {
+        if (writtenBeforeSecondBatch.isEmpty()) {
+          writtenBeforeSecondBatch.add(new String(responses.toByteArray(), UTF_8).split("\n").length);
+        }
+        return requests.read();
+      }
+    };
+    InputStream requests = new SequenceInputStream(new ByteArrayInputStream(bulkRequests(0, 1000).getBytes(UTF_8)),
+        secondBatch);
+    try (Response r = resource.createWorkflowInstances(requests)) {
+      ((StreamingOutput) r.getEntity()).write(responses);
+      assertThat(writtenBeforeSecondBatch, contains(1000));
+      assertThat(new String(responses.toByteArray(), UTF_8).split("\n").length, is(1001));
+    }
+  }
+
+  @Test
+  public void createWorkflowInstancesStopsAtMalformedJson() throws IOException {
+    stubBulkCreation();
+    String requests = "[{\"type\":\"dummy\",\"externalId\":\"1\"},{\"type\":,{\"type\":\"dummy\",\"externalId\":\"3\"}]";
+    try (Response r = resource.createWorkflowInstances(new ByteArrayInputStream(requests.getBytes(UTF_8)))) {
+      ByteArrayOutputStream responses = new ByteArrayOutputStream();
+      ((StreamingOutput) r.getEntity()).write(responses);
+      String[] results = new String(responses.toByteArray(), UTF_8).split("\n");
+      assertThat(results.length, is(2));
+      assertThat(results[0], is("{\"index\":0,\"id\":1}"));
+      assertThat(results[1], startsWith("{\"index\":1,\"error\":\"Unexpected character"));
+    }
+  }
+
+  private void stubBulkCreation() {
+    when(createWorkflowConverter.convert(any(CreateWorkflowInstanceRequest.class)))
+        .thenAnswer(invocation -> new WorkflowInstance.Builder().setType("dummy").build());
+    when(workflowInstances.insertWorkflowInstances(anyList())).thenAnswer(
+        invocation -> LongStream.rangeClosed(1, invocation.getArgument(0, List.class).size()).boxed().collect(toList()));
+  }
+
+  private static String bulkRequests(int from, int to) {
+    return IntStream.range(from, to).mapToObj(i -> "{\"type\":\"dummy\",\"externalId\":\"" + i + "\"}\n")
+        .collect(joining());
+  }
+
   @Test
   public void whenUpdatingWithoutParametersNothingHappens() {
     UpdateWorkflowInstanceRequest req = new UpdateWorkflowInstanceRequest();
@@ -1,5 +1,6 @@
 package io.nflow.rest.v1.springweb;
 
+import static io.nflow.rest.config.RestConfiguration.REST_OBJECT_MAPPER;
 import static io.nflow.rest.config.springweb.PathConstants.NFLOW_SPRING_WEB_PATH_PREFIX;
 import static io.nflow.rest.v1.ResourcePaths.NFLOW_WORKFLOW_INSTANCE_PATH;
 import static java.util.Optional.ofNullable;
@@ -10,16 +11,26 @@ import static org.springframework.http.ResponseEntity.noContent;
 import static org.springframework.http.ResponseEntity.notFound;
 import static org.springframework.http.ResponseEntity.ok;
 import static org.springframework.http.ResponseEntity.status;
+import static reactor.core.publisher.FluxSink.OverflowStrategy.ERROR;
+import static reactor.core.scheduler.Schedulers.boundedElastic;
 
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.SequenceInputStream;
 import java.net.URI;
 import java.util.Collection;
 import java.util.Collections;
 import java.util.EnumSet;
+import java.util.Enumeration;
+import java.util.Iterator;
 import java.util.List;
+import java.util.concurrent.CancellationException;
 
 import javax.inject.Inject;
+import javax.inject.Named;
 import javax.validation.Valid;
 
+import org.springframework.core.io.buffer.DataBuffer;
 import org.springframework.dao.EmptyResultDataAccessException;
 import org.springframework.http.ResponseEntity;
 import org.springframework.stereotype.Component;
@@ -31,6 +42,8 @@ import org.springframework.web.bind.annotation.RequestMapping;
 import org.springframework.web.bind.annotation.RequestParam;
 import org.springframework.web.bind.annotation.RestController;
 
+import com.fasterxml.jackson.databind.ObjectMapper;
+
 import io.nflow.engine.internal.dao.WorkflowInstanceDao;
 import io.nflow.engine.service.WorkflowInstanceInclude;
 import io.nflow.engine.service.WorkflowInstanceService;
@@ -43,6 +56,7 @@ import io.nflow.rest.v1.converter.CreateWorkflowConverter;
 import io.nflow.rest.v1.converter.ListWorkflowInstanceConverter;
 import io.nflow.rest.v1.msg.CreateWorkflowInstanceRequest;
 import io.nflow.rest.v1.msg.CreateWorkflowInstanceResponse;
+import io.nflow.rest.v1.msg.CreateWorkflowInstanceResult;
 import io.nflow.rest.v1.msg.ListWorkflowInstanceResponse;
 import io.nflow.rest.v1.msg.SetSignalRequest;
 import io.nflow.rest.v1.msg.UpdateWorkflowInstanceRequest;
@@ -53,6 +67,8 @@ import io.swagger.annotations.ApiOperation;
 import io.swagger.annotations.ApiParam;
 import io.swagger.annotations.ApiResponse;
 import io.swagger.annotations.ApiResponses;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.FluxSink;
 
 @RestController
 @RequestMapping(value = NFLOW_SPRING_WEB_PATH_PREFIX + NFLOW_WORKFLOW_INSTANCE_PATH, produces = APPLICATION_JSON_VALUE)
@@ -64,16 +80,18 @@ public class WorkflowInstanceResource extends ResourceBase {
   private final ListWorkflowInstanceConverter listWorkflowConverter;
   private final WorkflowInstanceFactory workflowInstanceFactory;
   private final WorkflowInstanceDao workflowInstanceDao;
+  private final ObjectMapper nflowRestObjectMapper;
 
   @Inject
   public WorkflowInstanceResource(WorkflowInstanceService workflowInstances, CreateWorkflowConverter createWorkflowConverter,
       ListWorkflowInstanceConverter listWorkflowConverter, WorkflowInstanceFactory workflowInstanceFactory,
-      WorkflowInstanceDao workflowInstanceDao) {
+      WorkflowInstanceDao workflowInstanceDao, @Named(REST_OBJECT_MAPPER) ObjectMapper nflowRestObjectMapper) {
     this.workflowInstances = workflowInstances;
     this.createWorkflowConverter = createWorkflowConverter;
     this.listWorkflowConverter = listWorkflowConverter;
     this.workflowInstanceFactory = workflowInstanceFactory;
     this.workflowInstanceDao = workflowInstanceDao;
+    this.nflowRestObjectMapper = nflowRestObjectMapper;
   }
 
   @PutMapping(consumes = APPLICATION_JSON_VALUE)
@@ -88,6 +106,71 @@ public class WorkflowInstanceResource extends ResourceBase {
     return created(URI.create(String.valueOf(id))).body(createWorkflowConverter.convert(instance));
   }
 
+  @PutMapping(path = "/bulk", consumes = { APPLICATION_JSON_VALUE, APPLICATION_NDJSON }, produces = APPLICATION_NDJSON)
+  @ApiOperation(value = "Submit new workflow instances", notes = "The workflow instances are given as a JSON array or as "
+      + "newline delimited JSON objects. They are created in batches while the request is read, and the result of each "
+      + "workflow instance is streamed back as a newline delimited JSON object as soon as its batch has been created.")
+  @ApiResponses({ @ApiResponse(code = 200, message = "Result of each submitted workflow instance, in submission order",
+      response = CreateWorkflowInstanceResult.class, responseContainer = "List") })
+  public Flux<String> createWorkflowInstances(
+      @RequestBody @ApiParam(value = "Submitted workflow instances", required = true) Flux<DataBuffer> requests) {
+    // the request body is read with blocking calls, which are not allowed in the server threads, and the demand is not
+    // requested on the worker thread, because the worker thread is blocked while waiting for it
+    return Flux.<String> create(sink -> {
+      Object demandChanged = new Object();
+      Runnable signal = () -> {
+        synchronized (demandChanged) {
+          demandChanged.notifyAll();
+        }
+      };
+      sink.onRequest(n -> signal.run());
+      sink.onCancel(signal::run);
+      try (InputStream in = toInputStream(requests)) {
+        super.createWorkflowInstances(in, results -> {
+          // the next batch is read only after the client has requested the results of this batch
+          awaitDemand(sink, demandChanged);
+          sink.next(toJsonLines(results, nflowRestObjectMapper));
+        }, nflowRestObjectMapper, createWorkflowConverter, workflowInstances);
+        sink.complete();
+      } catch (@SuppressWarnings("unused") CancellationException e) {
+        // the client is gone, stop reading the requests
+      } catch (IOException | RuntimeException e) {
+        sink.error(e);
+      }
+    }, ERROR).subscribeOn(boundedElastic(), false);
+  }
+
+  private static void awaitDemand(FluxSink<String> sink, Object demandChanged) {
+    synchronized (demandChanged) {
+      while (sink.requestedFromDownstream() == 0 && !sink.isCancelled()) {
+        try {
+          demandChanged.wait();
+        } catch (@SuppressWarnings("unused") InterruptedException e) {
+          Thread.currentThread().interrupt();
+          throw new CancellationException("Interrupted while waiting for demand");
+        }
+      }
+    }
+    if (sink.isCancelled()) {
+      throw new CancellationException("Results were cancelled");
+    }
+  }
+
+  private static InputStream toInputStream(Flux<DataBuffer> buffers) {
+    Iterator<DataBuffer> iterator = buffers.toIterable().iterator();
+    return new SequenceInputStream(new Enumeration<InputStream>() {
+      @Override
+      public boolean hasMoreElements() {
+        return iterator.hasNext();
+      }
+
+      @Override
+      public InputStream nextElement() {
+        return iterator.next().asInputStream(true);
+      }
+    });
+  }
+
   @PutMapping(path = "/id/{id}", consumes = APPLICATION_JSON_VALUE)
   @ApiOperation(value = "Update workflow instance", notes = "The service is typically used in manual state "
       + "transition via nFlow Explorer or a business UI.")
@@ -0,0 +1,182 @@
+package io.nflow.rest.v1.springweb;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static java.util.concurrent.TimeUnit.SECONDS;
+import static java.util.stream.Collectors.joining;
+import static java.util.stream.Collectors.toList;
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.nullValue;
+import static org.hamcrest.Matchers.startsWith;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyList;
+import static org.mockito.Mockito.after;
+import static org.mockito.Mockito.timeout;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.stream.IntStream;
+import java.util.stream.LongStream;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.reactivestreams.Subscription;
+import org.springframework.core.io.buffer.DataBuffer;
+import org.springframework.core.io.buffer.DefaultDataBufferFactory;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import io.nflow.engine.internal.dao.WorkflowInstanceDao;
+import io.nflow.engine.service.WorkflowInstanceService;
+import io.nflow.engine.workflow.instance.WorkflowInstance;
+import io.nflow.engine.workflow.instance.WorkflowInstanceFactory;
+import io.nflow.rest.v1.converter.CreateWorkflowConverter;
+import io.nflow.rest.v1.converter.ListWorkflowInstanceConverter;
+import io.nflow.rest.v1.msg.CreateWorkflowInstanceRequest;
+import reactor.core.publisher.BaseSubscriber;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.UnicastProcessor;
+
+@ExtendWith(MockitoExtension.class)
+public class WorkflowInstanceResourceTest {
+
+  @Mock
+  private WorkflowInstanceService workflowInstances;
+
+  @Mock
+  private CreateWorkflowConverter createWorkflowConverter;
+
+  @Mock
+  private ListWorkflowInstanceConverter listWorkflowConverter;
+
+  @Mock
+  private WorkflowInstanceFactory workflowInstanceFactory;
+
+  @Mock
+  private WorkflowInstanceDao workflowInstanceDao;
+
+  private WorkflowInstanceResource resource;
+
+  @BeforeEach
+  public void setup() {
+    resource = new WorkflowInstanceResource(workflowInstances, createWorkflowConverter, listWorkflowConverter,
+        workflowInstanceFactory, workflowInstanceDao, new ObjectMapper());
+    when(createWorkflowConverter.convert(any(CreateWorkflowInstanceRequest.class)))
+        .thenAnswer(invocation -> new WorkflowInstance.Builder().setType("dummy").build());
+    when(workflowInstances.insertWorkflowInstances(anyList())).thenAnswer(
+        invocation -> LongStream.rangeClosed(1, invocation.getArgument(0, List.class).size()).boxed().collect(toList()));
+  }
+
+  @Test
+  public void createWorkflowInstancesStreamsResultsOfEachBatch() {
+    List<String> batches = resource.createWorkflowInstances(body(requests(0, 1500))).collectList().block();
+
+    assertThat(batches.size(), is(2));
+    String[] first = batches.get(0).split("\n");
+    String[] second = batches.get(1).split("\n");
+    assertThat(first.length, is(1000));
+    assertThat(second.length, is(500));
+    assertThat(first[0], is("{\"index\":0,\"id\":1}"));
+    assertThat(second[499], is("{\"index\":1499,\"id\":500}"));
+  }
+
+  @Test
+  public void createWorkflowInstancesStreamsResultsBeforeRequestsAreRead() throws InterruptedException {
+    UnicastProcessor<DataBuffer> body = UnicastProcessor.create();
+    BlockingQueue<String> batches = new LinkedBlockingQueue<>();
+    CountDownLatch completed = new CountDownLatch(1);
+    resource.createWorkflowInstances(body).subscribe(batches::add, e -> completed.countDown(), completed::countDown);
+
+    body.onNext(buffer(requests(0, 1000)));
+
+    String first = batches.poll(5, SECONDS);
+    assertThat(first.split("\n").length, is(1000));
+    assertThat(completed.getCount(), is(1L));
+    body.onNext(buffer(requests(1000, 1001)));
+    body.onComplete();
+    assertThat(completed.await(5, SECONDS), is(true));
+    assertThat(batches.poll(), is("{\"index\":1000,\"id\":1}\n"));
+  }
+
+  @Test
+  public void createWorkflowInstancesStopsAtMalformedJson() {
+    String requests = "{\"type\":\"dummy\",\"externalId\":\"1\"}\n{\"type\":\n{\"type\":\"dummy\",\"externalId\":\"3\"}\n";
+
+    String[] results = resource.createWorkflowInstances(body(requests)).collect(joining()).block().split("\n");
+
+    assertThat(results.length, is(2));
+    assertThat(results[0], is("{\"index\":0,\"id\":1}"));
+    assertThat(results[1], startsWith("{\"index\":1,\"error\":"));
+  }
+
+  @Test
+  public void createWorkflowInstancesReadsNextBatchOnlyWhenResultsAreRequested() throws InterruptedException {
+    BlockingQueue<String> batches = new LinkedBlockingQueue<>();
+    OneByOneSubscriber subscriber = new OneByOneSubscriber(batches);
+    resource.createWorkflowInstances(body(requests(0, 3500))).subscribe(subscriber);
+
+    assertThat(batches.poll(5, SECONDS).split("\n").length, is(1000));
+    // the second batch is created, but its results wait for the demand
+    verify(workflowInstances, after(300).times(2)).insertWorkflowInstances(anyList());
+    assertThat(batches.isEmpty(), is(true));
+
+    subscriber.requestNext();
+    assertThat(batches.poll(5, SECONDS).split("\n").length, is(1000));
+    verify(workflowInstances, timeout(5000).times(3)).insertWorkflowInstances(anyList());
+  }
+
+  @Test
+  public void createWorkflowInstancesStopsWhenResultsAreCancelled() throws InterruptedException {
+    BlockingQueue<String> batches = new LinkedBlockingQueue<>();
+    OneByOneSubscriber subscriber = new OneByOneSubscriber(batches);
+    resource.createWorkflowInstances(body(requests(0, 3500))).subscribe(subscriber);
+    assertThat(batches.poll(5, SECONDS).split("\n").length, is(1000));
+    verify(workflowInstances, timeout(5000).times(2)).insertWorkflowInstances(anyList());
+
+    subscriber.cancel();
+
+    verify(workflowInstances, after(300).times(2)).insertWorkflowInstances(anyList());
+    assertThat(batches.poll(), is(nullValue()));
+  }
+
+  private static String requests(int from, int to) {
+    return IntStream.range(from, to).mapToObj(i -> "{\"type\":\"dummy\",\"externalId\":\"" + i + "\"}\n").collect(joining());
+  }
+
+  private static Flux<DataBuffer> body(String requests) {
+    return Flux.just(buffer(requests));
+  }
+
+  private static DataBuffer buffer(String requests) {
+    return new DefaultDataBufferFactory().wrap(requests.getBytes(UTF_8));
+  }
+
+  static class OneByOneSubscriber extends BaseSubscriber<String> {
+    private final BlockingQueue<String> batches;
+
+    OneByOneSubscriber(BlockingQueue<String> batches) {
+      this.batches = batches;
+    }
+
+    @Override
+    protected void hookOnSubscribe(Subscription subscription) {
+      request(1);
+    }
+
+    @Override
+    protected void hookOnNext(String batch) {
+      batches.add(batch);
+    }
+
+    void requestNext() {
+      request(1);
+    }
+  }
+}